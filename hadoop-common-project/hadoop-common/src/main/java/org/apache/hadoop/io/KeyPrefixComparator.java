@@ -0,0 +1,52 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * <p>
+ * Implemented by a {@link RawComparator} which can compute a fixed-width
+ * normalized prefix of a serialized key. Sorts can compare the prefixes of
+ * two keys first, and only call the comparator when the prefixes are equal.
+ * </p>
+ * <p>
+ * The prefixes are compared as signed longs. If the prefix of a key is less
+ * than the prefix of another key, the comparator must order the first key
+ * before the second. Equal prefixes do not imply equal keys. A subclass of
+ * a comparator implementing this interface which changes the order of the
+ * keys must also override {@link #getKeyPrefix(byte[], int, int)}.
+ * </p>
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface KeyPrefixComparator {
+
+  /**
+   * Compute the prefix of a serialized key.
+   *
+   * @param b The byte array holding the key.
+   * @param s The position of the key in b.
+   * @param l The length of the key.
+   * @return The prefix of the key.
+   */
+  public long getKeyPrefix(byte[] b, int s, int l);
+
+}
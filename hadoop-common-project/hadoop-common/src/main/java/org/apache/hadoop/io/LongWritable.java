@@ -80,7 +80,8 @@ public String toString() {
   }
 
   /** A Comparator optimized for LongWritable. */ 
-  public static class Comparator extends WritableComparator {
+  public static class Comparator extends WritableComparator
+      implements KeyPrefixComparator {
     public Comparator() {
       super(LongWritable.class);
     }
@@ -92,6 +93,11 @@ public int compare(byte[] b1, int s1, int l1,
       long thatValue = readLong(b2, s2);
       return (thisValue<thatValue ? -1 : (thisValue==thatValue ? 0 : 1));
     }
+
+    @Override
+    public long getKeyPrefix(byte[] b, int s, int l) {
+      return readLong(b, s);
+    }
   }
 
   /** A decreasing Comparator optimized for LongWritable. */ 
@@ -105,6 +111,10 @@ public int compare(WritableComparable a, WritableComparable b) {
     public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
       return -super.compare(b1, s1, l1, b2, s2, l2);
     }
+    @Override
+    public long getKeyPrefix(byte[] b, int s, int l) {
+      return ~super.getKeyPrefix(b, s, l);
+    }
   }
 
   static {                                       // register default comparator
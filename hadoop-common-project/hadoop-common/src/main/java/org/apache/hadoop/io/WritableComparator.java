@@ -197,6 +197,23 @@ public static long readLong(byte[] bytes, int start) {
       (readInt(bytes, start+4) & 0xFFFFFFFFL);
   }
 
+  /**
+   * Compute a {@link KeyPrefixComparator} prefix of binary data from its
+   * first 8 bytes, in the lexicographic order of
+   * {@link #compareBytes(byte[],int,int,byte[],int,int)}.
+   */
+  public static long readKeyPrefix(byte[] bytes, int start, int length) {
+    long prefix = 0;
+    for (int i = 0; i < 8; i++) {
+      prefix <<= 8;
+      if (i < length) {
+        prefix |= bytes[start + i] & 0xff;
+      }
+    }
+    // flip the sign bit, so that the unsigned order is the signed order
+    return prefix ^ Long.MIN_VALUE;
+  }
+
   /** Parse a double from a byte array. */
   public static double readDouble(byte[] bytes, int start) {
     return Double.longBitsToDouble(readLong(bytes, start));
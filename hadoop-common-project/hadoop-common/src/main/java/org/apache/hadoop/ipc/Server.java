@@ -61,7 +61,10 @@
 import java.util.TimerTask;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.security.sasl.Sasl;
@@ -375,6 +378,7 @@ public static boolean isRpcInvocation() {
   private Listener listener = null;
   private Responder responder = null;
   private Handler[] handlers = null;
+  private volatile Executor callExecutor = null;
 
   /**
    * A convenience method to bind to a given address and report 
@@ -503,6 +507,8 @@ public static class Call implements Schedulable {
     private ByteBuffer rpcResponse;       // the response for this call
     private final RPC.RpcKind rpcKind;
     private final byte[] clientId;
+    private volatile boolean responseDeferred = false;
+    private final AtomicBoolean responseSent = new AtomicBoolean(false);
 
     public Call(int id, int retryCount, Writable param, 
         Connection connection) {
@@ -532,6 +538,23 @@ public void setResponse(ByteBuffer response) {
       this.rpcResponse = response;
     }
 
+    /**
+     * Tells the handler running this call not to send the return value of
+     * the RPC method to the client. The response is instead sent later,
+     * possibly from another thread, through
+     * {@link Server#sendDeferredResponse(Call, Writable)} or
+     * {@link Server#sendDeferredError(Call, Throwable)}, which frees the
+     * handler for the next call while the deferred one waits on I/O.
+     * The call is obtained with {@link Server#getCurCall()}.
+     */
+    public void deferResponse() {
+      this.responseDeferred = true;
+    }
+
+    public boolean isResponseDeferred() {
+      return responseDeferred;
+    }
+
     // For Schedulable
     @Override
     public UserGroupInformation getUserGroupInformation() {
@@ -1990,84 +2013,21 @@ public void run() {
             LOG.info(Thread.currentThread().getName() + ": skipped " + call);
             continue;
           }
-          String errorClass = null;
-          String error = null;
-          RpcStatusProto returnStatus = RpcStatusProto.SUCCESS;
-          RpcErrorCodeProto detailedErr = null;
-          Writable value = null;
-
-          CurCall.set(call);
-          try {
-            // Make the call as the user via Subject.doAs, thus associating
-            // the call with the Subject
-            if (call.connection.user == null) {
-              value = call(call.rpcKind, call.connection.protocolName, call.rpcRequest, 
-                           call.timestamp);
-            } else {
-              value = 
-                call.connection.user.doAs
-                  (new PrivilegedExceptionAction<Writable>() {
-                     @Override
-                     public Writable run() throws Exception {
-                       // make the call
-                       return call(call.rpcKind, call.connection.protocolName, 
-                                   call.rpcRequest, call.timestamp);
-
-                     }
-                   }
-                  );
-            }
-          } catch (Throwable e) {
-            if (e instanceof UndeclaredThrowableException) {
-              e = e.getCause();
-            }
-            String logMsg = Thread.currentThread().getName() + ", call " + call + ": error: " + e;
-            if (e instanceof RuntimeException || e instanceof Error) {
-              // These exception types indicate something is probably wrong
-              // on the server side, as opposed to just a normal exceptional
-              // result.
-              LOG.warn(logMsg, e);
-            } else if (exceptionsHandler.isTerse(e.getClass())) {
-             // Don't log the whole stack trace of these exceptions.
-              // Way too noisy!
-              LOG.info(logMsg);
-            } else {
-              LOG.info(logMsg, e);
-            }
-            if (e instanceof RpcServerException) {
-              RpcServerException rse = ((RpcServerException)e); 
-              returnStatus = rse.getRpcStatusProto();
-              detailedErr = rse.getRpcErrorCodeProto();
-            } else {
-              returnStatus = RpcStatusProto.ERROR;
-              detailedErr = RpcErrorCodeProto.ERROR_APPLICATION;
-            }
-            errorClass = e.getClass().getName();
-            error = StringUtils.stringifyException(e);
-            // Remove redundant error class name from the beginning of the stack trace
-            String exceptionHdr = errorClass + ": ";
-            if (error.startsWith(exceptionHdr)) {
-              error = error.substring(exceptionHdr.length());
-            }
-          }
-          CurCall.set(null);
-          synchronized (call.connection.responseQueue) {
-            // setupResponse() needs to be sync'ed together with 
-            // responder.doResponse() since setupResponse may use
-            // SASL to encrypt response data and SASL enforces
-            // its own message ordering.
-            setupResponse(buf, call, returnStatus, detailedErr, 
-                value, errorClass, error);
-            
-            // Discard the large buf and reset it back to smaller size 
-            // to free up heap
-            if (buf.size() > maxRespSize) {
-              LOG.warn("Large response size " + buf.size() + " for call "
-                  + call.toString());
-              buf = new ByteArrayOutputStream(INITIAL_RESP_BUF_SIZE);
+          Executor executor = callExecutor;
+          if (executor != null) {
+            try {
+              executor.execute(new CallRunner(call));
+              continue;
+            } catch (RejectedExecutionException ree) {
+              // The executor is saturated or shutting down, so the handler
+              // runs the call itself and applies back pressure to readers
+              if (LOG.isDebugEnabled()) {
+                LOG.debug(Thread.currentThread().getName() + ": running " +
+                    call + " on the handler", ree);
+              }
             }
-            responder.doRespond(call);
           }
+          buf = processCall(call, buf);
         } catch (InterruptedException e) {
           if (running) {                          // unexpected -- log it
             LOG.info(Thread.currentThread().getName() + " unexpectedly interrupted", e);
@@ -2080,6 +2040,169 @@ public Writable run() throws Exception {
     }
 
   }
+
+  /** Runs a call handed off by a handler on the call executor. */
+  private class CallRunner implements Runnable {
+    private final Call call;
+
+    CallRunner(Call call) {
+      this.call = call;
+    }
+
+    @Override
+    public void run() {
+      SERVER.set(Server.this);
+      try {
+        processCall(call, new ByteArrayOutputStream(INITIAL_RESP_BUF_SIZE));
+      } catch (Exception e) {
+        LOG.info(Thread.currentThread().getName() + " caught an exception " +
+            "running " + call, e);
+      } finally {
+        SERVER.set(null);
+      }
+    }
+  }
+
+  /**
+   * Invokes the call as its user and sends the response, unless the invoked
+   * method deferred it with {@link Call#deferResponse()}.
+   * @return the response buffer to reuse for the next call
+   */
+  private ByteArrayOutputStream processCall(final Call call,
+      ByteArrayOutputStream buf) throws IOException {
+    Writable value = null;
+    Throwable error = null;
+
+    CurCall.set(call);
+    try {
+      // Make the call as the user via Subject.doAs, thus associating
+      // the call with the Subject
+      if (call.connection.user == null) {
+        value = call(call.rpcKind, call.connection.protocolName,
+            call.rpcRequest, call.timestamp);
+      } else {
+        value = call.connection.user.doAs(
+            new PrivilegedExceptionAction<Writable>() {
+              @Override
+              public Writable run() throws Exception {
+                // make the call
+                return call(call.rpcKind, call.connection.protocolName,
+                    call.rpcRequest, call.timestamp);
+              }
+            });
+      }
+    } catch (Throwable e) {
+      error = e;
+    } finally {
+      CurCall.set(null);
+    }
+
+    if (error == null && call.isResponseDeferred()) {
+      // Whoever deferred the call sends the response
+      return buf;
+    }
+    return respond(buf, call, value, error);
+  }
+
+  /**
+   * Sends the response of a call deferred with {@link Call#deferResponse()}.
+   * May be called from any thread, but only the first response sent for a
+   * call reaches the client.
+   */
+  public void sendDeferredResponse(Call call, Writable value)
+      throws IOException {
+    respond(new ByteArrayOutputStream(INITIAL_RESP_BUF_SIZE), call, value,
+        null);
+  }
+
+  /**
+   * Fails a call deferred with {@link Call#deferResponse()}, reporting the
+   * given exception to the client as if the RPC method had thrown it.
+   */
+  public void sendDeferredError(Call call, Throwable error)
+      throws IOException {
+    respond(new ByteArrayOutputStream(INITIAL_RESP_BUF_SIZE), call, null,
+        error);
+  }
+
+  private ByteArrayOutputStream respond(ByteArrayOutputStream buf, Call call,
+      Writable value, Throwable e) throws IOException {
+    if (!call.responseSent.compareAndSet(false, true)) {
+      LOG.warn(Thread.currentThread().getName() + ": dropping second " +
+          "response for " + call);
+      return buf;
+    }
+
+    String errorClass = null;
+    String error = null;
+    RpcStatusProto returnStatus = RpcStatusProto.SUCCESS;
+    RpcErrorCodeProto detailedErr = null;
+    if (e != null) {
+      if (e instanceof UndeclaredThrowableException) {
+        e = e.getCause();
+      }
+      String logMsg = Thread.currentThread().getName() + ", call " + call +
+          ": error: " + e;
+      if (e instanceof RuntimeException || e instanceof Error) {
+        // These exception types indicate something is probably wrong
+        // on the server side, as opposed to just a normal exceptional
+        // result.
+        LOG.warn(logMsg, e);
+      } else if (exceptionsHandler.isTerse(e.getClass())) {
+        // Don't log the whole stack trace of these exceptions.
+        // Way too noisy!
+        LOG.info(logMsg);
+      } else {
+        LOG.info(logMsg, e);
+      }
+      if (e instanceof RpcServerException) {
+        RpcServerException rse = ((RpcServerException) e);
+        returnStatus = rse.getRpcStatusProto();
+        detailedErr = rse.getRpcErrorCodeProto();
+      } else {
+        returnStatus = RpcStatusProto.ERROR;
+        detailedErr = RpcErrorCodeProto.ERROR_APPLICATION;
+      }
+      errorClass = e.getClass().getName();
+      error = StringUtils.stringifyException(e);
+      // Remove redundant error class name from the beginning of the stack trace
+      String exceptionHdr = errorClass + ": ";
+      if (error.startsWith(exceptionHdr)) {
+        error = error.substring(exceptionHdr.length());
+      }
+    }
+
+    synchronized (call.connection.responseQueue) {
+      // setupResponse() needs to be sync'ed together with 
+      // responder.doResponse() since setupResponse may use
+      // SASL to encrypt response data and SASL enforces
+      // its own message ordering.
+      setupResponse(buf, call, returnStatus, detailedErr, 
+          value, errorClass, error);
+      
+      // Discard the large buf and reset it back to smaller size 
+      // to free up heap
+      if (buf.size() > maxRespSize) {
+        LOG.warn("Large response size " + buf.size() + " for call "
+            + call.toString());
+        buf = new ByteArrayOutputStream(INITIAL_RESP_BUF_SIZE);
+      }
+      responder.doRespond(call);
+    }
+    return buf;
+  }
+
+  /**
+   * Hands calls taken off the call queue to the given executor instead of
+   * running them on the handler threads, so the number of calls in progress
+   * is bounded by the executor rather than by the handler count. Intended
+   * for servers whose calls mostly wait on storage round trips. The caller
+   * owns the executor and shuts it down after stopping the server. Passing
+   * null runs calls on the handlers again.
+   */
+  public void setCallExecutor(Executor executor) {
+    this.callExecutor = executor;
+  }
   
   protected Server(String bindAddress, int port,
                   Class<? extends Writable> paramClass, int handlerCount, 
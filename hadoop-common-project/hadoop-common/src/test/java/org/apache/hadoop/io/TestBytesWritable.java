@@ -89,6 +89,40 @@ public void testCompare() throws Exception {
     assertTrue(buf[3].compareTo(buf[4]) < 0);
   }
   
+  @Test
+  public void testKeyPrefix() throws Exception {
+    byte[][] values = new byte[][]{"abc".getBytes(),
+                                   "ad".getBytes(),
+                                   "abcdefghij".getBytes(),
+                                   "abcdefghik".getBytes(),
+                                   "".getBytes(),
+                                   new byte[]{(byte) 0x80},
+                                   new byte[]{0x7f, 0}};
+    BytesWritable.Comparator comparator = new BytesWritable.Comparator();
+    byte[][] serialized = new byte[values.length][];
+    for (int i = 0; i < values.length; ++i) {
+      DataOutputBuffer out = new DataOutputBuffer();
+      new BytesWritable(values[i]).write(out);
+      serialized[i] = out.getData();
+    }
+    // the order of the prefixes must agree with the order of the keys
+    for (int i = 0; i < values.length; ++i) {
+      for (int j = 0; j < values.length; ++j) {
+        long pi = comparator.getKeyPrefix(serialized[i], 0,
+            values[i].length + 4);
+        long pj = comparator.getKeyPrefix(serialized[j], 0,
+            values[j].length + 4);
+        int cmp = comparator.compare(serialized[i], 0, values[i].length + 4,
+            serialized[j], 0, values[j].length + 4);
+        if (pi < pj) {
+          assertTrue(cmp < 0);
+        } else if (pi > pj) {
+          assertTrue(cmp > 0);
+        }
+      }
+    }
+  }
+
   private void checkToString(byte[] input, String expected) {
     String actual = new BytesWritable(input).toString();
     assertEquals(expected, actual);
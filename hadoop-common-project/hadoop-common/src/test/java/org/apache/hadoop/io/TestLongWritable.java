@@ -0,0 +1,70 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io;
+
+import org.junit.Test;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * This is the unit test for the comparators of LongWritable.
+ */
+public class TestLongWritable {
+
+  private static final long[] VALUES = {0L, 1L, -1L, 255L, 256L,
+      Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE + 1, Long.MAX_VALUE - 1,
+      Integer.MAX_VALUE, Integer.MIN_VALUE};
+
+  private static void checkKeyPrefix(WritableComparator comparator)
+      throws Exception {
+    KeyPrefixComparator prefixComparator = (KeyPrefixComparator) comparator;
+    byte[][] serialized = new byte[VALUES.length][];
+    for (int i = 0; i < VALUES.length; ++i) {
+      DataOutputBuffer out = new DataOutputBuffer();
+      new LongWritable(VALUES[i]).write(out);
+      serialized[i] = out.getData();
+    }
+    // the order of the prefixes must agree with the order of the keys
+    for (int i = 0; i < VALUES.length; ++i) {
+      for (int j = 0; j < VALUES.length; ++j) {
+        long pi = prefixComparator.getKeyPrefix(serialized[i], 0, 8);
+        long pj = prefixComparator.getKeyPrefix(serialized[j], 0, 8);
+        int cmp = comparator.compare(serialized[i], 0, 8,
+            serialized[j], 0, 8);
+        if (pi < pj) {
+          assertTrue(cmp < 0);
+        } else if (pi > pj) {
+          assertTrue(cmp > 0);
+        } else {
+          // the prefix is the whole key
+          assertTrue(cmp == 0);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testKeyPrefix() throws Exception {
+    checkKeyPrefix(new LongWritable.Comparator());
+  }
+
+  @Test
+  public void testDecreasingKeyPrefix() throws Exception {
+    checkKeyPrefix(new LongWritable.DecreasingComparator());
+  }
+}
@@ -219,6 +219,34 @@ public void testCompare() throws Exception {
     }
   }
       
+  public void testKeyPrefix() throws Exception {
+    String[] values = {"abc", "ad", "abcdefghij", "abcdefghik", "",
+        "\u00e9t\u00e9", "z", "\u0000", getLongString()};
+    Text.Comparator comparator = new Text.Comparator();
+    DataOutputBuffer[] serialized = new DataOutputBuffer[values.length];
+    for (int i = 0; i < values.length; i++) {
+      serialized[i] = new DataOutputBuffer();
+      new Text(values[i]).write(serialized[i]);
+    }
+    // the order of the prefixes must agree with the order of the keys
+    for (int i = 0; i < values.length; i++) {
+      for (int j = 0; j < values.length; j++) {
+        long pi = comparator.getKeyPrefix(serialized[i].getData(), 0,
+            serialized[i].getLength());
+        long pj = comparator.getKeyPrefix(serialized[j].getData(), 0,
+            serialized[j].getLength());
+        int cmp = comparator.compare(
+            serialized[i].getData(), 0, serialized[i].getLength(),
+            serialized[j].getData(), 0, serialized[j].getLength());
+        if (pi < pj) {
+          assertTrue(cmp < 0);
+        } else if (pi > pj) {
+          assertTrue(cmp > 0);
+        }
+      }
+    }
+  }
+
   public void testFind() throws Exception {
     Text text = new Text("abcd\u20acbdcd\u20ac");
     assertTrue(text.find("abd")==-1);
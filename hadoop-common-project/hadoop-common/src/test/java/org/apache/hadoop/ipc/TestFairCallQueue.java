@@ -0,0 +1,175 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.ipc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestFairCallQueue {
+  private FairCallQueue<Schedulable> fcq;
+
+  private Schedulable mockCall(String id) {
+    Schedulable mockCall = mock(Schedulable.class);
+    UserGroupInformation ugi = mock(UserGroupInformation.class);
+
+    when(ugi.getUserName()).thenReturn(id);
+    when(mockCall.getUserGroupInformation()).thenReturn(ugi);
+
+    return mockCall;
+  }
+
+  private RpcScheduler alwaysZeroScheduler() {
+    RpcScheduler sched = mock(RpcScheduler.class);
+    when(sched.getPriorityLevel(org.mockito.Matchers.<Schedulable>any()))
+      .thenReturn(0);
+    return sched;
+  }
+
+  @Before
+  public void setUp() {
+    Configuration conf = new Configuration();
+    conf.setInt("ns." + FairCallQueue.IPC_CALLQUEUE_PRIORITY_LEVELS_KEY, 2);
+
+    fcq = new FairCallQueue<Schedulable>(5, "ns", conf);
+  }
+
+  @Test
+  public void testPollReturnsNullWhenEmpty() {
+    assertNull(fcq.poll());
+  }
+
+  @Test
+  public void testPollReturnsTopCallWhenNotEmpty() {
+    Schedulable call = mockCall("c");
+    assertTrue(fcq.offer(call));
+
+    assertSame(call, fcq.poll());
+
+    // Poll took it out so the fcq is empty
+    assertEquals(0, fcq.size());
+  }
+
+  @Test
+  public void testOfferSucceeds() {
+    fcq.setScheduler(alwaysZeroScheduler());
+
+    for (int i = 0; i < 5; i++) {
+      // We can fit 10 calls
+      assertTrue(fcq.offer(mockCall("c")));
+    }
+
+    assertEquals(5, fcq.size());
+  }
+
+  @Test
+  public void testOfferFailsWhenFull() {
+    fcq.setScheduler(alwaysZeroScheduler());
+    for (int i = 0; i < 5; i++) {
+      assertTrue(fcq.offer(mockCall("c")));
+    }
+
+    assertTrue(!fcq.offer(mockCall("c"))); // It's full
+
+    assertEquals(5, fcq.size());
+  }
+
+  @Test
+  public void testPutOverflowsToLowerPriorityLevel()
+      throws InterruptedException {
+    fcq.setScheduler(alwaysZeroScheduler());
+    for (int i = 0; i < 7; i++) {
+      fcq.put(mockCall("c"));
+    }
+
+    // Level 0 is full, the rest went to level 1
+    assertEquals(5, fcq.getQueueSizes()[0]);
+    assertEquals(2, fcq.getQueueSizes()[1]);
+    assertEquals(2, fcq.getOverflowedCalls()[0]);
+    assertEquals(0, fcq.getOverflowedCalls()[1]);
+  }
+
+  @Test
+  public void testTakeDrawsFromLevelChosenByMultiplexer()
+      throws InterruptedException {
+    RpcScheduler sched = mock(RpcScheduler.class);
+    Schedulable heavy = mockCall("heavy");
+    Schedulable light = mockCall("light");
+    when(sched.getPriorityLevel(heavy)).thenReturn(1);
+    when(sched.getPriorityLevel(light)).thenReturn(0);
+    fcq.setScheduler(sched);
+
+    RpcMultiplexer mux = mock(RpcMultiplexer.class);
+    when(mux.getAndAdvanceCurrentIndex()).thenReturn(1, 0, 0);
+    fcq.setMultiplexer(mux);
+
+    fcq.put(light);
+    fcq.put(heavy);
+
+    // The multiplexer points at the low priority level first
+    assertSame(heavy, fcq.take());
+    assertSame(light, fcq.take());
+    assertNull(fcq.poll(10, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testDrainTo() {
+    Configuration conf = new Configuration();
+    conf.setInt("ns." + FairCallQueue.IPC_CALLQUEUE_PRIORITY_LEVELS_KEY, 2);
+    FairCallQueue<Schedulable> fcq2 =
+      new FairCallQueue<Schedulable>(10, "ns", conf);
+
+    fcq.setScheduler(alwaysZeroScheduler());
+    fcq2.setScheduler(alwaysZeroScheduler());
+
+    // Start with 3 in fcq, to be drained
+    for (int i = 0; i < 3; i++) {
+      fcq.offer(mockCall("c"));
+    }
+
+    ArrayList<Schedulable> drained = new ArrayList<Schedulable>();
+    fcq.drainTo(drained);
+    for (Schedulable s : drained) {
+      fcq2.offer(s);
+    }
+
+    assertEquals(0, fcq.size());
+    assertEquals(3, fcq2.size());
+  }
+
+  @Test
+  public void testRemainingCapacity() {
+    assertEquals(10, fcq.remainingCapacity());
+
+    fcq.setScheduler(alwaysZeroScheduler());
+    fcq.offer(mockCall("c"));
+    assertEquals(9, fcq.remainingCapacity());
+  }
+}
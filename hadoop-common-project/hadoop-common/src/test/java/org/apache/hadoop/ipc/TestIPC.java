@@ -47,6 +47,8 @@
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -260,6 +262,109 @@ public void internalTestSerial(int handlerCount, boolean handlerSleep,
     server.stop();
   }
 	
+  /** Makes a single call and records its result. */
+  private static class SingleCaller extends Thread {
+    private final InetSocketAddress addr;
+    private final long param;
+    private volatile LongWritable value;
+
+    SingleCaller(InetSocketAddress addr, long param) {
+      this.addr = addr;
+      this.param = param;
+    }
+
+    @Override
+    public void run() {
+      Client client = new Client(LongWritable.class, conf);
+      try {
+        value = (LongWritable) client.call(new LongWritable(param), addr,
+            null, null, 0, conf);
+      } catch (Exception e) {
+        LOG.fatal("Caught: " + StringUtils.stringifyException(e));
+      } finally {
+        client.stop();
+      }
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testDeferredResponse() throws Exception {
+    final TestServer server = new TestServer(1, false);
+    final List<Server.Call> deferred =
+        Collections.synchronizedList(new ArrayList<Server.Call>());
+    server.callListener = new Runnable() {
+      @Override
+      public void run() {
+        Server.Call call = Server.getCurCall().get();
+        call.deferResponse();
+        deferred.add(call);
+      }
+    };
+    InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    try {
+      SingleCaller[] callers = new SingleCaller[2];
+      for (int i = 0; i < callers.length; i++) {
+        callers[i] = new SingleCaller(addr, i);
+        callers[i].start();
+      }
+      // The only handler is not held by the first deferred call
+      while (deferred.size() < callers.length) {
+        Thread.sleep(10);
+      }
+      for (SingleCaller caller : callers) {
+        assertTrue(caller.isAlive());
+      }
+
+      for (Server.Call call : deferred) {
+        server.sendDeferredResponse(call, new LongWritable(42));
+      }
+      for (SingleCaller caller : callers) {
+        caller.join();
+        assertEquals(42, caller.value.get());
+      }
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testCallExecutor() throws Exception {
+    final int numCalls = 3;
+    final CyclicBarrier barrier = new CyclicBarrier(numCalls);
+    TestServer server = new TestServer(1, false);
+    // Completes only if all calls are in progress at the same time, which
+    // a single handler cannot do by itself
+    server.callListener = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          barrier.await();
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    ExecutorService executor = Executors.newFixedThreadPool(numCalls);
+    server.setCallExecutor(executor);
+    InetSocketAddress addr = NetUtils.getConnectAddress(server);
+    server.start();
+    try {
+      SingleCaller[] callers = new SingleCaller[numCalls];
+      for (int i = 0; i < numCalls; i++) {
+        callers[i] = new SingleCaller(addr, i);
+        callers[i].start();
+      }
+      for (int i = 0; i < numCalls; i++) {
+        callers[i].join();
+        assertEquals(i, callers[i].value.get());
+      }
+    } finally {
+      server.stop();
+      executor.shutdownNow();
+    }
+  }
+
   @Test(timeout=60000)
   public void testStandAloneClient() throws IOException {
     Client client = new Client(LongWritable.class, conf);
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.erasure_coding;
+
+import io.hops.metadata.hdfs.entity.EncodingPolicy;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.server.protocol.ErasureCodingTask;
+
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Encodes files on the datanodes holding their data, see
+ * {@link ErasureCodingTaskScheduler}.
+ */
+public class DataNodeEncodingManager extends EncodingManager {
+
+  private static final EnumSet<ErasureCodingTask.Type> TYPES =
+      EnumSet.of(ErasureCodingTask.Type.ENCODE);
+
+  private ErasureCodingTaskScheduler scheduler;
+
+  public DataNodeEncodingManager(Configuration conf) {
+    super(conf);
+  }
+
+  void setScheduler(ErasureCodingTaskScheduler scheduler) {
+    this.scheduler = scheduler;
+  }
+
+  @Override
+  public void encodeFile(EncodingPolicy policy, Path sourceFile,
+      Path parityFile) {
+    scheduler.submit(ErasureCodingTask.Type.ENCODE, policy.getCodec(),
+        sourceFile.toUri().getPath(), parityFile.toUri().getPath(),
+        policy.getTargetReplication());
+  }
+
+  @Override
+  public List<Report> computeReports() {
+    return scheduler.computeReports(TYPES);
+  }
+
+  @Override
+  public void cancelAll() {
+    scheduler.cancelAll(TYPES);
+  }
+
+  @Override
+  public void cancel(String toCancel) {
+    scheduler.cancel(toCancel, TYPES);
+  }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.erasure_coding;
+
+import io.hops.metadata.hdfs.entity.EncodingStatus;
+import io.hops.transaction.EntityManager;
+import io.hops.transaction.handler.HDFSOperationType;
+import io.hops.transaction.handler.HopsTransactionalRequestHandler;
+import io.hops.transaction.lock.LockFactory;
+import io.hops.transaction.lock.TransactionLockTypes;
+import io.hops.transaction.lock.TransactionLocks;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
+import org.apache.hadoop.hdfs.server.namenode.INode;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.hadoop.util.Time;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The encoding status transitions resulting from the reports of a round of
+ * the {@link ErasureCodingManager}. They are keyed by the inode id of the
+ * source file and committed in batches, each in one transaction which locks
+ * the statuses of the batch by inode id instead of resolving the path of
+ * every file. Updates of a batch which fails are kept for the next round, up
+ * to {@link #MAX_ATTEMPTS} times.
+ * <p/>
+ * Not thread safe, it is only used by the monitor thread.
+ */
+class EncodingStatusUpdates {
+
+  static final Log LOG = LogFactory.getLog(EncodingStatusUpdates.class);
+
+  static final int MAX_ATTEMPTS = 3;
+
+  enum Transition {
+    ENCODING_FINISHED {
+      @Override
+      void apply(EncodingStatus status, INode parityInode, long now) {
+        if (parityInode == null) {
+          setStatus(status, EncodingStatus.Status.ENCODING_FAILED, now);
+        } else {
+          setStatus(status, EncodingStatus.Status.ENCODED, now);
+          status.setParityInodeId(parityInode.getId());
+          setParityStatus(status, EncodingStatus.ParityStatus.HEALTHY, now);
+        }
+      }
+    },
+    ENCODING_FAILED {
+      @Override
+      void apply(EncodingStatus status, INode parityInode, long now) {
+        setStatus(status, EncodingStatus.Status.ENCODING_FAILED, now);
+        setParityStatus(status, EncodingStatus.ParityStatus.REPAIR_FAILED,
+            now);
+      }
+    },
+    ENCODING_CANCELED {
+      @Override
+      void apply(EncodingStatus status, INode parityInode, long now) {
+        setStatus(status, EncodingStatus.Status.ENCODING_CANCELED, now);
+      }
+    },
+    SOURCE_REPAIR_FINISHED {
+      @Override
+      void apply(EncodingStatus status, INode parityInode, long now) {
+        setStatus(status, status.getLostBlocks() == 0 ?
+            EncodingStatus.Status.ENCODED :
+            EncodingStatus.Status.REPAIR_REQUESTED, now);
+      }
+    },
+    SOURCE_REPAIR_FAILED {
+      @Override
+      void apply(EncodingStatus status, INode parityInode, long now) {
+        setStatus(status, EncodingStatus.Status.REPAIR_FAILED, now);
+      }
+    },
+    SOURCE_REPAIR_CANCELED {
+      @Override
+      void apply(EncodingStatus status, INode parityInode, long now) {
+        setStatus(status, EncodingStatus.Status.REPAIR_CANCELED, now);
+      }
+    },
+    PARITY_REPAIR_FINISHED {
+      @Override
+      void apply(EncodingStatus status, INode parityInode, long now) {
+        setParityStatus(status, status.getLostParityBlocks() == 0 ?
+            EncodingStatus.ParityStatus.HEALTHY :
+            EncodingStatus.ParityStatus.REPAIR_REQUESTED, now);
+      }
+    },
+    PARITY_REPAIR_FAILED {
+      @Override
+      void apply(EncodingStatus status, INode parityInode, long now) {
+        setParityStatus(status, EncodingStatus.ParityStatus.REPAIR_FAILED,
+            now);
+      }
+    },
+    PARITY_REPAIR_CANCELED {
+      @Override
+      void apply(EncodingStatus status, INode parityInode, long now) {
+        setParityStatus(status, EncodingStatus.ParityStatus.REPAIR_CANCELED,
+            now);
+      }
+    };
+
+    /**
+     * @param parityInode
+     *    the parity file, only resolved for {@link #ENCODING_FINISHED}
+     */
+    abstract void apply(EncodingStatus status, INode parityInode, long now);
+
+    private static void setStatus(EncodingStatus status,
+        EncodingStatus.Status value, long now) {
+      status.setStatus(value);
+      status.setStatusModificationTime(now);
+    }
+
+    private static void setParityStatus(EncodingStatus status,
+        EncodingStatus.ParityStatus value, long now) {
+      status.setParityStatus(value);
+      status.setParityStatusModificationTime(now);
+    }
+  }
+
+  /**
+   * The transitions of one file, applied in the order they were reported.
+   */
+  static class Update {
+    private final int inodeId;
+    private final List<Transition> transitions = new ArrayList<Transition>(1);
+    private String parityPath;
+    private int attempts = 0;
+
+    Update(int inodeId) {
+      this.inodeId = inodeId;
+    }
+
+    int getInodeId() {
+      return inodeId;
+    }
+
+    List<Transition> getTransitions() {
+      return transitions;
+    }
+
+    String getParityPath() {
+      return parityPath;
+    }
+
+    void apply(EncodingStatus status, INode parityInode, long now) {
+      for (Transition transition : transitions) {
+        transition.apply(status, parityInode, now);
+      }
+    }
+  }
+
+  private final Map<Integer, Update> pending = new TreeMap<Integer, Update>();
+
+  /**
+   * @param parityPath
+   *    the path of the parity file, needed for
+   *    {@link Transition#ENCODING_FINISHED} only
+   */
+  void add(int inodeId, Transition transition, String parityPath) {
+    Update update = pending.get(inodeId);
+    if (update == null) {
+      update = new Update(inodeId);
+      pending.put(inodeId, update);
+    }
+    update.transitions.add(transition);
+    if (parityPath != null) {
+      update.parityPath = parityPath;
+    }
+  }
+
+  int size() {
+    return pending.size();
+  }
+
+  /**
+   * Drops all pending updates, when the name-node is no longer the leader.
+   */
+  void clear() {
+    pending.clear();
+  }
+
+  /**
+   * Splits the pending updates in batches of at most batchSize files, in
+   * inode id order.
+   */
+  List<List<Update>> drain(int batchSize) {
+    List<Update> updates = new ArrayList<Update>(pending.values());
+    pending.clear();
+    List<List<Update>> batches = new ArrayList<List<Update>>();
+    for (int i = 0; i < updates.size(); i += batchSize) {
+      batches.add(updates.subList(i, Math.min(i + batchSize, updates.size())));
+    }
+    return batches;
+  }
+
+  /**
+   * Keeps the updates of a failed batch for the next round, unless they
+   * already failed {@link #MAX_ATTEMPTS} times.
+   */
+  void retry(List<Update> batch) {
+    for (Update update : batch) {
+      if (++update.attempts >= MAX_ATTEMPTS) {
+        LOG.error("Dropping the status updates " + update.transitions +
+            " of inode " + update.inodeId + " after " + update.attempts +
+            " failed attempts");
+        continue;
+      }
+      Update newer = pending.get(update.inodeId);
+      if (newer != null) {
+        update.transitions.addAll(newer.transitions);
+        if (newer.parityPath != null) {
+          update.parityPath = newer.parityPath;
+        }
+      }
+      pending.put(update.inodeId, update);
+    }
+  }
+
+  /**
+   * Commits all pending updates.
+   */
+  void commit(FSNamesystem namesystem, int batchSize,
+      ErasureCodingMetrics metrics) {
+    for (List<Update> batch : drain(batchSize)) {
+      long start = Time.monotonicNow();
+      try {
+        commitBatch(namesystem, batch);
+        metrics.addStatusUpdateBatch(batch.size(),
+            Time.monotonicNow() - start);
+      } catch (IOException e) {
+        LOG.error(StringUtils.stringifyException(e));
+        metrics.incrFailedStatusUpdateBatches();
+        retry(batch);
+      }
+    }
+  }
+
+  private void commitBatch(final FSNamesystem namesystem,
+      final List<Update> batch) throws IOException {
+    final int[] inodeIds = new int[batch.size()];
+    final List<String> parityPaths = new ArrayList<String>();
+    for (int i = 0; i < inodeIds.length; i++) {
+      Update update = batch.get(i);
+      inodeIds[i] = update.inodeId;
+      if (update.parityPath != null &&
+          update.transitions.contains(Transition.ENCODING_FINISHED)) {
+        parityPaths.add(update.parityPath);
+      }
+    }
+
+    new HopsTransactionalRequestHandler(
+        HDFSOperationType.UPDATE_ENCODING_STATUSES) {
+      @Override
+      public void acquireLock(TransactionLocks locks) throws IOException {
+        LockFactory lf = LockFactory.getInstance();
+        if (!parityPaths.isEmpty()) {
+          locks.add(lf.getINodeLock(namesystem.getNameNode(),
+              TransactionLockTypes.INodeLockType.READ_COMMITTED,
+              TransactionLockTypes.INodeResolveType.PATH,
+              parityPaths.toArray(new String[parityPaths.size()])));
+        }
+        locks.add(lf.getBatchedEncodingStatusLock(
+            TransactionLockTypes.LockType.WRITE, inodeIds));
+      }
+
+      @Override
+      public Object performTask() throws IOException {
+        long now = System.currentTimeMillis();
+        for (Update update : batch) {
+          EncodingStatus status = EntityManager
+              .find(EncodingStatus.Finder.ByInodeId, update.inodeId);
+          if (status == null) {
+            // The source file was deleted in the meantime
+            LOG.info("No encoding status for inode " + update.inodeId +
+                ". Skipping " + update.transitions);
+            continue;
+          }
+          INode parityInode = null;
+          if (update.parityPath != null &&
+              update.transitions.contains(Transition.ENCODING_FINISHED)) {
+            parityInode = namesystem.getINode(update.parityPath);
+          }
+          update.apply(status, parityInode, now);
+          EntityManager.update(status);
+        }
+        return null;
+      }
+    }.handle(this);
+  }
+}
@@ -19,31 +19,34 @@
 import io.hops.metadata.HdfsStorageFactory;
 import io.hops.metadata.hdfs.dal.EncodingStatusDataAccess;
 import io.hops.metadata.hdfs.entity.EncodingStatus;
-import io.hops.transaction.EntityManager;
 import io.hops.transaction.handler.EncodingStatusOperationType;
-import io.hops.transaction.handler.HDFSOperationType;
-import io.hops.transaction.handler.HopsTransactionalRequestHandler;
 import io.hops.transaction.handler.LightWeightRequestHandler;
-import io.hops.transaction.lock.LockFactory;
-import io.hops.transaction.lock.TransactionLockTypes;
-import io.hops.transaction.lock.TransactionLocks;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.protocol.DatanodeID;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
 import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
 import org.apache.hadoop.hdfs.server.namenode.INode;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeCommand;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol;
+import org.apache.hadoop.hdfs.server.protocol.ErasureCodingCommand;
+import org.apache.hadoop.hdfs.server.protocol.ErasureCodingTaskStatus;
 import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.StringUtils;
+import org.apache.hadoop.util.Time;
 
 import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -63,6 +66,10 @@ public class ErasureCodingManager extends Configured {
       new Daemon(new ErasureCodingMonitor());
   private EncodingManager encodingManager;
   private BlockRepairManager blockRepairManager;
+  /**
+   * Set if encodings or repairs run on the datanodes.
+   */
+  private volatile ErasureCodingTaskScheduler taskScheduler;
   private String parityFolder;
   private final long recheckInterval;
   private final int activeEncodingLimit;
@@ -74,9 +81,33 @@ public class ErasureCodingManager extends Configured {
   private final int repairDelay;
   private final int parityRepairDelay;
   private final int deletionLimit;
+  private final int statusUpdateBatchSize;
+  private final EncodingStatusUpdates statusUpdates =
+      new EncodingStatusUpdates();
+  /**
+   * The files with an encoding or repair in progress, by the path their
+   * reports refer to. This is the parity file for parity repairs.
+   */
+  private final Map<String, ActiveFile> activeFiles =
+      new HashMap<String, ActiveFile>();
+  private ErasureCodingMetrics metrics = new ErasureCodingMetrics();
+  /**
+   * Whether this name-node was the leader in the last monitor round.
+   */
+  private boolean leader = false;
 
   private static boolean enabled = false;
 
+  private static class ActiveFile {
+    private final int inodeId;
+    private final String parityPath;
+
+    ActiveFile(int inodeId, String parityPath) {
+      this.inodeId = inodeId;
+      this.parityPath = parityPath;
+    }
+  }
+
   public ErasureCodingManager(FSNamesystem namesystem, Configuration conf) {
     super(conf);
     this.namesystem = namesystem;
@@ -98,6 +129,9 @@ public ErasureCodingManager(FSNamesystem namesystem, Configuration conf) {
         DFSConfigKeys.DEFAULT_PARITY_REPAIR_DELAY);
     this.deletionLimit = conf.getInt(DFSConfigKeys.DELETION_LIMIT_KEY,
         DFSConfigKeys.DEFAULT_DELETION_LIMIT);
+    this.statusUpdateBatchSize =
+        conf.getInt(DFSConfigKeys.STATUS_UPDATE_BATCH_SIZE_KEY,
+            DFSConfigKeys.DEFAULT_STATUS_UPDATE_BATCH_SIZE);
     enabled = conf.getBoolean(DFSConfigKeys.ERASURE_CODING_ENABLED_KEY,
         DFSConfigKeys.DEFAULT_ERASURE_CODING_ENABLED_KEY);
   }
@@ -135,6 +169,20 @@ private boolean loadRaidNodeClasses() {
           blockRepairManagerClass.getConstructor(Configuration.class);
       blockRepairManager = (BlockRepairManager) blockRepairManagerConstructor
           .newInstance(getConf());
+
+      if (encodingManager instanceof DataNodeEncodingManager ||
+          blockRepairManager instanceof DataNodeBlockRepairManager) {
+        ErasureCodingTaskScheduler scheduler =
+            new ErasureCodingTaskScheduler(namesystem, getConf());
+        if (encodingManager instanceof DataNodeEncodingManager) {
+          ((DataNodeEncodingManager) encodingManager).setScheduler(scheduler);
+        }
+        if (blockRepairManager instanceof DataNodeBlockRepairManager) {
+          ((DataNodeBlockRepairManager) blockRepairManager)
+              .setScheduler(scheduler);
+        }
+        taskScheduler = scheduler;
+      }
     } catch (Exception e) {
       LOG.error("Could not load erasure coding classes", e);
       return false;
@@ -150,6 +198,7 @@ public void activate() {
       return;
     }
 
+    metrics = ErasureCodingMetrics.create();
     erasureCodingMonitorThread.start();
     LOG.info("ErasureCodingMonitor started");
   }
@@ -165,6 +214,36 @@ public void close() {
     LOG.info("ErasureCodingMonitor stopped");
   }
 
+  /**
+   * Processes the erasure coding task states a datanode reported with its
+   * heartbeat and adds the tasks assigned to the datanode to the commands
+   * of the heartbeat response.
+   *
+   * @return the commands for the datanode
+   */
+  public DatanodeCommand[] handleHeartbeat(DatanodeID datanode,
+      ErasureCodingTaskStatus[] codingStatuses, DatanodeCommand[] cmds) {
+    ErasureCodingTaskScheduler scheduler = taskScheduler;
+    if (scheduler == null) {
+      return cmds;
+    }
+    if (codingStatuses != null && codingStatuses.length > 0) {
+      scheduler.processStatuses(datanode, codingStatuses);
+    }
+    for (DatanodeCommand cmd : cmds) {
+      if (cmd.getAction() == DatanodeProtocol.DNA_REGISTER) {
+        return cmds;
+      }
+    }
+    ErasureCodingCommand ecCmd = scheduler.getCommand(datanode);
+    if (ecCmd == null) {
+      return cmds;
+    }
+    DatanodeCommand[] result = Arrays.copyOf(cmds, cmds.length + 1);
+    result[cmds.length] = ecCmd;
+    return result;
+  }
+
   public static boolean isErasureCodingEnabled(Configuration conf) {
     return conf.getBoolean(DFSConfigKeys.ERASURE_CODING_ENABLED_KEY,
         DFSConfigKeys.DEFAULT_ERASURE_CODING_ENABLED_KEY);
@@ -183,14 +262,29 @@ public void run() {
           } catch (IOException e) {
             LOG.info("In safe mode skipping this round");
           }
-          if (namesystem.isLeader()) {
-            checkActiveEncodings();
-            scheduleEncodings();
-            checkActiveRepairs();
-            scheduleSourceRepairs();
-            scheduleParityRepairs();
-            garbageCollect();
-            checkRevoked();
+          if (!namesystem.isLeader()) {
+            if (leader) {
+              leader = false;
+              clearActiveState();
+            }
+          } else {
+            leader = true;
+            long start = Time.monotonicNow();
+            try {
+              checkActiveEncodings();
+              checkActiveRepairs();
+              // Before scheduling, which relies on the committed statuses
+              commitStatusUpdates();
+              scheduleEncodings();
+              scheduleSourceRepairs();
+              scheduleParityRepairs();
+              garbageCollect();
+              checkRevoked();
+            } finally {
+              metrics.addMonitorRound(Time.monotonicNow() - start);
+              metrics.setBacklog(statusUpdates.size(), activeEncodings,
+                  activeRepairs, activeParityRepairs);
+            }
           }
           try {
             Thread.sleep(recheckInterval);
@@ -207,6 +301,22 @@ public void run() {
     }
   }
 
+  /**
+   * Forgets the scheduled files and the pending status updates after the
+   * loss of leadership. The new leader reads the statuses from the database
+   * and resolves the reports for files it did not schedule by their paths.
+   */
+  private void clearActiveState() {
+    LOG.info("No longer the leader. Clearing " + activeFiles.size() +
+        " active files and " + statusUpdates.size() + " status updates");
+    activeFiles.clear();
+    statusUpdates.clear();
+    activeEncodings = 0;
+    activeRepairs = 0;
+    activeParityRepairs = 0;
+    metrics.setBacklog(0, 0, 0, 0);
+  }
+
   private void checkActiveEncodings() {
     LOG.info("Checking active encoding.");
     List<Report> reports = encodingManager.computeReports();
@@ -216,105 +326,75 @@ private void checkActiveEncodings() {
           break;
         case FINISHED:
           LOG.info("Encoding finished for " + report.getFilePath());
-          finalizeEncoding(report.getFilePath());
+          addStatusUpdate(report.getFilePath(),
+              EncodingStatusUpdates.Transition.ENCODING_FINISHED);
           activeEncodings--;
           break;
         case FAILED:
           LOG.info("Encoding failed for " + report.getFilePath());
-          // This would be a problem with multiple name nodes as it is not atomic. Only one thread here.
-          updateEncodingStatus(report.getFilePath(),
-              EncodingStatus.Status.ENCODING_FAILED);
-          updateEncodingStatus(report.getFilePath(),
-              EncodingStatus.ParityStatus.REPAIR_FAILED);
+          addStatusUpdate(report.getFilePath(),
+              EncodingStatusUpdates.Transition.ENCODING_FAILED);
           activeEncodings--;
           break;
         case CANCELED:
           LOG.info("Encoding canceled for " + report.getFilePath());
-          updateEncodingStatus(report.getFilePath(),
-              EncodingStatus.Status.ENCODING_CANCELED);
+          addStatusUpdate(report.getFilePath(),
+              EncodingStatusUpdates.Transition.ENCODING_CANCELED);
           activeEncodings--;
           break;
       }
     }
   }
 
-  private void finalizeEncoding(final String path) {
-    LOG.info("Finilizing encoding for " + path);
-    try {
-      new HopsTransactionalRequestHandler(HDFSOperationType.GET_INODE) {
-        private String parityPath;
-
-        @Override
-        public void setUp() throws StorageException, IOException {
-          super.setUp();
-          EncodingStatus status = namesystem.getEncodingStatus(path);
-          // TODO How to handle the case that status was not found?
-          parityPath = parityFolder + "/" + status.getParityFileName();
-        }
-
-        @Override
-        public void acquireLock(TransactionLocks locks) throws IOException {
-          LockFactory lf = LockFactory.getInstance();
-          locks.add(lf.getINodeLock(namesystem.getNameNode(),
-              TransactionLockTypes.INodeLockType.WRITE,
-              TransactionLockTypes.INodeResolveType.PATH, path, parityPath))
-              .add(lf.getEncodingStatusLock(TransactionLockTypes.LockType.WRITE,
-                  path));
-        }
-
-        @Override
-        public Object performTask() throws StorageException, IOException {
-          INode sourceInode = namesystem.getINode(path);
-          INode parityInode = namesystem.getINode(parityPath);
-          // TODO How to make sure that all blocks are available at this very moment?
-
-          if (sourceInode == null) {
-            // TODO The source was deleted. Should probably delete the parity here if existing.
-            return null;
-          }
-
-          EncodingStatus encodingStatus = EntityManager
-              .find(EncodingStatus.Finder.ByInodeId, sourceInode.getId());
-
-          if (parityInode == null) {
-            encodingStatus.setStatus(EncodingStatus.Status.ENCODING_FAILED);
-            encodingStatus
-                .setStatusModificationTime(System.currentTimeMillis());
-          } else {
-            encodingStatus.setStatus(EncodingStatus.Status.ENCODED);
-            encodingStatus
-                .setStatusModificationTime(System.currentTimeMillis());
-            encodingStatus.setParityInodeId(parityInode.getId());
-            encodingStatus.setParityStatus(EncodingStatus.ParityStatus.HEALTHY);
-            encodingStatus
-                .setParityStatusModificationTime(System.currentTimeMillis());
-          }
-
-          EntityManager.update(encodingStatus);
-          return null;
-        }
-      }.handle(this);
-    } catch (IOException e) {
-      LOG.error(StringUtils.stringifyException(e));
+  /**
+   * Adds the status transition of a finished, failed or canceled encoding or
+   * repair to the ones committed at the end of the checks.
+   */
+  private void addStatusUpdate(String path,
+      EncodingStatusUpdates.Transition transition) {
+    ActiveFile file = activeFiles.remove(path);
+    if (file == null) {
+      try {
+        file = lookUpActiveFile(path);
+      } catch (IOException e) {
+        LOG.error(StringUtils.stringifyException(e));
+      }
+      if (file == null) {
+        LOG.warn("Could not find the encoding status of " + path +
+            ". Dropping " + transition);
+        return;
+      }
     }
+    statusUpdates.add(file.inodeId, transition, file.parityPath);
   }
 
-  private void updateEncodingStatus(String filePath,
-      EncodingStatus.Status status) {
-    try {
-      namesystem.updateEncodingStatus(filePath, status);
-    } catch (IOException e) {
-      LOG.error(StringUtils.stringifyException(e));
+  /**
+   * Resolves a reported file which was not scheduled by this manager. The
+   * status of a parity file is found by the inode id of the parity file.
+   */
+  private ActiveFile lookUpActiveFile(String path) throws IOException {
+    if (isParityFile(path)) {
+      EncodingStatus status = namesystem.getParityEncodingStatus(path);
+      if (status.getStatus() == EncodingStatus.Status.NOT_ENCODED) {
+        return null;
+      }
+      return new ActiveFile(status.getInodeId(), path);
     }
+    EncodingStatus status = namesystem.getEncodingStatus(path);
+    if (status.getStatus() == EncodingStatus.Status.NOT_ENCODED) {
+      return null;
+    }
+    return new ActiveFile(status.getInodeId(),
+        parityFolder + "/" + status.getParityFileName());
   }
 
-  private void updateEncodingStatus(String filePath,
-      EncodingStatus.ParityStatus status) {
-    try {
-      namesystem.updateEncodingStatus(filePath, status);
-    } catch (IOException e) {
-      LOG.error(StringUtils.stringifyException(e));
+  private void commitStatusUpdates() {
+    if (statusUpdates.size() == 0) {
+      return;
     }
+    LOG.info("Committing status updates of " + statusUpdates.size() +
+        " files");
+    statusUpdates.commit(namesystem, statusUpdateBatchSize, metrics);
   }
 
   private void scheduleEncodings() throws IOException {
@@ -360,12 +440,14 @@ public Object performTask() throws StorageException, IOException {
 
         LOG.info("Schedule encoding for " + path);
         UUID parityFileName = UUID.randomUUID();
+        String parityPath = parityFolder + "/" + parityFileName.toString();
         encodingManager
             .encodeFile(encodingStatus.getEncodingPolicy(), new Path(path),
-                new Path(parityFolder + "/" + parityFileName.toString()));
+                new Path(parityPath));
         namesystem
             .updateEncodingStatus(path, EncodingStatus.Status.ENCODING_ACTIVE,
                 parityFileName.toString());
+        activeFiles.put(path, new ActiveFile(iNode.getId(), parityPath));
         activeEncodings++;
       } catch (IOException e) {
         LOG.error(StringUtils.stringifyException(e));
@@ -383,34 +465,36 @@ private void checkActiveRepairs() throws IOException {
         case FINISHED:
           LOG.info("Repair finished for " + report.getFilePath());
           if (isParityFile(report.getFilePath())) {
-            checkFixedParity(report.getFilePath());
+            addStatusUpdate(report.getFilePath(),
+                EncodingStatusUpdates.Transition.PARITY_REPAIR_FINISHED);
             activeParityRepairs--;
           } else {
-            checkFixedSource(report.getFilePath());
+            addStatusUpdate(report.getFilePath(),
+                EncodingStatusUpdates.Transition.SOURCE_REPAIR_FINISHED);
             activeRepairs--;
           }
           break;
         case FAILED:
           LOG.info("Repair failed for " + report.getFilePath());
           if (isParityFile(report.getFilePath())) {
-            updateEncodingStatus(report.getFilePath(),
-                EncodingStatus.ParityStatus.REPAIR_FAILED);
+            addStatusUpdate(report.getFilePath(),
+                EncodingStatusUpdates.Transition.PARITY_REPAIR_FAILED);
             activeParityRepairs--;
           } else {
-            updateEncodingStatus(report.getFilePath(),
-                EncodingStatus.Status.REPAIR_FAILED);
+            addStatusUpdate(report.getFilePath(),
+                EncodingStatusUpdates.Transition.SOURCE_REPAIR_FAILED);
             activeRepairs--;
           }
           break;
         case CANCELED:
           LOG.info("Repair canceled for " + report.getFilePath());
           if (isParityFile(report.getFilePath())) {
-            updateEncodingStatus(report.getFilePath(),
-                EncodingStatus.ParityStatus.REPAIR_CANCELED);
+            addStatusUpdate(report.getFilePath(),
+                EncodingStatusUpdates.Transition.PARITY_REPAIR_CANCELED);
             activeParityRepairs--;
           } else {
-            updateEncodingStatus(report.getFilePath(),
-                EncodingStatus.Status.REPAIR_CANCELED);
+            addStatusUpdate(report.getFilePath(),
+                EncodingStatusUpdates.Transition.SOURCE_REPAIR_CANCELED);
             activeRepairs--;
           }
           break;
@@ -418,64 +502,6 @@ private void checkActiveRepairs() throws IOException {
     }
   }
 
-  private void checkFixedSource(final String path) throws IOException {
-    new HopsTransactionalRequestHandler(HDFSOperationType.CHECK_FIXED_SOURCE) {
-      @Override
-      public void acquireLock(TransactionLocks locks) throws IOException {
-        LockFactory lf = LockFactory.getInstance();
-        locks.add(lf.getINodeLock(namesystem.getNameNode(),
-            TransactionLockTypes.INodeLockType.WRITE,
-            TransactionLockTypes.INodeResolveType.PATH, path)).add(
-            lf.getEncodingStatusLock(TransactionLockTypes.LockType.WRITE,
-                path));
-      }
-
-      @Override
-      public Object performTask() throws IOException {
-        INode targetNode = namesystem.getINode(path);
-        EncodingStatus status = EntityManager
-            .find(EncodingStatus.Finder.ByInodeId, targetNode.getId());
-        if (status.getLostBlocks() == 0) {
-          status.setStatus(EncodingStatus.Status.ENCODED);
-        } else {
-          status.setStatus(EncodingStatus.Status.REPAIR_REQUESTED);
-        }
-        status.setStatusModificationTime(System.currentTimeMillis());
-        EntityManager.update(status);
-        return null;
-      }
-    }.handle();
-  }
-
-  private void checkFixedParity(final String path) throws IOException {
-    new HopsTransactionalRequestHandler(HDFSOperationType.CHECK_FIXED_PARITY) {
-      @Override
-      public void acquireLock(TransactionLocks locks) throws IOException {
-        LockFactory lf = LockFactory.getInstance();
-        locks.add(lf.getINodeLock(namesystem.getNameNode(),
-            TransactionLockTypes.INodeLockType.WRITE,
-            TransactionLockTypes.INodeResolveType.PATH, path)).add(
-            lf.getEncodingStatusLock(TransactionLockTypes.LockType.WRITE,
-                path));
-      }
-
-      @Override
-      public Object performTask() throws IOException {
-        INode targetNode = namesystem.getINode(path);
-        EncodingStatus status = EntityManager
-            .find(EncodingStatus.Finder.ByParityInodeId, targetNode.getId());
-        if (status.getLostParityBlocks() == 0) {
-          status.setParityStatus(EncodingStatus.ParityStatus.HEALTHY);
-        } else {
-          status.setParityStatus(EncodingStatus.ParityStatus.REPAIR_REQUESTED);
-        }
-        status.setParityStatusModificationTime(System.currentTimeMillis());
-        EntityManager.update(status);
-        return null;
-      }
-    }.handle();
-  }
-
   private void scheduleSourceRepairs() {
     LOG.info("Scheduling repairs");
     final int limit = activeRepairLimit - activeRepairs;
@@ -516,10 +542,13 @@ public Object performTask() throws IOException {
         namesystem
             .updateEncodingStatus(path, EncodingStatus.Status.REPAIR_ACTIVE);
         LOG.info("Status set to source repair active " + encodingStatus);
+        String parityPath =
+            parityFolder + "/" + encodingStatus.getParityFileName();
         blockRepairManager
             .repairSourceBlocks(encodingStatus.getEncodingPolicy().getCodec(),
-                new Path(path), new Path(
-                parityFolder + "/" + encodingStatus.getParityFileName()));
+                new Path(path), new Path(parityPath));
+        activeFiles.put(path,
+            new ActiveFile(encodingStatus.getInodeId(), parityPath));
         LOG.info("Scheulded job for source repair " + encodingStatus);
         activeRepairs++;
       }
@@ -572,12 +601,15 @@ public Object performTask() throws IOException {
         namesystem.updateEncodingStatus(path,
             EncodingStatus.ParityStatus.REPAIR_ACTIVE);
         LOG.info("Status set to parity repair active " + encodingStatus);
+        String parityPath =
+            parityFolder + "/" + encodingStatus.getParityFileName();
         blockRepairManager
             .repairParityBlocks(encodingStatus.getEncodingPolicy().getCodec(),
-                new Path(path), new Path(
-                parityFolder + "/" + encodingStatus.getParityFileName()));
+                new Path(path), new Path(parityPath));
+        activeFiles.put(parityPath,
+            new ActiveFile(encodingStatus.getInodeId(), parityPath));
         LOG.info("Scheulded job for parity repair " + encodingStatus);
-        activeRepairs++;
+        activeParityRepairs++;
       }
     } catch (IOException e) {
       LOG.error(e);
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.erasure_coding;
+
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableGaugeInt;
+import org.apache.hadoop.metrics2.lib.MutableRate;
+
+/**
+ * Metrics of the monitor of the {@link ErasureCodingManager}: the duration of
+ * its rounds, the status updates it commits and its backlog, that is the
+ * encodings and repairs in progress and the status updates still waiting to
+ * be committed.
+ */
+public class ErasureCodingMetrics implements MetricsSource {
+
+  private static final String RECORD_NAME = "ErasureCodingMonitor";
+
+  private final MetricsRegistry registry = new MetricsRegistry(RECORD_NAME);
+
+  private final MutableRate monitorRounds;
+  private final MutableRate statusUpdateBatches;
+  private final MutableCounterLong statusUpdates;
+  private final MutableCounterLong failedStatusUpdateBatches;
+  private final MutableGaugeInt pendingStatusUpdates;
+  private final MutableGaugeInt activeEncodings;
+  private final MutableGaugeInt activeRepairs;
+  private final MutableGaugeInt activeParityRepairs;
+
+  ErasureCodingMetrics() {
+    registry.setContext("dfs");
+    monitorRounds = registry.newRate("MonitorRounds",
+        "Duration of the rounds of the erasure coding monitor", false);
+    statusUpdateBatches = registry.newRate("StatusUpdateBatches",
+        "Duration of the transactions committing encoding status updates",
+        false);
+    statusUpdates = registry.newCounter("StatusUpdates",
+        "Number of files whose encoding status was updated", 0L);
+    failedStatusUpdateBatches = registry.newCounter("FailedStatusUpdateBatches",
+        "Number of encoding status update transactions which failed", 0L);
+    pendingStatusUpdates = registry.newGauge("PendingStatusUpdates",
+        "Number of files with status updates left for the next round", 0);
+    activeEncodings = registry.newGauge("ActiveEncodings",
+        "Number of encodings in progress", 0);
+    activeRepairs = registry.newGauge("ActiveRepairs",
+        "Number of source file repairs in progress", 0);
+    activeParityRepairs = registry.newGauge("ActiveParityRepairs",
+        "Number of parity file repairs in progress", 0);
+  }
+
+  static ErasureCodingMetrics create() {
+    return DefaultMetricsSystem.instance().register(RECORD_NAME,
+        "Erasure coding monitor", new ErasureCodingMetrics());
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    registry.snapshot(collector.addRecord(registry.info()), all);
+  }
+
+  void addMonitorRound(long millis) {
+    monitorRounds.add(millis);
+  }
+
+  void addStatusUpdateBatch(int files, long millis) {
+    statusUpdateBatches.add(millis);
+    statusUpdates.incr(files);
+  }
+
+  void incrFailedStatusUpdateBatches() {
+    failedStatusUpdateBatches.incr();
+  }
+
+  void setBacklog(int pendingUpdates, int encodings, int repairs,
+      int parityRepairs) {
+    pendingStatusUpdates.set(pendingUpdates);
+    activeEncodings.set(encodings);
+    activeRepairs.set(repairs);
+    activeParityRepairs.set(parityRepairs);
+  }
+}
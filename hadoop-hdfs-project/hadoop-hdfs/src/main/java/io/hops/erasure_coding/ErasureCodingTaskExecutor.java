@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.erasure_coding;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.hdfs.server.protocol.ErasureCodingTask;
+
+import java.io.IOException;
+
+/**
+ * Runs the erasure coding tasks the namenode assigns to a datanode. The
+ * datanode loads the implementation configured with
+ * {@link org.apache.hadoop.hdfs.DFSConfigKeys#ERASURE_CODING_TASK_EXECUTOR_CLASSNAME_KEY}
+ * through its Configuration constructor.
+ */
+public abstract class ErasureCodingTaskExecutor extends Configured {
+
+  public ErasureCodingTaskExecutor(Configuration conf) {
+    super(conf);
+  }
+
+  /**
+   * Runs the task to completion. A task which returns normally finished
+   * successfully. The thread running the task is interrupted if the task is
+   * canceled.
+   *
+   * @throws IOException
+   *     if the task failed
+   * @throws InterruptedException
+   *     if the task was canceled
+   */
+  public abstract void execute(ErasureCodingTask task)
+      throws IOException, InterruptedException;
+}
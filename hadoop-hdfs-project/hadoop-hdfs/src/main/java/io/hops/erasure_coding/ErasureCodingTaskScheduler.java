@@ -0,0 +1,340 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.erasure_coding;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.protocol.DatanodeID;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
+import org.apache.hadoop.hdfs.server.protocol.ErasureCodingCommand;
+import org.apache.hadoop.hdfs.server.protocol.ErasureCodingTask;
+import org.apache.hadoop.hdfs.server.protocol.ErasureCodingTaskStatus;
+import org.apache.hadoop.util.Time;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Schedules encodings and repairs on the datanodes instead of running them
+ * as MapReduce jobs. Tasks are queued by {@link DataNodeEncodingManager} and
+ * {@link DataNodeBlockRepairManager} and handed out with the responses to the
+ * heartbeats of the datanodes, at most
+ * {@link DFSConfigKeys#ERASURE_CODING_DATANODE_MAX_TASKS_KEY} per datanode.
+ * A task is preferably given to a datanode holding blocks of its source
+ * file; after {@link DFSConfigKeys#ERASURE_CODING_LOCALITY_WAIT_KEY} any
+ * datanode can take it. The datanodes report the states of their tasks with
+ * their heartbeats. A task which was not reported for
+ * {@link DFSConfigKeys#ERASURE_CODING_TASK_TIMEOUT_KEY} fails.
+ */
+public class ErasureCodingTaskScheduler {
+
+  static final Log LOG = LogFactory.getLog(ErasureCodingTaskScheduler.class);
+
+  private static class TrackedTask {
+    private final ErasureCodingTask task;
+    private final Set<String> preferredDatanodes;
+    private final long submitTime;
+    private String datanode;
+    private long lastUpdate;
+    private Report.Status result;
+
+    TrackedTask(ErasureCodingTask task, Set<String> preferredDatanodes,
+        long submitTime) {
+      this.task = task;
+      this.preferredDatanodes = preferredDatanodes;
+      this.submitTime = submitTime;
+    }
+
+    String getReportPath() {
+      return task.getType() == ErasureCodingTask.Type.REPAIR_PARITY ?
+          task.getParityPath() : task.getSourcePath();
+    }
+  }
+
+  private final FSNamesystem namesystem;
+  private final int maxTasksPerDatanode;
+  private final long localityWait;
+  private final long taskTimeout;
+  private long nextTaskId = Time.now();
+
+  /**
+   * Tasks not yet assigned to a datanode in submission order.
+   */
+  private final Map<Long, TrackedTask> pendingTasks =
+      new LinkedHashMap<Long, TrackedTask>();
+  private final Map<Long, TrackedTask> runningTasks =
+      new HashMap<Long, TrackedTask>();
+  private final List<TrackedTask> completedTasks = new ArrayList<TrackedTask>();
+  /**
+   * Tasks to stop on their datanodes by the storage id of the datanode.
+   */
+  private final Map<String, Set<Long>> tasksToCancel =
+      new HashMap<String, Set<Long>>();
+
+  public ErasureCodingTaskScheduler(FSNamesystem namesystem,
+      Configuration conf) {
+    this.namesystem = namesystem;
+    this.maxTasksPerDatanode =
+        conf.getInt(DFSConfigKeys.ERASURE_CODING_DATANODE_MAX_TASKS_KEY,
+            DFSConfigKeys.DEFAULT_ERASURE_CODING_DATANODE_MAX_TASKS);
+    this.localityWait =
+        conf.getInt(DFSConfigKeys.ERASURE_CODING_LOCALITY_WAIT_KEY,
+            DFSConfigKeys.DEFAULT_ERASURE_CODING_LOCALITY_WAIT);
+    this.taskTimeout =
+        conf.getInt(DFSConfigKeys.ERASURE_CODING_TASK_TIMEOUT_KEY,
+            DFSConfigKeys.DEFAULT_ERASURE_CODING_TASK_TIMEOUT);
+  }
+
+  /**
+   * Queues a task for the next datanode with a free slot.
+   *
+   * @return the id of the task
+   */
+  public long submit(ErasureCodingTask.Type type, String codecId,
+      String sourcePath, String parityPath, int targetReplication) {
+    Set<String> preferredDatanodes = locate(sourcePath);
+    synchronized (this) {
+      long taskId = nextTaskId++;
+      ErasureCodingTask task =
+          new ErasureCodingTask(taskId, type, codecId, sourcePath, parityPath,
+              targetReplication);
+      pendingTasks.put(taskId,
+          new TrackedTask(task, preferredDatanodes, Time.now()));
+      LOG.info("Queued " + task);
+      return taskId;
+    }
+  }
+
+  /**
+   * Returns the storage ids of the datanodes holding blocks of the file.
+   */
+  Set<String> locate(String path) {
+    Set<String> datanodes = new HashSet<String>();
+    try {
+      LocatedBlocks blocks = namesystem
+          .getBlockLocations(path, 0, Long.MAX_VALUE, false, true, true);
+      for (LocatedBlock block : blocks.getLocatedBlocks()) {
+        for (DatanodeInfo datanode : block.getLocations()) {
+          datanodes.add(datanode.getStorageID());
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn("Could not locate the blocks of " + path, e);
+    }
+    return datanodes;
+  }
+
+  /**
+   * Assigns tasks to a datanode which sent a heartbeat.
+   *
+   * @return the command for the datanode or null if there is nothing to do
+   */
+  public synchronized ErasureCodingCommand getCommand(DatanodeID datanode) {
+    String storageId = datanode.getStorageID();
+    long now = Time.now();
+    List<ErasureCodingTask> assigned = new ArrayList<ErasureCodingTask>();
+    int slots = maxTasksPerDatanode - countRunningTasks(storageId);
+    // first the tasks with data on the datanode, then the ones waited long
+    for (int pass = 0; pass < 2 && assigned.size() < slots; pass++) {
+      Iterator<TrackedTask> it = pendingTasks.values().iterator();
+      while (it.hasNext() && assigned.size() < slots) {
+        TrackedTask tracked = it.next();
+        boolean local = tracked.preferredDatanodes.contains(storageId);
+        boolean waited = tracked.preferredDatanodes.isEmpty() ||
+            now - tracked.submitTime >= localityWait;
+        if (pass == 0 ? local : waited) {
+          it.remove();
+          tracked.datanode = storageId;
+          tracked.lastUpdate = now;
+          runningTasks.put(tracked.task.getTaskId(), tracked);
+          assigned.add(tracked.task);
+          LOG.info("Assigned " + tracked.task + " to " + datanode);
+        }
+      }
+    }
+
+    Set<Long> canceled = tasksToCancel.remove(storageId);
+    if (assigned.isEmpty() && canceled == null) {
+      return null;
+    }
+    long[] canceledTaskIds = new long[canceled == null ? 0 : canceled.size()];
+    if (canceled != null) {
+      int i = 0;
+      for (long taskId : canceled) {
+        canceledTaskIds[i++] = taskId;
+      }
+    }
+    return new ErasureCodingCommand(
+        assigned.toArray(new ErasureCodingTask[assigned.size()]),
+        canceledTaskIds);
+  }
+
+  private int countRunningTasks(String storageId) {
+    int count = 0;
+    for (TrackedTask tracked : runningTasks.values()) {
+      if (storageId.equals(tracked.datanode)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Updates the tasks with the states a datanode reported with its
+   * heartbeat. States of unknown tasks, e.g. tasks scheduled by a previous
+   * leader, are ignored.
+   */
+  public synchronized void processStatuses(DatanodeID datanode,
+      ErasureCodingTaskStatus[] statuses) {
+    String storageId = datanode.getStorageID();
+    long now = Time.now();
+    for (ErasureCodingTaskStatus status : statuses) {
+      TrackedTask tracked = runningTasks.get(status.getTaskId());
+      if (tracked == null || !storageId.equals(tracked.datanode)) {
+        continue;
+      }
+      switch (status.getState()) {
+        case ACTIVE:
+          tracked.lastUpdate = now;
+          break;
+        case FINISHED:
+          complete(tracked, Report.Status.FINISHED);
+          break;
+        case FAILED:
+          complete(tracked, Report.Status.FAILED);
+          break;
+        case CANCELED:
+          complete(tracked, Report.Status.CANCELED);
+          break;
+      }
+    }
+  }
+
+  private void complete(TrackedTask tracked, Report.Status result) {
+    runningTasks.remove(tracked.task.getTaskId());
+    pendingTasks.remove(tracked.task.getTaskId());
+    tracked.result = result;
+    completedTasks.add(tracked);
+    LOG.info(tracked.task + " completed with " + result);
+  }
+
+  /**
+   * Reports the completed tasks of the given types once and the queued and
+   * running ones as active.
+   */
+  public synchronized List<Report> computeReports(
+      EnumSet<ErasureCodingTask.Type> types) {
+    expireTasks();
+    List<Report> reports = new ArrayList<Report>();
+    Iterator<TrackedTask> it = completedTasks.iterator();
+    while (it.hasNext()) {
+      TrackedTask tracked = it.next();
+      if (types.contains(tracked.task.getType())) {
+        it.remove();
+        reports.add(new Report(tracked.getReportPath(), tracked.result));
+      }
+    }
+    for (TrackedTask tracked : pendingTasks.values()) {
+      if (types.contains(tracked.task.getType())) {
+        reports.add(new Report(tracked.getReportPath(), Report.Status.ACTIVE));
+      }
+    }
+    for (TrackedTask tracked : runningTasks.values()) {
+      if (types.contains(tracked.task.getType())) {
+        reports.add(new Report(tracked.getReportPath(), Report.Status.ACTIVE));
+      }
+    }
+    return reports;
+  }
+
+  private void expireTasks() {
+    long now = Time.now();
+    for (TrackedTask tracked : new ArrayList<TrackedTask>(
+        runningTasks.values())) {
+      if (now - tracked.lastUpdate > taskTimeout) {
+        LOG.warn(tracked.task + " timed out on " + tracked.datanode);
+        // in case the datanode is still alive and working on it
+        addTaskToCancel(tracked);
+        complete(tracked, Report.Status.FAILED);
+      }
+    }
+  }
+
+  private void addTaskToCancel(TrackedTask tracked) {
+    Set<Long> canceled = tasksToCancel.get(tracked.datanode);
+    if (canceled == null) {
+      canceled = new LinkedHashSet<Long>();
+      tasksToCancel.put(tracked.datanode, canceled);
+    }
+    canceled.add(tracked.task.getTaskId());
+  }
+
+  /**
+   * Cancels the tasks of the given types for the file with the given path.
+   * The tasks are reported canceled right away; running ones are stopped on
+   * their datanodes with the next heartbeat, and the states the datanodes
+   * still report for them are ignored.
+   */
+  public synchronized void cancel(String path,
+      EnumSet<ErasureCodingTask.Type> types) {
+    cancelMatching(Collections.singleton(path), types);
+  }
+
+  /**
+   * Cancels all tasks of the given types.
+   */
+  public synchronized void cancelAll(EnumSet<ErasureCodingTask.Type> types) {
+    cancelMatching(null, types);
+  }
+
+  private void cancelMatching(Set<String> paths,
+      EnumSet<ErasureCodingTask.Type> types) {
+    for (TrackedTask tracked : new ArrayList<TrackedTask>(
+        pendingTasks.values())) {
+      if (matches(tracked, paths, types)) {
+        complete(tracked, Report.Status.CANCELED);
+      }
+    }
+    for (TrackedTask tracked : new ArrayList<TrackedTask>(
+        runningTasks.values())) {
+      if (matches(tracked, paths, types)) {
+        addTaskToCancel(tracked);
+        complete(tracked, Report.Status.CANCELED);
+      }
+    }
+  }
+
+  private static boolean matches(TrackedTask tracked, Set<String> paths,
+      EnumSet<ErasureCodingTask.Type> types) {
+    return types.contains(tracked.task.getType()) &&
+        (paths == null || paths.contains(tracked.getReportPath()));
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata;
+
+import io.hops.DalStorageFactory;
+import io.hops.StorageConnector;
+import io.hops.metadata.common.EntityDataAccess;
+import org.apache.commons.lang.ClassUtils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Wraps the {@link DalStorageFactory} of a storage driver so that every
+ * round trip to the storage is delayed by a fixed latency, to see how the
+ * name-node behaves with a slower network than the one it runs on.
+ * <p/>
+ * The round trips are the ones counted by
+ * {@link io.hops.transaction.handler.TransactionMetrics}: every read of a
+ * data access object and the commit of a transaction. The writes of a data
+ * access object, prepare, add, update, delete and the like, are sent to the
+ * storage with the commit, and calls to the connector that only change the
+ * state of the transaction, like setting the lock mode, stay local, so
+ * neither is delayed.
+ */
+public class DelayedStorageFactory {
+
+  private static final String[] WRITE_PREFIXES =
+      {"prepare", "add", "insert", "update", "set", "delete", "remove"};
+
+  private static final AtomicLong simulatedLatencyNanos = new AtomicLong();
+
+  private DelayedStorageFactory() {
+  }
+
+  /**
+   * @param factory
+   *     the storage factory of the driver
+   * @param latencyMicros
+   *     the latency added to every round trip
+   * @return a storage factory that hands out delayed data access objects
+   * and connectors
+   */
+  public static DalStorageFactory wrap(DalStorageFactory factory,
+      long latencyMicros) {
+    return (DalStorageFactory) newProxy(factory,
+        new FactoryHandler(factory, TimeUnit.MICROSECONDS.toNanos(
+            latencyMicros)));
+  }
+
+  /**
+   * @return the total latency added to the round trips so far, in nanoseconds
+   */
+  public static long getSimulatedLatencyNanos() {
+    return simulatedLatencyNanos.get();
+  }
+
+  public static void resetSimulatedLatency() {
+    simulatedLatencyNanos.set(0);
+  }
+
+  private static Object newProxy(Object target, InvocationHandler handler) {
+    List interfaces = ClassUtils.getAllInterfaces(target.getClass());
+    return Proxy.newProxyInstance(target.getClass().getClassLoader(),
+        (Class[]) interfaces.toArray(new Class[interfaces.size()]), handler);
+  }
+
+  private static Object invoke(Object target, Method method, Object[] args)
+      throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  static boolean isRoundTrip(Method method) {
+    for (String prefix : WRITE_PREFIXES) {
+      if (method.getName().startsWith(prefix)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void roundTrip(long latencyNanos) {
+    if (latencyNanos <= 0) {
+      return;
+    }
+    // parkNanos may return early, so wait until the deadline has passed
+    long deadline = System.nanoTime() + latencyNanos;
+    long remaining = latencyNanos;
+    while (remaining > 0) {
+      LockSupport.parkNanos(remaining);
+      remaining = deadline - System.nanoTime();
+    }
+    simulatedLatencyNanos.addAndGet(latencyNanos);
+  }
+
+  private static class FactoryHandler implements InvocationHandler {
+    private final DalStorageFactory factory;
+    private final long latencyNanos;
+    private volatile StorageConnector connector;
+
+    FactoryHandler(DalStorageFactory factory, long latencyNanos) {
+      this.factory = factory;
+      this.latencyNanos = latencyNanos;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+        throws Throwable {
+      Object result = DelayedStorageFactory.invoke(factory, method, args);
+      if (result instanceof EntityDataAccess) {
+        return newProxy(result, new DataAccessHandler(result, latencyNanos));
+      } else if (result instanceof StorageConnector) {
+        // the connector is created once by the driver, keep it that way
+        StorageConnector c = connector;
+        if (c == null) {
+          c = (StorageConnector) newProxy(result,
+              new ConnectorHandler(result, latencyNanos));
+          connector = c;
+        }
+        return c;
+      }
+      return result;
+    }
+  }
+
+  private static class DataAccessHandler implements InvocationHandler {
+    private final Object dataAccess;
+    private final long latencyNanos;
+
+    DataAccessHandler(Object dataAccess, long latencyNanos) {
+      this.dataAccess = dataAccess;
+      this.latencyNanos = latencyNanos;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+        throws Throwable {
+      if (method.getDeclaringClass() != Object.class && isRoundTrip(method)) {
+        roundTrip(latencyNanos);
+      }
+      return DelayedStorageFactory.invoke(dataAccess, method, args);
+    }
+  }
+
+  private static class ConnectorHandler implements InvocationHandler {
+    private final Object connector;
+    private final long latencyNanos;
+
+    ConnectorHandler(Object connector, long latencyNanos) {
+      this.connector = connector;
+      this.latencyNanos = latencyNanos;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+        throws Throwable {
+      if (method.getName().equals("commit")) {
+        roundTrip(latencyNanos);
+      }
+      return DelayedStorageFactory.invoke(connector, method, args);
+    }
+  }
+}
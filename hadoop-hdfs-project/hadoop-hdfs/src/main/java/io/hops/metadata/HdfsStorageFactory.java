@@ -143,6 +143,13 @@ public static void setConfiguration(Configuration conf) throws IOException {
           conf.get(DFSConfigKeys.DFS_STORAGE_DRIVER_CLASS,
               DFSConfigKeys.DFS_STORAGE_DRIVER_CLASS_DEFAULT));
       dStorageFactory.setConfiguration(getMetadataClusterConfiguration(conf));
+      long latency = conf.getLong(
+          DFSConfigKeys.DFS_STORAGE_SIMULATED_LATENCY_US,
+          DFSConfigKeys.DFS_STORAGE_SIMULATED_LATENCY_US_DEFAULT);
+      if (latency > 0) {
+        dStorageFactory = DelayedStorageFactory.wrap(dStorageFactory,
+            latency);
+      }
       initDataAccessWrappers();
       EntityManager.addContextInitializer(getContextInitializer());
       isDALInitialized = true;
@@ -156,7 +163,14 @@ public static Properties getMetadataClusterConfiguration(Configuration conf)
     Properties clusterConf = new Properties();
     InputStream inStream =
         StorageConnector.class.getClassLoader().getResourceAsStream(configFile);
-    clusterConf.load(inStream);
+    // drivers like the in-memory one need no configuration
+    if (inStream != null) {
+      try {
+        clusterConf.load(inStream);
+      } finally {
+        inStream.close();
+      }
+    }
     return clusterConf;
   }
   
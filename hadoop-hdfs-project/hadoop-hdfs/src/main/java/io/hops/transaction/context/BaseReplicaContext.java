@@ -29,7 +29,7 @@
 
 
 abstract class BaseReplicaContext<Key extends BlockPK, Entity>
-    extends BaseEntityContext<Key, Entity> {
+    extends HdfsEntityContext<Key, Entity> {
 
   private Map<Long, Map<Key, Entity>> blocksToReplicas =
       new HashMap<Long, Map<Key, Entity>>();
@@ -23,6 +23,7 @@
 import io.hops.metadata.common.FinderType;
 import io.hops.metadata.hdfs.dal.BlockChecksumDataAccess;
 import io.hops.metadata.hdfs.entity.BlockChecksum;
+import io.hops.transaction.handler.TransactionMetrics;
 import io.hops.transaction.lock.TransactionLocks;
 
 import java.util.Collection;
@@ -30,7 +31,7 @@
 import java.util.Map;
 
 public class BlockChecksumContext
-    extends BaseEntityContext<BlockChecksumDataAccess.KeyTuple, BlockChecksum> {
+    extends HdfsEntityContext<BlockChecksumDataAccess.KeyTuple, BlockChecksum> {
 
   private final BlockChecksumDataAccess<BlockChecksum> dataAccess;
   private final Map<Integer, Collection<BlockChecksum>> inodeToBlockChecksums =
@@ -80,6 +81,7 @@ public Collection<BlockChecksum> findList(FinderType<BlockChecksum> finder,
   @Override
   public void prepare(TransactionLocks tlm)
       throws TransactionContextException, StorageException {
+    TransactionMetrics.prepareStarted(getRemoved(), getAdded(), getModified());
     for (BlockChecksum blockChecksum : getAdded()) {
       dataAccess.add(blockChecksum);
     }
@@ -115,7 +117,7 @@ private BlockChecksum findByKeyTuple(BlockChecksum.Finder eFinder,
       result = get(key);
       hit(eFinder, result, "KeyTuple", key);
     } else {
-      aboutToAccessStorage(eFinder, params);
+      accessStorage(eFinder, params);
       result = dataAccess.find(key.getInodeId(), key.getBlockIndex());
       gotFromDB(key, result);
       miss(eFinder, result, "KeyTuple", key);
@@ -131,7 +133,7 @@ private Collection<BlockChecksum> findByINodeId(BlockChecksum.Finder eFinder,
       result = inodeToBlockChecksums.get(inodeId);
       hit(eFinder, result, "inodeId", inodeId);
     } else {
-      aboutToAccessStorage(eFinder, params);
+      accessStorage(eFinder, params);
       result = dataAccess.findAll((Integer) params[0]);
       gotFromDB(result);
       inodeToBlockChecksums.put(inodeId, result);
@@ -25,6 +25,7 @@
 import io.hops.metadata.common.FinderType;
 import io.hops.metadata.hdfs.dal.BlockInfoDataAccess;
 import io.hops.metadata.hdfs.entity.INodeCandidatePrimaryKey;
+import io.hops.transaction.handler.TransactionMetrics;
 import io.hops.transaction.lock.TransactionLocks;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
 import org.apache.hadoop.hdfs.server.namenode.INode;
@@ -38,7 +39,7 @@
 import java.util.List;
 import java.util.Map;
 
-public class BlockInfoContext extends BaseEntityContext<Long, BlockInfo> {
+public class BlockInfoContext extends HdfsEntityContext<Long, BlockInfo> {
 
   private final static int DEFAULT_NUM_BLOCKS_PER_INODE = 10;
   private final static Comparator<BlockInfo> BLOCK_INDEX_COMPARTOR =
@@ -87,6 +88,7 @@ public void remove(BlockInfo blockInfo) throws TransactionContextException {
   @Override
   public void prepare(TransactionLocks tlm)
       throws TransactionContextException, StorageException {
+    TransactionMetrics.prepareStarted(getRemoved(), getAdded(), getModified());
     Collection<BlockInfo> removed = new ArrayList<BlockInfo>(getRemoved());
     removed.addAll(concatRemovedBlks);
     dataAccess.prepare(removed, getAdded(), getModified());
@@ -160,7 +162,7 @@ private List<BlockInfo> findByInodeId(BlockInfo.Finder bFinder,
       result = inodeBlocks.get(inodeId);
       hit(bFinder, result, "inodeid", inodeId);
     } else {
-      aboutToAccessStorage(bFinder, params);
+      accessStorage(bFinder, params);
       result = dataAccess.findByInodeId(inodeId);
       inodeBlocks.put(inodeId, syncBlockInfoInstances(result));
       miss(bFinder, result, "inodeid", inodeId);
@@ -173,7 +175,7 @@ private List<BlockInfo> findBatch(BlockInfo.Finder bFinder, Object[] params)
     List<BlockInfo> result = null;
     final long[] blockIds = (long[]) params[0];
     final int[] inodeIds = (int[]) params[1];
-    aboutToAccessStorage(bFinder, params);
+    accessStorage(bFinder, params);
     result = dataAccess.findByIds(blockIds, inodeIds);
     miss(bFinder, result, "BlockIds", Arrays.toString(blockIds), "InodeIds",
         Arrays.toString(inodeIds));
@@ -184,7 +186,7 @@ private List<BlockInfo> findByInodeIds(BlockInfo.Finder bFinder,
       Object[] params) throws TransactionContextException, StorageException {
     List<BlockInfo> result = null;
     final int[] ids = (int[]) params[0];
-    aboutToAccessStorage(bFinder, params);
+    accessStorage(bFinder, params);
     result = dataAccess.findByInodeIds(ids);
     for (int id : ids) {
       inodeBlocks.put(id, null);
@@ -213,7 +215,7 @@ private BlockInfo findById(BlockInfo.Finder bFinder, final Object[] params)
       if (inodeId == null) {
         throw new IllegalArgumentException("InodeId is not set");
       }
-      aboutToAccessStorage(bFinder, params);
+      accessStorage(bFinder, params);
       result = dataAccess.findById(blockId, inodeId);
       gotFromDB(blockId, result);
       miss(bFinder, result, "bid", blockId, "inodeId", inodeId);
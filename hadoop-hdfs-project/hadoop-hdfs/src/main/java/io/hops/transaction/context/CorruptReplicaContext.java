@@ -24,6 +24,7 @@
 import io.hops.metadata.common.FinderType;
 import io.hops.metadata.hdfs.dal.CorruptReplicaDataAccess;
 import io.hops.metadata.hdfs.entity.CorruptReplica;
+import io.hops.transaction.handler.TransactionMetrics;
 import io.hops.transaction.lock.TransactionLocks;
 
 import java.util.Arrays;
@@ -59,6 +60,7 @@ public void remove(CorruptReplica hopCorruptReplica)
   @Override
   public void prepare(TransactionLocks tlm)
       throws TransactionContextException, StorageException {
+    TransactionMetrics.prepareStarted(getRemoved(), getAdded(), getModified());
     dataAccess.prepare(getRemoved(), getAdded(), getModified());
   }
 
@@ -104,7 +106,7 @@ private List<CorruptReplica> findByBlockId(CorruptReplica.Finder cFinder,
       result = getByBlock(blockId);
       hit(cFinder, result, "bid", blockId, "inodeid", inodeId);
     } else {
-      aboutToAccessStorage(cFinder, params);
+      accessStorage(cFinder, params);
       result = dataAccess.findByBlockId(blockId, inodeId);
       Collections.sort(result);
       gotFromDB(new BlockPK(blockId), result);
@@ -121,7 +123,7 @@ private List<CorruptReplica> findByINodeId(CorruptReplica.Finder cFinder,
       result = getByINode(inodeId);
       hit(cFinder, result, "inodeid", inodeId);
     } else {
-      aboutToAccessStorage(cFinder, params);
+      accessStorage(cFinder, params);
       result = dataAccess.findByINodeId(inodeId);
       gotFromDB(new BlockPK(inodeId), result);
       miss(cFinder, result, "inodeid", inodeId);
@@ -132,7 +134,7 @@ private List<CorruptReplica> findByINodeId(CorruptReplica.Finder cFinder,
   private List<CorruptReplica> findByINodeIds(CorruptReplica.Finder cFinder,
       Object[] params) throws StorageCallPreventedException, StorageException {
     final int[] inodeIds = (int[]) params[0];
-    aboutToAccessStorage(cFinder, params);
+    accessStorage(cFinder, params);
     List<CorruptReplica> result = dataAccess.findByINodeIds(inodeIds);
     miss(cFinder, result, "inodeids", Arrays.toString(inodeIds));
     gotFromDB(BlockPK.ReplicaPK.getKeys(inodeIds), result);
@@ -24,13 +24,14 @@
 import io.hops.metadata.common.FinderType;
 import io.hops.metadata.hdfs.dal.EncodingStatusDataAccess;
 import io.hops.metadata.hdfs.entity.EncodingStatus;
+import io.hops.transaction.handler.TransactionMetrics;
 import io.hops.transaction.lock.TransactionLocks;
 
 import java.util.HashMap;
 import java.util.Map;
 
 public class EncodingStatusContext
-    extends BaseEntityContext<Integer, EncodingStatus> {
+    extends HdfsEntityContext<Integer, EncodingStatus> {
 
   private final EncodingStatusDataAccess<EncodingStatus> dataAccess;
   private final Map<Integer, EncodingStatus> parityInodeIdToEncodingStatus =
@@ -88,6 +89,7 @@ public EncodingStatus find(FinderType<EncodingStatus> finder,
   public int count(CounterType<EncodingStatus> counter, Object... params)
       throws TransactionContextException, StorageException {
     EncodingStatus.Counter eCounter = (EncodingStatus.Counter) counter;
+    TransactionMetrics.roundTrip();
     switch (eCounter) {
       case RequestedEncodings:
         return dataAccess.countRequestedEncodings();
@@ -105,6 +107,7 @@ public int count(CounterType<EncodingStatus> counter, Object... params)
   @Override
   public void prepare(TransactionLocks tlm)
       throws TransactionContextException, StorageException {
+    TransactionMetrics.prepareStarted(getRemoved(), getAdded(), getModified());
     for (EncodingStatus status : getAdded()) {
       dataAccess.add(status);
     }
@@ -131,7 +134,7 @@ private EncodingStatus findByINodeId(EncodingStatus.Finder eFinder,
       result = get(inodeId);
       hit(eFinder, result, "inodeid", inodeId);
     } else {
-      aboutToAccessStorage(eFinder, inodeId);
+      accessStorage(eFinder, inodeId);
       result = dataAccess.findByInodeId(inodeId);
       gotFromDB(inodeId, result);
       addInternal(result);
@@ -148,7 +151,7 @@ private EncodingStatus findByParityINodeId(EncodingStatus.Finder eFinder,
       result = parityInodeIdToEncodingStatus.get(pairtyINodeId);
       hit(eFinder, result, "parityinodeid", pairtyINodeId);
     } else {
-      aboutToAccessStorage(eFinder, pairtyINodeId);
+      accessStorage(eFinder, pairtyINodeId);
       result = dataAccess.findByParityInodeId(pairtyINodeId);
       gotFromDB(result);
       addInternal(pairtyINodeId, result);
@@ -23,6 +23,7 @@
 import io.hops.metadata.common.FinderType;
 import io.hops.metadata.hdfs.dal.ExcessReplicaDataAccess;
 import io.hops.metadata.hdfs.entity.ExcessReplica;
+import io.hops.transaction.handler.TransactionMetrics;
 import io.hops.transaction.lock.TransactionLocks;
 
 import java.util.Arrays;
@@ -84,6 +85,7 @@ public Collection<ExcessReplica> findList(FinderType<ExcessReplica> finder,
   @Override
   public void prepare(TransactionLocks tlm)
       throws TransactionContextException, StorageException {
+    TransactionMetrics.prepareStarted(getRemoved(), getAdded(), getModified());
     dataAccess.prepare(getRemoved(), getAdded(), getModified());
   }
 
@@ -116,7 +118,7 @@ private ExcessReplica findByPrimaryKey(ExcessReplica.Finder eFinder,
       result = get(key);
       hit(eFinder, result, "bid", blockId, "sid", storageId);
     } else {
-      aboutToAccessStorage(eFinder, params);
+      accessStorage(eFinder, params);
       result = dataAccess.findByPK(blockId, storageId, inodeId);
       gotFromDB(key, result);
       miss(eFinder, result, "bid", blockId, "sid", storageId);
@@ -133,7 +135,7 @@ private List<ExcessReplica> findByBlockId(ExcessReplica.Finder eFinder,
       result = getByBlock(blockId);
       hit(eFinder, result, "bid", blockId, "inodeId", inodeId);
     } else {
-      aboutToAccessStorage(eFinder, params);
+      accessStorage(eFinder, params);
       result = dataAccess.findExcessReplicaByBlockId(blockId, inodeId);
       Collections.sort(result);
       gotFromDB(new BlockPK(blockId), result);
@@ -150,7 +152,7 @@ private List<ExcessReplica> findByINodeId(ExcessReplica.Finder eFinder,
       result = getByINode(inodeId);
       hit(eFinder, result, "inodeId", inodeId);
     } else {
-      aboutToAccessStorage(eFinder, params);
+      accessStorage(eFinder, params);
       result = dataAccess.findExcessReplicaByINodeId(inodeId);
       gotFromDB(new BlockPK(inodeId), result);
       miss(eFinder, result, "inodeId", inodeId);
@@ -161,7 +163,7 @@ private List<ExcessReplica> findByINodeId(ExcessReplica.Finder eFinder,
   private List<ExcessReplica> findByINodeIds(ExcessReplica.Finder eFinder,
       Object[] params) throws StorageCallPreventedException, StorageException {
     final int[] inodeIds = (int[]) params[0];
-    aboutToAccessStorage(eFinder, params);
+    accessStorage(eFinder, params);
     List<ExcessReplica> result =
         dataAccess.findExcessReplicaByINodeIds(inodeIds);
     gotFromDB(BlockPK.ReplicaPK.getKeys(inodeIds), result);
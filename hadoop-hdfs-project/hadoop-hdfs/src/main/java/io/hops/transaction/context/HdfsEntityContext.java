@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.transaction.context;
+
+import io.hops.exception.StorageCallPreventedException;
+import io.hops.metadata.common.FinderType;
+import io.hops.transaction.handler.TransactionMetrics;
+
+import java.util.Collection;
+
+/**
+ * Base of the HDFS entity contexts, which counts the storage round trips
+ * and the cache hits and misses of their finders in
+ * {@link TransactionMetrics}.
+ */
+abstract class HdfsEntityContext<Key, Entity>
+    extends BaseEntityContext<Key, Entity> {
+
+  /**
+   * To be called by a finder right before it reads from the storage. Checks
+   * that the storage may be accessed, and counts one round trip if it may.
+   */
+  protected void accessStorage(FinderType<Entity> finder, Object... params)
+      throws StorageCallPreventedException {
+    aboutToAccessStorage(finder, params);
+    TransactionMetrics.roundTrip();
+  }
+
+  @Override
+  protected void hit(FinderType finder, Entity entity, Object... params) {
+    TransactionMetrics.cacheHit();
+    super.hit(finder, entity, params);
+  }
+
+  @Override
+  protected void hit(FinderType finder, Collection<Entity> entities,
+      Object... params) {
+    TransactionMetrics.cacheHit();
+    super.hit(finder, entities, params);
+  }
+
+  @Override
+  protected void miss(FinderType finder, Entity entity, Object... params) {
+    TransactionMetrics.cacheMiss(entity);
+    super.miss(finder, entity, params);
+  }
+
+  @Override
+  protected void miss(FinderType finder, Collection<Entity> entities,
+      Object... params) {
+    TransactionMetrics.cacheMiss(entities);
+    super.miss(finder, entities, params);
+  }
+
+  @Override
+  protected void missUpgrade(FinderType finder, Entity entity,
+      Object... params) {
+    TransactionMetrics.cacheMiss(entity);
+    super.missUpgrade(finder, entity, params);
+  }
+}
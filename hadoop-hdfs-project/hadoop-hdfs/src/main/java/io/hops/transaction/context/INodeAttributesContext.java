@@ -23,6 +23,7 @@
 import io.hops.metadata.common.FinderType;
 import io.hops.metadata.hdfs.dal.INodeAttributesDataAccess;
 import io.hops.metadata.hdfs.entity.INodeCandidatePrimaryKey;
+import io.hops.transaction.handler.TransactionMetrics;
 import io.hops.transaction.lock.TransactionLocks;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
 import org.apache.hadoop.hdfs.server.namenode.INode;
@@ -33,7 +34,7 @@
 import java.util.List;
 
 public class INodeAttributesContext
-    extends BaseEntityContext<Integer, INodeAttributes> {
+    extends HdfsEntityContext<Integer, INodeAttributes> {
 
   private final INodeAttributesDataAccess<INodeAttributes> dataAccess;
 
@@ -86,6 +87,7 @@ public Collection<INodeAttributes> findList(
   @Override
   public void prepare(TransactionLocks tlm)
       throws TransactionContextException, StorageException {
+    TransactionMetrics.prepareStarted(getRemoved(), getAdded(), getModified());
     Collection<INodeAttributes> modified =
         new ArrayList<INodeAttributes>(getModified());
     modified.addAll(getAdded());
@@ -127,7 +129,7 @@ private INodeAttributes findByPrimaryKey(INodeAttributes.Finder qfinder,
       result = get(inodeId);
       hit(qfinder, result, "inodeid", inodeId);
     } else {
-      aboutToAccessStorage(qfinder, params);
+      accessStorage(qfinder, params);
       result = dataAccess.findAttributesByPk(inodeId);
       gotFromDB(inodeId, result);
       miss(qfinder, result, "inodeid", inodeId, "size", size());
@@ -145,7 +147,7 @@ private Collection<INodeAttributes> findByPrimaryKeys(
       result = get(inodePks);
       hit(qfinder, result, "inodeids", inodePks);
     } else {
-      aboutToAccessStorage(qfinder, inodePks);
+      accessStorage(qfinder, inodePks);
       result = dataAccess.findAttributesByPkList(inodePks);
       gotFromDB(result);
       miss(qfinder, result, "inodeids", inodePks);
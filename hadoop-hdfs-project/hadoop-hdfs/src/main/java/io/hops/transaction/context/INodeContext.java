@@ -23,6 +23,7 @@
 import io.hops.exception.TransactionContextException;
 import io.hops.metadata.common.FinderType;
 import io.hops.metadata.hdfs.dal.INodeDataAccess;
+import io.hops.transaction.handler.TransactionMetrics;
 import io.hops.transaction.lock.BaseINodeLock;
 import io.hops.transaction.lock.Lock;
 import io.hops.transaction.lock.TransactionLockTypes;
@@ -37,7 +38,7 @@
 import java.util.List;
 import java.util.Map;
 
-public class INodeContext extends BaseEntityContext<Integer, INode> {
+public class INodeContext extends HdfsEntityContext<Integer, INode> {
 
   private final INodeDataAccess<INode> dataAccess;
 
@@ -102,6 +103,7 @@ public void update(INode iNode) throws TransactionContextException {
   @Override
   public void prepare(TransactionLocks lks)
       throws TransactionContextException, StorageException {
+    TransactionMetrics.prepareStarted(getRemoved(), getAdded(), getModified());
 
     // if the list is not empty then check for the lock types
     // lock type is checked after when list length is checked
@@ -192,7 +194,7 @@ private INode findByInodeId(INode.Finder inodeFinder, Object[] params)
       result = get(inodeId);
       hit(inodeFinder, result, "id", inodeId);
     } else {
-      aboutToAccessStorage(inodeFinder, params);
+      accessStorage(inodeFinder, params);
       result = dataAccess.indexScanfindInodeById(inodeId);
       gotFromDB(inodeId, result);
       if (result != null) {
@@ -220,7 +222,7 @@ private INode findByNameAndParentId(INode.Finder inodeFinder, Object[] params)
       if (!preventStorageCalls() &&
           (currentLockMode.get() == LockMode.WRITE_LOCK)) {
         //trying to upgrade lock. re-read the row from DB
-        aboutToAccessStorage(inodeFinder, params);
+        accessStorage(inodeFinder, params);
         result = dataAccess.pkLookUpFindInodeByNameAndParentId(name, parentId);
         gotFromDBWithPossibleInodeId(result, possibleInodeId);
         inodesNameParentIndex.put(nameParentKey, result);
@@ -231,7 +233,7 @@ private INode findByNameAndParentId(INode.Finder inodeFinder, Object[] params)
 
     } else {
       if (!isNewlyAdded(parentId) && !containsRemoved(parentId, name)) {
-        aboutToAccessStorage(inodeFinder, params);
+        accessStorage(inodeFinder, params);
         result = dataAccess.pkLookUpFindInodeByNameAndParentId(name, parentId);
         gotFromDBWithPossibleInodeId(result, possibleInodeId);
         inodesNameParentIndex.put(nameParentKey, result);
@@ -249,7 +251,7 @@ private List<INode> findByParentId(INode.Finder inodeFinder, Object[] params)
       result = inodesParentIndex.get(parentId);
       hit(inodeFinder, result, "pid", parentId);
     } else {
-      aboutToAccessStorage(inodeFinder, params);
+      accessStorage(inodeFinder, params);
       result = syncInodeInstances(
           dataAccess.indexScanFindInodesByParentId(parentId));
       inodesParentIndex.put(parentId, result);
@@ -262,6 +264,7 @@ private List<INode> findBatch(INode.Finder inodeFinder, Object[] params)
       throws TransactionContextException, StorageException {
     final String[] names = (String[]) params[0];
     final int[] parentIds = (int[]) params[1];
+    accessStorage(inodeFinder, params);
     List<INode> batch = dataAccess.getINodesPkBatched(names, parentIds);
     miss(inodeFinder, batch, "name", Arrays.toString(names), "pid",
         Arrays.toString(parentIds));
@@ -23,6 +23,7 @@
 import io.hops.metadata.common.FinderType;
 import io.hops.metadata.hdfs.dal.InvalidateBlockDataAccess;
 import io.hops.metadata.hdfs.entity.InvalidatedBlock;
+import io.hops.transaction.handler.TransactionMetrics;
 import io.hops.transaction.lock.TransactionLocks;
 
 import java.util.ArrayList;
@@ -91,6 +92,7 @@ public Collection<InvalidatedBlock> findList(
   @Override
   public void prepare(TransactionLocks tlm)
       throws TransactionContextException, StorageException {
+    TransactionMetrics.prepareStarted(getRemoved(), getAdded(), getModified());
     dataAccess.prepare(getRemoved(), getAdded(), getModified());
   }
 
@@ -136,7 +138,7 @@ private InvalidatedBlock findByPrimaryKey(InvalidatedBlock.Finder iFinder,
       hit(iFinder, result, "bid", blockId, "sid", storageId, "inodeId",
           inodeId);
     } else {
-      aboutToAccessStorage(iFinder, params);
+      accessStorage(iFinder, params);
       result = dataAccess.findInvBlockByPkey(blockId, storageId, inodeId);
       gotFromDB(key, result);
       miss(iFinder, result, "bid", blockId, "sid", storageId, "inodeId",
@@ -154,7 +156,7 @@ private List<InvalidatedBlock> findByBlockId(InvalidatedBlock.Finder iFinder,
       result = getByBlock(blockId);
       hit(iFinder, result, "bid", blockId, "inodeId", inodeId);
     } else {
-      aboutToAccessStorage(iFinder, params);
+      accessStorage(iFinder, params);
       result = dataAccess.findInvalidatedBlocksByBlockId(blockId, inodeId);
       Collections.sort(result);
       gotFromDB(new BlockPK(blockId), result);
@@ -171,7 +173,7 @@ private List<InvalidatedBlock> findByINodeId(InvalidatedBlock.Finder iFinder,
       result = getByINode(inodeId);
       hit(iFinder, result, "inodeId", inodeId);
     } else {
-      aboutToAccessStorage(iFinder, params);
+      accessStorage(iFinder, params);
       result = dataAccess.findInvalidatedBlocksByINodeId(inodeId);
       gotFromDB(new BlockPK(inodeId), result);
       miss(iFinder, result, "inodeId", inodeId);
@@ -186,7 +188,7 @@ private List<InvalidatedBlock> findAll(InvalidatedBlock.Finder iFinder)
       result = new ArrayList<InvalidatedBlock>(getAll());
       hit(iFinder, result);
     } else {
-      aboutToAccessStorage(iFinder);
+      accessStorage(iFinder);
       result = dataAccess.findAllInvalidatedBlocks();
       gotFromDB(result);
       allInvBlocksRead = true;
@@ -203,7 +205,7 @@ private List<InvalidatedBlock> findByPrimaryKeys(
     final int sid = (Integer) params[2];
     final int[] sids = new int[blockIds.length];
     Arrays.fill(sids, sid);
-    aboutToAccessStorage(iFinder, params);
+    accessStorage(iFinder, params);
     List<InvalidatedBlock> result =
         dataAccess.findInvalidatedBlocksbyPKS(blockIds, inodeIds, sids);
     gotFromDB(BlockPK.ReplicaPK.getKeys(blockIds, inodeIds, sid), result);
@@ -215,7 +217,7 @@ private List<InvalidatedBlock> findByPrimaryKeys(
   private List<InvalidatedBlock> findByINodeIds(InvalidatedBlock.Finder iFinder,
       Object[] params) throws StorageCallPreventedException, StorageException {
     final int[] inodeIds = (int[]) params[0];
-    aboutToAccessStorage(iFinder, params);
+    accessStorage(iFinder, params);
     List<InvalidatedBlock> result =
         dataAccess.findInvalidatedBlocksByINodeIds(inodeIds);
     gotFromDB(BlockPK.ReplicaPK.getKeys(inodeIds), result);
@@ -23,13 +23,14 @@
 import io.hops.metadata.common.CounterType;
 import io.hops.metadata.common.FinderType;
 import io.hops.metadata.hdfs.dal.LeaseDataAccess;
+import io.hops.transaction.handler.TransactionMetrics;
 import io.hops.transaction.lock.TransactionLocks;
 import org.apache.hadoop.hdfs.server.namenode.Lease;
 
 import java.util.HashMap;
 import java.util.Map;
 
-public class LeaseContext extends BaseEntityContext<String, Lease> {
+public class LeaseContext extends HdfsEntityContext<String, Lease> {
 
   private final LeaseDataAccess<Lease> dataAccess;
   private final Map<Integer, Lease> idToLease = new HashMap<Integer, Lease>();
@@ -52,6 +53,7 @@ public int count(CounterType<Lease> counter, Object... params)
     switch (lCounter) {
       case All:
         log("count-all-leases");
+        TransactionMetrics.roundTrip();
         return dataAccess.countAll();
     }
     throw new RuntimeException(UNSUPPORTED_COUNTER);
@@ -80,6 +82,7 @@ public void remove(Lease lease) throws TransactionContextException {
   @Override
   public void prepare(TransactionLocks tlm)
       throws TransactionContextException, StorageException {
+    TransactionMetrics.prepareStarted(getRemoved(), getAdded(), getModified());
     dataAccess.prepare(getRemoved(), getAdded(), getModified());
   }
 
@@ -102,7 +105,7 @@ private Lease findByHolder(Lease.Finder lFinder, Object[] params)
       result = get(holder);
       hit(lFinder, result, "holder", holder);
     } else {
-      aboutToAccessStorage(lFinder, params);
+      accessStorage(lFinder, params);
       result = dataAccess.findByPKey(holder);
       gotFromDB(holder, result);
       if (result != null) {
@@ -121,7 +124,7 @@ private Lease findByHolderId(Lease.Finder lFinder, Object[] params)
       result = idToLease.get(holderId);
       hit(lFinder, result, "hid", holderId);
     } else {
-      aboutToAccessStorage(lFinder, params);
+      accessStorage(lFinder, params);
       result = dataAccess.findByHolderId(holderId);
       gotFromDB(result);
       idToLease.put(holderId, result);
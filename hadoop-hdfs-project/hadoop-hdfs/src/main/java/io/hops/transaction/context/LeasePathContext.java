@@ -24,6 +24,7 @@
 import io.hops.metadata.common.FinderType;
 import io.hops.metadata.hdfs.dal.LeasePathDataAccess;
 import io.hops.metadata.hdfs.entity.LeasePath;
+import io.hops.transaction.handler.TransactionMetrics;
 import io.hops.transaction.lock.TransactionLocks;
 
 import java.util.ArrayList;
@@ -33,7 +34,7 @@
 import java.util.Map;
 import java.util.Set;
 
-public class LeasePathContext extends BaseEntityContext<String, LeasePath> {
+public class LeasePathContext extends HdfsEntityContext<String, LeasePath> {
 
   private final LeasePathDataAccess<LeasePath> dataAccess;
   private final Map<Integer, Set<LeasePath>> holderIdToLeasePath =
@@ -87,6 +88,7 @@ public Collection<LeasePath> findList(FinderType<LeasePath> finder,
   @Override
   public void prepare(TransactionLocks tlm)
       throws TransactionContextException, StorageException {
+    TransactionMetrics.prepareStarted(getRemoved(), getAdded(), getModified());
     dataAccess.prepare(getRemoved(), getAdded(), getModified());
   }
 
@@ -109,7 +111,7 @@ private LeasePath findByPrimaryKey(LeasePath.Finder lFinder, Object[] params)
       result = get(path);
       hit(lFinder, result, "path", path);
     } else {
-      aboutToAccessStorage(lFinder, params);
+      accessStorage(lFinder, params);
       result = dataAccess.findByPKey(path);
       gotFromDB(path, result);
       miss(lFinder, result, "path", path);
@@ -125,7 +127,7 @@ private Collection<LeasePath> findByHolderId(LeasePath.Finder lFinder,
       result = new ArrayList<LeasePath>(holderIdToLeasePath.get(holderId));
       hit(lFinder, result, "hid", holderId);
     } else {
-      aboutToAccessStorage(lFinder, params);
+      accessStorage(lFinder, params);
       result = dataAccess.findByHolderId(holderId);
       gotFromDB(holderId, result);
       miss(lFinder, result, "hid", holderId);
@@ -138,7 +140,7 @@ private Collection<LeasePath> findByPrefix(LeasePath.Finder lFinder,
     final String prefix = (String) params[0];
     Collection<LeasePath> result = null;
     try {
-      aboutToAccessStorage(lFinder, params);
+      accessStorage(lFinder, params);
       result = dataAccess.findByPrefix(prefix);
       gotFromDB(result);
       miss(lFinder, result, "prefix", prefix, "numOfLps", result.size());
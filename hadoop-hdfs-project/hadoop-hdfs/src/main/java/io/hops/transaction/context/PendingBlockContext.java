@@ -23,6 +23,7 @@
 import io.hops.exception.TransactionContextException;
 import io.hops.metadata.common.FinderType;
 import io.hops.metadata.hdfs.dal.PendingBlockDataAccess;
+import io.hops.transaction.handler.TransactionMetrics;
 import io.hops.transaction.lock.TransactionLocks;
 import org.apache.hadoop.hdfs.server.blockmanagement.PendingBlockInfo;
 
@@ -86,6 +87,7 @@ public Collection<PendingBlockInfo> findList(
   @Override
   public void prepare(TransactionLocks tlm)
       throws TransactionContextException, StorageException {
+    TransactionMetrics.prepareStarted(getRemoved(), getAdded(), getModified());
     dataAccess.prepare(getRemoved(), getAdded(), getModified());
   }
 
@@ -130,7 +132,7 @@ private PendingBlockInfo findByBlockId(PendingBlockInfo.Finder pFinder,
       }
       hit(pFinder, result, "bid", blockId, "inodeid", inodeId);
     } else {
-      aboutToAccessStorage(pFinder, params);
+      accessStorage(pFinder, params);
       result = dataAccess.findByPKey(blockId, inodeId);
       gotFromDB(new BlockPK(blockId, inodeId), result);
       miss(pFinder, result, "bid", blockId, "inodeid", inodeId);
@@ -145,7 +147,7 @@ private List<PendingBlockInfo> findAll(PendingBlockInfo.Finder pFinder)
       result = new ArrayList<PendingBlockInfo>(getAll());
       hit(pFinder, result);
     } else {
-      aboutToAccessStorage(pFinder);
+      accessStorage(pFinder);
       result = dataAccess.findAll();
       gotFromDB(result);
       allPendingRead = true;
@@ -162,7 +164,7 @@ private List<PendingBlockInfo> findByINodeId(PendingBlockInfo.Finder pFinder,
       result = getByINode(inodeId);
       hit(pFinder, result, "inodeid", inodeId);
     } else {
-      aboutToAccessStorage(pFinder, params);
+      accessStorage(pFinder, params);
       result = dataAccess.findByINodeId(inodeId);
       gotFromDB(new BlockPK(inodeId), result);
       miss(pFinder, result, "inodeid", inodeId);
@@ -174,7 +176,7 @@ private List<PendingBlockInfo> findByINodeIds(PendingBlockInfo.Finder pFinder,
       Object[] params) throws StorageCallPreventedException, StorageException {
     final int[] inodeIds = (int[]) params[0];
     List<PendingBlockInfo> result = null;
-    aboutToAccessStorage(pFinder, params);
+    accessStorage(pFinder, params);
     result = dataAccess.findByINodeIds(inodeIds);
     gotFromDB(BlockPK.getBlockKeys(inodeIds), result);
     miss(pFinder, result, "inodeids", Arrays.toString(inodeIds));
@@ -23,6 +23,7 @@
 import io.hops.metadata.common.FinderType;
 import io.hops.metadata.hdfs.dal.QuotaUpdateDataAccess;
 import io.hops.metadata.hdfs.entity.QuotaUpdate;
+import io.hops.transaction.handler.TransactionMetrics;
 import io.hops.transaction.lock.TransactionLocks;
 
 import java.util.ArrayList;
@@ -32,7 +33,7 @@
 import java.util.Map;
 
 public class QuotaUpdateContext
-    extends BaseEntityContext<Integer, QuotaUpdate> {
+    extends HdfsEntityContext<Integer, QuotaUpdate> {
 
   private final QuotaUpdateDataAccess<QuotaUpdate> dataAccess;
   private final Map<Integer, List<QuotaUpdate>> inodeIdToQuotaUpdates =
@@ -75,6 +76,7 @@ public Collection<QuotaUpdate> findList(FinderType<QuotaUpdate> finder,
   @Override
   public void prepare(TransactionLocks tlm)
       throws TransactionContextException, StorageException {
+    TransactionMetrics.prepareStarted(getRemoved(), getAdded(), getModified());
     Collection<QuotaUpdate> modified =
         new ArrayList<QuotaUpdate>(getModified());
     modified.addAll(getAdded());
@@ -100,7 +102,7 @@ private List<QuotaUpdate> findByINodeId(QuotaUpdate.Finder qFinder,
       result = inodeIdToQuotaUpdates.get(inodeId);
       hit(qFinder, result, "inodeid", inodeId);
     } else {
-      aboutToAccessStorage(qFinder, params);
+      accessStorage(qFinder, params);
       result = dataAccess.findByInodeId(inodeId);
       gotFromDB(inodeId, result);
       miss(qFinder, result, "inodeid", inodeId);
@@ -23,6 +23,7 @@
 import io.hops.metadata.common.FinderType;
 import io.hops.metadata.hdfs.dal.ReplicaDataAccess;
 import io.hops.metadata.hdfs.entity.IndexedReplica;
+import io.hops.transaction.handler.TransactionMetrics;
 import io.hops.transaction.lock.TransactionLocks;
 
 import java.util.Arrays;
@@ -58,6 +59,7 @@ public void remove(IndexedReplica replica)
   @Override
   public void prepare(TransactionLocks tlm)
       throws TransactionContextException, StorageException {
+    TransactionMetrics.prepareStarted(getRemoved(), getAdded(), getModified());
     dataAccess.prepare(getRemoved(), getAdded(), getModified());
   }
 
@@ -141,7 +143,7 @@ private List<IndexedReplica> findByBlockId(IndexedReplica.Finder iFinder,
       results = getByBlock(blockId);
       hit(iFinder, results, "bid", blockId);
     } else {
-      aboutToAccessStorage(iFinder, params);
+      accessStorage(iFinder, params);
       results = dataAccess.findReplicasById(blockId, inodeId);
       gotFromDB(new BlockPK(blockId), results);
       miss(iFinder, results, "bid", blockId);
@@ -157,7 +159,7 @@ private List<IndexedReplica> findByINodeId(IndexedReplica.Finder iFinder,
       results = getByINode(inodeId);
       hit(iFinder, results, "inodeid", inodeId);
     } else {
-      aboutToAccessStorage(iFinder, params);
+      accessStorage(iFinder, params);
       results = dataAccess.findReplicasByINodeId(inodeId);
       gotFromDB(new BlockPK(inodeId), results);
       miss(iFinder, results, "inodeid", inodeId);
@@ -172,6 +174,7 @@ private List<IndexedReplica> findByPrimaryKeys(IndexedReplica.Finder iFinder,
     int sid = (Integer) params[2];
     int[] sids = new int[blockIds.length];
     Arrays.fill(sids, sid);
+    accessStorage(iFinder, params);
     List<IndexedReplica> results =
         dataAccess.findReplicasByPKS(blockIds, inodeIds, sids);
     gotFromDB(BlockPK.ReplicaPK.getKeys(blockIds, sid), results);
@@ -183,7 +186,7 @@ private List<IndexedReplica> findByPrimaryKeys(IndexedReplica.Finder iFinder,
   private List<IndexedReplica> findyByINodeIds(IndexedReplica.Finder iFinder,
       Object[] params) throws StorageCallPreventedException, StorageException {
     int[] ids = (int[]) params[0];
-    aboutToAccessStorage(iFinder, params);
+    accessStorage(iFinder, params);
     List<IndexedReplica> results = dataAccess.findReplicasByINodeIds(ids);
     gotFromDB(BlockPK.ReplicaPK.getKeys(ids), results);
     miss(iFinder, results, "inodeIds", Arrays.toString(ids));
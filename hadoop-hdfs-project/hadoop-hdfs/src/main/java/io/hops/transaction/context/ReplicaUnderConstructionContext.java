@@ -21,6 +21,7 @@
 import io.hops.exception.TransactionContextException;
 import io.hops.metadata.common.FinderType;
 import io.hops.metadata.hdfs.dal.ReplicaUnderConstructionDataAccess;
+import io.hops.transaction.handler.TransactionMetrics;
 import io.hops.transaction.lock.TransactionLocks;
 import org.apache.hadoop.hdfs.server.blockmanagement.ReplicaUnderConstruction;
 
@@ -57,6 +58,7 @@ public void remove(ReplicaUnderConstruction replica)
   @Override
   public void prepare(TransactionLocks tlm)
       throws TransactionContextException, StorageException {
+    TransactionMetrics.prepareStarted(getRemoved(), getAdded(), getModified());
     dataAccess.prepare(getRemoved(), getAdded(), getModified());
   }
 
@@ -109,7 +111,7 @@ private List<ReplicaUnderConstruction> findByBlockId(
       result = getByBlock(blockId);
       hit(rFinder, result, "bid", blockId, "inodeid", inodeId);
     } else {
-      aboutToAccessStorage(rFinder, params);
+      accessStorage(rFinder, params);
       result =
           dataAccess.findReplicaUnderConstructionByBlockId(blockId, inodeId);
       gotFromDB(new BlockPK(blockId), result);
@@ -127,7 +129,7 @@ private List<ReplicaUnderConstruction> findByINodeId(
       result = getByINode(inodeId);
       hit(rFinder, result, "inodeid", inodeId);
     } else {
-      aboutToAccessStorage(rFinder, params);
+      accessStorage(rFinder, params);
       result = dataAccess.findReplicaUnderConstructionByINodeId(inodeId);
       gotFromDB(new BlockPK(inodeId), result);
       miss(rFinder, result, "inodeid", inodeId);
@@ -139,7 +141,7 @@ private List<ReplicaUnderConstruction> findByINodeIds(
       ReplicaUnderConstruction.Finder rFinder, Object[] params)
       throws TransactionContextException, StorageException {
     final int[] inodeIds = (int[]) params[0];
-    aboutToAccessStorage(rFinder, params);
+    accessStorage(rFinder, params);
     List<ReplicaUnderConstruction> result =
         dataAccess.findReplicaUnderConstructionByINodeIds(inodeIds);
     gotFromDB(BlockPK.ReplicaPK.getKeys(inodeIds), result);
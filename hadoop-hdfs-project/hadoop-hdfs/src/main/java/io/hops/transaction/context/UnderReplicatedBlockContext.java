@@ -23,6 +23,7 @@
 import io.hops.metadata.common.FinderType;
 import io.hops.metadata.hdfs.dal.UnderReplicatedBlockDataAccess;
 import io.hops.metadata.hdfs.entity.UnderReplicatedBlock;
+import io.hops.transaction.handler.TransactionMetrics;
 import io.hops.transaction.lock.TransactionLocks;
 
 import java.util.Arrays;
@@ -85,6 +86,7 @@ public Collection<UnderReplicatedBlock> findList(
   @Override
   public void prepare(TransactionLocks tlm)
       throws TransactionContextException, StorageException {
+    TransactionMetrics.prepareStarted(getRemoved(), getAdded(), getModified());
     dataAccess.prepare(getRemoved(), getAdded(), getModified());
   }
 
@@ -127,7 +129,7 @@ private UnderReplicatedBlock findByBlockId(
       }
       hit(urFinder, result, "bid", blockId, "inodeid", inodeId);
     } else {
-      aboutToAccessStorage(urFinder, params);
+      accessStorage(urFinder, params);
       result = dataAccess.findByPk(blockId, inodeId);
       gotFromDB(new BlockPK(blockId, inodeId), result);
       miss(urFinder, result, "bid", blockId, "inodeid", inodeId);
@@ -144,7 +146,7 @@ private List<UnderReplicatedBlock> findByINodeId(
       result = getByINode(inodeId);
       hit(urFinder, result, "inodeid", inodeId);
     } else {
-      aboutToAccessStorage(urFinder, params);
+      accessStorage(urFinder, params);
       result = dataAccess.findByINodeId(inodeId);
       gotFromDB(new BlockPK(inodeId), result);
       miss(urFinder, result, "inodeid", inodeId);
@@ -157,7 +159,7 @@ private List<UnderReplicatedBlock> findByINodeIds(
       throws StorageCallPreventedException, StorageException {
     final int[] inodeIds = (int[]) params[0];
     List<UnderReplicatedBlock> result = null;
-    aboutToAccessStorage(urFinder, params);
+    accessStorage(urFinder, params);
     result = dataAccess.findByINodeIds(inodeIds);
     gotFromDB(BlockPK.getBlockKeys(inodeIds), result);
     miss(urFinder, result, "inodeids", Arrays.toString(inodeIds));
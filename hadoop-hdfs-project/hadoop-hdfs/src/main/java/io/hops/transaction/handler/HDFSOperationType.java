@@ -289,5 +289,6 @@ public enum HDFSOperationType implements OperationType {
   FIND_DELETED,
   FIND_REVOKED,
   CHECK_FIXED_SOURCE,
-  CHECK_FIXED_PARITY
+  CHECK_FIXED_PARITY,
+  UPDATE_ENCODING_STATUSES
 }
@@ -26,6 +26,7 @@
 public abstract class HopsTransactionalRequestHandler
     extends TransactionalRequestHandler {
 
+  private final HDFSOperationType opType;
   private final String path;
   
   public HopsTransactionalRequestHandler(HDFSOperationType opType) {
@@ -35,6 +36,7 @@ public HopsTransactionalRequestHandler(HDFSOperationType opType) {
   public HopsTransactionalRequestHandler(HDFSOperationType opType,
       String path) {
     super(opType);
+    this.opType = opType;
     this.path = path;
   }
 
@@ -46,7 +48,21 @@ protected TransactionLockAcquirer newLockAcquirer() {
   
   @Override
   protected Object execute(final Object namesystem) throws IOException {
+    boolean tracked = TransactionMetrics.transactionStarted(opType);
+    boolean succeeded = false;
+    try {
+      Object result = executeTransaction(namesystem);
+      succeeded = true;
+      return result;
+    } finally {
+      if (tracked) {
+        TransactionMetrics.transactionFinished(succeeded);
+      }
+    }
+  }
 
+  private Object executeTransaction(final Object namesystem)
+      throws IOException {
     return super.execute(new TransactionInfo() {
       @Override
       public String getContextName(OperationType opType) {
@@ -60,6 +76,7 @@ public String getContextName(OperationType opType) {
 
       @Override
       public void performPostTransactionAction() throws IOException {
+        TransactionMetrics.committed();
         if (namesystem != null && namesystem instanceof FSNamesystem) {
           ((FSNamesystem) namesystem).performPendingSafeModeOperation();
         }
@@ -69,7 +86,9 @@ public void performPostTransactionAction() throws IOException {
 
   @Override
   protected final void preTransactionSetup() throws IOException {
+    TransactionMetrics.setUpStarted();
     setUp();
+    TransactionMetrics.setUpFinished();
   }
 
   public void setUp() throws IOException {
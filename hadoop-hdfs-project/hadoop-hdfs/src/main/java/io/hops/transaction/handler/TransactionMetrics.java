@@ -0,0 +1,502 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.transaction.handler;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.hops.transaction.handler.RequestHandler.OperationType;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.MetricsSystem;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableQuantiles;
+import org.apache.hadoop.util.Time;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Latency breakdown of the transactions run by
+ * {@link HopsTransactionalRequestHandler}.
+ * <p/>
+ * Every attempt of a transaction is split into the following phases, each of
+ * which is tracked by a {@link MutableQuantiles} per {@link OperationType}:
+ * <ul>
+ * <li>SetUp: {@link HopsTransactionalRequestHandler#setUp()}</li>
+ * <li>AcquireLock: {@link io.hops.transaction.lock.HdfsTransactionalLockAcquirer#acquire()}</li>
+ * <li>PerformTask: from the end of the lock acquisition until the first
+ * entity context is prepared for commit</li>
+ * <li>Commit: from the first prepared context until the post transaction
+ * action runs</li>
+ * </ul>
+ * The whole operation, retries included, is tracked as Total. The number of
+ * storage round trips per operation is tracked the same way, and the
+ * entity context cache hits, misses, round trips, rows read and written and
+ * block related lookups saved by read-ahead are also counted globally.
+ * <p/>
+ * Tests can also record the counters of every {@link OperationType} with
+ * {@link #startRecording()}, to check how many round trips an operation
+ * makes.
+ * <p/>
+ * The phases are delimited by the callbacks below, which are invoked from
+ * the thread running the transaction. They are no-ops unless the metrics
+ * have been created with
+ * {@link DFSConfigKeys#DFS_NAMENODE_TRANSACTION_METRICS_ENABLED_KEY} set.
+ */
+public class TransactionMetrics implements MetricsSource {
+
+  enum Phase {
+    SETUP("SetUp"),
+    ACQUIRE_LOCK("AcquireLock"),
+    PERFORM_TASK("PerformTask"),
+    COMMIT("Commit"),
+    TOTAL("Total");
+
+    private final String name;
+
+    Phase(String name) {
+      this.name = name;
+    }
+  }
+
+  /**
+   * Timestamps and counters of the transaction run by the current thread.
+   */
+  private static class Stats {
+    private OperationType opType;
+    private long startTime;
+    private long phaseStart;
+    private long commitStart;
+    private int attempts;
+    private long hits;
+    private long misses;
+    private long roundTrips;
+    private long rowsRead;
+    private long rowsWritten;
+    private long readAheadHits;
+  }
+
+  /**
+   * The counters recorded for an {@link OperationType}, summed over all its
+   * transactions.
+   */
+  public static class OperationCounts {
+    private long transactions;
+    private long attempts;
+    private long roundTrips;
+    private long rowsRead;
+    private long rowsWritten;
+
+    public long getTransactions() {
+      return transactions;
+    }
+
+    public long getAttempts() {
+      return attempts;
+    }
+
+    public long getRoundTrips() {
+      return roundTrips;
+    }
+
+    public long getRowsRead() {
+      return rowsRead;
+    }
+
+    public long getRowsWritten() {
+      return rowsWritten;
+    }
+
+    @Override
+    public String toString() {
+      return "transactions=" + transactions + ", attempts=" + attempts +
+          ", roundTrips=" + roundTrips + ", rowsRead=" + rowsRead +
+          ", rowsWritten=" + rowsWritten;
+    }
+  }
+
+  private static final String RECORD_NAME = "HopsTransactions";
+
+  private static volatile TransactionMetrics instance;
+
+  private static final ThreadLocal<Stats> current = new ThreadLocal<Stats>();
+
+  private static volatile Map<OperationType, OperationCounts> recording;
+
+  private final MetricsRegistry registry = new MetricsRegistry(RECORD_NAME);
+  private final int[] intervals;
+  private final ConcurrentMap<String, MutableQuantiles[]> quantiles =
+      new ConcurrentHashMap<String, MutableQuantiles[]>();
+
+  private final MutableCounterLong transactions;
+  private final MutableCounterLong failedTransactions;
+  private final MutableCounterLong retries;
+  private final MutableCounterLong cacheHits;
+  private final MutableCounterLong cacheMisses;
+  private final MutableCounterLong roundTrips;
+  private final MutableCounterLong rowsRead;
+  private final MutableCounterLong rowsWritten;
+  private final MutableCounterLong readAheadHits;
+
+  @VisibleForTesting
+  TransactionMetrics(int[] intervals) {
+    this.intervals = intervals;
+    registry.setContext("dfs");
+    transactions = registry.newCounter("Transactions",
+        "Number of transactions run", 0L);
+    failedTransactions = registry.newCounter("FailedTransactions",
+        "Number of transactions which failed after all their retries", 0L);
+    retries = registry.newCounter("Retries",
+        "Number of transaction attempts which were retried", 0L);
+    cacheHits = registry.newCounter("CacheHits",
+        "Number of finds served by the transaction context cache", 0L);
+    cacheMisses = registry.newCounter("CacheMisses",
+        "Number of finds not served by the transaction context cache", 0L);
+    roundTrips = registry.newCounter("RoundTrips",
+        "Number of storage round trips made by transactions", 0L);
+    rowsRead = registry.newCounter("RowsRead",
+        "Number of rows read from the storage by transactions", 0L);
+    rowsWritten = registry.newCounter("RowsWritten",
+        "Number of rows added, modified or removed by transactions", 0L);
+    readAheadHits = registry.newCounter("ReadAheadHits",
+        "Number of block related lookups covered by a per file read-ahead", 0L);
+  }
+
+  /**
+   * Creates and registers the transaction metrics if they are enabled in
+   * the configuration.
+   *
+   * @return the metrics, or null if they are disabled
+   */
+  public static TransactionMetrics create(Configuration conf) {
+    if (!conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_TRANSACTION_METRICS_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_TRANSACTION_METRICS_ENABLED_DEFAULT)) {
+      return null;
+    }
+    // Percentile measurement is off by default, by watching no intervals
+    int[] intervals =
+        conf.getInts(DFSConfigKeys.DFS_METRICS_PERCENTILES_INTERVALS_KEY);
+    MetricsSystem ms = DefaultMetricsSystem.instance();
+    TransactionMetrics metrics = ms.register(RECORD_NAME,
+        "Hops transaction latency breakdown", new TransactionMetrics(intervals));
+    instance = metrics;
+    return metrics;
+  }
+
+  public static void shutdown() {
+    instance = null;
+  }
+
+  @VisibleForTesting
+  static void setInstance(TransactionMetrics metrics) {
+    instance = metrics;
+  }
+
+  /**
+   * Starts recording the counters of every operation type, whether the
+   * metrics are enabled or not. Any previous recording is discarded.
+   */
+  @VisibleForTesting
+  public static void startRecording() {
+    recording = new HashMap<OperationType, OperationCounts>();
+  }
+
+  /**
+   * Stops the recording started by {@link #startRecording()}.
+   *
+   * @return the counters recorded per operation type
+   */
+  @VisibleForTesting
+  public static Map<OperationType, OperationCounts> stopRecording() {
+    Map<OperationType, OperationCounts> recorded = recording;
+    recording = null;
+    if (recorded == null) {
+      return new HashMap<OperationType, OperationCounts>();
+    }
+    synchronized (recorded) {
+      return new HashMap<OperationType, OperationCounts>(recorded);
+    }
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    registry.snapshot(collector.addRecord(registry.info()), all);
+  }
+
+  /**
+   * @return true if a new transaction is being tracked, false if the metrics
+   * are disabled and nothing is being recorded, or the transaction is nested
+   * in one already tracked, in which case it is accounted to the outer one
+   */
+  static boolean transactionStarted(OperationType opType) {
+    if ((instance == null && recording == null) || current.get() != null) {
+      return false;
+    }
+    Stats stats = new Stats();
+    stats.opType = opType;
+    stats.startTime = Time.monotonicNow();
+    current.set(stats);
+    return true;
+  }
+
+  static void transactionFinished(boolean succeeded) {
+    Stats stats = current.get();
+    if (stats == null) {
+      return;
+    }
+    current.remove();
+    record(stats);
+    TransactionMetrics metrics = instance;
+    if (metrics == null) {
+      return;
+    }
+    metrics.transactions.incr();
+    if (!succeeded) {
+      metrics.failedTransactions.incr();
+    }
+    if (stats.attempts > 1) {
+      metrics.retries.incr(stats.attempts - 1);
+    }
+    metrics.cacheHits.incr(stats.hits);
+    metrics.cacheMisses.incr(stats.misses);
+    metrics.roundTrips.incr(stats.roundTrips);
+    metrics.rowsRead.incr(stats.rowsRead);
+    metrics.rowsWritten.incr(stats.rowsWritten);
+    metrics.readAheadHits.incr(stats.readAheadHits);
+    metrics.add(stats.opType, Phase.TOTAL.name,
+        Time.monotonicNow() - stats.startTime);
+    metrics.add(stats.opType, "RoundTrips", stats.roundTrips);
+  }
+
+  private static void record(Stats stats) {
+    Map<OperationType, OperationCounts> recorded = recording;
+    if (recorded == null) {
+      return;
+    }
+    synchronized (recorded) {
+      OperationCounts counts = recorded.get(stats.opType);
+      if (counts == null) {
+        counts = new OperationCounts();
+        recorded.put(stats.opType, counts);
+      }
+      counts.transactions++;
+      counts.attempts += stats.attempts;
+      counts.roundTrips += stats.roundTrips;
+      counts.rowsRead += stats.rowsRead;
+      counts.rowsWritten += stats.rowsWritten;
+    }
+  }
+
+  static void setUpStarted() {
+    Stats stats = current.get();
+    if (stats != null) {
+      stats.attempts++;
+      stats.phaseStart = Time.monotonicNow();
+      stats.commitStart = 0;
+    }
+  }
+
+  static void setUpFinished() {
+    phaseFinished(Phase.SETUP);
+  }
+
+  public static void lockAcquisitionStarted() {
+    Stats stats = current.get();
+    if (stats != null) {
+      stats.phaseStart = Time.monotonicNow();
+    }
+  }
+
+  public static void lockAcquisitionFinished() {
+    phaseFinished(Phase.ACQUIRE_LOCK);
+  }
+
+  /**
+   * Called by every entity context when it is prepared for commit, with the
+   * entities it is about to write. The first call of an attempt ends its
+   * PerformTask phase.
+   */
+  public static void prepareStarted(Collection<?> removed, Collection<?> added,
+      Collection<?> modified) {
+    Stats stats = current.get();
+    if (stats == null) {
+      return;
+    }
+    stats.rowsWritten += removed.size() + added.size() + modified.size();
+    if (stats.commitStart == 0) {
+      phaseFinished(Phase.PERFORM_TASK);
+      stats.commitStart = stats.phaseStart;
+    }
+  }
+
+  static void committed() {
+    Stats stats = current.get();
+    if (stats == null) {
+      return;
+    }
+    // the prepared rows are flushed to the storage by the commit
+    stats.roundTrips++;
+    if (stats.commitStart != 0) {
+      stats.phaseStart = stats.commitStart;
+      phaseFinished(Phase.COMMIT);
+    }
+  }
+
+  /**
+   * Called by the entity contexts when a find is served from their cache.
+   */
+  public static void cacheHit() {
+    Stats stats = current.get();
+    if (stats != null) {
+      stats.hits++;
+    }
+  }
+
+  /**
+   * Called by the entity contexts when a find is not served from their cache,
+   * with what the find read from the storage.
+   */
+  public static void cacheMiss(Object result) {
+    Stats stats = current.get();
+    if (stats != null) {
+      stats.misses++;
+      stats.rowsRead += countRows(result);
+    }
+  }
+
+  private static int countRows(Object result) {
+    if (result == null) {
+      return 0;
+    } else if (result instanceof Collection) {
+      return ((Collection<?>) result).size();
+    } else if (result instanceof Map) {
+      return ((Map<?, ?>) result).size();
+    } else if (result instanceof Object[]) {
+      return ((Object[]) result).length;
+    }
+    return 1;
+  }
+
+  /**
+   * Called by the entity contexts when they are about to read from the
+   * storage, once the access has been allowed. The commit of a transaction
+   * is counted as a round trip by {@link #committed()}.
+   */
+  public static void roundTrip() {
+    Stats stats = current.get();
+    if (stats != null) {
+      stats.roundTrips++;
+    }
+  }
+
+  /**
+   * Called by the block related locks when the lookup of a block is skipped
+   * because the rows of its file have already been read.
+   */
+  public static void readAheadHit() {
+    Stats stats = current.get();
+    if (stats != null) {
+      stats.readAheadHits++;
+    }
+  }
+
+  private static void phaseFinished(Phase phase) {
+    Stats stats = current.get();
+    TransactionMetrics metrics = instance;
+    if (stats == null || metrics == null) {
+      return;
+    }
+    long now = Time.monotonicNow();
+    metrics.add(stats.opType, phase.name, now - stats.phaseStart);
+    stats.phaseStart = now;
+  }
+
+  private void add(OperationType opType, String phase, long value) {
+    if (intervals.length == 0) {
+      return;
+    }
+    for (MutableQuantiles q : getQuantiles(opType + phase)) {
+      q.add(value);
+    }
+  }
+
+  private MutableQuantiles[] getQuantiles(String name) {
+    MutableQuantiles[] qs = quantiles.get(name);
+    if (qs == null) {
+      synchronized (this) {
+        qs = quantiles.get(name);
+        if (qs == null) {
+          qs = new MutableQuantiles[intervals.length];
+          for (int i = 0; i < intervals.length; i++) {
+            int interval = intervals[i];
+            qs[i] = registry.newQuantiles(name + interval + "s", name,
+                "ops", name.endsWith("RoundTrips") ? "roundTrips" : "latency",
+                interval);
+          }
+          quantiles.put(name, qs);
+        }
+      }
+    }
+    return qs;
+  }
+
+  @VisibleForTesting
+  long getCacheHits() {
+    return cacheHits.value();
+  }
+
+  @VisibleForTesting
+  long getCacheMisses() {
+    return cacheMisses.value();
+  }
+
+  @VisibleForTesting
+  long getRoundTrips() {
+    return roundTrips.value();
+  }
+
+  @VisibleForTesting
+  long getRowsRead() {
+    return rowsRead.value();
+  }
+
+  @VisibleForTesting
+  long getRowsWritten() {
+    return rowsWritten.value();
+  }
+
+  @VisibleForTesting
+  long getReadAheadHits() {
+    return readAheadHits.value();
+  }
+
+  @VisibleForTesting
+  long getRetries() {
+    return retries.value();
+  }
+
+  @VisibleForTesting
+  boolean hasQuantiles(OperationType opType, Phase phase) {
+    return quantiles.containsKey(opType + phase.name);
+  }
+}
@@ -60,6 +60,32 @@ protected void acquire(TransactionLocks locks) throws IOException {
     }
   }
 
+  /**
+   * Locks the statuses of the source files of the given parity files.
+   */
+  final static class ParityEncodingStatusLock extends BaseEncodingStatusLock {
+    private final String[] targets;
+
+    ParityEncodingStatusLock(TransactionLockTypes.LockType lockType,
+        String... targets) {
+      super(lockType);
+      this.targets = targets;
+    }
+
+    @Override
+    protected void acquire(TransactionLocks locks) throws IOException {
+      INodeLock iNodeLock = (INodeLock) locks.getLock(Type.INode);
+      Arrays.sort(targets);
+      for (String target : targets) {
+        INode iNode = iNodeLock.getTargetINode(target);
+        if (iNode != null) {
+          acquireLock(getLockType(), EncodingStatus.Finder.ByParityInodeId,
+              iNode.getId());
+        }
+      }
+    }
+  }
+
   final static class IndividualEncodingStatusLock
       extends BaseEncodingStatusLock {
     private final int inodeId;
@@ -85,4 +111,27 @@ protected void acquire(TransactionLocks locks) throws IOException {
           inodeId);
     }
   }
+
+  /**
+   * Locks the statuses of the given source inodes, in inode id order. Used
+   * to apply several status transitions in one transaction without
+   * resolving the paths of the files.
+   */
+  final static class BatchedEncodingStatusLock extends BaseEncodingStatusLock {
+    private final int[] inodeIds;
+
+    BatchedEncodingStatusLock(TransactionLockTypes.LockType lockType,
+        int... inodeIds) {
+      super(lockType);
+      this.inodeIds = inodeIds;
+    }
+
+    @Override
+    protected void acquire(TransactionLocks locks) throws IOException {
+      Arrays.sort(inodeIds);
+      for (int inodeId : inodeIds) {
+        acquireLock(getLockType(), EncodingStatus.Finder.ByInodeId, inodeId);
+      }
+    }
+  }
 }
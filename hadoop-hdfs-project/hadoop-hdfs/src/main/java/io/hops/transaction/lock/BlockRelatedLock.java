@@ -21,12 +21,15 @@
 import io.hops.metadata.hdfs.entity.IndexedReplica;
 import io.hops.metadata.hdfs.entity.InvalidatedBlock;
 import io.hops.metadata.hdfs.entity.UnderReplicatedBlock;
+import io.hops.transaction.handler.TransactionMetrics;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
 import org.apache.hadoop.hdfs.server.blockmanagement.PendingBlockInfo;
 import org.apache.hadoop.hdfs.server.blockmanagement.ReplicaUnderConstruction;
 import org.apache.hadoop.hdfs.server.namenode.INodeFile;
 
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
 
 final class BlockRelatedLock extends LockWithType {
 
@@ -41,8 +44,23 @@ protected void acquire(TransactionLocks locks) throws IOException {
     if (lock instanceof BaseIndividualBlockLock) {
       BaseIndividualBlockLock individualBlockLock =
           (BaseIndividualBlockLock) lock;
-      //get by blocksId
+      Set<Integer> readAheadINodes = new HashSet<Integer>();
+      if (lock instanceof BlockLock) {
+        //get by inodeId first, it reads ahead the rows of all the blocks
+        //of the files
+        BlockLock blockLock = (BlockLock) lock;
+        for (INodeFile file : blockLock.getFiles()) {
+          acquireLockList(DEFAULT_LOCK_TYPE, getFinderType(false),
+              file.getId());
+          readAheadINodes.add(file.getId());
+        }
+      }
+      //get by blocksId the blocks whose file was not read ahead
       for (BlockInfo blk : individualBlockLock.getBlocks()) {
+        if (readAheadINodes.contains(blk.getInodeId())) {
+          TransactionMetrics.readAheadHit();
+          continue;
+        }
         if (isList()) {
           acquireLockList(DEFAULT_LOCK_TYPE, getFinderType(true),
               blk.getBlockId(), blk.getInodeId());
@@ -51,14 +69,6 @@ protected void acquire(TransactionLocks locks) throws IOException {
               blk.getInodeId());
         }
       }
-      if (lock instanceof BlockLock) {
-        //get by inodeId
-        BlockLock blockLock = (BlockLock) lock;
-        for (INodeFile file : blockLock.getFiles()) {
-          acquireLockList(DEFAULT_LOCK_TYPE, getFinderType(false),
-              file.getId());
-        }
-      }
     } else {
       throw new TransactionLocks.LockNotAddedException(
           "Block Lock wasn't added");
@@ -280,11 +280,23 @@ public Lock getEncodingStatusLock(TransactionLockTypes.LockType lockType,
     return new BaseEncodingStatusLock.EncodingStatusLock(lockType, targets);
   }
 
+  public Lock getParityEncodingStatusLock(
+      TransactionLockTypes.LockType lockType, String... parityTargets) {
+    return new BaseEncodingStatusLock.ParityEncodingStatusLock(lockType,
+        parityTargets);
+  }
+
   public Lock getIndivdualEncodingStatusLock(
       TransactionLockTypes.LockType lockType, int inodeId) {
     return new BaseEncodingStatusLock.IndividualEncodingStatusLock(lockType,
         inodeId);
   }
+
+  public Lock getBatchedEncodingStatusLock(
+      TransactionLockTypes.LockType lockType, int... inodeIds) {
+    return new BaseEncodingStatusLock.BatchedEncodingStatusLock(lockType,
+        inodeIds);
+  }
   
   public Collection<Lock> getBlockRelated(BLK... relatedBlks) {
     ArrayList<Lock> list = new ArrayList();
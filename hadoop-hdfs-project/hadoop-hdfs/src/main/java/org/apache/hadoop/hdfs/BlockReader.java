@@ -18,6 +18,7 @@
 package org.apache.hadoop.hdfs;
 
 import org.apache.hadoop.fs.ByteBufferReadable;
+import org.apache.hadoop.hdfs.client.ClientMmap;
 import org.apache.hadoop.hdfs.protocol.datatransfer.IOStreamPair;
 
 import java.io.IOException;
@@ -76,4 +77,13 @@ public interface BlockReader extends ByteBufferReadable {
    * @return a reference to the streams this block reader is using.
    */
   IOStreamPair getStreams();
+
+  /**
+   * Maps the replica this reader reads in memory, so that it can be read
+   * without copying it.
+   *
+   * @return a reference to the mapping, which the caller must release, or
+   * null if the replica can not be mapped
+   */
+  ClientMmap getClientMmap() throws IOException;
 }
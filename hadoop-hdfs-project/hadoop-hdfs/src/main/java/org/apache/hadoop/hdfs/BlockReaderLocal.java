@@ -19,7 +19,12 @@
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.client.ClientMmap;
 import org.apache.hadoop.hdfs.protocol.BlockLocalPathInfo;
 import org.apache.hadoop.hdfs.protocol.ClientDatanodeProtocol;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
@@ -39,10 +44,9 @@
 import java.io.IOException;
 import java.net.Socket;
 import java.nio.ByteBuffer;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * BlockReaderLocal enables local short circuited reads. If the DFS client is
@@ -60,32 +64,37 @@
  * RPC call</li>
  * <li>Client uses kerberos authentication to connect to the datanode over RPC,
  * if security is enabled.</li>
+ * <li>For zero-copy reads, the replica is memory mapped, see
+ * {@link #getClientMmap()}. Mappings are cached and shared by the readers of
+ * the replica.</li>
  * </ul>
  */
 class BlockReaderLocal implements BlockReader {
   private static final Log LOG = LogFactory.getLog(DFSClient.class);
 
-  //Stores the cache and proxy for a local datanode.
+  //Stores the caches and proxy for a local datanode.
   private static class LocalDatanodeInfo {
     private ClientDatanodeProtocol proxy = null;
-    private final Map<ExtendedBlock, BlockLocalPathInfo> cache;
-
-    LocalDatanodeInfo() {
-      final int cacheSize = 10000;
-      final float hashTableLoadFactor = 0.75f;
-      int hashTableCapacity =
-          (int) Math.ceil(cacheSize / hashTableLoadFactor) + 1;
-      cache = Collections.synchronizedMap(
-          new LinkedHashMap<ExtendedBlock, BlockLocalPathInfo>(
-              hashTableCapacity, hashTableLoadFactor, true) {
-            private static final long serialVersionUID = 1;
-
+    private final Cache<ExtendedBlock, BlockLocalPathInfo> cache;
+    private final Cache<ExtendedBlock, ClientMmap> mmaps;
+
+    LocalDatanodeInfo(Configuration conf) {
+      cache = CacheBuilder.newBuilder().maximumSize(10000).build();
+      mmaps = CacheBuilder.newBuilder()
+          .maximumSize(conf.getInt(DFSConfigKeys.DFS_CLIENT_MMAP_CACHE_SIZE_KEY,
+              DFSConfigKeys.DFS_CLIENT_MMAP_CACHE_SIZE_DEFAULT))
+          .expireAfterAccess(
+              conf.getLong(DFSConfigKeys.DFS_CLIENT_MMAP_CACHE_TIMEOUT_MS_KEY,
+                  DFSConfigKeys.DFS_CLIENT_MMAP_CACHE_TIMEOUT_MS_DEFAULT),
+              TimeUnit.MILLISECONDS)
+          .removalListener(new RemovalListener<ExtendedBlock, ClientMmap>() {
             @Override
-            protected boolean removeEldestEntry(
-                Map.Entry<ExtendedBlock, BlockLocalPathInfo> eldest) {
-              return size() > cacheSize;
+            public void onRemoval(
+                RemovalNotification<ExtendedBlock, ClientMmap> notification) {
+              // readers holding a reference keep the replica mapped
+              notification.getValue().unref();
             }
-          });
+          }).build();
     }
 
     private synchronized ClientDatanodeProtocol getDatanodeProxy(
@@ -107,7 +116,7 @@ private synchronized void resetDatanodeProxy() {
     }
 
     private BlockLocalPathInfo getBlockLocalPathInfo(ExtendedBlock b) {
-      return cache.get(b);
+      return cache.getIfPresent(b);
     }
 
     private void setBlockLocalPathInfo(ExtendedBlock b,
@@ -116,15 +125,44 @@ private void setBlockLocalPathInfo(ExtendedBlock b,
     }
 
     private void removeBlockLocalPathInfo(ExtendedBlock b) {
-      cache.remove(b);
+      cache.invalidate(b);
+      mmaps.invalidate(b);
+    }
+
+    /**
+     * Returns a reference to the mapping of a replica, mapping it if it is
+     * not mapped yet. Mappings are shared by all readers of the replica, so
+     * a mapping made by a reader which skips checksums is mapped again with
+     * the checksums for a reader which has them.
+     */
+    private ClientMmap getClientMmap(ExtendedBlock b, String fileName,
+        FileInputStream dataIn, FileInputStream checksumIn,
+        DataChecksum checksum) throws IOException {
+      ClientMmap mmap = mmaps.getIfPresent(b);
+      if (mmap != null && mmap.matches(b) &&
+          (mmap.hasChecksums() || checksumIn == null)) {
+        mmap = mmap.ref();
+        if (mmap != null) {
+          return mmap;
+        }
+      }
+      mmap = ClientMmap.load(b, fileName, dataIn, checksumIn, checksum);
+      mmap.ref();
+      // replaces and releases a stale mapping of an older version, or one
+      // without checksums
+      mmaps.put(b, mmap);
+      return mmap;
     }
   }
   
   // Multiple datanodes could be running on the local machine. Store proxies in
   // a map keyed by the ipc port of the datanode.
-  private static Map<Integer, LocalDatanodeInfo> localDatanodeInfoMap =
-      new HashMap<Integer, LocalDatanodeInfo>();
+  private static final ConcurrentMap<Integer, LocalDatanodeInfo>
+      localDatanodeInfoMap =
+      new ConcurrentHashMap<Integer, LocalDatanodeInfo>();
 
+  private final LocalDatanodeInfo localDatanodeInfo;
+  private final ExtendedBlock block;
   private final FileInputStream dataIn; // reader for the data file
   private final FileInputStream checksumIn;   // reader for the checksum file
 
@@ -168,7 +206,7 @@ static BlockReaderLocal newBlockReader(Configuration conf, String file,
       boolean connectToDnViaHostname) throws IOException {
 
     LocalDatanodeInfo localDatanodeInfo =
-        getLocalDatanodeInfo(node.getIpcPort());
+        getLocalDatanodeInfo(node.getIpcPort(), conf);
     // check the cache first
     BlockLocalPathInfo pathinfo = localDatanodeInfo.getBlockLocalPathInfo(blk);
     if (pathinfo == null) {
@@ -216,11 +254,12 @@ static BlockReaderLocal newBlockReader(Configuration conf, String file,
             startOffset - (startOffset % checksum.getBytesPerChecksum());
         localBlockReader =
             new BlockReaderLocal(conf, file, blk, token, startOffset, length,
-                pathinfo, checksum, true, dataIn, firstChunkOffset, checksumIn);
+                pathinfo, localDatanodeInfo, checksum, true, dataIn,
+                firstChunkOffset, checksumIn);
       } else {
         localBlockReader =
             new BlockReaderLocal(conf, file, blk, token, startOffset, length,
-                pathinfo, dataIn);
+                pathinfo, localDatanodeInfo, dataIn);
       }
     } catch (IOException e) {
       // remove from cache
@@ -242,11 +281,15 @@ static BlockReaderLocal newBlockReader(Configuration conf, String file,
     return localBlockReader;
   }
   
-  private static synchronized LocalDatanodeInfo getLocalDatanodeInfo(int port) {
+  private static LocalDatanodeInfo getLocalDatanodeInfo(int port,
+      Configuration conf) {
     LocalDatanodeInfo ldInfo = localDatanodeInfoMap.get(port);
     if (ldInfo == null) {
-      ldInfo = new LocalDatanodeInfo();
-      localDatanodeInfoMap.put(port, ldInfo);
+      ldInfo = new LocalDatanodeInfo(conf);
+      LocalDatanodeInfo prev = localDatanodeInfoMap.putIfAbsent(port, ldInfo);
+      if (prev != null) {
+        ldInfo = prev;
+      }
     }
     return ldInfo;
   }
@@ -256,7 +299,7 @@ private static BlockLocalPathInfo getBlockPathInfo(ExtendedBlock blk,
       Token<BlockTokenIdentifier> token, boolean connectToDnViaHostname)
       throws IOException {
     LocalDatanodeInfo localDatanodeInfo =
-        getLocalDatanodeInfo(node.getIpcPort());
+        getLocalDatanodeInfo(node.getIpcPort(), conf);
     BlockLocalPathInfo pathinfo = null;
     ClientDatanodeProtocol proxy = localDatanodeInfo
         .getDatanodeProxy(node, conf, timeout, connectToDnViaHostname);
@@ -303,19 +346,24 @@ private static int getSlowReadBufferNumChunks(Configuration conf,
 
   private BlockReaderLocal(Configuration conf, String hdfsfile,
       ExtendedBlock block, Token<BlockTokenIdentifier> token, long startOffset,
-      long length, BlockLocalPathInfo pathinfo, FileInputStream dataIn)
+      long length, BlockLocalPathInfo pathinfo,
+      LocalDatanodeInfo localDatanodeInfo, FileInputStream dataIn)
       throws IOException {
     this(conf, hdfsfile, block, token, startOffset, length, pathinfo,
+        localDatanodeInfo,
         DataChecksum.newDataChecksum(DataChecksum.Type.NULL, 4), false, dataIn,
         startOffset, null);
   }
 
   private BlockReaderLocal(Configuration conf, String hdfsfile,
       ExtendedBlock block, Token<BlockTokenIdentifier> token, long startOffset,
-      long length, BlockLocalPathInfo pathinfo, DataChecksum checksum,
+      long length, BlockLocalPathInfo pathinfo,
+      LocalDatanodeInfo localDatanodeInfo, DataChecksum checksum,
       boolean verifyChecksum, FileInputStream dataIn, long firstChunkOffset,
       FileInputStream checksumIn) throws IOException {
     this.filename = hdfsfile;
+    this.localDatanodeInfo = localDatanodeInfo;
+    this.block = block;
     this.checksum = checksum;
     this.verifyChecksum = verifyChecksum;
     this.startOffset = Math.max(startOffset, 0);
@@ -717,4 +765,16 @@ public boolean hasSentStatusCode() {
   public IOStreamPair getStreams() {
     return null;
   }
+
+  @Override
+  public synchronized ClientMmap getClientMmap() throws IOException {
+    if (startOffset < 0) {
+      // closed
+      return null;
+    }
+    // the checksums are mapped whenever the reader has them, as the mapping
+    // is shared with readers which verify them
+    return localDatanodeInfo.getClientMmap(block, filename, dataIn,
+        checksumIn, checksum);
+  }
 }
@@ -54,6 +54,7 @@
 import org.apache.hadoop.hdfs.client.HdfsDataInputStream;
 import org.apache.hadoop.hdfs.client.HdfsDataOutputStream;
 import org.apache.hadoop.hdfs.protocol.AlreadyBeingCreatedException;
+import org.apache.hadoop.hdfs.protocol.CacheDirective;
 import org.apache.hadoop.hdfs.protocol.ClientProtocol;
 import org.apache.hadoop.hdfs.protocol.CorruptFileBlocks;
 import org.apache.hadoop.hdfs.protocol.DSQuotaExceededException;
@@ -101,6 +102,7 @@
 import org.apache.hadoop.security.token.SecretManager.InvalidToken;
 import org.apache.hadoop.security.token.Token;
 import org.apache.hadoop.security.token.TokenRenewer;
+import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.DataChecksum;
 import org.apache.hadoop.util.DataChecksum.Type;
 import org.apache.hadoop.util.Progressable;
@@ -130,6 +132,10 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCK_SIZE_DEFAULT;
@@ -210,6 +216,10 @@ public class DFSClient implements java.io.Closeable {
   private Random r = new Random();
   private SocketAddress[] localInterfaceAddrs;
   private DataEncryptionKey encryptionKey;
+  private volatile long hedgedReadThresholdMillis;
+  private static final DFSHedgedReadMetrics HEDGED_READ_METRIC =
+      new DFSHedgedReadMetrics();
+  private static ThreadPoolExecutor HEDGED_READ_THREAD_POOL;
   
 
   /**
@@ -246,6 +256,8 @@ static class Conf {
     final int getFileBlockStorageLocationsTimeout;
 
     final int dfsClientInitialWaitOnRetry;
+    final int hedgedReadThreadpoolSize;
+    final long hedgedReadThresholdMillis;
 
 
     Conf(Configuration conf) {
@@ -309,6 +321,12 @@ static class Conf {
       dfsClientInitialWaitOnRetry =
           conf.getInt(DFSConfigKeys.DFS_CLIENT_INITIAL_WAIT_ON_RETRY_IN_MS_KEY,
               DFSConfigKeys.DFS_CLIENT_INITIAL_WAIT_ON_RETRY_IN_MS_DEFAULT);
+      hedgedReadThreadpoolSize =
+          conf.getInt(DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_THREADPOOL_SIZE,
+              DFSConfigKeys.DEFAULT_DFSCLIENT_HEDGED_READ_THREADPOOL_SIZE);
+      hedgedReadThresholdMillis =
+          conf.getLong(DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_THRESHOLD_MILLIS,
+              DFSConfigKeys.DEFAULT_DFSCLIENT_HEDGED_READ_THRESHOLD_MILLIS);
 
     }
 
@@ -462,6 +480,80 @@ public DFSClient(URI nameNodeUri, Configuration conf,
         conf.getInt(DFSConfigKeys.DFS_CLIENT_RETRIES_ON_FAILURE_KEY,
             DFSConfigKeys.DFS_CLIENT_RETRIES_ON_FAILURE_DEFAULT);
 
+    this.hedgedReadThresholdMillis = dfsClientConf.hedgedReadThresholdMillis;
+    if (dfsClientConf.hedgedReadThreadpoolSize > 0) {
+      initThreadsNumForHedgedReads(dfsClientConf.hedgedReadThreadpoolSize);
+    }
+  }
+
+  /**
+   * Create the hedged read thread pool, shared by all the clients of the
+   * JVM, or resize it if it already exists. When all its threads are busy,
+   * a hedged read runs in the thread which starts it.
+   */
+  private static synchronized void initThreadsNumForHedgedReads(int num) {
+    if (num <= 0) {
+      return;
+    }
+    if (HEDGED_READ_THREAD_POOL != null) {
+      if (num > HEDGED_READ_THREAD_POOL.getMaximumPoolSize()) {
+        HEDGED_READ_THREAD_POOL.setMaximumPoolSize(num);
+      }
+      return;
+    }
+    HEDGED_READ_THREAD_POOL = new ThreadPoolExecutor(1, num, 60,
+        TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+        new Daemon.DaemonFactory() {
+          private final AtomicInteger threadIndex = new AtomicInteger(0);
+
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = super.newThread(r);
+            t.setName("hedgedRead-" + threadIndex.getAndIncrement());
+            return t;
+          }
+        }, new ThreadPoolExecutor.CallerRunsPolicy() {
+          @Override
+          public void rejectedExecution(Runnable runnable,
+              ThreadPoolExecutor e) {
+            if (LOG.isDebugEnabled()) {
+              LOG.debug("Hedged read rejected, executing in current thread");
+            }
+            HEDGED_READ_METRIC.incHedgedReadOpsInCurThread();
+            // will run in the current thread
+            super.rejectedExecution(runnable, e);
+          }
+        });
+    HEDGED_READ_THREAD_POOL.allowCoreThreadTimeOut(true);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Using hedged reads; pool threads=" + num);
+    }
+  }
+
+  /**
+   * @return true if preads launch a second read against another datanode
+   * when the first one is slower than the hedged read threshold
+   */
+  boolean isHedgedReadsEnabled() {
+    return HEDGED_READ_THREAD_POOL != null &&
+        HEDGED_READ_THREAD_POOL.getMaximumPoolSize() > 0;
+  }
+
+  long getHedgedReadTimeout() {
+    return hedgedReadThresholdMillis;
+  }
+
+  @VisibleForTesting
+  void setHedgedReadTimeout(long timeoutMillis) {
+    this.hedgedReadThresholdMillis = timeoutMillis;
+  }
+
+  ThreadPoolExecutor getHedgedReadsThreadPool() {
+    return HEDGED_READ_THREAD_POOL;
+  }
+
+  public DFSHedgedReadMetrics getHedgedReadMetrics() {
+    return HEDGED_READ_METRIC;
   }
 
   /**
@@ -3083,6 +3175,61 @@ static LocatedBlock callGetRepairedBlockLocations(ClientProtocol namenode,
     }
   }
 
+  /**
+   * @see org.apache.hadoop.hdfs.protocol.ClientProtocol#addCacheDirective
+   */
+  public long addCacheDirective(final String path, final short replication)
+      throws IOException {
+    try {
+      ClientActionHandler handler = new ClientActionHandler() {
+        @Override
+        public Object doAction(ClientProtocol namenode)
+            throws RemoteException, IOException {
+          return namenode.addCacheDirective(path, replication);
+        }
+      };
+      return (Long) doClientActionOnLeader(handler, "addCacheDirective");
+    } catch (RemoteException re) {
+      throw re.unwrapRemoteException(AccessControlException.class,
+          FileNotFoundException.class, UnresolvedPathException.class);
+    }
+  }
+
+  /**
+   * @see org.apache.hadoop.hdfs.protocol.ClientProtocol#removeCacheDirective
+   */
+  public void removeCacheDirective(final long id) throws IOException {
+    try {
+      ClientActionHandler handler = new ClientActionHandler() {
+        @Override
+        public Object doAction(ClientProtocol namenode)
+            throws RemoteException, IOException {
+          namenode.removeCacheDirective(id);
+          return null;
+        }
+      };
+      doClientActionOnLeader(handler, "removeCacheDirective");
+    } catch (RemoteException re) {
+      throw re.unwrapRemoteException(AccessControlException.class);
+    }
+  }
+
+  /**
+   * @see org.apache.hadoop.hdfs.protocol.ClientProtocol#listCacheDirectives
+   */
+  @SuppressWarnings("unchecked")
+  public List<CacheDirective> listCacheDirectives() throws IOException {
+    ClientActionHandler handler = new ClientActionHandler() {
+      @Override
+      public Object doAction(ClientProtocol namenode)
+          throws RemoteException, IOException {
+        return namenode.listCacheDirectives();
+      }
+    };
+    return (List<CacheDirective>) doClientActionOnLeader(handler,
+        "listCacheDirectives");
+  }
+
   public void changeConf(final List<String> props, final List<String> newVals)
       throws IOException {
     ClientActionHandler handler = new ClientActionHandler() {
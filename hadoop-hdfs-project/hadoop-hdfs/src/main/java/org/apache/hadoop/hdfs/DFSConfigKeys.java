@@ -50,6 +50,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_STORAGE_ANCESTOR_LOCK_TYPE_DEFAULT =
       "READ_COMMITTED"; // "READ"  | "READ_COMMITTED"
 
+  // latency added to every round trip to the storage, see
+  // DelayedStorageFactory
+  public static final String DFS_STORAGE_SIMULATED_LATENCY_US =
+      "dfs.storage.simulated.latency.us";
+  public static final long DFS_STORAGE_SIMULATED_LATENCY_US_DEFAULT = 0;
+
   public static final String DFS_NAMENODE_QUOTA_ENABLED_KEY =
       "dfs.namenode.quota.enabled";
   public static final boolean DFS_NAMENODE_QUOTA_ENABLED_DEFAULT = true;
@@ -236,6 +242,22 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DELETION_LIMIT_KEY =
       "dfs.erasure_coding.deletion_limit";
   public static final int DEFAULT_DELETION_LIMIT = 100;
+  public static final String STATUS_UPDATE_BATCH_SIZE_KEY =
+      "dfs.erasure_coding.status_update_batch_size";
+  public static final int DEFAULT_STATUS_UPDATE_BATCH_SIZE = 64;
+  public static final String ERASURE_CODING_DATANODE_MAX_TASKS_KEY =
+      "dfs.erasure_coding.datanode.max_tasks";
+  public static final int DEFAULT_ERASURE_CODING_DATANODE_MAX_TASKS = 2;
+  public static final String ERASURE_CODING_LOCALITY_WAIT_KEY =
+      "dfs.erasure_coding.datanode.locality_wait";
+  public static final int DEFAULT_ERASURE_CODING_LOCALITY_WAIT = 30 * 1000;
+  public static final String ERASURE_CODING_TASK_TIMEOUT_KEY =
+      "dfs.erasure_coding.datanode.task_timeout";
+  public static final int DEFAULT_ERASURE_CODING_TASK_TIMEOUT = 10 * 60 * 1000;
+  public static final String ERASURE_CODING_TASK_EXECUTOR_CLASSNAME_KEY =
+      "dfs.erasure_coding.datanode.task_executor";
+  public static final String DEFAULT_ERASURE_CODING_TASK_EXECUTOR_CLASSNAME =
+      "io.hops.erasure_coding.LocalErasureCodingTaskExecutor";
 
 
   public static final String DFS_BLOCK_SIZE_KEY = "dfs.blocksize";
@@ -322,6 +344,13 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.datanode.readahead.bytes";
   public static final long DFS_DATANODE_READAHEAD_BYTES_DEFAULT =
       4 * 1024 * 1024; // 4MB
+  public static final String DFS_DATANODE_MAX_LOCKED_MEMORY_KEY =
+      "dfs.datanode.max.locked.memory";
+  public static final long DFS_DATANODE_MAX_LOCKED_MEMORY_DEFAULT = 0;
+  public static final String DFS_DATANODE_CACHE_VERIFY_CHECKSUM_KEY =
+      "dfs.datanode.cache.verify.checksum";
+  public static final boolean DFS_DATANODE_CACHE_VERIFY_CHECKSUM_DEFAULT =
+      true;
   public static final String DFS_DATANODE_DROP_CACHE_BEHIND_WRITES_KEY =
       "dfs.datanode.drop.cache.behind.writes";
   public static final boolean DFS_DATANODE_DROP_CACHE_BEHIND_WRITES_DEFAULT =
@@ -529,6 +558,13 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.client.read.prefetch.size";
   public static final String DFS_CLIENT_RETRY_WINDOW_BASE =
       "dfs.client.retry.window.base";
+  public static final String DFS_DFSCLIENT_HEDGED_READ_THREADPOOL_SIZE =
+      "dfs.client.hedged.read.threadpool.size";
+  public static final int DEFAULT_DFSCLIENT_HEDGED_READ_THREADPOOL_SIZE = 0;
+  public static final String DFS_DFSCLIENT_HEDGED_READ_THRESHOLD_MILLIS =
+      "dfs.client.hedged.read.threshold.millis";
+  public static final long DEFAULT_DFSCLIENT_HEDGED_READ_THRESHOLD_MILLIS =
+      500;
   public static final String DFS_METRICS_SESSION_ID_KEY =
       "dfs.metrics.session-id";
   public static final String DFS_METRICS_PERCENTILES_INTERVALS_KEY =
@@ -580,6 +616,15 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_DATANODE_DIRECTORYSCAN_THREADS_KEY =
       "dfs.datanode.directoryscan.threads";
   public static final int DFS_DATANODE_DIRECTORYSCAN_THREADS_DEFAULT = 1;
+  public static final String DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_KEY =
+      "dfs.datanode.directoryscan.incremental";
+  public static final boolean DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_DEFAULT =
+      false;
+  public static final String
+      DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_KEY =
+      "dfs.datanode.directoryscan.throttle.limit.ms.per.sec";
+  public static final int
+      DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_DEFAULT = 1000;
   public static final String DFS_DATANODE_DNS_INTERFACE_KEY =
       "dfs.datanode.dns.interface";
   public static final String DFS_DATANODE_DNS_INTERFACE_DEFAULT = "default";
@@ -600,6 +645,17 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_DATANODE_MAX_RECEIVER_THREADS_KEY =
       "dfs.datanode.max.transfer.threads";
   public static final int DFS_DATANODE_MAX_RECEIVER_THREADS_DEFAULT = 4096;
+  public static final String DFS_DATANODE_XCEIVER_NIO_ENABLED_KEY =
+      "dfs.datanode.xceiver.nio.enabled";
+  public static final boolean DFS_DATANODE_XCEIVER_NIO_ENABLED_DEFAULT = false;
+  public static final String DFS_DATANODE_XCEIVER_NIO_SELECTOR_THREADS_KEY =
+      "dfs.datanode.xceiver.nio.selector.threads";
+  public static final int DFS_DATANODE_XCEIVER_NIO_SELECTOR_THREADS_DEFAULT =
+      1;
+  public static final String DFS_DATANODE_XCEIVER_NIO_WORKER_THREADS_KEY =
+      "dfs.datanode.xceiver.nio.worker.threads";
+  public static final int DFS_DATANODE_XCEIVER_NIO_WORKER_THREADS_DEFAULT =
+      256;
   public static final String DFS_DATANODE_NUMBLOCKS_KEY =
       "dfs.datanode.numblocks";
   public static final int DFS_DATANODE_NUMBLOCKS_DEFAULT = 64;
@@ -625,6 +681,13 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_NAMENODE_SERVICE_HANDLER_COUNT_KEY =
       "dfs.namenode.service.handler.count";
   public static final int DFS_NAMENODE_SERVICE_HANDLER_COUNT_DEFAULT = 10;
+  public static final String DFS_NAMENODE_STORAGE_IO_THREADS_KEY =
+      "dfs.namenode.storage.io.threads";
+  public static final int DFS_NAMENODE_STORAGE_IO_THREADS_DEFAULT = 0;
+  public static final String DFS_NAMENODE_TRANSACTION_METRICS_ENABLED_KEY =
+      "dfs.namenode.transaction.metrics.enabled";
+  public static final boolean DFS_NAMENODE_TRANSACTION_METRICS_ENABLED_DEFAULT =
+      false;
   public static final String DFS_SUPPORT_APPEND_KEY = "dfs.support.append";
   public static final boolean DFS_SUPPORT_APPEND_DEFAULT = true;
   public static final String DFS_HTTPS_ENABLE_KEY = "dfs.https.enable";
@@ -671,6 +734,24 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_BLOCKREPORT_INITIAL_DELAY_KEY =
       "dfs.blockreport.initialDelay";
   public static final int DFS_BLOCKREPORT_INITIAL_DELAY_DEFAULT = 0;
+  public static final String DFS_CACHEREPORT_INTERVAL_MSEC_KEY =
+      "dfs.cachereport.intervalMsec";
+  public static final long DFS_CACHEREPORT_INTERVAL_MSEC_DEFAULT = 10 * 1000;
+  public static final String DFS_BLOCKREPORT_INCREMENTAL_INTERVAL_MSEC_KEY =
+      "dfs.blockreport.incremental.intervalMsec";
+  public static final long DFS_BLOCKREPORT_INCREMENTAL_INTERVAL_MSEC_DEFAULT =
+      0;
+  public static final String DFS_BLOCKREPORT_INCREMENTAL_MAX_BLOCKS_KEY =
+      "dfs.blockreport.incremental.maxBlocks";
+  public static final int DFS_BLOCKREPORT_INCREMENTAL_MAX_BLOCKS_DEFAULT = 1000;
+  public static final String DFS_NAMENODE_INCREMENTAL_BR_GROUP_BY_FILE_KEY =
+      "dfs.namenode.incremental-blockreport.group-by-file";
+  public static final boolean
+      DFS_NAMENODE_INCREMENTAL_BR_GROUP_BY_FILE_DEFAULT = true;
+  public static final String DFS_NAMENODE_CACHE_RESCAN_INTERVAL_MS_KEY =
+      "dfs.namenode.cache.rescan.interval.ms";
+  public static final long DFS_NAMENODE_CACHE_RESCAN_INTERVAL_MS_DEFAULT =
+      30 * 1000;
   public static final String DFS_BLOCK_INVALIDATE_LIMIT_KEY =
       "dfs.block.invalidate.limit";
   public static final int DFS_BLOCK_INVALIDATE_LIMIT_DEFAULT = 1000;
@@ -689,6 +770,13 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.client.read.shortcircuit.buffer.size";
   public static final int DFS_CLIENT_READ_SHORTCIRCUIT_BUFFER_SIZE_DEFAULT =
       1024 * 1024;
+  public static final String DFS_CLIENT_MMAP_CACHE_SIZE_KEY =
+      "dfs.client.mmap.cache.size";
+  public static final int DFS_CLIENT_MMAP_CACHE_SIZE_DEFAULT = 1024;
+  public static final String DFS_CLIENT_MMAP_CACHE_TIMEOUT_MS_KEY =
+      "dfs.client.mmap.cache.timeout.ms";
+  public static final long DFS_CLIENT_MMAP_CACHE_TIMEOUT_MS_DEFAULT =
+      15 * 60 * 1000;
 
   //Keys with no defaults
   public static final String DFS_DATANODE_PLUGINS_KEY = "dfs.datanode.plugins";
@@ -19,10 +19,14 @@
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.fs.ByteBufferReadable;
+import org.apache.hadoop.fs.ByteBufferUtil;
 import org.apache.hadoop.fs.ChecksumException;
 import org.apache.hadoop.fs.FSInputStream;
+import org.apache.hadoop.fs.HasEnhancedByteBufferAccess;
+import org.apache.hadoop.fs.ReadOption;
 import org.apache.hadoop.fs.UnresolvedLinkException;
 import org.apache.hadoop.hdfs.SocketCache.SocketAndStreams;
+import org.apache.hadoop.hdfs.client.ClientMmap;
 import org.apache.hadoop.hdfs.protocol.ClientDatanodeProtocol;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
@@ -33,18 +37,23 @@
 import org.apache.hadoop.hdfs.security.token.block.BlockTokenIdentifier;
 import org.apache.hadoop.hdfs.security.token.block.InvalidBlockTokenException;
 import org.apache.hadoop.hdfs.server.datanode.ReplicaNotFoundException;
+import org.apache.hadoop.io.ByteBufferPool;
 import org.apache.hadoop.ipc.RPC;
 import org.apache.hadoop.ipc.RemoteException;
 import org.apache.hadoop.net.NetUtils;
 import org.apache.hadoop.security.AccessControlException;
 import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.util.IdentityHashStore;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -52,7 +61,13 @@
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * *************************************************************
@@ -62,7 +77,7 @@
  */
 @InterfaceAudience.Private
 public class DFSInputStream extends FSInputStream
-    implements ByteBufferReadable {
+    implements ByteBufferReadable, HasEnhancedByteBufferAccess {
   private final SocketCache socketCache;
 
   private final DFSClient dfsClient;
@@ -103,6 +118,16 @@ public class DFSInputStream extends FSInputStream
 
   private final int nCachedConnRetry;
 
+  private static final ByteBuffer EMPTY_BUFFER =
+      ByteBuffer.allocateDirect(0).asReadOnlyBuffer();
+
+  /**
+   * The buffers handed out by {@link #read(ByteBufferPool, int, EnumSet)},
+   * mapped to the ClientMmap or ByteBufferPool they must be released to.
+   */
+  private final IdentityHashStore<ByteBuffer, Object> extendedReadBuffers =
+      new IdentityHashStore<ByteBuffer, Object>(0);
+
   void addToDeadNodes(DatanodeInfo dnInfo) {
     deadNodes.put(dnInfo, dnInfo);
   }
@@ -519,6 +544,11 @@ public synchronized void close() throws IOException {
     }
     dfsClient.checkOpen();
 
+    if (!extendedReadBuffers.isEmpty()) {
+      DFSClient.LOG.warn("closing file " + src + ", but there are still " +
+          extendedReadBuffers.numElements() + " unreleased ByteBuffers " +
+          "allocated by read().  Please release them with releaseBuffer.");
+    }
     if (blockReader != null) {
       closeBlockReader(blockReader);
       blockReader = null;
@@ -718,23 +748,138 @@ public synchronized int read(final ByteBuffer buf) throws IOException {
     return readWithStrategy(byteBufferReader, 0, buf.remaining());
   }
 
+  /**
+   * Reads up to maxLength bytes of the current block. When the block is read
+   * from a local replica, the returned buffer is a read only view of the
+   * memory mapped replica and no bytes are copied. Checksums are verified
+   * once per chunk of the replica, unless the stream does not verify
+   * checksums or opts contains {@link ReadOption#SKIP_CHECKSUMS}. Otherwise
+   * the bytes are read into a buffer of bufferPool.
+   */
+  @Override
+  public synchronized ByteBuffer read(ByteBufferPool bufferPool,
+      int maxLength, EnumSet<ReadOption> opts)
+      throws IOException, UnsupportedOperationException {
+    if (maxLength == 0) {
+      return EMPTY_BUFFER;
+    } else if (maxLength < 0) {
+      throw new IllegalArgumentException("can't read a negative amount.");
+    }
+    dfsClient.checkOpen();
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    if (pos >= getFileLength()) {
+      return null;
+    }
+    if (pos > blockEnd || currentNode == null) {
+      currentNode = blockSeekTo(pos);
+    }
+    boolean skipChecksums =
+        !verifyChecksum || opts.contains(ReadOption.SKIP_CHECKSUMS);
+    ByteBuffer buffer = tryReadZeroCopy(maxLength, skipChecksums);
+    if (buffer != null) {
+      return buffer;
+    }
+    buffer = ByteBufferUtil.fallbackRead(this, bufferPool, maxLength);
+    if (buffer != null) {
+      extendedReadBuffers.put(buffer, bufferPool);
+    }
+    return buffer;
+  }
+
+  private synchronized ByteBuffer tryReadZeroCopy(int maxLength,
+      boolean skipChecksums) throws IOException {
+    long blockPos = pos - currentLocatedBlock.getStartOffset();
+    int length = (int) Math.min(maxLength, blockEnd - pos + 1);
+    if (blockPos + length > Integer.MAX_VALUE) {
+      return null;
+    }
+    ClientMmap clientMmap = blockReader.getClientMmap();
+    if (clientMmap == null) {
+      return null;
+    }
+    boolean success = false;
+    try {
+      if (blockPos + length > clientMmap.getLength()) {
+        return null;
+      }
+      if (!skipChecksums) {
+        try {
+          if (!clientMmap.verifyChecksums((int) blockPos, length)) {
+            // the mapping has no checksums, let the block reader copy
+            return null;
+          }
+        } catch (ChecksumException ce) {
+          DFSClient.LOG.warn("Found Checksum error for " + getCurrentBlock() +
+              " from " + currentNode + " at " + ce.getPos());
+          dfsClient.reportChecksumFailure(src, getCurrentBlock(), currentNode);
+          // read the block from another replica
+          addToDeadNodes(currentNode);
+          blockEnd = -1;
+          return null;
+        }
+      }
+      ByteBuffer buffer = clientMmap.getReadOnlySlice((int) blockPos, length);
+      // keep the block reader at the position of the stream
+      try {
+        if (blockReader.skip(length) != length) {
+          blockEnd = -1;
+        }
+      } catch (IOException e) {
+        blockEnd = -1;
+      }
+      pos += length;
+      if (dfsClient.stats != null) {
+        dfsClient.stats.incrementBytesRead(length);
+      }
+      extendedReadBuffers.put(buffer, clientMmap);
+      success = true;
+      return buffer;
+    } finally {
+      if (!success) {
+        clientMmap.unref();
+      }
+    }
+  }
+
+  @Override
+  public synchronized void releaseBuffer(ByteBuffer buffer) {
+    if (buffer == EMPTY_BUFFER) {
+      return;
+    }
+    Object val = extendedReadBuffers.remove(buffer);
+    if (val == null) {
+      throw new IllegalArgumentException("tried to release a buffer " +
+          "that was not created by this stream, " + buffer);
+    }
+    if (val instanceof ClientMmap) {
+      ((ClientMmap) val).unref();
+    } else {
+      ((ByteBufferPool) val).putBuffer(buffer);
+    }
+  }
+
 
   /**
-   * Add corrupted block replica into map.
+   * Add corrupted block replica into map. The map is locked as hedged reads
+   * add to it concurrently.
    *
    * @param corruptedBlockMap
    */
   private void addIntoCorruptedBlockMap(ExtendedBlock blk, DatanodeInfo node,
       Map<ExtendedBlock, Set<DatanodeInfo>> corruptedBlockMap) {
-    Set<DatanodeInfo> dnSet = null;
-    if ((corruptedBlockMap.containsKey(blk))) {
-      dnSet = corruptedBlockMap.get(blk);
-    } else {
-      dnSet = new HashSet<DatanodeInfo>();
-    }
-    if (!dnSet.contains(node)) {
-      dnSet.add(node);
-      corruptedBlockMap.put(blk, dnSet);
+    synchronized (corruptedBlockMap) {
+      Set<DatanodeInfo> dnSet = null;
+      if ((corruptedBlockMap.containsKey(blk))) {
+        dnSet = corruptedBlockMap.get(blk);
+      } else {
+        dnSet = new HashSet<DatanodeInfo>();
+      }
+      if (!dnSet.contains(node)) {
+        dnSet.add(node);
+        corruptedBlockMap.put(blk, dnSet);
+      }
     }
   }
 
@@ -795,20 +940,44 @@ private void fetchBlockByteRange(LocatedBlock block, long start, long end,
       byte[] buf, int offset,
       Map<ExtendedBlock, Set<DatanodeInfo>> corruptedBlockMap)
       throws IOException {
-    //
-    // Connect to best DataNode for desired Block, with potential offset
-    //
-    int refetchToken = 1; // only need to get a new access token once
-    int refetchEncryptionKey = 1; // only need to get a new encryption key once
-    
     while (true) {
       // cached block locations may have been updated by chooseDataNode()
       // or fetchBlockAt(). Always get the latest list of locations at the 
       // start of the loop.
       block = getBlockAt(block.getStartOffset(), false);
       DNAddrPair retval = chooseDataNode(block);
-      DatanodeInfo chosenNode = retval.info;
-      InetSocketAddress targetAddr = retval.addr;
+      try {
+        actualGetFromOneDataNode(retval, block, start, end, buf, offset,
+            corruptedBlockMap);
+        return;
+      } catch (IOException e) {
+        if (!deadNodes.containsKey(retval.info)) {
+          // not a failure of the datanode, e.g. refetching the token failed
+          throw e;
+        }
+        // Already logged, try the next datanode
+      }
+    }
+  }
+
+  /**
+   * Reads the given byte range of the block from one datanode. The read is
+   * retried on the same datanode if only the access token or the encryption
+   * key have to be refetched. Otherwise the datanode is put into the dead list
+   * when the read fails.
+   */
+  private void actualGetFromOneDataNode(DNAddrPair datanode,
+      LocatedBlock block, long start, long end, byte[] buf, int offset,
+      Map<ExtendedBlock, Set<DatanodeInfo>> corruptedBlockMap)
+      throws IOException {
+    DatanodeInfo chosenNode = datanode.info;
+    InetSocketAddress targetAddr = datanode.addr;
+    int refetchToken = 1; // only need to get a new access token once
+    int refetchEncryptionKey = 1; // only need to get a new encryption key once
+
+    while (true) {
+      // the access token may have been refetched
+      block = getBlockAt(block.getStartOffset(), false);
       BlockReader reader = null;
 
       try {
@@ -825,13 +994,15 @@ private void fetchBlockByteRange(LocatedBlock block, long start, long end,
         }
         return;
       } catch (ChecksumException e) {
-        DFSClient.LOG
-            .warn("fetchBlockByteRange(). Got a checksum exception for " +
-                src + " at " + block.getBlock() + ":" +
-                e.getPos() + " from " + chosenNode);
+        String msg = "fetchBlockByteRange(). Got a checksum exception for " +
+            src + " at " + block.getBlock() + ":" + e.getPos() + " from " +
+            chosenNode;
+        DFSClient.LOG.warn(msg);
         // we want to remember what we have tried
         addIntoCorruptedBlockMap(block.getBlock(), chosenNode,
             corruptedBlockMap);
+        addToDeadNodes(chosenNode);
+        throw new IOException(msg);
       } catch (AccessControlException ex) {
         DFSClient.LOG.warn("Short circuit access failed ", ex);
         dfsClient.disableShortCircuit();
@@ -845,6 +1016,7 @@ private void fetchBlockByteRange(LocatedBlock block, long start, long end,
           // The encryption key used is invalid.
           refetchEncryptionKey--;
           dfsClient.clearDataEncryptionKey();
+          continue;
         } else if (e instanceof InvalidBlockTokenException &&
             refetchToken > 0) {
           DFSClient.LOG.info("Will get a new access token and retry, " +
@@ -854,19 +1026,155 @@ private void fetchBlockByteRange(LocatedBlock block, long start, long end,
           fetchBlockAt(block.getStartOffset());
           continue;
         } else {
-          DFSClient.LOG.warn("Failed to connect to " + targetAddr +
-              " for file " + src + " for block " + block.getBlock() + ":" + e);
+          String msg = "Failed to connect to " + targetAddr + " for file " +
+              src + " for block " + block.getBlock() + ":" + e;
+          DFSClient.LOG.warn(msg);
           if (DFSClient.LOG.isDebugEnabled()) {
             DFSClient.LOG.debug("Connection failure ", e);
           }
+          // Put chosen node into dead list
+          addToDeadNodes(chosenNode);
+          throw new IOException(msg);
         }
       } finally {
         if (reader != null) {
           closeBlockReader(reader);
         }
       }
-      // Put chosen node into dead list, continue
-      addToDeadNodes(chosenNode);
+    }
+  }
+
+  private Callable<ByteBuffer> getFromOneDataNode(final DNAddrPair datanode,
+      final LocatedBlock block, final long start, final long end,
+      final Map<ExtendedBlock, Set<DatanodeInfo>> corruptedBlockMap) {
+    return new Callable<ByteBuffer>() {
+      @Override
+      public ByteBuffer call() throws Exception {
+        byte[] buf = new byte[(int) (end - start + 1)];
+        actualGetFromOneDataNode(datanode, block, start, end, buf, 0,
+            corruptedBlockMap);
+        return ByteBuffer.wrap(buf);
+      }
+    };
+  }
+
+  /**
+   * Like {@link #fetchBlockByteRange}, but if the read does not complete
+   * within the hedged read threshold a second read of the same range is
+   * started against another datanode, and so on while datanodes are left.
+   * The first read to complete wins and the others are canceled.
+   * <p/>
+   * Every read goes to its own buffer since a read which lost cannot be
+   * stopped from writing to it; the result of the winner is copied to buf.
+   * For the same reason the reads record corrupted replicas in a map of
+   * their own, whose entries are added to corruptedBlockMap on return.
+   * <p/>
+   * Like fetchBlockByteRange, a read which failed without putting its
+   * datanode into the dead list, e.g. because refetching the access token
+   * failed, is not retried: its error is thrown once no other read is in
+   * progress.
+   */
+  private void hedgedFetchBlockByteRange(LocatedBlock block, long start,
+      long end, byte[] buf, int offset,
+      Map<ExtendedBlock, Set<DatanodeInfo>> corruptedBlockMap)
+      throws IOException {
+    CompletionService<ByteBuffer> hedgedService =
+        new ExecutorCompletionService<ByteBuffer>(
+            dfsClient.getHedgedReadsThreadPool());
+    DFSHedgedReadMetrics metrics = dfsClient.getHedgedReadMetrics();
+    List<Future<ByteBuffer>> futures = new ArrayList<Future<ByteBuffer>>();
+    Set<Future<ByteBuffer>> hedgedReads = new HashSet<Future<ByteBuffer>>();
+    // the datanodes with a read in progress
+    List<DatanodeInfo> ignored = new ArrayList<DatanodeInfo>();
+    Map<Future<ByteBuffer>, DatanodeInfo> readNodes =
+        new HashMap<Future<ByteBuffer>, DatanodeInfo>();
+    IOException error = null;
+    Map<ExtendedBlock, Set<DatanodeInfo>> hedgedCorruptedBlockMap =
+        new HashMap<ExtendedBlock, Set<DatanodeInfo>>();
+    int len = (int) (end - start + 1);
+    try {
+      while (true) {
+        DNAddrPair chosenNode;
+        if (futures.isEmpty()) {
+          // no read in progress, all the datanodes tried so far failed
+          if (error != null) {
+            throw error;
+          }
+          ignored.clear();
+          block = getBlockAt(block.getStartOffset(), false);
+          chosenNode = chooseDataNode(block);
+        } else {
+          chosenNode = getBestNodeDNAddrPair(block, ignored);
+        }
+        if (chosenNode != null) {
+          Future<ByteBuffer> future = hedgedService.submit(
+              getFromOneDataNode(chosenNode, block, start, end,
+                  hedgedCorruptedBlockMap));
+          if (!futures.isEmpty()) {
+            hedgedReads.add(future);
+            metrics.incHedgedReadOps();
+          }
+          futures.add(future);
+          readNodes.put(future, chosenNode.info);
+          ignored.add(chosenNode.info);
+        }
+
+        Future<ByteBuffer> future;
+        try {
+          if (chosenNode == null) {
+            // nothing left to hedge against, wait for the reads in progress
+            future = hedgedService.take();
+          } else {
+            future = hedgedService.poll(dfsClient.getHedgedReadTimeout(),
+                TimeUnit.MILLISECONDS);
+          }
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException(
+              "Interrupted while reading " + block.getBlock() + " of " + src);
+        }
+        if (future == null) {
+          if (DFSClient.LOG.isDebugEnabled()) {
+            DFSClient.LOG.debug("Waited " + dfsClient.getHedgedReadTimeout() +
+                "ms to read from " + chosenNode.info +
+                "; spawning hedged read");
+          }
+          continue;
+        }
+        futures.remove(future);
+        DatanodeInfo readNode = readNodes.remove(future);
+        try {
+          ByteBuffer result = future.get();
+          System.arraycopy(result.array(), 0, buf, offset, len);
+          if (hedgedReads.contains(future)) {
+            metrics.incHedgedReadWins();
+          }
+          return;
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException(
+              "Interrupted while reading " + block.getBlock() + " of " + src);
+        } catch (ExecutionException e) {
+          if (!deadNodes.containsKey(readNode)) {
+            // not a failure of the datanode, reading again would not help
+            Throwable cause = e.getCause();
+            error = cause instanceof IOException ? (IOException) cause :
+                new IOException(cause);
+          }
+          // Otherwise already logged and the node put into the dead list.
+          // The datanode stays ignored until no read is in progress.
+        }
+      }
+    } finally {
+      for (Future<ByteBuffer> future : futures) {
+        future.cancel(false);
+      }
+      synchronized (hedgedCorruptedBlockMap) {
+        for (Map.Entry<ExtendedBlock, Set<DatanodeInfo>> entry :
+            hedgedCorruptedBlockMap.entrySet()) {
+          for (DatanodeInfo node : entry.getValue()) {
+            addIntoCorruptedBlockMap(entry.getKey(), node, corruptedBlockMap);
+          }
+        }
+      }
     }
   }
 
@@ -1031,8 +1339,14 @@ public int read(long position, byte[] buffer, int offset, int length)
       long targetStart = position - blk.getStartOffset();
       long bytesToRead = Math.min(remaining, blk.getBlockSize() - targetStart);
       try {
-        fetchBlockByteRange(blk, targetStart, targetStart + bytesToRead - 1,
-            buffer, offset, corruptedBlockMap);
+        if (dfsClient.isHedgedReadsEnabled()) {
+          hedgedFetchBlockByteRange(blk, targetStart,
+              targetStart + bytesToRead - 1, buffer, offset,
+              corruptedBlockMap);
+        } else {
+          fetchBlockByteRange(blk, targetStart, targetStart + bytesToRead - 1,
+              buffer, offset, corruptedBlockMap);
+        }
       } finally {
         // Check and report if any block replicas are corrupted.
         // BlockMissingException may be caught if all block replicas are
@@ -1239,6 +1553,30 @@ static DatanodeInfo bestNode(DatanodeInfo nodes[],
     throw new IOException("No live nodes contain current block");
   }
 
+  /**
+   * Pick the best node, which is neither dead nor ignored, to read the block
+   * from.
+   *
+   * @return the node, or null if there is none
+   */
+  private DNAddrPair getBestNodeDNAddrPair(LocatedBlock block,
+      Collection<DatanodeInfo> ignoredNodes) {
+    DatanodeInfo[] nodes = block.getLocations();
+    if (nodes == null) {
+      return null;
+    }
+    for (DatanodeInfo node : nodes) {
+      if (!deadNodes.containsKey(node) && !ignoredNodes.contains(node)) {
+        String dnAddr = node.getXferAddr(dfsClient.connectToDnViaHostname());
+        if (DFSClient.LOG.isDebugEnabled()) {
+          DFSClient.LOG.debug("Connecting to datanode " + dnAddr);
+        }
+        return new DNAddrPair(node, NetUtils.createSocketAddr(dnAddr));
+      }
+    }
+    return null;
+  }
+
   /**
    * Utility class to encapsulate data node info and its address.
    */
@@ -44,6 +44,7 @@
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.client.HdfsDataInputStream;
 import org.apache.hadoop.hdfs.client.HdfsDataOutputStream;
+import org.apache.hadoop.hdfs.protocol.CacheDirective;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.protocol.DirectoryListing;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
@@ -1179,6 +1180,42 @@ public void revokeEncoding(final String filePath, final short replication)
     dfs.revokeEncoding(filePath, replication);
   }
 
+  /**
+   * Requests the blocks of a file, or of the files directly under a
+   * directory, to be cached in the memory of the given number of datanodes.
+   *
+   * @param path
+   *    the path of the file or directory
+   * @param replication
+   *    the number of datanodes to cache each block on
+   * @return the id of the directive
+   * @throws IOException
+   */
+  public long addCacheDirective(Path path, short replication)
+      throws IOException {
+    return dfs.addCacheDirective(getPathName(path), replication);
+  }
+
+  /**
+   * Removes a cache directive, uncaching the blocks no other directive
+   * covers.
+   *
+   * @param id
+   *    the id of the directive
+   * @throws IOException
+   */
+  public void removeCacheDirective(long id) throws IOException {
+    dfs.removeCacheDirective(id);
+  }
+
+  /**
+   * @return the cache directives of the file system
+   * @throws IOException
+   */
+  public List<CacheDirective> listCacheDirectives() throws IOException {
+    return dfs.listCacheDirectives();
+  }
+
 
   public void enableMemcached() throws IOException {
     changeConf(DFSConfigKeys.DFS_MEMCACHE_ENABLED, String.valueOf(true));
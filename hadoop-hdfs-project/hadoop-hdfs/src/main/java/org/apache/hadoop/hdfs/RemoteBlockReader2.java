@@ -20,6 +20,7 @@
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.client.ClientMmap;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.datatransfer.DataTransferProtoUtil;
 import org.apache.hadoop.hdfs.protocol.datatransfer.IOStreamPair;
@@ -461,4 +462,9 @@ static void checkSuccess(BlockOpResponseProto status, Socket sock,
   public IOStreamPair getStreams() {
     return ioStreams;
   }
+
+  @Override
+  public ClientMmap getClientMmap() {
+    return null;
+  }
 }
@@ -0,0 +1,201 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.client;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.fs.ChecksumException;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.datanode.BlockMetadataHeader;
+import org.apache.hadoop.io.nativeio.NativeIO;
+import org.apache.hadoop.util.DataChecksum;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+
+/**
+ * A local replica which is mapped in the memory of the client, so that it
+ * can be read without copying it.
+ * <p/>
+ * A ClientMmap is reference counted. The mapping is unmapped when the last
+ * reference is released, so it must not be accessed after that. The chunks
+ * of the replica whose checksums were verified are remembered, so that each
+ * chunk is verified once no matter how many readers share the mapping.
+ */
+@InterfaceAudience.Private
+public class ClientMmap {
+  private final ExtendedBlock block;
+  private final String fileName;
+  private final MappedByteBuffer map;
+  private final MappedByteBuffer checksumMap;
+  private final DataChecksum checksum;
+  private final BitSet verifiedChunks;
+  private int refCount = 1;
+
+  private ClientMmap(ExtendedBlock block, String fileName,
+      MappedByteBuffer map, MappedByteBuffer checksumMap,
+      DataChecksum checksum) {
+    this.block = new ExtendedBlock(block);
+    this.fileName = fileName;
+    this.map = map;
+    this.checksumMap = checksumMap;
+    this.checksum = checksum;
+    this.verifiedChunks = checksum == null ? null : new BitSet();
+  }
+
+  /**
+   * Maps a local replica read only.
+   *
+   * @param dataIn
+   *     the block file
+   * @param checksumIn
+   *     the meta file, or null if the checksums of the replica are never
+   *     verified
+   * @param checksum
+   *     the checksum of the replica, or null if checksumIn is null
+   * @return the mapping, holding one reference
+   */
+  public static ClientMmap load(ExtendedBlock block, String fileName,
+      FileInputStream dataIn, FileInputStream checksumIn,
+      DataChecksum checksum) throws IOException {
+    FileChannel dataChannel = dataIn.getChannel();
+    long length = Math.min(block.getNumBytes(), dataChannel.size());
+    MappedByteBuffer map =
+        dataChannel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+    MappedByteBuffer checksumMap = null;
+    if (checksumIn != null) {
+      try {
+        FileChannel checksumChannel = checksumIn.getChannel();
+        long headerSize = BlockMetadataHeader.getHeaderSize();
+        checksumMap = checksumChannel.map(FileChannel.MapMode.READ_ONLY,
+            headerSize, checksumChannel.size() - headerSize);
+      } catch (IOException e) {
+        NativeIO.POSIX.munmap(map);
+        throw e;
+      }
+    }
+    return new ClientMmap(block, fileName, map, checksumMap,
+        checksumIn == null ? null : checksum);
+  }
+
+  /**
+   * @return true if this mapping is of the given version of the block
+   */
+  public boolean matches(ExtendedBlock b) {
+    return block.getGenerationStamp() == b.getGenerationStamp() &&
+        block.getNumBytes() == b.getNumBytes();
+  }
+
+  /**
+   * @return true if the checksums of the replica are mapped along with it
+   */
+  public boolean hasChecksums() {
+    return checksum != null;
+  }
+
+  /**
+   * Adds a reference to this mapping.
+   *
+   * @return this, or null if the mapping was already unmapped
+   */
+  public synchronized ClientMmap ref() {
+    if (refCount == 0) {
+      return null;
+    }
+    refCount++;
+    return this;
+  }
+
+  /**
+   * Releases a reference to this mapping, unmapping it if it was the last.
+   */
+  public synchronized void unref() {
+    if (refCount <= 0) {
+      throw new IllegalStateException("Mapping of " + block +
+          " was already unmapped");
+    }
+    if (--refCount == 0) {
+      NativeIO.POSIX.munmap(map);
+      if (checksumMap != null) {
+        NativeIO.POSIX.munmap(checksumMap);
+      }
+    }
+  }
+
+  /**
+   * @return the length of the mapped part of the replica
+   */
+  public int getLength() {
+    return map.capacity();
+  }
+
+  /**
+   * @return a read only view of the bytes [pos, pos + length) of the replica
+   */
+  public ByteBuffer getReadOnlySlice(int pos, int length) {
+    ByteBuffer buf = map.asReadOnlyBuffer();
+    buf.position(pos);
+    buf.limit(pos + length);
+    return buf;
+  }
+
+  /**
+   * Verifies the checksums of the chunks overlapping the bytes
+   * [pos, pos + length) of the replica which were not verified yet.
+   *
+   * @return false if the replica has no checksums to verify
+   * @throws ChecksumException
+   *     if a chunk is corrupt
+   */
+  public synchronized boolean verifyChecksums(int pos, int length)
+      throws ChecksumException {
+    if (checksum == null) {
+      return false;
+    }
+    int bytesPerChecksum = checksum.getBytesPerChecksum();
+    int checksumSize = checksum.getChecksumSize();
+    int firstChunk = pos / bytesPerChecksum;
+    int endChunk = (pos + length + bytesPerChecksum - 1) / bytesPerChecksum;
+    int chunk = verifiedChunks.nextClearBit(firstChunk);
+    while (chunk < endChunk) {
+      int end = verifiedChunks.nextSetBit(chunk);
+      if (end < 0 || end > endChunk) {
+        end = endChunk;
+      }
+      int dataStart = chunk * bytesPerChecksum;
+      int dataEnd = Math.min(end * bytesPerChecksum, map.capacity());
+      if (end * checksumSize > checksumMap.capacity()) {
+        throw new ChecksumException("Checksums of " + fileName +
+            " are missing from its meta file", dataStart);
+      }
+      ByteBuffer data = map.duplicate();
+      data.position(dataStart);
+      data.limit(dataEnd);
+      ByteBuffer sums = checksumMap.duplicate();
+      sums.position(chunk * checksumSize);
+      sums.limit(end * checksumSize);
+      checksum.verifyChunkedSums(data, sums, fileName, dataStart);
+      verifiedChunks.set(chunk, end);
+      chunk = verifiedChunks.nextClearBit(end);
+    }
+    return true;
+  }
+}
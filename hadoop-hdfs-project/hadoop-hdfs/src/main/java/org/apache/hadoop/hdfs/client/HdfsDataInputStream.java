@@ -30,6 +30,10 @@
 
 /**
  * The Hdfs implementation of {@link FSDataInputStream}.
+ * <p/>
+ * Blocks of local replicas can be read without copying them with
+ * {@link #read(org.apache.hadoop.io.ByteBufferPool, int, java.util.EnumSet)},
+ * when short circuit local reads are enabled.
  */
 @InterfaceAudience.Public
 @InterfaceStability.Evolving
@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.protocol;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * A request to keep the blocks of a file, or of the files of a directory,
+ * cached in the memory of the given number of datanodes.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class CacheDirective {
+  private final long id;
+  private final String path;
+  private final short replication;
+
+  public CacheDirective(long id, String path, short replication) {
+    this.id = id;
+    this.path = path;
+    this.replication = replication;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  /**
+   * @return the number of cached replicas of each block
+   */
+  public short getReplication() {
+    return replication;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof CacheDirective)) {
+      return false;
+    }
+    CacheDirective other = (CacheDirective) obj;
+    return id == other.id && replication == other.replication &&
+        path.equals(other.path);
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) (id ^ (id >>> 32));
+  }
+
+  @Override
+  public String toString() {
+    return "CacheDirective{id=" + id + ", path=" + path + ", replication=" +
+        replication + "}";
+  }
+}
@@ -1269,6 +1269,56 @@ public void changeConf(List<String> props, List<String> newVals)
       throws IOException;
 
 
+  ///////////////////////////////////////
+  // Centralized caching
+  ///////////////////////////////////////
+
+  /**
+   * Request the blocks of a file, or of the files of a directory, to be
+   * cached in the memory of the given number of datanodes. Reads of a cached
+   * block are served by a datanode caching it whenever possible.
+   * Only the leader namenode accepts this request and directives do not
+   * survive a change of leader.
+   *
+   * @param path
+   *    the path of a file or directory
+   * @param replication
+   *    the number of cached replicas of each block
+   * @return the id of the directive
+   * @throws AccessControlException
+   *    if the superuser privilege is violated
+   * @throws FileNotFoundException
+   *    if the path does not exist
+   * @throws IOException
+   */
+  public long addCacheDirective(String path, short replication)
+      throws AccessControlException, FileNotFoundException, IOException;
+
+  /**
+   * Remove a cache directive. Its blocks are uncached unless another
+   * directive requires them to be cached.
+   *
+   * @param id
+   *    the id of the directive
+   * @throws AccessControlException
+   *    if the superuser privilege is violated
+   * @throws IOException
+   *    if there is no directive with the given id
+   */
+  @Idempotent
+  public void removeCacheDirective(long id)
+      throws AccessControlException, IOException;
+
+  /**
+   * List the cache directives of the leader namenode.
+   *
+   * @return the directives, ordered by id
+   * @throws IOException
+   */
+  @Idempotent
+  public List<CacheDirective> listCacheDirectives() throws IOException;
+
+
   ///////////////////////////////////////
   // Erasure coding
   ///////////////////////////////////////
@@ -28,6 +28,7 @@
 import org.apache.hadoop.fs.ContentSummary;
 import org.apache.hadoop.fs.FsServerDefaults;
 import org.apache.hadoop.fs.Options.Rename;
+import org.apache.hadoop.hdfs.protocol.CacheDirective;
 import org.apache.hadoop.hdfs.protocol.ClientProtocol;
 import org.apache.hadoop.hdfs.protocol.CorruptFileBlocks;
 import org.apache.hadoop.hdfs.protocol.DirectoryListing;
@@ -218,6 +219,11 @@
       VOID_CHANGECONF_RESPONSE =
       ClientNamenodeProtocolProtos.ChangeConfResponseProto.newBuilder().build();
 
+  private static final ClientNamenodeProtocolProtos.RemoveCacheDirectiveResponseProto
+      VOID_REMOVECACHEDIRECTIVE_RESPONSE =
+      ClientNamenodeProtocolProtos.RemoveCacheDirectiveResponseProto
+          .newBuilder().build();
+
   /**
    * Constructor
    *
@@ -996,4 +1002,51 @@ public ClientNamenodeProtocolProtos.ChangeConfResponseProto changeConf(
     }
   }
 
+  @Override
+  public ClientNamenodeProtocolProtos.AddCacheDirectiveResponseProto addCacheDirective(
+      RpcController controller,
+      ClientNamenodeProtocolProtos.AddCacheDirectiveRequestProto request)
+      throws ServiceException {
+    try {
+      long id = server.addCacheDirective(request.getPath(),
+          (short) request.getReplication());
+      return ClientNamenodeProtocolProtos.AddCacheDirectiveResponseProto
+          .newBuilder().setId(id).build();
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
+  @Override
+  public ClientNamenodeProtocolProtos.RemoveCacheDirectiveResponseProto removeCacheDirective(
+      RpcController controller,
+      ClientNamenodeProtocolProtos.RemoveCacheDirectiveRequestProto request)
+      throws ServiceException {
+    try {
+      server.removeCacheDirective(request.getId());
+      return VOID_REMOVECACHEDIRECTIVE_RESPONSE;
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
+  @Override
+  public ClientNamenodeProtocolProtos.ListCacheDirectivesResponseProto listCacheDirectives(
+      RpcController controller,
+      ClientNamenodeProtocolProtos.ListCacheDirectivesRequestProto request)
+      throws ServiceException {
+    try {
+      ClientNamenodeProtocolProtos.ListCacheDirectivesResponseProto.Builder
+          builder =
+          ClientNamenodeProtocolProtos.ListCacheDirectivesResponseProto
+              .newBuilder();
+      for (CacheDirective directive : server.listCacheDirectives()) {
+        builder.addDirectives(PBHelper.convert(directive));
+      }
+      return builder.build();
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
 }
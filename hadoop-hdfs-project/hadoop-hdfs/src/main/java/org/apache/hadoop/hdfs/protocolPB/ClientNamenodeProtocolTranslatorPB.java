@@ -37,6 +37,7 @@
 import org.apache.hadoop.fs.UnresolvedLinkException;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.protocol.AlreadyBeingCreatedException;
+import org.apache.hadoop.hdfs.protocol.CacheDirective;
 import org.apache.hadoop.hdfs.protocol.ClientProtocol;
 import org.apache.hadoop.hdfs.protocol.CorruptFileBlocks;
 import org.apache.hadoop.hdfs.protocol.DSQuotaExceededException;
@@ -957,4 +958,48 @@ public void changeConf(List<String> props, List<String> newVals)
       throw ProtobufHelper.getRemoteException(ex);
     }
   }
+
+  @Override
+  public long addCacheDirective(String path, short replication)
+      throws IOException {
+    ClientNamenodeProtocolProtos.AddCacheDirectiveRequestProto req =
+        ClientNamenodeProtocolProtos.AddCacheDirectiveRequestProto
+            .newBuilder().setPath(path).setReplication(replication).build();
+    try {
+      return rpcProxy.addCacheDirective(null, req).getId();
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
+  @Override
+  public void removeCacheDirective(long id) throws IOException {
+    ClientNamenodeProtocolProtos.RemoveCacheDirectiveRequestProto req =
+        ClientNamenodeProtocolProtos.RemoveCacheDirectiveRequestProto
+            .newBuilder().setId(id).build();
+    try {
+      rpcProxy.removeCacheDirective(null, req);
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
+  @Override
+  public List<CacheDirective> listCacheDirectives() throws IOException {
+    ClientNamenodeProtocolProtos.ListCacheDirectivesRequestProto req =
+        ClientNamenodeProtocolProtos.ListCacheDirectivesRequestProto
+            .newBuilder().build();
+    try {
+      List<ClientNamenodeProtocolProtos.CacheDirectiveProto> protos =
+          rpcProxy.listCacheDirectives(null, req).getDirectivesList();
+      List<CacheDirective> directives =
+          new ArrayList<CacheDirective>(protos.size());
+      for (ClientNamenodeProtocolProtos.CacheDirectiveProto proto : protos) {
+        directives.add(PBHelper.convert(proto));
+      }
+      return directives;
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
 }
@@ -47,9 +47,11 @@
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.StorageReceivedDeletedBlocksProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.VersionRequestProto;
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.hdfs.server.protocol.CacheReport;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeCommand;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
+import org.apache.hadoop.hdfs.server.protocol.ErasureCodingTaskStatus;
 import org.apache.hadoop.hdfs.server.protocol.HeartbeatResponse;
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
 import org.apache.hadoop.hdfs.server.protocol.ReceivedDeletedBlockInfo;
@@ -163,7 +165,8 @@ public DatanodeRegistration registerDatanode(
   @Override
   public HeartbeatResponse sendHeartbeat(DatanodeRegistration registration,
       StorageReport[] reports, int xmitsInProgress, int xceiverCount,
-      int failedVolumes) throws IOException {
+      int failedVolumes, ErasureCodingTaskStatus[] codingStatuses,
+      CacheReport cacheReport) throws IOException {
     HeartbeatRequestProto.Builder builder = HeartbeatRequestProto.newBuilder()
         .setRegistration(PBHelper.convert(registration))
         .setXmitsInProgress(xmitsInProgress).setXceiverCount(xceiverCount)
@@ -171,6 +174,14 @@ public HeartbeatResponse sendHeartbeat(DatanodeRegistration registration,
     for (StorageReport r : reports) {
       builder.addReports(PBHelper.convert(r));
     }
+    if (codingStatuses != null) {
+      for (ErasureCodingTaskStatus status : codingStatuses) {
+        builder.addCodingStatuses(PBHelper.convert(status));
+      }
+    }
+    if (cacheReport != null) {
+      builder.setCacheReport(PBHelper.convert(cacheReport));
+    }
 
     HeartbeatResponseProto resp;
     try {
@@ -33,6 +33,7 @@
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReportResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.CommitBlockSynchronizationRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.CommitBlockSynchronizationResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ErasureCodingTaskStatusProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ErrorReportRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ErrorReportResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.HeartbeatRequestProto;
@@ -50,9 +51,11 @@
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.LocatedBlockProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.VersionRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.VersionResponseProto;
+import org.apache.hadoop.hdfs.server.protocol.CacheReport;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeCommand;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
+import org.apache.hadoop.hdfs.server.protocol.ErasureCodingTaskStatus;
 import org.apache.hadoop.hdfs.server.protocol.HeartbeatResponse;
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
 import org.apache.hadoop.hdfs.server.protocol.ReceivedDeletedBlockInfo;
@@ -113,9 +116,19 @@ public HeartbeatResponseProto sendHeartbeat(RpcController controller,
             new StorageReport(p.getStorageID(), p.getFailed(), p.getCapacity(),
                 p.getDfsUsed(), p.getRemaining(), p.getBlockPoolUsed());
       }
+      List<ErasureCodingTaskStatusProto> statusList =
+          request.getCodingStatusesList();
+      ErasureCodingTaskStatus[] codingStatuses =
+          new ErasureCodingTaskStatus[statusList.size()];
+      i = 0;
+      for (ErasureCodingTaskStatusProto p : statusList) {
+        codingStatuses[i++] = PBHelper.convert(p);
+      }
+      CacheReport cacheReport = request.hasCacheReport() ?
+          PBHelper.convert(request.getCacheReport()) : null;
       response = impl.sendHeartbeat(PBHelper.convert(request.getRegistration()),
           report, request.getXmitsInProgress(), request.getXceiverCount(),
-          request.getFailedVolumes());
+          request.getFailedVolumes(), codingStatuses, cacheReport);
     } catch (IOException e) {
       throw new ServiceException(e);
     }
@@ -32,6 +32,7 @@
 import org.apache.hadoop.fs.FsServerDefaults;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.CacheDirective;
 import org.apache.hadoop.hdfs.protocol.ClientProtocol;
 import org.apache.hadoop.hdfs.protocol.CorruptFileBlocks;
 import org.apache.hadoop.hdfs.protocol.DatanodeID;
@@ -53,11 +54,16 @@
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ActiveNamenodeListResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BalancerBandwidthCommandProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockCommandProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockIdCommandProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockRecoveryCommandProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.CacheReportProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.DatanodeCommandProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.DatanodeRegistrationProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.DatanodeStorageProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.DatanodeStorageProto.StorageState;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ErasureCodingCommandProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ErasureCodingTaskProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ErasureCodingTaskStatusProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.FinalizeCommandProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.KeyUpdateCommandProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ReceivedDeletedBlockInfoProto;
@@ -102,15 +108,20 @@
 import org.apache.hadoop.hdfs.server.common.StorageInfo;
 import org.apache.hadoop.hdfs.server.protocol.BalancerBandwidthCommand;
 import org.apache.hadoop.hdfs.server.protocol.BlockCommand;
+import org.apache.hadoop.hdfs.server.protocol.BlockIdCommand;
 import org.apache.hadoop.hdfs.server.protocol.BlockRecoveryCommand;
 import org.apache.hadoop.hdfs.server.protocol.BlockRecoveryCommand.RecoveringBlock;
 import org.apache.hadoop.hdfs.server.protocol.BlocksWithLocations;
 import org.apache.hadoop.hdfs.server.protocol.BlocksWithLocations.BlockWithLocations;
+import org.apache.hadoop.hdfs.server.protocol.CacheReport;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeCommand;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage.State;
+import org.apache.hadoop.hdfs.server.protocol.ErasureCodingCommand;
+import org.apache.hadoop.hdfs.server.protocol.ErasureCodingTask;
+import org.apache.hadoop.hdfs.server.protocol.ErasureCodingTaskStatus;
 import org.apache.hadoop.hdfs.server.protocol.FinalizeCommand;
 import org.apache.hadoop.hdfs.server.protocol.KeyUpdateCommand;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeCommand;
@@ -609,6 +620,10 @@ public static DatanodeCommand convert(DatanodeCommandProto proto) {
         return PBHelper.convert(proto.getKeyUpdateCmd());
       case RegisterCommand:
         return REG_CMD;
+      case ErasureCodingCommand:
+        return PBHelper.convert(proto.getEcCmd());
+      case BlockIdCommand:
+        return PBHelper.convert(proto.getBlkIdCmd());
     }
     return null;
   }
@@ -708,6 +723,15 @@ public static DatanodeCommandProto convert(DatanodeCommand datanodeCommand) {
         builder.setCmdType(DatanodeCommandProto.Type.BlockCommand)
             .setBlkCmd(PBHelper.convert((BlockCommand) datanodeCommand));
         break;
+      case DatanodeProtocol.DNA_ERASURE_CODING:
+        builder.setCmdType(DatanodeCommandProto.Type.ErasureCodingCommand)
+            .setEcCmd(PBHelper.convert((ErasureCodingCommand) datanodeCommand));
+        break;
+      case DatanodeProtocol.DNA_CACHE:
+      case DatanodeProtocol.DNA_UNCACHE:
+        builder.setCmdType(DatanodeCommandProto.Type.BlockIdCommand)
+            .setBlkIdCmd(PBHelper.convert((BlockIdCommand) datanodeCommand));
+        break;
       case DatanodeProtocol.DNA_UNKNOWN: //Not expected
       default:
         builder.setCmdType(DatanodeCommandProto.Type.NullDatanodeCommand);
@@ -761,6 +785,66 @@ public static BlockCommand convert(BlockCommandProto blkCmd) {
     return new BlockCommand(action, blkCmd.getBlockPoolId(), blocks, targets);
   }
 
+  public static BlockIdCommandProto convert(BlockIdCommand cmd) {
+    BlockIdCommandProto.Builder builder = BlockIdCommandProto.newBuilder()
+        .setBlockPoolId(cmd.getBlockPoolId());
+    switch (cmd.getAction()) {
+      case DatanodeProtocol.DNA_CACHE:
+        builder.setAction(BlockIdCommandProto.Action.CACHE);
+        break;
+      case DatanodeProtocol.DNA_UNCACHE:
+        builder.setAction(BlockIdCommandProto.Action.UNCACHE);
+        break;
+      default:
+        throw new AssertionError("Invalid action");
+    }
+    for (long blockId : cmd.getBlockIds()) {
+      builder.addBlockIds(blockId);
+    }
+    return builder.build();
+  }
+
+  public static BlockIdCommand convert(BlockIdCommandProto blkIdCmd) {
+    long[] blockIds = new long[blkIdCmd.getBlockIdsCount()];
+    for (int i = 0; i < blockIds.length; i++) {
+      blockIds[i] = blkIdCmd.getBlockIds(i);
+    }
+    int action = DatanodeProtocol.DNA_UNKNOWN;
+    switch (blkIdCmd.getAction()) {
+      case CACHE:
+        action = DatanodeProtocol.DNA_CACHE;
+        break;
+      case UNCACHE:
+        action = DatanodeProtocol.DNA_UNCACHE;
+        break;
+    }
+    return new BlockIdCommand(action, blkIdCmd.getBlockPoolId(), blockIds);
+  }
+
+  public static CacheReportProto convert(CacheReport report) {
+    CacheReportProto.Builder builder = CacheReportProto.newBuilder()
+        .setCacheCapacity(report.getCacheCapacity())
+        .setCacheUsed(report.getCacheUsed()).setFull(report.isFull());
+    if (report.isFull()) {
+      for (long blockId : report.getBlockIds()) {
+        builder.addBlockIds(blockId);
+      }
+    }
+    return builder.build();
+  }
+
+  public static CacheReport convert(CacheReportProto proto) {
+    long[] blockIds = null;
+    if (proto.getFull()) {
+      blockIds = new long[proto.getBlockIdsCount()];
+      for (int i = 0; i < blockIds.length; i++) {
+        blockIds[i] = proto.getBlockIds(i);
+      }
+    }
+    return new CacheReport(proto.getCacheCapacity(), proto.getCacheUsed(),
+        blockIds);
+  }
+
   public static DatanodeInfo[] convert(DatanodeInfosProto datanodeInfosProto) {
     List<DatanodeInfoProto> proto = datanodeInfosProto.getDatanodesList();
     DatanodeInfo[] infos = new DatanodeInfo[proto.size()];
@@ -775,6 +859,118 @@ public static BalancerBandwidthCommand convert(
     return new BalancerBandwidthCommand(balancerCmd.getBandwidth());
   }
 
+  public static ErasureCodingCommandProto convert(ErasureCodingCommand cmd) {
+    ErasureCodingCommandProto.Builder builder =
+        ErasureCodingCommandProto.newBuilder();
+    for (ErasureCodingTask task : cmd.getTasks()) {
+      builder.addTasks(PBHelper.convert(task));
+    }
+    for (long taskId : cmd.getCanceledTaskIds()) {
+      builder.addCanceledTaskIds(taskId);
+    }
+    return builder.build();
+  }
+
+  public static ErasureCodingCommand convert(ErasureCodingCommandProto ecCmd) {
+    List<ErasureCodingTaskProto> taskList = ecCmd.getTasksList();
+    ErasureCodingTask[] tasks = new ErasureCodingTask[taskList.size()];
+    for (int i = 0; i < tasks.length; i++) {
+      tasks[i] = PBHelper.convert(taskList.get(i));
+    }
+    long[] canceledTaskIds = new long[ecCmd.getCanceledTaskIdsCount()];
+    for (int i = 0; i < canceledTaskIds.length; i++) {
+      canceledTaskIds[i] = ecCmd.getCanceledTaskIds(i);
+    }
+    return new ErasureCodingCommand(tasks, canceledTaskIds);
+  }
+
+  public static ErasureCodingTaskProto convert(ErasureCodingTask task) {
+    ErasureCodingTaskProto.Type type;
+    switch (task.getType()) {
+      case ENCODE:
+        type = ErasureCodingTaskProto.Type.ENCODE;
+        break;
+      case REPAIR_SOURCE:
+        type = ErasureCodingTaskProto.Type.REPAIR_SOURCE;
+        break;
+      case REPAIR_PARITY:
+        type = ErasureCodingTaskProto.Type.REPAIR_PARITY;
+        break;
+      default:
+        throw new IllegalArgumentException("Bad type: " + task.getType());
+    }
+    return ErasureCodingTaskProto.newBuilder().setTaskId(task.getTaskId())
+        .setType(type).setCodecId(task.getCodecId())
+        .setSourcePath(task.getSourcePath())
+        .setParityPath(task.getParityPath())
+        .setTargetReplication(task.getTargetReplication()).build();
+  }
+
+  public static ErasureCodingTask convert(ErasureCodingTaskProto proto) {
+    ErasureCodingTask.Type type;
+    switch (proto.getType()) {
+      case ENCODE:
+        type = ErasureCodingTask.Type.ENCODE;
+        break;
+      case REPAIR_SOURCE:
+        type = ErasureCodingTask.Type.REPAIR_SOURCE;
+        break;
+      case REPAIR_PARITY:
+        type = ErasureCodingTask.Type.REPAIR_PARITY;
+        break;
+      default:
+        throw new IllegalArgumentException("Bad type: " + proto.getType());
+    }
+    return new ErasureCodingTask(proto.getTaskId(), type, proto.getCodecId(),
+        proto.getSourcePath(), proto.getParityPath(),
+        proto.getTargetReplication());
+  }
+
+  public static ErasureCodingTaskStatusProto convert(
+      ErasureCodingTaskStatus status) {
+    ErasureCodingTaskStatusProto.State state;
+    switch (status.getState()) {
+      case ACTIVE:
+        state = ErasureCodingTaskStatusProto.State.ACTIVE;
+        break;
+      case FINISHED:
+        state = ErasureCodingTaskStatusProto.State.FINISHED;
+        break;
+      case FAILED:
+        state = ErasureCodingTaskStatusProto.State.FAILED;
+        break;
+      case CANCELED:
+        state = ErasureCodingTaskStatusProto.State.CANCELED;
+        break;
+      default:
+        throw new IllegalArgumentException("Bad state: " + status.getState());
+    }
+    return ErasureCodingTaskStatusProto.newBuilder()
+        .setTaskId(status.getTaskId()).setState(state).build();
+  }
+
+  public static ErasureCodingTaskStatus convert(
+      ErasureCodingTaskStatusProto proto) {
+    ErasureCodingTaskStatus.State state;
+    switch (proto.getState()) {
+      case ACTIVE:
+        state = ErasureCodingTaskStatus.State.ACTIVE;
+        break;
+      case FINISHED:
+        state = ErasureCodingTaskStatus.State.FINISHED;
+        break;
+      case FAILED:
+        state = ErasureCodingTaskStatus.State.FAILED;
+        break;
+      case CANCELED:
+        state = ErasureCodingTaskStatus.State.CANCELED;
+        break;
+      default:
+        throw new IllegalArgumentException("Bad state: " + proto.getState());
+    }
+    return new ErasureCodingTaskStatus(proto.getTaskId(), state);
+  }
+
   public static ReceivedDeletedBlockInfoProto convert(
       ReceivedDeletedBlockInfo receivedDeletedBlockInfo) {
     ReceivedDeletedBlockInfoProto.Builder builder =
@@ -1360,6 +1556,19 @@ public static EncodingPolicy convert(
         (short) encodingPolicyProto.getTargetReplication());
   }
 
+  public static ClientNamenodeProtocolProtos.CacheDirectiveProto convert(
+      CacheDirective directive) {
+    return ClientNamenodeProtocolProtos.CacheDirectiveProto.newBuilder()
+        .setId(directive.getId()).setPath(directive.getPath())
+        .setReplication(directive.getReplication()).build();
+  }
+
+  public static CacheDirective convert(
+      ClientNamenodeProtocolProtos.CacheDirectiveProto proto) {
+    return new CacheDirective(proto.getId(), proto.getPath(),
+        (short) proto.getReplication());
+  }
+
   public static EncodingStatus.Status convert(
       ClientNamenodeProtocolProtos.EncodingStatusProto.StatusProto status) {
     switch (status) {
@@ -82,12 +82,14 @@
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -282,6 +284,11 @@ public long getPostponedMisreplicatedBlocksCount() {
    * Number of batches to be processed by this namenode at one time
    */
   private final int processMisReplicatedNoOfBatchs;
+  /**
+   * Whether to apply the blocks of an incremental block report that belong
+   * to the same file in one transaction
+   */
+  private final boolean groupIncrementalBlockReports;
   
   public BlockManager(final Namesystem namesystem, final FSClusterStats stats,
       final Configuration conf) throws IOException {
@@ -363,6 +370,10 @@ public BlockManager(final Namesystem namesystem, final FSClusterStats stats,
     this.processMisReplicatedNoOfBatchs = conf.getInt(
         DFSConfigKeys.DFS_NAMENODE_PROCESS_MISREPLICATED_NO_OF_BATCHS,
         DFSConfigKeys.DFS_NAMENODE_PROCESS_MISREPLICATED_NO_OF_BATCHS_DEFAULT);
+
+    this.groupIncrementalBlockReports = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_INCREMENTAL_BR_GROUP_BY_FILE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_INCREMENTAL_BR_GROUP_BY_FILE_DEFAULT);
     
     LOG.info("defaultReplication         = " + defaultReplication);
     LOG.info("maxReplication             = " + maxReplication);
@@ -3129,35 +3140,8 @@ public void acquireLock(TransactionLocks locks) throws IOException {
           public Object performTask() throws IOException {
             ReceivedDeletedBlockInfo rdbi =
                 (ReceivedDeletedBlockInfo) getParams()[0];
-            LOG.debug("BLOCK_RECEIVED_AND_DELETED_INC_BLK_REPORT " +
-                rdbi.getStatus() + " bid=" + rdbi.getBlock().getBlockId() +
-                " dataNode=" + node.getXferAddr());
-            switch (rdbi.getStatus()) {
-              case DELETED_BLOCK:
-                removeStoredBlock(rdbi.getBlock(), node);
-                deleted[0]++;
-                break;
-              case RECEIVED_BLOCK:
-                addBlock(node, rdbi.getBlock(), rdbi.getDelHints());
-                received[0]++;
-                break;
-              case RECEIVING_BLOCK:
-                processAndHandleReportedBlock(node, rdbi.getBlock(),
-                    ReplicaState.RBW, null);
-                received[0]++;
-                break;
-              default:
-                String msg =
-                    "Unknown block status code reported by " + nodeID + ": " +
-                        rdbi;
-                blockLog.warn(msg);
-                assert false : msg; // if assertions are enabled, throw.
-                break;
-            }
-            if (blockLog.isDebugEnabled()) {
-              blockLog.debug("BLOCK* block " + (rdbi.getStatus()) + ": " +
-                  rdbi.getBlock() + " is received from " + nodeID);
-            }
+            processIncrementalBlock(node, nodeID, rdbi, received, deleted,
+                receiving);
             return null;
           }
         };
@@ -3170,7 +3154,14 @@ public Object performTask() throws IOException {
             "Got incremental block report from unregistered or dead node");
       }
 
-      for (ReceivedDeletedBlockInfo rdbi : blockInfos) {
+      Collection<ReceivedDeletedBlockInfo> ungrouped;
+      if (groupIncrementalBlockReports) {
+        ungrouped = processIncrementalBlockReportByFile(node, nodeID,
+            blockInfos, received, deleted, receiving);
+      } else {
+        ungrouped = Arrays.asList(blockInfos);
+      }
+      for (ReceivedDeletedBlockInfo rdbi : ungrouped) {
         processIncrementalBlockReportHandler.setParams(rdbi);
         processIncrementalBlockReportHandler.handle(namesystem);
       }
@@ -3183,6 +3174,132 @@ public Object performTask() throws IOException {
 
   }
 
+  /**
+   * Apply the blocks of an incremental block report in one transaction per
+   * file, rather than one per block. The files of the blocks are found with
+   * one batched lookup, and every transaction locks the file and all of its
+   * blocks, as the per block transactions do.
+   *
+   * @return the blocks which could not be applied this way, because their
+   * file is not known or they are no longer part of it, and which should be
+   * applied one by one
+   */
+  private Collection<ReceivedDeletedBlockInfo>
+      processIncrementalBlockReportByFile(final DatanodeDescriptor node,
+      final DatanodeID nodeID, ReceivedDeletedBlockInfo[] blockInfos,
+      final int[] received, final int[] deleted, final int[] receiving)
+      throws IOException {
+    List<ReceivedDeletedBlockInfo> ungrouped =
+        new ArrayList<ReceivedDeletedBlockInfo>();
+    long[] blockIds = new long[blockInfos.length];
+    for (int i = 0; i < blockInfos.length; i++) {
+      blockIds[i] = blockInfos[i].getBlock().getBlockId();
+    }
+    int[] inodeIds = INodeUtil.resolveINodesFromBlockIds(blockIds);
+    if (inodeIds == null || inodeIds.length != blockInfos.length) {
+      return Arrays.asList(blockInfos);
+    }
+
+    Map<Integer, List<ReceivedDeletedBlockInfo>> byFile =
+        new LinkedHashMap<Integer, List<ReceivedDeletedBlockInfo>>();
+    for (int i = 0; i < blockInfos.length; i++) {
+      if (inodeIds[i] <= INode.NON_EXISTING_ID) {
+        ungrouped.add(blockInfos[i]);
+        continue;
+      }
+      List<ReceivedDeletedBlockInfo> group = byFile.get(inodeIds[i]);
+      if (group == null) {
+        group = new ArrayList<ReceivedDeletedBlockInfo>();
+        byFile.put(inodeIds[i], group);
+      }
+      group.add(blockInfos[i]);
+    }
+
+    for (Map.Entry<Integer, List<ReceivedDeletedBlockInfo>> e : byFile
+        .entrySet()) {
+      final int inodeId = e.getKey();
+      final INodeIdentifier inodeIdentifier = new INodeIdentifier(inodeId);
+      final List<ReceivedDeletedBlockInfo> group = e.getValue();
+      final List<ReceivedDeletedBlockInfo> notInFile =
+          new ArrayList<ReceivedDeletedBlockInfo>();
+      new HopsTransactionalRequestHandler(
+          HDFSOperationType.BLOCK_RECEIVED_AND_DELETED_INC_BLK_REPORT) {
+        @Override
+        public void acquireLock(TransactionLocks locks) throws IOException {
+          LockFactory lf = LockFactory.getInstance();
+          // the block lock reads all the blocks of the file
+          locks.add(
+              lf.getIndividualINodeLock(INodeLockType.WRITE, inodeIdentifier))
+              .add(lf.getBlockLock(group.get(0).getBlock().getBlockId(),
+                  inodeIdentifier))
+              .add(lf.getBlockRelated(BLK.RE, BLK.ER, BLK.CR, BLK.UR, BLK.PE,
+                  BLK.UC, BLK.IV));
+          if (((FSNamesystem) namesystem).isErasureCodingEnabled()) {
+            locks.add(lf.getIndivdualEncodingStatusLock(LockType.WRITE,
+                inodeId));
+          }
+        }
+
+        @Override
+        public Object performTask() throws IOException {
+          notInFile.clear();
+          Set<Long> fileBlocks = new HashSet<Long>();
+          fileBlocks.add(group.get(0).getBlock().getBlockId());
+          INode inode = EntityManager.find(INode.Finder.ByINodeId, inodeId);
+          if (inode instanceof INodeFile) {
+            for (BlockInfo block : ((INodeFile) inode).getBlocks()) {
+              fileBlocks.add(block.getBlockId());
+            }
+          }
+          for (ReceivedDeletedBlockInfo rdbi : group) {
+            if (fileBlocks.contains(rdbi.getBlock().getBlockId())) {
+              processIncrementalBlock(node, nodeID, rdbi, received, deleted,
+                  receiving);
+            } else {
+              notInFile.add(rdbi);
+            }
+          }
+          return null;
+        }
+      }.handle(namesystem);
+      ungrouped.addAll(notInFile);
+    }
+    return ungrouped;
+  }
+
+  private void processIncrementalBlock(DatanodeDescriptor node,
+      DatanodeID nodeID, ReceivedDeletedBlockInfo rdbi, int[] received,
+      int[] deleted, int[] receiving) throws IOException {
+    LOG.debug("BLOCK_RECEIVED_AND_DELETED_INC_BLK_REPORT " +
+        rdbi.getStatus() + " bid=" + rdbi.getBlock().getBlockId() +
+        " dataNode=" + node.getXferAddr());
+    switch (rdbi.getStatus()) {
+      case DELETED_BLOCK:
+        removeStoredBlock(rdbi.getBlock(), node);
+        deleted[0]++;
+        break;
+      case RECEIVED_BLOCK:
+        addBlock(node, rdbi.getBlock(), rdbi.getDelHints());
+        received[0]++;
+        break;
+      case RECEIVING_BLOCK:
+        processAndHandleReportedBlock(node, rdbi.getBlock(),
+            ReplicaState.RBW, null);
+        receiving[0]++;
+        break;
+      default:
+        String msg =
+            "Unknown block status code reported by " + nodeID + ": " + rdbi;
+        blockLog.warn(msg);
+        assert false : msg; // if assertions are enabled, throw.
+        break;
+    }
+    if (blockLog.isDebugEnabled()) {
+      blockLog.debug("BLOCK* block " + (rdbi.getStatus()) + ": " +
+          rdbi.getBlock() + " is received from " + nodeID);
+    }
+  }
+
   /**
    * Return the number of nodes hosting a given block, grouped
    * by the state of those replicas.
@@ -36,11 +36,13 @@
 import org.apache.hadoop.hdfs.protocolPB.DatanodeProtocolClientSideTranslatorPB;
 import org.apache.hadoop.hdfs.server.protocol.BalancerBandwidthCommand;
 import org.apache.hadoop.hdfs.server.protocol.BlockCommand;
+import org.apache.hadoop.hdfs.server.protocol.BlockIdCommand;
 import org.apache.hadoop.hdfs.server.protocol.BlockRecoveryCommand;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeCommand;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
+import org.apache.hadoop.hdfs.server.protocol.ErasureCodingCommand;
 import org.apache.hadoop.hdfs.server.protocol.FinalizeCommand;
 import org.apache.hadoop.hdfs.server.protocol.KeyUpdateCommand;
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
@@ -136,6 +138,12 @@ class BPOfferService implements Runnable {
    */
   private final Map<Long, ReceivedDeletedBlockInfo> pendingIncrementalBR =
       Maps.newHashMap();
+  /**
+   * When the oldest of the pending changes which may be held back, see
+   * {@link DNConf#incrementalReportInterval}, was queued, 0 if there are
+   * none. Access should be synchronized on pendingIncrementalBR.
+   */
+  private long firstDeferredReport = 0;
   private Thread blockReportThread = null;
 
 
@@ -290,7 +298,13 @@ void notifyNamenodeReceivingBlock(ExtendedBlock block) {
         new ReceivedDeletedBlockInfo(block.getLocalBlock(),
             BlockStatus.RECEIVING_BLOCK, null);
 
-    notifyNamenodeBlockImmediatelyInt(bInfo);
+    if (dnConf.incrementalReportInterval > 0) {
+      // nobody waits for a replica being received, so report it with the
+      // next finalized one, or once it has been held for long enough
+      notifyNamenodeBlockDeferredInt(bInfo);
+    } else {
+      notifyNamenodeBlockImmediatelyInt(bInfo);
+    }
   }
 
   //This must be called only by blockPoolManager
@@ -592,6 +606,26 @@ assert getBlockPoolId().equals(bp) :
           dxcs.balanceThrottler.setBandwidth(bandwidth);
         }
         break;
+      case DatanodeProtocol.DNA_ERASURE_CODING:
+        ErasureCodingCommand ecCmd = (ErasureCodingCommand) cmd;
+        ErasureCodingWorker worker = dn.getErasureCodingWorker();
+        worker.cancel(ecCmd.getCanceledTaskIds());
+        worker.submit(ecCmd.getTasks());
+        break;
+      case DatanodeProtocol.DNA_CACHE:
+        BlockIdCommand cacheCmd = (BlockIdCommand) cmd;
+        LOG.info("DatanodeCommand action: DNA_CACHE for " +
+            cacheCmd.getBlockIds().length + " blocks");
+        dn.getFSDataset()
+            .cache(cacheCmd.getBlockPoolId(), cacheCmd.getBlockIds());
+        break;
+      case DatanodeProtocol.DNA_UNCACHE:
+        BlockIdCommand uncacheCmd = (BlockIdCommand) cmd;
+        LOG.info("DatanodeCommand action: DNA_UNCACHE for " +
+            uncacheCmd.getBlockIds().length + " blocks");
+        dn.getFSDataset()
+            .uncache(uncacheCmd.getBlockPoolId(), uncacheCmd.getBlockIds());
+        break;
       default:
         LOG.warn("Unknown DatanodeCommand action: " + cmd.getAction());
     }
@@ -643,7 +677,8 @@ private void whirlingLikeASufi()
         long startTime = now();
 
         if (pendingReceivedRequests > 0 ||
-            (startTime - lastDeletedReport > dnConf.deleteReportInterval)) {
+            (startTime - lastDeletedReport > dnConf.deleteReportInterval) ||
+            isDeferredReportDue(startTime)) {
           reportReceivedDeletedBlocks();
           lastDeletedReport = startTime;
         }
@@ -664,6 +699,12 @@ private void whirlingLikeASufi()
         //
         long waitTime = 1000;
         synchronized (pendingIncrementalBR) {
+          if (firstDeferredReport != 0) {
+            // wake up in time to send the held back changes
+            waitTime = Math.max(1, Math.min(waitTime,
+                firstDeferredReport + dnConf.incrementalReportInterval -
+                    now()));
+          }
           if (waitTime > 0 && pendingReceivedRequests == 0) {
             try {
               pendingIncrementalBR.wait(waitTime);
@@ -705,6 +746,7 @@ private void reportReceivedDeletedBlocks() throws IOException {
             .toArray(new ReceivedDeletedBlockInfo[numBlocks]);
       }
       pendingIncrementalBR.clear();
+      firstDeferredReport = 0;
     }
     if (receivedAndDeletedBlockArray != null) {
       StorageReceivedDeletedBlocks[] report =
@@ -727,7 +769,25 @@ private void reportReceivedDeletedBlocks() throws IOException {
               }
             }
           }
-          pendingReceivedRequests = pendingIncrementalBR.size();
+          // only the changes that were to be reported right away make the
+          // next iteration report again, the others wait for their interval
+          int immediate = 0;
+          boolean deferred = false;
+          for (ReceivedDeletedBlockInfo rdbi : pendingIncrementalBR.values()) {
+            if (rdbi.getStatus() == BlockStatus.DELETED_BLOCK) {
+              continue;
+            }
+            if (rdbi.getStatus() == BlockStatus.RECEIVING_BLOCK &&
+                dnConf.incrementalReportInterval > 0) {
+              deferred = true;
+            } else {
+              immediate++;
+            }
+          }
+          pendingReceivedRequests = immediate;
+          if (deferred && firstDeferredReport == 0) {
+            firstDeferredReport = now();
+          }
         }
       }
     }
@@ -749,6 +809,37 @@ void notifyNamenodeBlockImmediatelyInt(ReceivedDeletedBlockInfo bInfo) {
   void notifyNamenodeDeletedBlockInt(ReceivedDeletedBlockInfo bInfo) {
     synchronized (pendingIncrementalBR) {
       pendingIncrementalBR.put(bInfo.getBlock().getBlockId(), bInfo);
+      reportIfTooManyPending();
+    }
+  }
+
+  /**
+   * Queue a change which may be held back for up to
+   * {@link DNConf#incrementalReportInterval}, so that the changes of many
+   * blocks reach the NN in one incremental block report.
+   */
+  void notifyNamenodeBlockDeferredInt(ReceivedDeletedBlockInfo bInfo) {
+    synchronized (pendingIncrementalBR) {
+      pendingIncrementalBR.put(bInfo.getBlock().getBlockId(), bInfo);
+      if (firstDeferredReport == 0) {
+        firstDeferredReport = now();
+      }
+      reportIfTooManyPending();
+    }
+  }
+
+  private void reportIfTooManyPending() {
+    if (pendingIncrementalBR.size() >= dnConf.incrementalReportMaxBlocks &&
+        pendingReceivedRequests == 0) {
+      pendingReceivedRequests++;
+      pendingIncrementalBR.notifyAll();
+    }
+  }
+
+  private boolean isDeferredReportDue(long now) {
+    synchronized (pendingIncrementalBR) {
+      return firstDeferredReport != 0 &&
+          now - firstDeferredReport >= dnConf.incrementalReportInterval;
     }
   }
   
@@ -30,6 +30,7 @@
 import org.apache.hadoop.hdfs.protocolPB.DatanodeProtocolClientSideTranslatorPB;
 import org.apache.hadoop.hdfs.server.common.IncorrectVersionException;
 import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
+import org.apache.hadoop.hdfs.server.protocol.CacheReport;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeCommand;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
 import org.apache.hadoop.hdfs.server.protocol.DisallowedDatanodeException;
@@ -71,6 +72,7 @@ class BPServiceActor implements Runnable {
   Thread bpThread;
   DatanodeProtocolClientSideTranslatorPB bpNamenode;
   private volatile long lastHeartbeat = 0;
+  private long lastCacheReport = 0;
   private volatile boolean initialized = false;
   private volatile boolean shouldServiceRun = true;
   private final DataNode dn;
@@ -240,9 +242,31 @@ HeartbeatResponse sendHeartBeat() throws IOException {
             dn.getFSDataset().getCapacity(), dn.getFSDataset().getDfsUsed(),
             dn.getFSDataset().getRemaining(),
             dn.getFSDataset().getBlockPoolUsed(bpos.getBlockPoolId()))};
+    ErasureCodingWorker codingWorker = dn.getErasureCodingWorker();
     return bpNamenode
         .sendHeartbeat(bpRegistration, report, dn.getXmitsInProgress(),
-            dn.getXceiverCount(), dn.getFSDataset().getNumFailedVolumes());
+            dn.getXceiverCount(), dn.getFSDataset().getNumFailedVolumes(),
+            codingWorker == null ? null : codingWorker.getStatuses(),
+            getCacheReport());
+  }
+
+  /**
+   * @return the usage of the cache, listing the cached blocks of the block
+   *     pool every dfs.cachereport.intervalMsec
+   */
+  private CacheReport getCacheReport() {
+    long capacity = dn.getFSDataset().getCacheCapacity();
+    if (capacity == 0) {
+      return null;
+    }
+    long[] blockIds = null;
+    long now = now();
+    if (now - lastCacheReport > dnConf.cacheReportInterval) {
+      blockIds = dn.getFSDataset().getCacheReport(bpos.getBlockPoolId());
+      lastCacheReport = now;
+    }
+    return new CacheReport(capacity, dn.getFSDataset().getCacheUsed(),
+        blockIds);
   }
   
   //This must be called only by BPOfferService
@@ -414,6 +438,8 @@ void register() throws IOException {
     
     LOG.info("Block pool " + this + " successfully registered with NN");
     bpos.registrationSucceeded(this, bpRegistration);
+    // the namenode may have lost track of the cached blocks
+    lastCacheReport = 0;
 
     // random short delay - helps scatter the BR from all DNs
     bpos.scheduleBlockReport(dnConf.initialBlockReportDelay);
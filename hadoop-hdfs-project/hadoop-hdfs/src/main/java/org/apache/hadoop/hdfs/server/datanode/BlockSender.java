@@ -227,10 +227,10 @@ class BlockSender implements java.io.Closeable {
       
       final Replica replica;
       final long replicaVisibleLength;
-      synchronized (datanode.data) {
-        replica = getReplica(block, datanode);
-        replicaVisibleLength = replica.getVisibleLength();
-      }
+      // the dataset lock would not keep the replica from being finalized or
+      // appended to, the replica and its length are read from one object
+      replica = getReplica(block, datanode);
+      replicaVisibleLength = replica.getVisibleLength();
       // if there is a write in progress
       ChunkChecksum chunkChecksum = null;
       if (replica instanceof ReplicaBeingWritten) {
@@ -91,6 +91,7 @@
 import org.apache.hadoop.http.HttpServer;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.ReadaheadPool;
+import org.apache.hadoop.io.nativeio.NativeIO;
 import org.apache.hadoop.ipc.ProtobufRpcEngine;
 import org.apache.hadoop.ipc.RPC;
 import org.apache.hadoop.ipc.RemoteException;
@@ -167,6 +168,7 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_HTTP_ADDRESS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_IPC_ADDRESS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_KEYTAB_FILE_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_MAX_LOCKED_MEMORY_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_PLUGINS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SCAN_PERIOD_HOURS_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SCAN_PERIOD_HOURS_KEY;
@@ -266,6 +268,7 @@ public static InetSocketAddress createSocketAddr(String target) {
   
   volatile DataBlockScanner blockScanner = null;
   private DirectoryScanner directoryScanner = null;
+  private ErasureCodingWorker erasureCodingWorker = null;
   
   /**
    * Activated plug-ins.
@@ -444,6 +447,10 @@ private void initIpcServer(Configuration conf) throws IOException {
     }
   }
   
+  ErasureCodingWorker getErasureCodingWorker() {
+    return erasureCodingWorker;
+  }
+
   /**
    * Initialize the datanode's periodic scanners:
    * {@link DataBlockScanner}
@@ -685,6 +692,24 @@ void startDataNode(Configuration conf, AbstractList<File> dataDirs,
     this.conf = conf;
     this.dnConf = new DNConf(conf);
 
+    if (dnConf.maxLockedMemory > 0) {
+      if (!NativeIO.POSIX.getCacheManipulator().verifyCanMlock()) {
+        throw new RuntimeException(String.format(
+            "Cannot start datanode because the configured max locked memory" +
+                " size (%s) is greater than zero and native code is not" +
+                " available.", DFS_DATANODE_MAX_LOCKED_MEMORY_KEY));
+      }
+      long ulimit = NativeIO.POSIX.getCacheManipulator().getMemlockLimit();
+      if (dnConf.maxLockedMemory > ulimit) {
+        throw new RuntimeException(String.format(
+            "Cannot start datanode because the configured max locked memory" +
+                " size (%s) of %d bytes is more than the datanode's available" +
+                " RLIMIT_MEMLOCK ulimit of %d bytes.",
+            DFS_DATANODE_MAX_LOCKED_MEMORY_KEY, dnConf.maxLockedMemory,
+            ulimit));
+      }
+    }
+
     storage = new DataStorage();
     
     // global DN settings
@@ -698,6 +723,9 @@ void startDataNode(Configuration conf, AbstractList<File> dataDirs,
 
     metrics = DataNodeMetrics.create(conf, getDisplayName());
 
+    erasureCodingWorker =
+        new ErasureCodingWorker(conf, dnConf.heartBeatInterval);
+
     blockPoolManager = new BlockPoolManager(this);
     blockPoolManager.refreshNamenodes(conf);
 
@@ -1129,6 +1157,9 @@ public void shutdown() {
         this.blockPoolManager.getAllNamenodeThreads();
     this.shouldRun = false;
     shutdownPeriodicScanners();
+    if (erasureCodingWorker != null) {
+      erasureCodingWorker.shutdown();
+    }
     
     if (infoServer != null) {
       try {
@@ -1250,10 +1281,19 @@ private void handleDiskError(String errMsgr) {
   }
 
   /**
-   * Number of concurrent xceivers per node.
+   * Number of concurrent xceivers per node. In the NIO mode of the
+   * {@link DataXceiverServer} this is the number of open connections, as
+   * idle connections do not hold a thread.
    */
   @Override // DataNodeMXBean
   public int getXceiverCount() {
+    if (dataXceiverServer != null) {
+      DataXceiverServer server =
+          (DataXceiverServer) dataXceiverServer.getRunnable();
+      if (server.nioEnabled) {
+        return server.getConnectionCount();
+      }
+    }
     return threadGroup == null ? 0 : threadGroup.activeCount();
   }
   
@@ -2154,30 +2194,34 @@ void transferReplicaForPipelineRecovery(final ExtendedBlock b,
     final BlockConstructionStage stage;
 
     //get replica information
-    synchronized (data) {
-      Block storedBlock =
-          data.getStoredBlock(b.getBlockPoolId(), b.getBlockId());
-      if (null == storedBlock) {
-        throw new IOException(b + " not found in datanode.");
-      }
-      storedGS = storedBlock.getGenerationStamp();
-      if (storedGS < b.getGenerationStamp()) {
-        throw new IOException(
-            storedGS + " = storedGS < b.getGenerationStamp(), b=" + b);
-      }
-      // Update the genstamp with storedGS
-      b.setGenerationStamp(storedGS);
-      if (data.isValidRbw(b)) {
-        stage = BlockConstructionStage.TRANSFER_RBW;
-      } else if (data.isValidBlock(b)) {
-        stage = BlockConstructionStage.TRANSFER_FINALIZED;
-      } else {
-        final String r =
-            data.getReplicaString(b.getBlockPoolId(), b.getBlockId());
-        throw new IOException(b + " is neither a RBW nor a Finalized, r=" + r);
-      }
-      visible = data.getReplicaVisibleLength(b);
+    // Not under the dataset lock: getStoredBlock takes the lock of the block,
+    // which must not be taken while holding the dataset lock, and the dataset
+    // lock does not keep the replica from being finalized or appended to
+    // meanwhile, as these only hold the lock of the block while they move its
+    // files. Like before, the replica may still change between these checks
+    // and the transfer.
+    Block storedBlock =
+        data.getStoredBlock(b.getBlockPoolId(), b.getBlockId());
+    if (null == storedBlock) {
+      throw new IOException(b + " not found in datanode.");
+    }
+    storedGS = storedBlock.getGenerationStamp();
+    if (storedGS < b.getGenerationStamp()) {
+      throw new IOException(
+          storedGS + " = storedGS < b.getGenerationStamp(), b=" + b);
+    }
+    // Update the genstamp with storedGS
+    b.setGenerationStamp(storedGS);
+    if (data.isValidRbw(b)) {
+      stage = BlockConstructionStage.TRANSFER_RBW;
+    } else if (data.isValidBlock(b)) {
+      stage = BlockConstructionStage.TRANSFER_FINALIZED;
+    } else {
+      final String r =
+          data.getReplicaString(b.getBlockPoolId(), b.getBlockId());
+      throw new IOException(b + " is neither a RBW nor a Finalized, r=" + r);
     }
+    visible = data.getReplicaVisibleLength(b);
     //set visible length
     b.setNumBytes(visible);
 
@@ -47,6 +47,7 @@
 import org.apache.hadoop.net.SocketInputWrapper;
 import org.apache.hadoop.security.token.SecretManager.InvalidToken;
 import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.DataChecksum;
 
 import java.io.BufferedInputStream;
@@ -63,6 +64,8 @@
 import java.net.SocketException;
 import java.nio.channels.ClosedChannelException;
 import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
 
 import static org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.Status.ERROR;
 import static org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.Status.ERROR_ACCESS_TOKEN;
@@ -87,9 +90,22 @@ class DataXceiver extends Receiver implements Runnable {
   private final DataXceiverServer dataXceiverServer;
   private final boolean connectToDnViaHostname;
   private long opStartTime; //the start time of receiving an Op
+  private Op op = null; // the current or last Op
+  private int opsProcessed = 0;
+  private boolean closed = false;
   private final SocketInputWrapper socketIn;
   private OutputStream socketOut;
 
+  /**
+   * The operations which, in the NIO mode of the {@link DataXceiverServer},
+   * run on a thread of their own instead of the worker pool. They wait on
+   * other data-nodes for as long as they stream a block, so a pipeline could
+   * otherwise take all the workers the downstream data-nodes are waiting
+   * for.
+   */
+  static final Set<Op> DEDICATED_THREAD_OPS =
+      EnumSet.of(Op.WRITE_BLOCK, Op.REPLACE_BLOCK, Op.TRANSFER_BLOCK);
+
   /**
    * Client Name used in previous operation. Not available on first request
    * on the socket.
@@ -155,91 +171,233 @@ private OutputStream getOutputStream() {
    */
   @Override
   public void run() {
-    int opsProcessed = 0;
-    Op op = null;
-    
     dataXceiverServer.childSockets.add(s);
-    
     try {
-      
-      InputStream input = socketIn;
-      if (dnConf.encryptDataTransfer) {
-        IOStreamPair encryptedStreams = null;
-        try {
-          encryptedStreams = DataTransferEncryptor
-              .getEncryptedStreams(socketOut, socketIn,
-                  datanode.blockPoolTokenSecretManager,
-                  dnConf.encryptionAlgorithm);
-        } catch (InvalidMagicNumberException imne) {
-          LOG.info("Failed to read expected encryption handshake from client " +
-              "at " + s.getInetAddress() +
-              ". Perhaps the client is running an " +
-              "older version of Hadoop which does not support encryption");
-          return;
+      if (setUpStreams()) {
+        while (processNextOp()) {
+          // keep serving the connection
         }
-        input = encryptedStreams.in;
-        socketOut = encryptedStreams.out;
       }
-      input = new BufferedInputStream(input, HdfsConstants.SMALL_BUFFER_SIZE);
-      
-      super.initialize(new DataInputStream(input));
-      
-      // We process requests in a loop, and stay around for a short timeout.
-      // This optimistic behaviour allows the other end to reuse connections.
-      // Setting keepalive timeout to 0 disable this behavior.
-      do {
-        updateCurrentThreadName("Waiting for operation #" + (opsProcessed + 1));
+    } catch (Throwable t) {
+      logError(t);
+    } finally {
+      cleanUp();
+    }
+  }
+
+  /**
+   * Processes the operations the client already sent, for the NIO mode of
+   * the {@link DataXceiverServer}. Unlike {@link #run()}, this returns
+   * instead of waiting for the next operation of the client, so that an
+   * idle connection does not hold a thread. The connection is then added
+   * back to the selector, or closed.
+   */
+  void runAvailableOps(DataXceiverSelector selector) {
+    try {
+      if (in == null && !setUpStreams()) {
+        cleanUp();
+        return;
+      }
+      if (runOps(selector, false)) {
+        return;
+      }
+    } catch (Throwable t) {
+      logError(t);
+    }
+    cleanUp();
+  }
+
+  /**
+   * Runs the buffered operations until the client has not sent any more.
+   * The {@link #DEDICATED_THREAD_OPS} are handed to a thread of their own
+   * unless already running on one.
+   *
+   * @return false if the connection must be closed
+   */
+  private boolean runOps(DataXceiverSelector selector, boolean dedicated)
+      throws IOException {
+    while (readNextOp()) {
+      if (!dedicated && DEDICATED_THREAD_OPS.contains(op)) {
+        startDedicatedThread(selector);
+        return true;
+      }
+      if (!runOp()) {
+        return false;
+      }
+      if (in.available() == 0) {
+        selector.add(this);
+        return true;
+      }
+    }
+    return false;
+  }
 
+  private void startDedicatedThread(final DataXceiverSelector selector) {
+    new Daemon(datanode.threadGroup, new Runnable() {
+      @Override
+      public void run() {
         try {
-          if (opsProcessed != 0) {
-            assert dnConf.socketKeepaliveTimeout > 0;
-            socketIn.setTimeout(dnConf.socketKeepaliveTimeout);
-          } else {
-            socketIn.setTimeout(dnConf.socketTimeout);
-          }
-          op = readOp();
-        } catch (InterruptedIOException ignored) {
-          // Time out while we wait for client rpc
-          break;
-        } catch (IOException err) {
-          // Since we optimistically expect the next op, it's quite normal to get EOF here.
-          if (opsProcessed > 0 && (err instanceof EOFException ||
-              err instanceof ClosedChannelException)) {
-            if (LOG.isDebugEnabled()) {
-              LOG.debug(
-                  "Cached " + s.toString() + " closing after " + opsProcessed +
-                      " ops");
+          if (runOp()) {
+            if (in.available() == 0) {
+              selector.add(DataXceiver.this);
+              return;
+            }
+            if (runOps(selector, true)) {
+              return;
             }
-          } else {
-            throw err;
           }
-          break;
+        } catch (Throwable t) {
+          logError(t);
         }
+        cleanUp();
+      }
+    }).start();
+  }
+
+  /**
+   * @return how long, in milliseconds, the connection may wait for its next
+   * operation
+   */
+  long getIdleTimeout() {
+    return opsProcessed == 0 ? dnConf.socketTimeout :
+        dnConf.socketKeepaliveTimeout;
+  }
 
-        // restore normal timeout
-        if (opsProcessed != 0) {
-          s.setSoTimeout(dnConf.socketTimeout);
+  Socket getSocket() {
+    return s;
+  }
+
+  /**
+   * Sets up the streams of the connection, doing the encryption handshake
+   * if data transfer is encrypted.
+   *
+   * @return false if the connection must be closed
+   */
+  private boolean setUpStreams() throws IOException {
+    InputStream input = socketIn;
+    if (dnConf.encryptDataTransfer) {
+      IOStreamPair encryptedStreams = null;
+      try {
+        encryptedStreams = DataTransferEncryptor
+            .getEncryptedStreams(socketOut, socketIn,
+                datanode.blockPoolTokenSecretManager,
+                dnConf.encryptionAlgorithm);
+      } catch (InvalidMagicNumberException imne) {
+        LOG.info("Failed to read expected encryption handshake from client " +
+            "at " + s.getInetAddress() +
+            ". Perhaps the client is running an " +
+            "older version of Hadoop which does not support encryption");
+        return false;
+      }
+      input = encryptedStreams.in;
+      socketOut = encryptedStreams.out;
+    }
+    input = new BufferedInputStream(input, HdfsConstants.SMALL_BUFFER_SIZE);
+
+    super.initialize(new DataInputStream(input));
+    return true;
+  }
+
+  /**
+   * Waits for the next operation of the client and processes it.
+   *
+   * @return true if the connection should be kept open for another operation
+   */
+  private boolean processNextOp() throws IOException {
+    return readNextOp() && runOp();
+  }
+
+  /**
+   * Waits for the next operation of the client.
+   *
+   * @return false if the client closed the connection or did not send an
+   * operation in time
+   */
+  private boolean readNextOp() throws IOException {
+    updateCurrentThreadName("Waiting for operation #" + (opsProcessed + 1));
+
+    try {
+      if (opsProcessed != 0) {
+        assert dnConf.socketKeepaliveTimeout > 0;
+        socketIn.setTimeout(dnConf.socketKeepaliveTimeout);
+      } else {
+        socketIn.setTimeout(dnConf.socketTimeout);
+      }
+      op = readOp();
+    } catch (InterruptedIOException ignored) {
+      // Time out while we wait for client rpc
+      return false;
+    } catch (IOException err) {
+      // Since we optimistically expect the next op, it's quite normal to get EOF here.
+      if (opsProcessed > 0 && (err instanceof EOFException ||
+          err instanceof ClosedChannelException)) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug(
+              "Cached " + s.toString() + " closing after " + opsProcessed +
+                  " ops");
         }
+      } else {
+        throw err;
+      }
+      return false;
+    }
 
-        opStartTime = now();
-        processOp(op);
-        ++opsProcessed;
-      } while (!s.isClosed() && dnConf.socketKeepaliveTimeout > 0);
-    } catch (Throwable t) {
-      LOG.error(datanode.getDisplayName() + ":DataXceiver error processing " +
-          ((op == null) ? "unknown" : op.name()) + " operation " +
-          " src: " + remoteAddress +
-          " dest: " + localAddress, t);
-    } finally {
-      if (LOG.isDebugEnabled()) {
-        LOG.debug(
-            datanode.getDisplayName() + ":Number of active connections is: " +
-                datanode.getXceiverCount());
+    // restore normal timeout
+    if (opsProcessed != 0) {
+      s.setSoTimeout(dnConf.socketTimeout);
+    }
+    return true;
+  }
+
+  /**
+   * Processes the operation read by {@link #readNextOp()}.
+   *
+   * @return true if the connection should be kept open for another operation
+   */
+  private boolean runOp() throws IOException {
+    opStartTime = now();
+    processOp(op);
+    ++opsProcessed;
+    // We process requests in a loop, and stay around for a short timeout.
+    // This optimistic behaviour allows the other end to reuse connections.
+    // Setting keepalive timeout to 0 disable this behavior.
+    return !s.isClosed() && dnConf.socketKeepaliveTimeout > 0;
+  }
+
+  private void logError(Throwable t) {
+    LOG.error(datanode.getDisplayName() + ":DataXceiver error processing " +
+        ((op == null) ? "unknown" : op.name()) + " operation " +
+        " src: " + remoteAddress +
+        " dest: " + localAddress, t);
+  }
+
+  private void cleanUp() {
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(
+          datanode.getDisplayName() + ":Number of active connections is: " +
+              datanode.getXceiverCount());
+    }
+    updateCurrentThreadName("Cleaning up");
+    close();
+  }
+
+  /**
+   * Closes the connection. Used by the NIO mode of the
+   * {@link DataXceiverServer} to close connections which stayed idle for
+   * longer than {@link #getIdleTimeout()}.
+   */
+  void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
       }
-      updateCurrentThreadName("Cleaning up");
-      IOUtils.closeStream(in);
-      IOUtils.closeSocket(s);
-      dataXceiverServer.childSockets.remove(s);
+      closed = true;
+    }
+    IOUtils.closeStream(in);
+    IOUtils.closeSocket(s);
+    dataXceiverServer.childSockets.remove(s);
+    if (datanode.metrics != null) {
+      datanode.metrics.decrDataXceiverConnections();
     }
   }
 
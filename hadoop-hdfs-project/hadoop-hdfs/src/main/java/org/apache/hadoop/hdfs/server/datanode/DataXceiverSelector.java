@@ -0,0 +1,224 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import org.apache.commons.logging.Log;
+import org.apache.hadoop.io.IOUtils;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.apache.hadoop.util.Time.now;
+
+/**
+ * Multiplexes the idle connections of a {@link DataXceiverServer} running in
+ * NIO mode. A connection waits in the selector until its client sends the
+ * next operation, which is then run on the bounded worker pool of the
+ * server, or on a thread of its own for the
+ * {@link DataXceiver#DEDICATED_THREAD_OPS}. A connection which stays idle
+ * for longer than its timeout is closed.
+ * <p/>
+ * A connection is queued for the workers at most once at a time, so the
+ * worker queue is bounded by the number of connections, which the server
+ * limits to dfs.datanode.max.transfer.threads.
+ */
+class DataXceiverSelector implements Runnable {
+  static final Log LOG = DataNode.LOG;
+
+  private static final long SELECT_TIMEOUT_MS = 1000;
+
+  private static class Connection {
+    private final DataXceiver xceiver;
+    private boolean idle = false;
+    private long idleSince;
+
+    Connection(DataXceiver xceiver) {
+      this.xceiver = xceiver;
+    }
+  }
+
+  private final DataNode datanode;
+  private final ThreadPoolExecutor workers;
+  private final Selector selector;
+  private final Queue<DataXceiver> pending =
+      new ConcurrentLinkedQueue<DataXceiver>();
+  private volatile boolean running = true;
+  private long lastExpiryCheck = 0;
+
+  DataXceiverSelector(DataNode datanode, ThreadPoolExecutor workers)
+      throws IOException {
+    this.datanode = datanode;
+    this.workers = workers;
+    this.selector = Selector.open();
+  }
+
+  /**
+   * Makes a connection wait in this selector for the next operation of its
+   * client. May be called from any thread.
+   */
+  void add(DataXceiver xceiver) {
+    pending.add(xceiver);
+    selector.wakeup();
+  }
+
+  void stop() {
+    running = false;
+    selector.wakeup();
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (running && datanode.shouldRun) {
+        selector.select(SELECT_TIMEOUT_MS);
+        registerPending();
+        dispatchReady();
+        closeExpired();
+      }
+    } catch (Throwable t) {
+      LOG.error(datanode.getDisplayName() +
+          ":DataXceiverSelector: Exiting due to: ", t);
+    } finally {
+      closeAll();
+      IOUtils.cleanup(LOG, selector);
+    }
+  }
+
+  private void registerPending() {
+    DataXceiver xceiver;
+    while ((xceiver = pending.poll()) != null) {
+      SocketChannel channel = xceiver.getSocket().getChannel();
+      try {
+        SelectionKey key = channel.keyFor(selector);
+        Connection conn;
+        if (key == null) {
+          conn = new Connection(xceiver);
+          channel.register(selector, SelectionKey.OP_READ, conn);
+        } else {
+          conn = (Connection) key.attachment();
+          key.interestOps(SelectionKey.OP_READ);
+        }
+        conn.idle = true;
+        conn.idleSince = now();
+        if (datanode.metrics != null) {
+          datanode.metrics.incrDataXceiverIdleConnections();
+        }
+      } catch (ClosedChannelException e) {
+        xceiver.close();
+      } catch (CancelledKeyException e) {
+        xceiver.close();
+      }
+    }
+  }
+
+  private void dispatchReady() {
+    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+    while (it.hasNext()) {
+      SelectionKey key = it.next();
+      it.remove();
+      final Connection conn = (Connection) key.attachment();
+      setBusy(conn);
+      if (!key.isValid()) {
+        conn.xceiver.close();
+        continue;
+      }
+      // the worker reads from the channel until the connection is idle again
+      key.interestOps(0);
+      try {
+        workers.execute(new Runnable() {
+          @Override
+          public void run() {
+            Thread thread = Thread.currentThread();
+            String name = thread.getName();
+            try {
+              conn.xceiver.runAvailableOps(DataXceiverSelector.this);
+            } finally {
+              thread.setName(name);
+            }
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        conn.xceiver.close();
+      }
+    }
+    if (datanode.metrics != null) {
+      datanode.metrics.setDataXceiverQueueDepth(workers.getQueue().size());
+    }
+  }
+
+  private void closeExpired() {
+    long now = now();
+    if (now - lastExpiryCheck < SELECT_TIMEOUT_MS) {
+      return;
+    }
+    lastExpiryCheck = now;
+    for (SelectionKey key : selector.keys()) {
+      Connection conn = (Connection) key.attachment();
+      if (conn.idle &&
+          now - conn.idleSince > conn.xceiver.getIdleTimeout()) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Closing idle connection " + conn.xceiver.getSocket());
+        }
+        key.cancel();
+        setBusy(conn);
+        conn.xceiver.close();
+      }
+    }
+  }
+
+  private void closeAll() {
+    List<SelectionKey> keys;
+    try {
+      keys = new ArrayList<SelectionKey>(selector.keys());
+    } catch (RuntimeException e) {
+      // the selector is closed
+      return;
+    }
+    for (SelectionKey key : keys) {
+      Connection conn = (Connection) key.attachment();
+      if (conn.idle) {
+        setBusy(conn);
+        conn.xceiver.close();
+      }
+    }
+    DataXceiver xceiver;
+    while ((xceiver = pending.poll()) != null) {
+      xceiver.close();
+    }
+  }
+
+  private void setBusy(Connection conn) {
+    if (conn.idle) {
+      conn.idle = false;
+      if (datanode.metrics != null) {
+        datanode.metrics.decrDataXceiverIdleConnections();
+      }
+    }
+  }
+}
@@ -34,6 +34,11 @@
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -111,6 +116,18 @@ synchronized void release() {
    * i.e. either the actual block size or the default block size.
    */
   long estimateBlockSize;
+
+  /**
+   * In NIO mode the idle connections wait in selector threads and their
+   * operations run on a bounded pool of worker threads, instead of every
+   * connection holding a thread of its own. Writes and other operations
+   * which wait on other data-nodes run on threads of their own, see
+   * {@link DataXceiver#DEDICATED_THREAD_OPS}.
+   */
+  final boolean nioEnabled;
+  private ThreadPoolExecutor workers;
+  private DataXceiverSelector[] selectors;
+  private int nextSelector = 0;
   
   
   DataXceiverServer(ServerSocket ss, Configuration conf, DataNode datanode) {
@@ -129,10 +146,81 @@ synchronized void release() {
     this.balanceThrottler = new BlockBalanceThrottler(
         conf.getLong(DFSConfigKeys.DFS_DATANODE_BALANCE_BANDWIDTHPERSEC_KEY,
             DFSConfigKeys.DFS_DATANODE_BALANCE_BANDWIDTHPERSEC_DEFAULT));
+
+    boolean nio =
+        conf.getBoolean(DFSConfigKeys.DFS_DATANODE_XCEIVER_NIO_ENABLED_KEY,
+            DFSConfigKeys.DFS_DATANODE_XCEIVER_NIO_ENABLED_DEFAULT);
+    if (nio && ss.getChannel() == null) {
+      LOG.warn(DFSConfigKeys.DFS_DATANODE_XCEIVER_NIO_ENABLED_KEY +
+          " is set but the data transfer socket has no channel, using a" +
+          " thread per connection");
+      nio = false;
+    }
+    this.nioEnabled = nio;
+    if (nioEnabled) {
+      int numWorkers = conf.getInt(
+          DFSConfigKeys.DFS_DATANODE_XCEIVER_NIO_WORKER_THREADS_KEY,
+          DFSConfigKeys.DFS_DATANODE_XCEIVER_NIO_WORKER_THREADS_DEFAULT);
+      int numSelectors = conf.getInt(
+          DFSConfigKeys.DFS_DATANODE_XCEIVER_NIO_SELECTOR_THREADS_KEY,
+          DFSConfigKeys.DFS_DATANODE_XCEIVER_NIO_SELECTOR_THREADS_DEFAULT);
+      this.workers = new ThreadPoolExecutor(numWorkers, numWorkers, 60,
+          TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+          new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+              Thread t = new Daemon(DataXceiverServer.this.datanode.threadGroup,
+                  r);
+              t.setName("DataXceiver worker " + count.incrementAndGet());
+              return t;
+            }
+          });
+      this.workers.allowCoreThreadTimeOut(true);
+      this.selectors = new DataXceiverSelector[Math.max(1, numSelectors)];
+    }
+  }
+
+  /**
+   * @return the number of open data transfer connections
+   */
+  int getConnectionCount() {
+    return childSockets.size();
+  }
+
+  private void startSelectors() throws IOException {
+    for (int i = 0; i < selectors.length; i++) {
+      selectors[i] = new DataXceiverSelector(datanode, workers);
+      Daemon t = new Daemon(datanode.threadGroup, selectors[i]);
+      t.setName("DataXceiver selector " + i);
+      t.start();
+    }
+  }
+
+  private void stopSelectors() {
+    if (!nioEnabled) {
+      return;
+    }
+    for (DataXceiverSelector selector : selectors) {
+      if (selector != null) {
+        selector.stop();
+      }
+    }
+    workers.shutdownNow();
   }
 
   @Override
   public void run() {
+    if (nioEnabled) {
+      try {
+        startSelectors();
+      } catch (IOException e) {
+        LOG.error(datanode.getDisplayName() +
+            ":DataXceiverServer: Exiting due to: ", e);
+        datanode.shouldRun = false;
+      }
+    }
     while (datanode.shouldRun) {
       Socket s = null;
       try {
@@ -147,8 +235,17 @@ public void run() {
               " exceeds the limit of concurrent xcievers: " + maxXceiverCount);
         }
 
-        new Daemon(datanode.threadGroup, DataXceiver.create(s, datanode, this))
-            .start();
+        DataXceiver xceiver = DataXceiver.create(s, datanode, this);
+        if (datanode.metrics != null) {
+          datanode.metrics.incrDataXceiverConnections();
+        }
+        if (nioEnabled) {
+          childSockets.add(s);
+          selectors[nextSelector].add(xceiver);
+          nextSelector = (nextSelector + 1) % selectors.length;
+        } else {
+          new Daemon(datanode.threadGroup, xceiver).start();
+        }
       } catch (SocketTimeoutException ignored) {
         // wake up to see if should continue to run
       } catch (AsynchronousCloseException ace) {
@@ -178,6 +275,7 @@ public void run() {
         datanode.shouldRun = false;
       }
     }
+    stopSelectors();
     try {
       ss.close();
     } catch (IOException ie) {
@@ -195,6 +293,7 @@ void kill() {
     } catch (IOException ie) {
       LOG.warn(datanode.getDisplayName() + ":DataXceiverServer.kill(): ", ie);
     }
+    stopSelectors();
 
     // close all the sockets that were accepted earlier
     synchronized (childSockets) {
@@ -17,6 +17,7 @@
  */
 package org.apache.hadoop.hdfs.server.datanode;
 
+import com.google.common.base.Charsets;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -26,20 +27,29 @@
 import org.apache.hadoop.hdfs.DFSUtil;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.common.GenerationStamp;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.hdfs.util.AtomicFileOutputStream;
+import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.Time;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -62,6 +72,15 @@ public class DirectoryScanner implements Runnable {
   private final long scanPeriodMsecs;
   private volatile boolean shouldRun = false;
   private boolean retainDiffs = false;
+  private final boolean incremental;
+  private final long throttleLimitMsPerSec;
+
+  /**
+   * The file in the current directory of a block pool which records the
+   * last directory reconciled by the incremental scan of its volume.
+   */
+  static final String SCAN_CURSOR_FILE = "scanner.cursor";
+  private static final long SCAN_CURSOR_SAVE_INTERVAL_MS = 60 * 1000;
 
   ScanInfoPerBlockPool diffs = new ScanInfoPerBlockPool();
   Map<String, Stats> stats = new HashMap<String, Stats>();
@@ -247,6 +266,12 @@ public long getGenStamp() {
         Executors.newFixedThreadPool(threads, new Daemon.DaemonFactory());
     masterThread =
         new ScheduledThreadPoolExecutor(1, new Daemon.DaemonFactory());
+    incremental =
+        conf.getBoolean(DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_KEY,
+            DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_DEFAULT);
+    throttleLimitMsPerSec = conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_KEY,
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_DEFAULT);
   }
 
   void start() {
@@ -285,7 +310,11 @@ public void run() {
       }
 
       //We're are okay to run - do it
-      reconcile();
+      if (incremental) {
+        reconcileIncrementally();
+      } else {
+        reconcile();
+      }
       
     } catch (Exception e) {
       //Log and continue - allows Executor to run again next cycle
@@ -425,6 +454,360 @@ void scan() {
     } //end synchronizedz
   }
 
+  /**
+   * Reconcile differences between disk and in-memory blocks one directory at
+   * a time. Unlike {@link #reconcile()}, no report of the whole volume is
+   * compiled and the dataset lock is only held to look up and update single
+   * replicas. The volumes are walked in parallel, each from where its
+   * previous walk stopped. The blocks in memory which were not found by the
+   * walks are checked once every volume was walked from the start.
+   */
+  void reconcileIncrementally() {
+    List<? extends FsVolumeSpi> volumes = dataset.getVolumes();
+    List<Future<Map<String, BlockIdList>>> walks =
+        new ArrayList<Future<Map<String, BlockIdList>>>(volumes.size());
+    for (FsVolumeSpi volume : volumes) {
+      walks.add(reportCompileThreadPool.submit(new VolumeWalker(volume)));
+    }
+
+    Map<String, BlockIdList> found = new HashMap<String, BlockIdList>();
+    Set<String> incomplete = new HashSet<String>();
+    for (Future<Map<String, BlockIdList>> walk : walks) {
+      Map<String, BlockIdList> result;
+      try {
+        result = walk.get();
+      } catch (Exception ex) {
+        LOG.error("Error scanning volume", ex);
+        return;
+      }
+      for (String bpid : dataset.getBlockPoolList()) {
+        BlockIdList ids = result.get(bpid);
+        if (ids == null) {
+          incomplete.add(bpid);
+        } else if (found.containsKey(bpid)) {
+          found.get(bpid).addAll(ids);
+        } else {
+          found.put(bpid, ids);
+        }
+      }
+    }
+
+    for (Entry<String, BlockIdList> entry : found.entrySet()) {
+      String bpid = entry.getKey();
+      if (isShutdown() || incomplete.contains(bpid)) {
+        continue;
+      }
+      BlockIdList ids = entry.getValue();
+      ids.sort();
+      long missing = 0;
+      for (Block block : dataset.getFinalizedBlocks(bpid)) {
+        if (!ids.contains(block.getBlockId())) {
+          // The block was not found on any volume, or it was finalized after
+          // its directory was walked. checkAndUpdate tells them apart.
+          dataset.checkAndUpdate(bpid, block.getBlockId(), null, null, null);
+          missing++;
+        }
+      }
+      LOG.info("BlockPool " + bpid + " blocks in memory not found by the scan:" +
+          missing);
+    }
+  }
+
+  /**
+   * @return true once {@link #shutdown()} was called. Unlike shouldRun, this
+   * is false when reconcileIncrementally is called without {@link #start()}.
+   */
+  private boolean isShutdown() {
+    return masterThread.isShutdown();
+  }
+
+  /**
+   * Walks the finalized directories of a volume, reconciling the blocks of
+   * each directory as soon as it is listed. The walk visits directories in
+   * a fixed order, and its position is saved in {@link #SCAN_CURSOR_FILE}
+   * so that a stopped walk resumes where it stopped.
+   * <p/>
+   * Returns the ids of the blocks found per block pool, or no ids for the
+   * block pools whose walk did not start from the beginning or was stopped.
+   */
+  private class VolumeWalker implements Callable<Map<String, BlockIdList>> {
+    private final FsVolumeSpi volume;
+    private String bpid;
+    private File cursorFile;
+    private List<String> cursor;
+    private BlockIdList found;
+    private Stats statsRecord;
+    private long lastCursorSave;
+    private long windowStart;
+    private long windowBusyMs;
+
+    VolumeWalker(FsVolumeSpi volume) {
+      this.volume = volume;
+    }
+
+    @Override
+    public Map<String, BlockIdList> call() throws Exception {
+      Map<String, BlockIdList> result = new HashMap<String, BlockIdList>();
+      if (!isValid(dataset, volume)) {
+        return result;
+      }
+      for (String bpid : volume.getBlockPoolList()) {
+        if (isShutdown() || Thread.currentThread().isInterrupted()) {
+          break;
+        }
+        this.bpid = bpid;
+        File finalizedDir = volume.getFinalizedDir(bpid);
+        cursorFile = new File(finalizedDir.getParentFile(), SCAN_CURSOR_FILE);
+        cursor = readCursor(cursorFile);
+        found = cursor == null ? new BlockIdList() : null;
+        statsRecord = new Stats(bpid);
+        lastCursorSave = Time.monotonicNow();
+        windowStart = lastCursorSave;
+        windowBusyMs = 0;
+
+        if (walk(finalizedDir, Collections.<String>emptyList())) {
+          if (!cursorFile.delete() && cursorFile.exists()) {
+            LOG.warn("Failed to delete " + cursorFile);
+          }
+          LOG.info(volume + ": " + statsRecord);
+          if (found != null) {
+            result.put(bpid, found);
+          }
+        } else if (!Thread.currentThread().isInterrupted()) {
+          writeCursor();
+        } else {
+          // the cursor was saved by throttle
+          break;
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Walks a directory and the directories below it.
+     *
+     * @param path
+     *     the names of the directories from the finalized directory to dir
+     * @return false if the walk was stopped
+     */
+    private boolean walk(File dir, List<String> path) {
+      if (isShutdown()) {
+        return false;
+      }
+      long start = Time.monotonicNow();
+      File[] files;
+      try {
+        files = FileUtil.listFiles(dir);
+      } catch (IOException ioe) {
+        LOG.warn("Exception occured while scanning " + dir + ": ", ioe);
+        // Ignore this directory and proceed.
+        return true;
+      }
+      List<File> subDirs = new ArrayList<File>();
+      if (cursor == null || compareDirs(path, cursor) > 0) {
+        List<ScanInfo> blocks = new ArrayList<ScanInfo>();
+        compileDirReport(volume, files, blocks, subDirs);
+        reconcileDir(blocks);
+        cursor = path;
+      } else {
+        // reconciled by a previous walk
+        compileDirReport(volume, files, null, subDirs);
+      }
+      if (!throttle(start)) {
+        return false;
+      }
+
+      Collections.sort(subDirs);
+      for (File subDir : subDirs) {
+        List<String> subPath = new ArrayList<String>(path.size() + 1);
+        subPath.addAll(path);
+        subPath.add(subDir.getName());
+        if (cursor != null && compareDirs(subPath, cursor) < 0 &&
+            !isPrefix(subPath, cursor)) {
+          // reconciled by a previous walk, with everything below it
+          continue;
+        }
+        if (!walk(subDir, subPath)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void reconcileDir(List<ScanInfo> blocks) {
+      statsRecord.totalBlocks += blocks.size();
+      for (ScanInfo info : blocks) {
+        if (found != null) {
+          found.add(info.getBlockId());
+        }
+        @SuppressWarnings("deprecation")
+        Replica memBlock = dataset.getReplica(bpid, info.getBlockId());
+        if (memBlock == null) {
+          statsRecord.missingMemoryBlocks++;
+        } else if (memBlock.getState() != ReplicaState.FINALIZED) {
+          // Block is not finalized - ignore the difference
+          continue;
+        } else if (info.getBlockFile() == null) {
+          // Block metadata file exits and block file is missing
+        } else if (info.getGenStamp() != memBlock.getGenerationStamp() ||
+            info.getBlockFile().length() != memBlock.getNumBytes()) {
+          statsRecord.mismatchBlocks++;
+        } else {
+          continue;
+        }
+        statsRecord.missingMetaFile += info.getMetaFile() == null ? 1 : 0;
+        statsRecord.missingBlockFile += info.getBlockFile() == null ? 1 : 0;
+        dataset.checkAndUpdate(bpid, info.getBlockId(), info.getBlockFile(),
+            info.getMetaFile(), info.getVolume());
+      }
+    }
+
+    /**
+     * Sleeps if the walk used up its share of the current second, and saves
+     * the position of the walk from time to time. If the walk is
+     * interrupted while sleeping, its position is saved and the interrupt
+     * status of the thread is restored.
+     *
+     * @return false if the walk was interrupted
+     */
+    private boolean throttle(long start) {
+      long now = Time.monotonicNow();
+      if (now - lastCursorSave >= SCAN_CURSOR_SAVE_INTERVAL_MS) {
+        writeCursor();
+        lastCursorSave = now;
+      }
+      if (throttleLimitMsPerSec >= 1000) {
+        return true;
+      }
+      windowBusyMs += now - start;
+      if (now - windowStart >= 1000) {
+        windowStart = now;
+        windowBusyMs = 0;
+      } else if (windowBusyMs >= throttleLimitMsPerSec) {
+        try {
+          Thread.sleep(1000 - (now - windowStart));
+        } catch (InterruptedException e) {
+          LOG.info(volume + ": scan interrupted, saving the scan position");
+          writeCursor();
+          Thread.currentThread().interrupt();
+          return false;
+        }
+        windowStart = Time.monotonicNow();
+        windowBusyMs = 0;
+      }
+      return true;
+    }
+
+    private void writeCursor() {
+      if (cursor == null) {
+        return;
+      }
+      StringBuilder sb = new StringBuilder();
+      for (String name : cursor) {
+        sb.append('/').append(name);
+      }
+      sb.append('\n');
+      AtomicFileOutputStream fos = null;
+      try {
+        fos = new AtomicFileOutputStream(cursorFile);
+        fos.write(sb.toString().getBytes(Charsets.UTF_8));
+        fos.close();
+        fos = null;
+      } catch (IOException ioe) {
+        LOG.warn("Failed to save the scan position to " + cursorFile, ioe);
+      } finally {
+        if (fos != null) {
+          fos.abort();
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the directories below the finalized directory in the cursor
+   * file, or null if there is no cursor file
+   */
+  private static List<String> readCursor(File cursorFile) {
+    if (!cursorFile.exists()) {
+      return null;
+    }
+    BufferedReader br = null;
+    try {
+      br = new BufferedReader(new InputStreamReader(
+          new FileInputStream(cursorFile), Charsets.UTF_8));
+      String line = br.readLine();
+      if (line == null) {
+        return null;
+      }
+      List<String> path = new ArrayList<String>();
+      for (String name : line.split("/")) {
+        if (!name.isEmpty()) {
+          path.add(name);
+        }
+      }
+      return path;
+    } catch (IOException ioe) {
+      LOG.warn("Failed to read the scan position from " + cursorFile, ioe);
+      return null;
+    } finally {
+      IOUtils.cleanup(LOG, br);
+    }
+  }
+
+  /**
+   * Compares two directories by the order in which they are walked: a
+   * directory comes before the directories below it, and those come before
+   * its next sibling.
+   */
+  static int compareDirs(List<String> a, List<String> b) {
+    for (int i = 0; i < a.size() && i < b.size(); i++) {
+      int c = a.get(i).compareTo(b.get(i));
+      if (c != 0) {
+        return c;
+      }
+    }
+    return a.size() - b.size();
+  }
+
+  private static boolean isPrefix(List<String> prefix, List<String> path) {
+    return prefix.size() <= path.size() &&
+        prefix.equals(path.subList(0, prefix.size()));
+  }
+
+  /**
+   * A growable list of block ids, searchable once sorted.
+   */
+  static class BlockIdList {
+    private long[] ids = new long[1024];
+    private int size = 0;
+
+    void add(long id) {
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+      }
+      ids[size++] = id;
+    }
+
+    void addAll(BlockIdList that) {
+      if (size + that.size > ids.length) {
+        ids = Arrays.copyOf(ids, Math.max(size + that.size, size * 2));
+      }
+      System.arraycopy(that.ids, 0, ids, size, that.size);
+      size += that.size;
+    }
+
+    void sort() {
+      Arrays.sort(ids, 0, size);
+    }
+
+    /**
+     * Must only be called once the list is sorted.
+     */
+    boolean contains(long id) {
+      return Arrays.binarySearch(ids, 0, size, id) >= 0;
+    }
+  }
+
   /**
    * Block is found on the disk. In-memory block is missing or does not match
    * the block on the disk
@@ -545,43 +928,60 @@ private LinkedList<ScanInfo> compileReport(FsVolumeSpi vol, File dir,
         // Ignore this directory and proceed.
         return report;
       }
-      Arrays.sort(files);
-
-
-      List<File> blkFiles = new ArrayList();
-      List<File> metaFiles = new ArrayList();
-      List<File> subDirs = new ArrayList();
-      for (int i = 0; i < files.length; i++) {
-        if (!files[i].isDirectory()) {
-          if (isBlockMetaFile("blk_", files[i].getName())) {
-            metaFiles.add(files[i]);
-          } else if (Block.isBlockFilename(files[i])) {
-            blkFiles.add(files[i]);
-          }
-        } else {
-          subDirs.add(files[i]);
-        }
-      }
+      List<File> subDirs = new ArrayList<File>();
+      compileDirReport(vol, files, report, subDirs);
 
       for (File subDir : subDirs) {
         compileReport(vol, subDir, report);
       }
 
-      for (int i = blkFiles.size() - 1; i >= 0; i--) {
-        File blkFile = blkFiles.get(i);
-        long blockId = Block.filename2id(blkFile.getName());
-        File metaFile = popMetaFile(blkFile, metaFiles);
-        report.add(new ScanInfo(blockId, blkFile, metaFile, vol));
-        blkFiles.remove(i);
-      }
+      return report;
+    }
+  }
 
-      for (int i = metaFiles.size() - 1; i >= 0; i--) {
-        File metaFile = metaFiles.get(i);
-        long blockId = Block.getBlockId(metaFile.getName());
-        report.add(new ScanInfo(blockId, null, metaFile, vol));
+  /**
+   * Adds a {@link ScanInfo} for the blocks among the files of a directory to
+   * report, and the subdirectories among them to subDirs.
+   *
+   * @param report
+   *     null if only the subdirectories are needed
+   */
+  private static void compileDirReport(FsVolumeSpi vol, File[] files,
+      List<ScanInfo> report, List<File> subDirs) {
+    Arrays.sort(files);
+
+    List<File> blkFiles = new ArrayList<File>();
+    List<File> metaFiles = new ArrayList<File>();
+    for (int i = 0; i < files.length; i++) {
+      if (!files[i].isDirectory()) {
+        if (report == null) {
+          continue;
+        }
+        if (isBlockMetaFile("blk_", files[i].getName())) {
+          metaFiles.add(files[i]);
+        } else if (Block.isBlockFilename(files[i])) {
+          blkFiles.add(files[i]);
+        }
+      } else {
+        subDirs.add(files[i]);
       }
+    }
+    if (report == null) {
+      return;
+    }
 
-      return report;
+    for (int i = blkFiles.size() - 1; i >= 0; i--) {
+      File blkFile = blkFiles.get(i);
+      long blockId = Block.filename2id(blkFile.getName());
+      File metaFile = popMetaFile(blkFile, metaFiles);
+      report.add(new ScanInfo(blockId, blkFile, metaFile, vol));
+      blkFiles.remove(i);
+    }
+
+    for (int i = metaFiles.size() - 1; i >= 0; i--) {
+      File metaFile = metaFiles.get(i);
+      long blockId = Block.getBlockId(metaFile.getName());
+      report.add(new ScanInfo(blockId, null, metaFile, vol));
     }
   }
   
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.hops.erasure_coding.ErasureCodingTaskExecutor;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.server.protocol.ErasureCodingTask;
+import org.apache.hadoop.hdfs.server.protocol.ErasureCodingTaskStatus;
+import org.apache.hadoop.util.Time;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the erasure coding tasks the namenode assigns to the datanode with
+ * {@link org.apache.hadoop.hdfs.server.protocol.ErasureCodingCommand}s and
+ * keeps their states for the heartbeats. The states of completed tasks are
+ * reported for a number of heartbeats, so that every namenode gets them.
+ */
+class ErasureCodingWorker {
+  static final Log LOG = LogFactory.getLog(ErasureCodingWorker.class);
+
+  /**
+   * Number of heartbeat intervals the state of a completed task is reported.
+   */
+  private static final int COMPLETED_TASK_REPORTS = 10;
+
+  private class Task implements Runnable {
+    private final ErasureCodingTask task;
+    private Future<?> future;
+    private ErasureCodingTaskStatus.State state =
+        ErasureCodingTaskStatus.State.ACTIVE;
+    private long completionTime;
+
+    Task(ErasureCodingTask task) {
+      this.task = task;
+    }
+
+    @Override
+    public void run() {
+      ErasureCodingTaskStatus.State result;
+      try {
+        getTaskExecutor().execute(task);
+        result = ErasureCodingTaskStatus.State.FINISHED;
+      } catch (InterruptedException e) {
+        result = ErasureCodingTaskStatus.State.CANCELED;
+      } catch (Throwable t) {
+        LOG.warn(task + " failed", t);
+        result = ErasureCodingTaskStatus.State.FAILED;
+      }
+      complete(this, result);
+    }
+  }
+
+  private final Configuration conf;
+  private final long completedTaskRetention;
+  private final ExecutorService executor;
+  private ErasureCodingTaskExecutor taskExecutor;
+  private final Map<Long, Task> tasks = new LinkedHashMap<Long, Task>();
+
+  ErasureCodingWorker(Configuration conf, long heartbeatInterval) {
+    this.conf = conf;
+    this.completedTaskRetention = COMPLETED_TASK_REPORTS * heartbeatInterval;
+    int maxTasks =
+        conf.getInt(DFSConfigKeys.ERASURE_CODING_DATANODE_MAX_TASKS_KEY,
+            DFSConfigKeys.DEFAULT_ERASURE_CODING_DATANODE_MAX_TASKS);
+    this.executor = Executors.newFixedThreadPool(maxTasks,
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("ErasureCodingWorker-%d").build());
+  }
+
+  /**
+   * Loads the executor on first use, so that datanodes without the erasure
+   * coding library only fail the tasks given to them.
+   */
+  private synchronized ErasureCodingTaskExecutor getTaskExecutor()
+      throws Exception {
+    if (taskExecutor == null) {
+      Class<?> executorClass = conf.getClassByName(
+          conf.get(DFSConfigKeys.ERASURE_CODING_TASK_EXECUTOR_CLASSNAME_KEY,
+              DFSConfigKeys.DEFAULT_ERASURE_CODING_TASK_EXECUTOR_CLASSNAME));
+      if (!ErasureCodingTaskExecutor.class.isAssignableFrom(executorClass)) {
+        throw new ClassNotFoundException(
+            executorClass + " is not an implementation of " +
+                ErasureCodingTaskExecutor.class.getCanonicalName());
+      }
+      taskExecutor = (ErasureCodingTaskExecutor) executorClass
+          .getConstructor(Configuration.class).newInstance(conf);
+    }
+    return taskExecutor;
+  }
+
+  synchronized void submit(ErasureCodingTask[] newTasks) {
+    for (ErasureCodingTask task : newTasks) {
+      if (tasks.containsKey(task.getTaskId())) {
+        continue;
+      }
+      LOG.info("Starting " + task);
+      Task running = new Task(task);
+      tasks.put(task.getTaskId(), running);
+      running.future = executor.submit(running);
+    }
+  }
+
+  synchronized void cancel(long[] taskIds) {
+    for (long taskId : taskIds) {
+      Task task = tasks.get(taskId);
+      if (task != null && task.future != null &&
+          task.state == ErasureCodingTaskStatus.State.ACTIVE) {
+        LOG.info("Canceling " + task.task);
+        task.future.cancel(true);
+        complete(task, ErasureCodingTaskStatus.State.CANCELED);
+      }
+    }
+  }
+
+  private synchronized void complete(Task task,
+      ErasureCodingTaskStatus.State result) {
+    if (task.state != ErasureCodingTaskStatus.State.ACTIVE) {
+      // canceled while running
+      return;
+    }
+    task.state = result;
+    task.completionTime = Time.now();
+    LOG.info(task.task + " completed with " + result);
+  }
+
+  /**
+   * Returns the states of the running tasks and of the recently completed
+   * ones.
+   */
+  synchronized ErasureCodingTaskStatus[] getStatuses() {
+    long now = Time.now();
+    Iterator<Task> it = tasks.values().iterator();
+    while (it.hasNext()) {
+      Task task = it.next();
+      if (task.state != ErasureCodingTaskStatus.State.ACTIVE &&
+          now - task.completionTime > completedTaskRetention) {
+        it.remove();
+      }
+    }
+    ErasureCodingTaskStatus[] statuses =
+        new ErasureCodingTaskStatus[tasks.size()];
+    int i = 0;
+    for (Task task : tasks.values()) {
+      statuses[i++] =
+          new ErasureCodingTaskStatus(task.task.getTaskId(), task.state);
+    }
+    return statuses;
+  }
+
+  void shutdown() {
+    executor.shutdownNow();
+  }
+}
@@ -347,6 +347,41 @@ public void recoverClose(ExtendedBlock b, long newGS, long expectedBlockLen)
    */
   public void invalidate(String bpid, Block invalidBlks[]) throws IOException;
 
+  /**
+   * Caches the specified finalized blocks in memory, asynchronously
+   *
+   * @param bpid
+   *     Block pool Id
+   * @param blockIds
+   *     - the ids of the blocks to be cached
+   */
+  public void cache(String bpid, long[] blockIds);
+
+  /**
+   * Uncaches the specified blocks
+   *
+   * @param bpid
+   *     Block pool Id
+   * @param blockIds
+   *     - the ids of the blocks to be uncached
+   */
+  public void uncache(String bpid, long[] blockIds);
+
+  /**
+   * Returns the cache report - the ids of the blocks of a block pool which
+   * are cached in memory
+   *
+   * @param bpid
+   *     Block pool Id
+   * @return - the ids of the cached blocks
+   */
+  public long[] getCacheReport(String bpid);
+
+  /**
+   * Is the block cached in memory?
+   */
+  public boolean isCached(String bpid, long blockId);
+
   /**
    * Check if all the data directories are healthy
    *
@@ -46,7 +46,9 @@
  * Taken together, all BlockPoolSlices sharing a block pool ID across a
  * cluster represent a single block pool.
  * <p/>
- * This class is synchronized by {@link FsVolumeImpl}.
+ * This class is synchronized by {@link FsVolumeImpl}, except for the
+ * finalized directory tree which is synchronized by this slice, as replicas
+ * of different blocks are finalized concurrently.
  */
 class BlockPoolSlice {
   private final String bpid;
@@ -155,7 +157,7 @@ File createRbwFile(Block b) throws IOException {
     return DatanodeUtil.createTmpFile(b, f);
   }
 
-  File addBlock(Block b, File f) throws IOException {
+  synchronized File addBlock(Block b, File f) throws IOException {
     File blockFile = finalizedDir.addBlock(b, f);
     File metaFile =
         FsDatasetUtil.getMetaFile(blockFile, b.getGenerationStamp());
@@ -163,7 +165,7 @@ File addBlock(Block b, File f) throws IOException {
     return blockFile;
   }
 
-  void checkDirs() throws DiskErrorException {
+  synchronized void checkDirs() throws DiskErrorException {
     finalizedDir.checkDirTree();
     DiskChecker.checkDir(tmpDir);
     DiskChecker.checkDir(rbwDir);
@@ -288,7 +290,7 @@ private long validateIntegrity(File blockFile, long genStamp) {
     }
   }
 
-  void clearPath(File f) {
+  synchronized void clearPath(File f) {
     finalizedDir.clearPath(f);
   }
 
@@ -0,0 +1,454 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.nativeio.NativeIO;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Manages the replicas of a {@link FsDatasetImpl} which are cached in
+ * memory. A cached replica is mapped with mmap and locked with mlock, so
+ * that it is read from memory without any disk access or system call.
+ * <p/>
+ * Replicas are cached and uncached on the request of the NameNode. Caching
+ * is done asynchronously, a replica is only reported as cached once it is
+ * mapped, locked and its checksums were verified. The locked memory never
+ * exceeds dfs.datanode.max.locked.memory. A replica which is uncached while
+ * it is being read is unmapped once its last reader is done.
+ */
+@InterfaceAudience.Private
+class FsDatasetCache {
+  static final Log LOG = LogFactory.getLog(FsDatasetCache.class);
+
+  private static final long THREADS_KEEP_ALIVE_SECONDS = 60;
+
+  private enum State {
+    /**
+     * The replica is being mapped and locked.
+     */
+    CACHING,
+    /**
+     * The replica was uncached while it was being mapped. It is unmapped
+     * as soon as the mapping completes.
+     */
+    CACHING_CANCELLED,
+    /**
+     * The replica is cached and can be read from memory.
+     */
+    CACHED,
+    /**
+     * The replica was uncached but is still being read. It is unmapped
+     * when its last reader is done.
+     */
+    UNCACHING
+  }
+
+  private static final class Key {
+    private final String bpid;
+    private final long blockId;
+
+    Key(String bpid, long blockId) {
+      this.bpid = bpid;
+      this.blockId = blockId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return blockId == other.blockId && bpid.equals(other.bpid);
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (blockId ^ (blockId >>> 32)) * 31 + bpid.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return bpid + ":" + blockId;
+    }
+  }
+
+  private static final class Value {
+    private State state;
+    private MappableBlock mappableBlock;
+    private final long reservedBytes;
+    private int readers = 0;
+
+    Value(State state, long reservedBytes) {
+      this.state = state;
+      this.reservedBytes = reservedBytes;
+    }
+  }
+
+  /**
+   * Guarded by this.
+   */
+  private final Map<Key, Value> mappableBlockMap = new HashMap<Key, Value>();
+
+  private final ThreadPoolExecutor cachingExecutor;
+  private final long maxBytes;
+  private final long pageSize;
+  private final boolean verifyChecksum;
+  private final AtomicLong usedBytes = new AtomicLong(0);
+  private final AtomicLong numBlocksCached = new AtomicLong(0);
+  private final AtomicLong numBlocksFailedToCache = new AtomicLong(0);
+
+  FsDatasetCache(long maxBytes, boolean verifyChecksum, int numThreads) {
+    this.maxBytes = maxBytes;
+    this.verifyChecksum = verifyChecksum;
+    this.pageSize =
+        NativeIO.POSIX.getCacheManipulator().getOperatingSystemPageSize();
+    this.cachingExecutor = new ThreadPoolExecutor(numThreads, numThreads,
+        THREADS_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("FsDatasetCache-%d").build());
+    this.cachingExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * @return true if caching is enabled on this datanode
+   */
+  boolean isEnabled() {
+    return maxBytes > 0;
+  }
+
+  /**
+   * @return the ids of the replicas of the block pool which are cached
+   */
+  synchronized long[] getCachedBlocks(String bpid) {
+    List<Long> blocks = new ArrayList<Long>();
+    for (Map.Entry<Key, Value> entry : mappableBlockMap.entrySet()) {
+      if (entry.getKey().bpid.equals(bpid) &&
+          entry.getValue().state == State.CACHED) {
+        blocks.add(entry.getKey().blockId);
+      }
+    }
+    long[] ids = new long[blocks.size()];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = blocks.get(i);
+    }
+    return ids;
+  }
+
+  synchronized boolean isCached(String bpid, long blockId) {
+    Value value = mappableBlockMap.get(new Key(bpid, blockId));
+    return value != null && value.state == State.CACHED;
+  }
+
+  /**
+   * Asynchronously maps and locks a finalized replica. Does nothing if the
+   * replica is already cached or being cached.
+   *
+   * @param length
+   *     the length of the replica
+   */
+  synchronized void cacheBlock(String bpid, long blockId, File blockFile,
+      File metaFile, long length) {
+    Key key = new Key(bpid, blockId);
+    Value prev = mappableBlockMap.get(key);
+    if (prev != null) {
+      if (prev.state == State.CACHING_CANCELLED) {
+        prev.state = State.CACHING;
+      } else if (LOG.isDebugEnabled()) {
+        LOG.debug("Block " + key + " is already " + prev.state);
+      }
+      return;
+    }
+    if (length > Integer.MAX_VALUE) {
+      LOG.warn("Failed to cache block " + key + ": its length " + length +
+          " is too large to be mapped");
+      numBlocksFailedToCache.incrementAndGet();
+      return;
+    }
+    long reserved = roundUpPageSize(length);
+    if (!reserve(reserved)) {
+      LOG.warn("Failed to cache block " + key + ": caching its " + length +
+          " bytes would exceed the " + maxBytes + " bytes of locked memory" +
+          " of the datanode, " + usedBytes.get() + " are in use");
+      numBlocksFailedToCache.incrementAndGet();
+      return;
+    }
+    mappableBlockMap.put(key, new Value(State.CACHING, reserved));
+    cachingExecutor.execute(new CachingTask(key, blockFile, metaFile, length));
+  }
+
+  /**
+   * Uncaches a replica, right away if it is not being read and otherwise
+   * when its last reader is done. Replicas which are being cached are
+   * unmapped as soon as the mapping completes.
+   */
+  synchronized void uncacheBlock(String bpid, long blockId) {
+    Key key = new Key(bpid, blockId);
+    Value value = mappableBlockMap.get(key);
+    if (value == null) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Block " + key + " is not cached");
+      }
+      return;
+    }
+    switch (value.state) {
+      case CACHING:
+        value.state = State.CACHING_CANCELLED;
+        break;
+      case CACHED:
+        if (value.readers == 0) {
+          remove(key, value);
+        } else {
+          value.state = State.UNCACHING;
+        }
+        break;
+      default:
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Block " + key + " is already " + value.state);
+        }
+    }
+  }
+
+  /**
+   * Opens a stream over the memory of a cached replica. The replica is not
+   * unmapped before the stream is closed.
+   *
+   * @return the stream, positioned at seekOffset, or null if the replica
+   *     is not cached
+   */
+  synchronized InputStream getBlockInputStream(String bpid, long blockId,
+      long seekOffset) {
+    Key key = new Key(bpid, blockId);
+    Value value = mappableBlockMap.get(key);
+    if (value == null || value.state != State.CACHED ||
+        seekOffset > value.mappableBlock.getLength()) {
+      return null;
+    }
+    value.readers++;
+    ByteBuffer buf = value.mappableBlock.getReadOnlyBuffer();
+    buf.position((int) seekOffset);
+    return new CachedBlockInputStream(key, buf);
+  }
+
+  private synchronized void releaseReader(Key key) {
+    Value value = mappableBlockMap.get(key);
+    if (value == null) {
+      return;
+    }
+    value.readers--;
+    if (value.readers == 0 && value.state == State.UNCACHING) {
+      remove(key, value);
+    }
+  }
+
+  private void remove(Key key, Value value) {
+    mappableBlockMap.remove(key);
+    value.mappableBlock.close();
+    release(value.reservedBytes);
+    numBlocksCached.decrementAndGet();
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Uncached block " + key);
+    }
+  }
+
+  private long roundUpPageSize(long count) {
+    return (count + pageSize - 1) / pageSize * pageSize;
+  }
+
+  private boolean reserve(long count) {
+    while (true) {
+      long cur = usedBytes.get();
+      long next = cur + count;
+      if (next > maxBytes) {
+        return false;
+      }
+      if (usedBytes.compareAndSet(cur, next)) {
+        return true;
+      }
+    }
+  }
+
+  private void release(long count) {
+    usedBytes.addAndGet(-count);
+  }
+
+  /**
+   * Maps, locks and verifies one replica.
+   */
+  private class CachingTask implements Runnable {
+    private final Key key;
+    private final File blockFile;
+    private final File metaFile;
+    private final long length;
+
+    CachingTask(Key key, File blockFile, File metaFile, long length) {
+      this.key = key;
+      this.blockFile = blockFile;
+      this.metaFile = metaFile;
+      this.length = length;
+    }
+
+    @Override
+    public void run() {
+      MappableBlock mappableBlock = null;
+      FileInputStream blockIn = null;
+      FileInputStream metaIn = null;
+      try {
+        blockIn = new FileInputStream(blockFile);
+        metaIn = new FileInputStream(metaFile);
+        mappableBlock = MappableBlock.load(length, blockIn, metaIn,
+            blockFile.getAbsolutePath(), verifyChecksum);
+      } catch (IOException e) {
+        LOG.warn("Failed to cache block " + key + " in " + blockFile, e);
+      } finally {
+        IOUtils.closeStream(blockIn);
+        IOUtils.closeStream(metaIn);
+      }
+
+      synchronized (FsDatasetCache.this) {
+        Value value = mappableBlockMap.get(key);
+        if (mappableBlock == null || value.state == State.CACHING_CANCELLED) {
+          mappableBlockMap.remove(key);
+          release(value.reservedBytes);
+          if (mappableBlock == null) {
+            numBlocksFailedToCache.incrementAndGet();
+          } else {
+            mappableBlock.close();
+            LOG.info("Caching of block " + key + " was cancelled");
+          }
+          return;
+        }
+        value.mappableBlock = mappableBlock;
+        value.state = State.CACHED;
+        numBlocksCached.incrementAndGet();
+      }
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Cached block " + key + " of " + length + " bytes");
+      }
+    }
+  }
+
+  /**
+   * Reads a cached replica from memory.
+   */
+  private class CachedBlockInputStream extends InputStream {
+    private final Key key;
+    private ByteBuffer buf;
+
+    CachedBlockInputStream(Key key, ByteBuffer buf) {
+      this.key = key;
+      this.buf = buf;
+    }
+
+    @Override
+    public int read() throws IOException {
+      checkOpen();
+      return buf.hasRemaining() ? buf.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      checkOpen();
+      if (len == 0) {
+        return 0;
+      }
+      if (!buf.hasRemaining()) {
+        return -1;
+      }
+      len = Math.min(len, buf.remaining());
+      buf.get(b, off, len);
+      return len;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      checkOpen();
+      int skipped = (int) Math.max(0, Math.min(n, buf.remaining()));
+      buf.position(buf.position() + skipped);
+      return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+      checkOpen();
+      return buf.remaining();
+    }
+
+    private void checkOpen() throws IOException {
+      if (buf == null) {
+        throw new IOException("Stream of cached block " + key + " is closed");
+      }
+    }
+
+    @Override
+    public void close() {
+      if (buf != null) {
+        buf = null;
+        releaseReader(key);
+      }
+    }
+  }
+
+  /**
+   * Uncaches all replicas which are not being read and stops caching.
+   */
+  synchronized void shutdown() {
+    cachingExecutor.shutdownNow();
+    for (Map.Entry<Key, Value> entry :
+        new ArrayList<Map.Entry<Key, Value>>(mappableBlockMap.entrySet())) {
+      Value value = entry.getValue();
+      if (value.state == State.CACHED && value.readers == 0) {
+        remove(entry.getKey(), value);
+      }
+    }
+  }
+
+  long getCacheUsed() {
+    return usedBytes.get();
+  }
+
+  long getCacheCapacity() {
+    return maxBytes;
+  }
+
+  long getNumBlocksCached() {
+    return numBlocksCached.get();
+  }
+
+  long getNumBlocksFailedToCache() {
+    return numBlocksFailedToCache.get();
+  }
+}
@@ -99,21 +99,23 @@ public List<FsVolumeImpl> getVolumes() {
   }
 
   @Override
-  public synchronized FsVolumeImpl getVolume(final ExtendedBlock b) {
+  public FsVolumeImpl getVolume(final ExtendedBlock b) {
     final ReplicaInfo r = volumeMap.get(b.getBlockPoolId(), b.getLocalBlock());
     return r != null ? (FsVolumeImpl) r.getVolume() : null;
   }
 
   @Override // FsDatasetSpi
-  public synchronized Block getStoredBlock(String bpid, long blkid)
+  public Block getStoredBlock(String bpid, long blkid)
       throws IOException {
-    File blockfile = getFile(bpid, blkid);
-    if (blockfile == null) {
-      return null;
+    synchronized (getBlockLock(blkid)) {
+      File blockfile = getFile(bpid, blkid);
+      if (blockfile == null) {
+        return null;
+      }
+      final File metafile = FsDatasetUtil.findMetaFile(blockfile);
+      final long gs = FsDatasetUtil.parseGenerationStamp(blockfile, metafile);
+      return new Block(blkid, blockfile.length(), gs);
     }
-    final File metafile = FsDatasetUtil.findMetaFile(blockfile);
-    final long gs = FsDatasetUtil.parseGenerationStamp(blockfile, metafile);
-    return new Block(blkid, blockfile.length(), gs);
   }
 
 
@@ -147,23 +149,41 @@ ReplicaInfo fetchReplicaInfo(String bpid, long blockId) {
   @Override // FsDatasetSpi
   public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
       throws IOException {
-    File meta =
-        FsDatasetUtil.getMetaFile(getBlockFile(b), b.getGenerationStamp());
-    if (meta == null || !meta.exists()) {
-      return null;
+    synchronized (getBlockLock(b.getBlockId())) {
+      File meta =
+          FsDatasetUtil.getMetaFile(getBlockFile(b), b.getGenerationStamp());
+      if (meta == null || !meta.exists()) {
+        return null;
+      }
+      return new LengthInputStream(new FileInputStream(meta), meta.length());
     }
-    return new LengthInputStream(new FileInputStream(meta), meta.length());
   }
 
   final DataNode datanode;
   final FsVolumeList volumes;
   final ReplicaMap volumeMap;
   final FsDatasetAsyncDiskService asyncDiskService;
+  final FsDatasetCache cacheManager;
   private final int validVolsRequired;
 
   // Used for synchronizing access to usage stats
   private final Object statsLock = new Object();
 
+  /**
+   * Locks serializing the operations on a replica. An operation which moves
+   * or creates the files of a replica holds the lock of its block while it
+   * does so, and only takes the dataset lock to update the replica map, so
+   * that it does not block the operations on other replicas. The block lock
+   * must be taken before the dataset lock.
+   * <p/>
+   * A move and the update of the replica map are therefore only atomic under
+   * the block lock, not under the dataset lock: a reader which looks up the
+   * files of a replica and then opens them holds the block lock across both,
+   * see {@link #getBlockInputStream}.
+   */
+  private static final int NUM_BLOCK_LOCKS = 1024;
+  private final Object[] blockLocks = new Object[NUM_BLOCK_LOCKS];
+
   /**
    * An FSDataset has a directory where it loads its data files.
    */
@@ -203,6 +223,9 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
       LOG.info("Added volume - " + dir);
     }
     volumeMap = new ReplicaMap(this);
+    for (int i = 0; i < blockLocks.length; i++) {
+      blockLocks[i] = new Object();
+    }
 
     @SuppressWarnings("unchecked")
     final VolumeChoosingPolicy<FsVolumeImpl> blockChooserImpl = ReflectionUtils
@@ -218,9 +241,38 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
       roots[idx] = storage.getStorageDir(idx).getCurrentDir();
     }
     asyncDiskService = new FsDatasetAsyncDiskService(datanode, roots);
+    cacheManager = new FsDatasetCache(
+        conf.getLong(DFSConfigKeys.DFS_DATANODE_MAX_LOCKED_MEMORY_KEY,
+            DFSConfigKeys.DFS_DATANODE_MAX_LOCKED_MEMORY_DEFAULT),
+        conf.getBoolean(DFSConfigKeys.DFS_DATANODE_CACHE_VERIFY_CHECKSUM_KEY,
+            DFSConfigKeys.DFS_DATANODE_CACHE_VERIFY_CHECKSUM_DEFAULT),
+        Math.max(1, roots.length));
     registerMBean(storage.getStorageID());
   }
 
+  /**
+   * @return the lock serializing the operations on the given block
+   */
+  private Object getBlockLock(long blockId) {
+    int hash = (int) (blockId ^ (blockId >>> 32));
+    hash ^= (hash >>> 20) ^ (hash >>> 12);
+    hash ^= (hash >>> 7) ^ (hash >>> 4);
+    return blockLocks[hash & (NUM_BLOCK_LOCKS - 1)];
+  }
+
+  /**
+   * Adds a replica whose files were moved or created outside the dataset
+   * lock to the replica map, unless its volume was removed in the meantime.
+   */
+  private synchronized void addReplica(String bpid, ReplicaInfo replicaInfo)
+      throws IOException {
+    if (!volumes.volumes.contains(replicaInfo.getVolume())) {
+      throw new DiskErrorException("Volume " + replicaInfo.getVolume() +
+          " of replica " + replicaInfo + " has failed");
+    }
+    volumeMap.add(bpid, replicaInfo);
+  }
+
   /**
    * Return the total space used by dfs datanode
    */
@@ -277,12 +329,34 @@ public int getNumFailedVolumes() {
     return volumes.numberOfFailedVolumes();
   }
 
+  @Override // FSDatasetMBean
+  public long getCacheUsed() {
+    return cacheManager.getCacheUsed();
+  }
+
+  @Override // FSDatasetMBean
+  public long getCacheCapacity() {
+    return cacheManager.getCacheCapacity();
+  }
+
+  @Override // FSDatasetMBean
+  public long getNumBlocksCached() {
+    return cacheManager.getNumBlocksCached();
+  }
+
+  @Override // FSDatasetMBean
+  public long getNumBlocksFailedToCache() {
+    return cacheManager.getNumBlocksFailedToCache();
+  }
+
   /**
    * Find the block's on-disk length
    */
   @Override // FsDatasetSpi
   public long getLength(ExtendedBlock b) throws IOException {
-    return getBlockFile(b).length();
+    synchronized (getBlockLock(b.getBlockId())) {
+      return getBlockFile(b).length();
+    }
   }
 
   /**
@@ -313,10 +387,7 @@ File getBlockFile(String bpid, Block b) throws IOException {
    * and thus the exists check is redundant.
    */
   private File getBlockFileNoExistsCheck(ExtendedBlock b) throws IOException {
-    final File f;
-    synchronized (this) {
-      f = getFile(b.getBlockPoolId(), b.getLocalBlock().getBlockId());
-    }
+    final File f = getFile(b.getBlockPoolId(), b.getLocalBlock().getBlockId());
     if (f == null) {
       throw new IOException("Block " + b + " is not valid");
     }
@@ -326,13 +397,22 @@ private File getBlockFileNoExistsCheck(ExtendedBlock b) throws IOException {
   @Override // FsDatasetSpi
   public InputStream getBlockInputStream(ExtendedBlock b, long seekOffset)
       throws IOException {
-    File blockFile = getBlockFileNoExistsCheck(b);
+    InputStream cachedIn = cacheManager.getBlockInputStream(
+        b.getBlockPoolId(), b.getBlockId(), seekOffset);
+    if (cachedIn != null) {
+      return cachedIn;
+    }
+    File blockFile;
     RandomAccessFile blockInFile;
-    try {
-      blockInFile = new RandomAccessFile(blockFile, "r");
-    } catch (FileNotFoundException fnfe) {
-      throw new IOException("Block " + b + " is not valid. " +
-          "Expected block file at " + blockFile + " does not exist.");
+    // the file must not be moved by finalize or append before it is open
+    synchronized (getBlockLock(b.getBlockId())) {
+      blockFile = getBlockFileNoExistsCheck(b);
+      try {
+        blockInFile = new RandomAccessFile(blockFile, "r");
+      } catch (FileNotFoundException fnfe) {
+        throw new IOException("Block " + b + " is not valid. " +
+            "Expected block file at " + blockFile + " does not exist.");
+      }
     }
 
     if (seekOffset > 0) {
@@ -388,7 +468,14 @@ private ReplicaInfo getReplicaInfo(String bpid, long blkid)
    * Returns handles to the block file and its metadata file
    */
   @Override // FsDatasetSpi
-  public synchronized ReplicaInputStreams getTmpInputStreams(ExtendedBlock b,
+  public ReplicaInputStreams getTmpInputStreams(ExtendedBlock b,
+      long blkOffset, long ckoff) throws IOException {
+    synchronized (getBlockLock(b.getBlockId())) {
+      return getTmpInputStreamsLocked(b, blkOffset, ckoff);
+    }
+  }
+
+  private ReplicaInputStreams getTmpInputStreamsLocked(ExtendedBlock b,
       long blkOffset, long ckoff) throws IOException {
     ReplicaInfo info = getReplicaInfo(b);
     File blockFile = info.getBlockFile();
@@ -485,7 +572,14 @@ static private void truncateBlock(File blockFile, File metaFile, long oldlen,
 
 
   @Override  // FsDatasetSpi
-  public synchronized ReplicaInPipeline append(ExtendedBlock b, long newGS,
+  public ReplicaInPipeline append(ExtendedBlock b, long newGS,
+      long expectedBlockLen) throws IOException {
+    synchronized (getBlockLock(b.getBlockId())) {
+      return appendLocked(b, newGS, expectedBlockLen);
+    }
+  }
+
+  private ReplicaInPipeline appendLocked(ExtendedBlock b, long newGS,
       long expectedBlockLen) throws IOException {
     // If the block was successfully finalized because all packets
     // were successfully processed at the Datanode but the ack for
@@ -532,9 +626,12 @@ public synchronized ReplicaInPipeline append(ExtendedBlock b, long newGS,
    *     if moving the replica from finalized directory
    *     to rbw directory fails
    */
-  private synchronized ReplicaBeingWritten append(String bpid,
+  private ReplicaBeingWritten append(String bpid,
       FinalizedReplica replicaInfo, long newGS, long estimateBlockLen)
       throws IOException {
+    // the cached copy would miss the appended data
+    cacheManager.uncacheBlock(bpid, replicaInfo.getBlockId());
+
     // unlink the finalized replica
     replicaInfo.unlinkBlock(1);
     
@@ -585,7 +682,7 @@ private synchronized ReplicaBeingWritten append(String bpid,
     }
     
     // Replace finalized replica by a RBW replica in replicas map
-    volumeMap.add(bpid, newReplicaInfo);
+    addReplica(bpid, newReplicaInfo);
     
     return newReplicaInfo;
   }
@@ -642,8 +739,15 @@ private ReplicaInfo recoverCheck(ExtendedBlock b, long newGS,
   }
   
   @Override  // FsDatasetSpi
-  public synchronized ReplicaInPipeline recoverAppend(ExtendedBlock b,
-      long newGS, long expectedBlockLen) throws IOException {
+  public ReplicaInPipeline recoverAppend(ExtendedBlock b, long newGS,
+      long expectedBlockLen) throws IOException {
+    synchronized (getBlockLock(b.getBlockId())) {
+      return recoverAppendLocked(b, newGS, expectedBlockLen);
+    }
+  }
+
+  private ReplicaInPipeline recoverAppendLocked(ExtendedBlock b, long newGS,
+      long expectedBlockLen) throws IOException {
     LOG.info("Recover failed append to " + b);
 
     ReplicaInfo replicaInfo = recoverCheck(b, newGS, expectedBlockLen);
@@ -662,13 +766,15 @@ public synchronized ReplicaInPipeline recoverAppend(ExtendedBlock b,
   public void recoverClose(ExtendedBlock b, long newGS, long expectedBlockLen)
       throws IOException {
     LOG.info("Recover failed close " + b);
-    // check replica's state
-    ReplicaInfo replicaInfo = recoverCheck(b, newGS, expectedBlockLen);
-    // bump the replica's GS
-    bumpReplicaGS(replicaInfo, newGS);
-    // finalize the replica if RBW
-    if (replicaInfo.getState() == ReplicaState.RBW) {
-      finalizeReplica(b.getBlockPoolId(), replicaInfo);
+    synchronized (getBlockLock(b.getBlockId())) {
+      // check replica's state
+      ReplicaInfo replicaInfo = recoverCheck(b, newGS, expectedBlockLen);
+      // bump the replica's GS
+      bumpReplicaGS(replicaInfo, newGS);
+      // finalize the replica if RBW
+      if (replicaInfo.getState() == ReplicaState.RBW) {
+        finalizeReplica(b.getBlockPoolId(), replicaInfo);
+      }
     }
   }
   
@@ -705,27 +811,36 @@ private void bumpReplicaGS(ReplicaInfo replicaInfo, long newGS)
   }
 
   @Override // FsDatasetSpi
-  public synchronized ReplicaInPipeline createRbw(ExtendedBlock b)
-      throws IOException {
-    ReplicaInfo replicaInfo = volumeMap.get(b.getBlockPoolId(), b.getBlockId());
-    if (replicaInfo != null) {
-      throw new ReplicaAlreadyExistsException("Block " + b +
-          " already exists in state " + replicaInfo.getState() +
-          " and thus cannot be created.");
-    }
-    // create a new block
-    FsVolumeImpl v = volumes.getNextVolume(b.getNumBytes());
-    // create a rbw file to hold block in the designated volume
-    File f = v.createRbwFile(b.getBlockPoolId(), b.getLocalBlock());
-    ReplicaBeingWritten newReplicaInfo =
-        new ReplicaBeingWritten(b.getBlockId(), b.getGenerationStamp(), v,
-            f.getParentFile());
-    volumeMap.add(b.getBlockPoolId(), newReplicaInfo);
-    return newReplicaInfo;
+  public ReplicaInPipeline createRbw(ExtendedBlock b) throws IOException {
+    synchronized (getBlockLock(b.getBlockId())) {
+      ReplicaInfo replicaInfo =
+          volumeMap.get(b.getBlockPoolId(), b.getBlockId());
+      if (replicaInfo != null) {
+        throw new ReplicaAlreadyExistsException("Block " + b +
+            " already exists in state " + replicaInfo.getState() +
+            " and thus cannot be created.");
+      }
+      // create a new block
+      FsVolumeImpl v = volumes.getNextVolume(b.getNumBytes());
+      // create a rbw file to hold block in the designated volume
+      File f = v.createRbwFile(b.getBlockPoolId(), b.getLocalBlock());
+      ReplicaBeingWritten newReplicaInfo =
+          new ReplicaBeingWritten(b.getBlockId(), b.getGenerationStamp(), v,
+              f.getParentFile());
+      addReplica(b.getBlockPoolId(), newReplicaInfo);
+      return newReplicaInfo;
+    }
   }
   
   @Override // FsDatasetSpi
-  public synchronized ReplicaInPipeline recoverRbw(ExtendedBlock b, long newGS,
+  public ReplicaInPipeline recoverRbw(ExtendedBlock b, long newGS,
+      long minBytesRcvd, long maxBytesRcvd) throws IOException {
+    synchronized (getBlockLock(b.getBlockId())) {
+      return recoverRbwLocked(b, newGS, minBytesRcvd, maxBytesRcvd);
+    }
+  }
+
+  private ReplicaInPipeline recoverRbwLocked(ExtendedBlock b, long newGS,
       long minBytesRcvd, long maxBytesRcvd) throws IOException {
     LOG.info("Recover RBW replica " + b);
 
@@ -771,8 +886,15 @@ public synchronized ReplicaInPipeline recoverRbw(ExtendedBlock b, long newGS,
   }
   
   @Override // FsDatasetSpi
-  public synchronized ReplicaInPipeline convertTemporaryToRbw(
-      final ExtendedBlock b) throws IOException {
+  public ReplicaInPipeline convertTemporaryToRbw(final ExtendedBlock b)
+      throws IOException {
+    synchronized (getBlockLock(b.getBlockId())) {
+      return convertTemporaryToRbwLocked(b);
+    }
+  }
+
+  private ReplicaInPipeline convertTemporaryToRbwLocked(final ExtendedBlock b)
+      throws IOException {
     final long blockId = b.getBlockId();
     final long expectedGs = b.getGenerationStamp();
     final long visible = b.getNumBytes();
@@ -827,29 +949,32 @@ public synchronized ReplicaInPipeline convertTemporaryToRbw(
             dest.getParentFile(), Thread.currentThread());
     rbw.setBytesAcked(visible);
     // overwrite the RBW in the volume map
-    volumeMap.add(b.getBlockPoolId(), rbw);
+    addReplica(b.getBlockPoolId(), rbw);
     return rbw;
   }
 
   @Override // FsDatasetSpi
-  public synchronized ReplicaInPipeline createTemporary(ExtendedBlock b)
+  public ReplicaInPipeline createTemporary(ExtendedBlock b)
       throws IOException {
-    ReplicaInfo replicaInfo = volumeMap.get(b.getBlockPoolId(), b.getBlockId());
-    if (replicaInfo != null) {
-      throw new ReplicaAlreadyExistsException("Block " + b +
-          " already exists in state " + replicaInfo.getState() +
-          " and thus cannot be created.");
+    synchronized (getBlockLock(b.getBlockId())) {
+      ReplicaInfo replicaInfo =
+          volumeMap.get(b.getBlockPoolId(), b.getBlockId());
+      if (replicaInfo != null) {
+        throw new ReplicaAlreadyExistsException("Block " + b +
+            " already exists in state " + replicaInfo.getState() +
+            " and thus cannot be created.");
+      }
+
+      FsVolumeImpl v = volumes.getNextVolume(b.getNumBytes());
+      // create a temporary file to hold block in the designated volume
+      File f = v.createTmpFile(b.getBlockPoolId(), b.getLocalBlock());
+      ReplicaInPipeline newReplicaInfo =
+          new ReplicaInPipeline(b.getBlockId(), b.getGenerationStamp(), v,
+              f.getParentFile());
+      addReplica(b.getBlockPoolId(), newReplicaInfo);
+
+      return newReplicaInfo;
     }
-    
-    FsVolumeImpl v = volumes.getNextVolume(b.getNumBytes());
-    // create a temporary file to hold block in the designated volume
-    File f = v.createTmpFile(b.getBlockPoolId(), b.getLocalBlock());
-    ReplicaInPipeline newReplicaInfo =
-        new ReplicaInPipeline(b.getBlockId(), b.getGenerationStamp(), v,
-            f.getParentFile());
-    volumeMap.add(b.getBlockPoolId(), newReplicaInfo);
-    
-    return newReplicaInfo;
   }
 
   /**
@@ -882,21 +1007,23 @@ public void adjustCrcChannelPosition(ExtendedBlock b,
    * Complete the block write!
    */
   @Override // FsDatasetSpi
-  public synchronized void finalizeBlock(ExtendedBlock b) throws IOException {
+  public void finalizeBlock(ExtendedBlock b) throws IOException {
     if (Thread.interrupted()) {
       // Don't allow data modifications from interrupted threads
       throw new IOException("Cannot finalize block from Interrupted Thread");
     }
-    ReplicaInfo replicaInfo = getReplicaInfo(b);
-    if (replicaInfo.getState() == ReplicaState.FINALIZED) {
-      // this is legal, when recovery happens on a file that has
-      // been opened for append but never modified
-      return;
+    synchronized (getBlockLock(b.getBlockId())) {
+      ReplicaInfo replicaInfo = getReplicaInfo(b);
+      if (replicaInfo.getState() == ReplicaState.FINALIZED) {
+        // this is legal, when recovery happens on a file that has
+        // been opened for append but never modified
+        return;
+      }
+      finalizeReplica(b.getBlockPoolId(), replicaInfo);
     }
-    finalizeReplica(b.getBlockPoolId(), replicaInfo);
   }
   
-  private synchronized FinalizedReplica finalizeReplica(String bpid,
+  private FinalizedReplica finalizeReplica(String bpid,
       ReplicaInfo replicaInfo) throws IOException {
     FinalizedReplica newReplicaInfo = null;
     if (replicaInfo.getState() == ReplicaState.RUR &&
@@ -916,7 +1043,7 @@ private synchronized FinalizedReplica finalizeReplica(String bpid,
       newReplicaInfo =
           new FinalizedReplica(replicaInfo, v, dest.getParentFile());
     }
-    volumeMap.add(bpid, newReplicaInfo);
+    addReplica(bpid, newReplicaInfo);
     return newReplicaInfo;
   }
 
@@ -924,18 +1051,20 @@ private synchronized FinalizedReplica finalizeReplica(String bpid,
    * Remove the temporary block file (if any)
    */
   @Override // FsDatasetSpi
-  public synchronized void unfinalizeBlock(ExtendedBlock b) throws IOException {
-    ReplicaInfo replicaInfo =
-        volumeMap.get(b.getBlockPoolId(), b.getLocalBlock());
-    if (replicaInfo != null &&
-        replicaInfo.getState() == ReplicaState.TEMPORARY) {
-      // remove from volumeMap
-      volumeMap.remove(b.getBlockPoolId(), b.getLocalBlock());
-      
-      // delete the on-disk temp file
-      if (delBlockFromDisk(replicaInfo.getBlockFile(),
-          replicaInfo.getMetaFile(), b.getLocalBlock())) {
-        LOG.warn("Block " + b + " unfinalized and removed. ");
+  public void unfinalizeBlock(ExtendedBlock b) throws IOException {
+    synchronized (getBlockLock(b.getBlockId())) {
+      ReplicaInfo replicaInfo =
+          volumeMap.get(b.getBlockPoolId(), b.getLocalBlock());
+      if (replicaInfo != null &&
+          replicaInfo.getState() == ReplicaState.TEMPORARY) {
+        // remove from volumeMap
+        volumeMap.remove(b.getBlockPoolId(), b.getLocalBlock());
+
+        // delete the on-disk temp file
+        if (delBlockFromDisk(replicaInfo.getBlockFile(),
+            replicaInfo.getMetaFile(), b.getLocalBlock())) {
+          LOG.warn("Block " + b + " unfinalized and removed. ");
+        }
       }
     }
   }
@@ -1055,10 +1184,7 @@ private boolean isValid(final ExtendedBlock b, final ReplicaState state) {
    */
   File validateBlockFile(String bpid, Block b) {
     //Should we check for metadata file too?
-    final File f;
-    synchronized (this) {
-      f = getFile(bpid, b.getBlockId());
-    }
+    final File f = getFile(bpid, b.getBlockId());
     
     if (f != null) {
       if (f.exists()) {
@@ -1111,50 +1237,53 @@ public void invalidate(String bpid, Block invalidBlks[]) throws IOException {
     for (int i = 0; i < invalidBlks.length; i++) {
       final File f;
       final FsVolumeImpl v;
-      synchronized (this) {
-        f = getFile(bpid, invalidBlks[i].getBlockId());
-        ReplicaInfo info = volumeMap.get(bpid, invalidBlks[i]);
-        if (info == null) {
-          LOG.warn("Failed to delete replica " + invalidBlks[i] +
-              ": ReplicaInfo not found.");
-          error = true;
-          continue;
-        }
-        if (info.getGenerationStamp() != invalidBlks[i].getGenerationStamp()) {
-          LOG.warn("Failed to delete replica " + invalidBlks[i] +
-              ": GenerationStamp not matched, info=" + info);
-          error = true;
-          continue;
-        }
-        v = (FsVolumeImpl) info.getVolume();
-        if (f == null) {
-          LOG.warn("Failed to delete replica " + invalidBlks[i] +
-              ": File not found, volume=" + v);
-          error = true;
-          continue;
-        }
-        if (v == null) {
-          LOG.warn("Failed to delete replica " + invalidBlks[i] +
-              ". No volume for this replica, file=" + f + ".");
-          error = true;
-          continue;
-        }
-        File parent = f.getParentFile();
-        if (parent == null) {
-          LOG.warn("Failed to delete replica " + invalidBlks[i] +
-              ". Parent not found for file " + f + ".");
-          error = true;
-          continue;
-        }
-        ReplicaState replicaState = info.getState();
-        if (replicaState == ReplicaState.FINALIZED ||
-            (replicaState == ReplicaState.RUR &&
-                ((ReplicaUnderRecovery) info).getOriginalReplica().getState() ==
-                    ReplicaState.FINALIZED)) {
-          v.clearPath(bpid, parent);
+      synchronized (getBlockLock(invalidBlks[i].getBlockId())) {
+        synchronized (this) {
+          f = getFile(bpid, invalidBlks[i].getBlockId());
+          ReplicaInfo info = volumeMap.get(bpid, invalidBlks[i]);
+          if (info == null) {
+            LOG.warn("Failed to delete replica " + invalidBlks[i] +
+                ": ReplicaInfo not found.");
+            error = true;
+            continue;
+          }
+          if (info.getGenerationStamp() != invalidBlks[i].getGenerationStamp()) {
+            LOG.warn("Failed to delete replica " + invalidBlks[i] +
+                ": GenerationStamp not matched, info=" + info);
+            error = true;
+            continue;
+          }
+          v = (FsVolumeImpl) info.getVolume();
+          if (f == null) {
+            LOG.warn("Failed to delete replica " + invalidBlks[i] +
+                ": File not found, volume=" + v);
+            error = true;
+            continue;
+          }
+          if (v == null) {
+            LOG.warn("Failed to delete replica " + invalidBlks[i] +
+                ". No volume for this replica, file=" + f + ".");
+            error = true;
+            continue;
+          }
+          File parent = f.getParentFile();
+          if (parent == null) {
+            LOG.warn("Failed to delete replica " + invalidBlks[i] +
+                ". Parent not found for file " + f + ".");
+            error = true;
+            continue;
+          }
+          ReplicaState replicaState = info.getState();
+          if (replicaState == ReplicaState.FINALIZED ||
+              (replicaState == ReplicaState.RUR &&
+                  ((ReplicaUnderRecovery) info).getOriginalReplica().getState() ==
+                      ReplicaState.FINALIZED)) {
+            v.clearPath(bpid, parent);
+          }
+          volumeMap.remove(bpid, invalidBlks[i]);
         }
-        volumeMap.remove(bpid, invalidBlks[i]);
       }
+      cacheManager.uncacheBlock(bpid, invalidBlks[i].getBlockId());
 
       // Delete the block asynchronously to make sure we can do it fast enough
       asyncDiskService.deleteAsync(v, f,
@@ -1167,13 +1296,58 @@ public void invalidate(String bpid, Block invalidBlks[]) throws IOException {
   }
 
   @Override // FsDatasetSpi
-  public synchronized boolean contains(final ExtendedBlock block) {
+  public void cache(String bpid, long[] blockIds) {
+    if (!cacheManager.isEnabled()) {
+      LOG.warn("Not caching " + blockIds.length + " blocks: " +
+          DFSConfigKeys.DFS_DATANODE_MAX_LOCKED_MEMORY_KEY + " is not set");
+      return;
+    }
+    for (long blockId : blockIds) {
+      final File blockFile;
+      final File metaFile;
+      final long length;
+      synchronized (this) {
+        ReplicaInfo info = volumeMap.get(bpid, blockId);
+        if (info == null || info.getState() != ReplicaState.FINALIZED) {
+          LOG.warn("Failed to cache block " + bpid + ":" + blockId +
+              ": replica " + info + " is not finalized");
+          continue;
+        }
+        blockFile = info.getBlockFile();
+        metaFile = info.getMetaFile();
+        length = info.getNumBytes();
+      }
+      cacheManager.cacheBlock(bpid, blockId, blockFile, metaFile, length);
+    }
+  }
+
+  @Override // FsDatasetSpi
+  public void uncache(String bpid, long[] blockIds) {
+    for (long blockId : blockIds) {
+      cacheManager.uncacheBlock(bpid, blockId);
+    }
+  }
+
+  @Override // FsDatasetSpi
+  public long[] getCacheReport(String bpid) {
+    return cacheManager.getCachedBlocks(bpid);
+  }
+
+  @Override // FsDatasetSpi
+  public boolean isCached(String bpid, long blockId) {
+    return cacheManager.isCached(bpid, blockId);
+  }
+
+  @Override // FsDatasetSpi
+  public boolean contains(final ExtendedBlock block) {
     final long blockId = block.getLocalBlock().getBlockId();
     return getFile(block.getBlockPoolId(), blockId) != null;
   }
 
   /**
-   * Turn the block identifier into a filename
+   * Turn the block identifier into a filename. Unless the caller holds the
+   * lock of the block, the file may be moved by finalize or append as soon
+   * as it is returned.
    *
    * @param bpid
    *     Block pool Id
@@ -1281,6 +1455,10 @@ public void shutdown() {
     if (asyncDiskService != null) {
       asyncDiskService.shutdown();
     }
+
+    if (cacheManager != null) {
+      cacheManager.shutdown();
+    }
     
     if (volumes != null) {
       volumes.shutdown();
@@ -1323,6 +1501,29 @@ public String getStorageInfo() {
   @Override
   public void checkAndUpdate(String bpid, long blockId, File diskFile,
       File diskMetaFile, FsVolumeSpi vol) {
+    Block corruptBlock;
+    synchronized (getBlockLock(blockId)) {
+      corruptBlock = checkAndUpdateLocked(bpid, blockId, diskFile,
+          diskMetaFile, vol);
+    }
+
+    // Send corrupt block report outside the lock
+    if (corruptBlock != null) {
+      LOG.warn("Reporting the block " + corruptBlock +
+          " as corrupt due to length mismatch");
+      try {
+        datanode.reportBadBlocks(new ExtendedBlock(bpid, corruptBlock));
+      } catch (IOException e) {
+        LOG.warn("Failed to repot bad block " + corruptBlock, e);
+      }
+    }
+  }
+
+  /**
+   * @return the block to report as corrupt, if any
+   */
+  private Block checkAndUpdateLocked(String bpid, long blockId, File diskFile,
+      File diskMetaFile, FsVolumeSpi vol) {
     Block corruptBlock = null;
     ReplicaInfo memBlockInfo;
     synchronized (this) {
@@ -1330,7 +1531,7 @@ public void checkAndUpdate(String bpid, long blockId, File diskFile,
       if (memBlockInfo != null &&
           memBlockInfo.getState() != ReplicaState.FINALIZED) {
         // Block is not finalized - ignore the difference
-        return;
+        return null;
       }
 
       final long diskGS = diskMetaFile != null && diskMetaFile.exists() ?
@@ -1346,7 +1547,7 @@ public void checkAndUpdate(String bpid, long blockId, File diskFile,
             LOG.warn("Deleted a metadata file without a block " +
                 diskMetaFile.getAbsolutePath());
           }
-          return;
+          return null;
         }
         if (!memBlockInfo.getBlockFile().exists()) {
           // Block is in memory and not on the disk
@@ -1365,7 +1566,7 @@ public void checkAndUpdate(String bpid, long blockId, File diskFile,
                 diskMetaFile.getAbsolutePath());
           }
         }
-        return;
+        return null;
       }
       /*
        * Block file exists on the disk
@@ -1381,7 +1582,7 @@ public void checkAndUpdate(String bpid, long blockId, File diskFile,
           blockScanner.addBlock(new ExtendedBlock(bpid, diskBlockInfo));
         }
         LOG.warn("Added missing block to memory " + diskBlockInfo);
-        return;
+        return null;
       }
       /*
        * Block exists in volumeMap and the block file exists on the disk
@@ -1447,17 +1648,7 @@ public void checkAndUpdate(String bpid, long blockId, File diskFile,
         memBlockInfo.setNumBytesNoPersistance(memFile.length());
       }
     }
-
-    // Send corrupt block report outside the lock
-    if (corruptBlock != null) {
-      LOG.warn("Reporting the block " + corruptBlock +
-          " as corrupt due to length mismatch");
-      try {
-        datanode.reportBadBlocks(new ExtendedBlock(bpid, corruptBlock));
-      } catch (IOException e) {
-        LOG.warn("Failed to repot bad block " + corruptBlock, e);
-      }
-    }
+    return corruptBlock;
   }
 
   /**
@@ -1470,16 +1661,21 @@ public ReplicaInfo getReplica(String bpid, long blockId) {
   }
 
   @Override
-  public synchronized String getReplicaString(String bpid, long blockId) {
+  public String getReplicaString(String bpid, long blockId) {
     final Replica r = volumeMap.get(bpid, blockId);
     return r == null ? "null" : r.toString();
   }
 
   @Override // FsDatasetSpi
-  public synchronized ReplicaRecoveryInfo initReplicaRecovery(
-      RecoveringBlock rBlock) throws IOException {
-    return initReplicaRecovery(rBlock.getBlock().getBlockPoolId(), volumeMap,
-        rBlock.getBlock().getLocalBlock(), rBlock.getNewGenerationStamp());
+  public ReplicaRecoveryInfo initReplicaRecovery(RecoveringBlock rBlock)
+      throws IOException {
+    synchronized (getBlockLock(rBlock.getBlock().getBlockId())) {
+      synchronized (this) {
+        return initReplicaRecovery(rBlock.getBlock().getBlockPoolId(),
+            volumeMap, rBlock.getBlock().getLocalBlock(),
+            rBlock.getNewGenerationStamp());
+      }
+    }
   }
 
   /**
@@ -1549,9 +1745,15 @@ static ReplicaRecoveryInfo initReplicaRecovery(String bpid, ReplicaMap map,
   }
 
   @Override // FsDatasetSpi
-  public synchronized String updateReplicaUnderRecovery(
-      final ExtendedBlock oldBlock, final long recoveryId, final long newlength)
-      throws IOException {
+  public String updateReplicaUnderRecovery(final ExtendedBlock oldBlock,
+      final long recoveryId, final long newlength) throws IOException {
+    synchronized (getBlockLock(oldBlock.getBlockId())) {
+      return updateReplicaUnderRecoveryLocked(oldBlock, recoveryId, newlength);
+    }
+  }
+
+  private String updateReplicaUnderRecoveryLocked(final ExtendedBlock oldBlock,
+      final long recoveryId, final long newlength) throws IOException {
     //get replica
     final String bpid = oldBlock.getBlockPoolId();
     final ReplicaInfo replica = volumeMap.get(bpid, oldBlock.getBlockId());
@@ -1628,7 +1830,7 @@ private FinalizedReplica updateReplicaUnderRecovery(String bpid,
   }
 
   @Override // FsDatasetSpi
-  public synchronized long getReplicaVisibleLength(final ExtendedBlock block)
+  public long getReplicaVisibleLength(final ExtendedBlock block)
       throws IOException {
     final Replica replica =
         getReplicaInfo(block.getBlockPoolId(), block.getBlockId());
@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.server.datanode.BlockMetadataHeader;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.nativeio.NativeIO;
+import org.apache.hadoop.util.DataChecksum;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A finalized replica mapped into the memory of the datanode and locked
+ * there with mlock, so that reads of it never go to disk.
+ */
+@InterfaceAudience.Private
+class MappableBlock implements Closeable {
+  private MappedByteBuffer mmap;
+  private final long length;
+
+  private MappableBlock(MappedByteBuffer mmap, long length) {
+    this.mmap = mmap;
+    this.length = length;
+  }
+
+  /**
+   * Maps and locks the replica in memory.
+   *
+   * @param length
+   *     the number of bytes of the block file to map
+   * @param blockIn
+   *     the block file
+   * @param metaIn
+   *     the meta file, used to verify the mapped data if verifyChecksum
+   * @param blockFileName
+   *     the name of the block file, for logging and error reporting
+   * @return the locked block
+   * @throws IOException
+   *     if the replica can not be read, its checksum does not match or it
+   *     can not be locked
+   */
+  static MappableBlock load(long length, FileInputStream blockIn,
+      FileInputStream metaIn, String blockFileName, boolean verifyChecksum)
+      throws IOException {
+    FileChannel blockChannel = null;
+    MappedByteBuffer mmap = null;
+    try {
+      blockChannel = blockIn.getChannel();
+      if (blockChannel == null) {
+        throw new IOException("Block InputStream has no FileChannel.");
+      }
+      mmap = blockChannel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+      NativeIO.POSIX.getCacheManipulator().mlock(blockFileName, mmap, length);
+      if (verifyChecksum) {
+        verifyChecksum(length, metaIn, mmap, blockFileName);
+      }
+      MappableBlock block = new MappableBlock(mmap, length);
+      mmap = null;
+      return block;
+    } finally {
+      IOUtils.closeQuietly(blockChannel);
+      if (mmap != null) {
+        NativeIO.POSIX.munmap(mmap); // unmapping also unlocks
+      }
+    }
+  }
+
+  /**
+   * Verifies the mapped data against the checksums of the meta file, so
+   * that a corrupt replica is never served from memory.
+   */
+  private static void verifyChecksum(long length, FileInputStream metaIn,
+      MappedByteBuffer mmap, String blockFileName) throws IOException {
+    BlockMetadataHeader header = BlockMetadataHeader.readHeader(
+        new DataInputStream(new BufferedInputStream(metaIn,
+            BlockMetadataHeader.getHeaderSize())));
+    DataChecksum checksum = header.getChecksum();
+    FileChannel metaChannel = metaIn.getChannel();
+    if (metaChannel == null) {
+      throw new IOException("Meta InputStream has no FileChannel.");
+    }
+    long chunks = (length + checksum.getBytesPerChecksum() - 1) /
+        checksum.getBytesPerChecksum();
+    MappedByteBuffer sums = metaChannel.map(FileChannel.MapMode.READ_ONLY,
+        BlockMetadataHeader.getHeaderSize(),
+        chunks * checksum.getChecksumSize());
+    try {
+      ByteBuffer data = mmap.duplicate();
+      data.position(0).limit((int) length);
+      checksum.verifyChunkedSums(data, sums, blockFileName, 0);
+    } finally {
+      NativeIO.POSIX.munmap(sums);
+    }
+  }
+
+  long getLength() {
+    return length;
+  }
+
+  /**
+   * @return a read only view of the whole replica, with its own position
+   *     and limit
+   */
+  ByteBuffer getReadOnlyBuffer() {
+    ByteBuffer buf = mmap.asReadOnlyBuffer();
+    buf.position(0).limit((int) length);
+    return buf;
+  }
+
+  /**
+   * Unmaps the replica. No view of it may be used afterwards.
+   */
+  @Override
+  public void close() {
+    if (mmap != null) {
+      NativeIO.POSIX.munmap(mmap);
+      mmap = null;
+    }
+  }
+}
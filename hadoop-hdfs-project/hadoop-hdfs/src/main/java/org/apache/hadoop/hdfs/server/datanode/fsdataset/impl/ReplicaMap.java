@@ -22,19 +22,28 @@
 import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Maintains the replica map.
+ * <p/>
+ * Lookups do not take the mutex, as the maps are concurrent maps which are
+ * striped by block id. Modifications do, so that holding the mutex gives a
+ * stable view of the map.
  */
 class ReplicaMap {
+  /**
+   * The number of stripes of the map of each block pool.
+   */
+  private static final int CONCURRENCY_LEVEL = 64;
+
   // Object using which this class is synchronized
   private final Object mutex;
   
   // Map of block pool Id to another map of block Id to ReplicaInfo.
-  private Map<String, Map<Long, ReplicaInfo>> map =
-      new HashMap<String, Map<Long, ReplicaInfo>>();
+  private final Map<String, Map<Long, ReplicaInfo>> map =
+      new ConcurrentHashMap<String, Map<Long, ReplicaInfo>>();
   
   ReplicaMap(Object mutex) {
     if (mutex == null) {
@@ -97,10 +106,8 @@ ReplicaInfo get(String bpid, Block block) {
    */
   ReplicaInfo get(String bpid, long blockId) {
     checkBlockPool(bpid);
-    synchronized (mutex) {
-      Map<Long, ReplicaInfo> m = map.get(bpid);
-      return m != null ? m.get(blockId) : null;
-    }
+    Map<Long, ReplicaInfo> m = map.get(bpid);
+    return m != null ? m.get(blockId) : null;
   }
   
   /**
@@ -121,7 +128,7 @@ ReplicaInfo add(String bpid, ReplicaInfo replicaInfo) {
       Map<Long, ReplicaInfo> m = map.get(bpid);
       if (m == null) {
         // Add an entry for block pool if it does not exist already
-        m = new HashMap<Long, ReplicaInfo>();
+        m = newBlockPoolMap();
         map.put(bpid, m);
       }
       return m.put(replicaInfo.getBlockId(), replicaInfo);
@@ -186,19 +193,17 @@ ReplicaInfo remove(String bpid, long blockId) {
    * @return the number of replicas in the map
    */
   int size(String bpid) {
-    Map<Long, ReplicaInfo> m = null;
-    synchronized (mutex) {
-      m = map.get(bpid);
-      return m != null ? m.size() : 0;
-    }
+    Map<Long, ReplicaInfo> m = map.get(bpid);
+    return m != null ? m.size() : 0;
   }
   
   /**
    * Get a collection of the replicas for given block pool
-   * This method is <b>not synchronized</b>. It needs to be synchronized
-   * externally using the mutex, both for getting the replicas
-   * values from the map and iterating over it. Mutex can be accessed using
-   * {@link #getMutext()} method.
+   * This method is <b>not synchronized</b>. Iterating over the collection is
+   * safe without the mutex, but the replicas are only guaranteed not to
+   * change while iterating if the iteration is synchronized externally
+   * using the mutex. Mutex can be accessed using {@link #getMutext()}
+   * method.
    *
    * @param bpid
    *     block pool id
@@ -216,11 +221,16 @@ void initBlockPool(String bpid) {
       Map<Long, ReplicaInfo> m = map.get(bpid);
       if (m == null) {
         // Add an entry for block pool if it does not exist already
-        m = new HashMap<Long, ReplicaInfo>();
+        m = newBlockPoolMap();
         map.put(bpid, m);
       }
     }
   }
+
+  private static Map<Long, ReplicaInfo> newBlockPoolMap() {
+    return new ConcurrentHashMap<Long, ReplicaInfo>(16, 0.75f,
+        CONCURRENCY_LEVEL);
+  }
   
   void cleanUpBlockPool(String bpid) {
     checkBlockPool(bpid);
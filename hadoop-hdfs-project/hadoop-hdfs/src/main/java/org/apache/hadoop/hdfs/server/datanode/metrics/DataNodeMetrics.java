@@ -27,6 +27,7 @@
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableGaugeInt;
 import org.apache.hadoop.metrics2.lib.MutableQuantiles;
 import org.apache.hadoop.metrics2.lib.MutableRate;
 import org.apache.hadoop.metrics2.source.JvmMetrics;
@@ -80,6 +81,13 @@ public class DataNodeMetrics {
   @Metric
   MutableCounterLong volumeFailures;
 
+  @Metric("Open data transfer connections")
+  MutableGaugeInt dataXceiverConnections;
+  @Metric("Data transfer connections waiting for their next operation")
+  MutableGaugeInt dataXceiverIdleConnections;
+  @Metric("Data transfer operations waiting for a worker thread")
+  MutableGaugeInt dataXceiverQueueDepth;
+
   @Metric
   MutableRate readBlockOp;
   @Metric
@@ -230,6 +238,26 @@ public void incrBlocksRead() {
     blocksRead.incr();
   }
 
+  public void incrDataXceiverConnections() {
+    dataXceiverConnections.incr();
+  }
+
+  public void decrDataXceiverConnections() {
+    dataXceiverConnections.decr();
+  }
+
+  public void incrDataXceiverIdleConnections() {
+    dataXceiverIdleConnections.incr();
+  }
+
+  public void decrDataXceiverIdleConnections() {
+    dataXceiverIdleConnections.decr();
+  }
+
+  public void setDataXceiverQueueDepth(int depth) {
+    dataXceiverQueueDepth.set(depth);
+  }
+
   public void incrFsyncCount() {
     fsyncCount.incr();
   }
@@ -80,4 +80,25 @@ public interface FSDatasetMBean {
    * @return The number of failed volumes in the datanode.
    */
   public int getNumFailedVolumes();
+
+  /**
+   * Returns the amount of memory (in bytes) used by cached replicas
+   */
+  public long getCacheUsed();
+
+  /**
+   * Returns the amount of memory (in bytes) which may be used by cached
+   * replicas
+   */
+  public long getCacheCapacity();
+
+  /**
+   * Returns the number of replicas which are cached
+   */
+  public long getNumBlocksCached();
+
+  /**
+   * Returns the number of replicas which failed to be cached
+   */
+  public long getNumBlocksFailedToCache();
 }
@@ -0,0 +1,477 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.protocol.CacheDirective;
+import org.apache.hadoop.hdfs.protocol.DatanodeID;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.protocol.DirectoryListing;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.HdfsLocatedFileStatus;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.server.protocol.BlockIdCommand;
+import org.apache.hadoop.hdfs.server.protocol.CacheReport;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeCommand;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol;
+import org.apache.hadoop.util.Daemon;
+import org.apache.hadoop.util.StringUtils;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Manages the caching of blocks in the memory of the datanodes.
+ * <p/>
+ * Every namenode tracks which blocks the datanodes report as cached in
+ * their heartbeats and lists the datanodes caching a block first when
+ * serving its locations. The leader namenode additionally keeps the cache
+ * directives and periodically rescans them, asking datanodes to cache the
+ * blocks of the directives and to uncache the blocks which are no longer
+ * needed within the memory reported by the datanodes.
+ * <p/>
+ * There is no table for the directives in the metadata storage. They are
+ * only kept in the memory of the leader and are lost when it changes.
+ */
+@InterfaceAudience.Private
+public class CacheManager {
+  static final Log LOG = LogFactory.getLog(CacheManager.class);
+
+  /**
+   * The cache of a datanode as seen by the namenode.
+   */
+  private static class DatanodeCache {
+    private long capacity;
+    private long used;
+    /**
+     * Blocks listed by the last full cache report of the datanode.
+     */
+    private Set<Long> cached = new HashSet<Long>();
+    /**
+     * Blocks the datanode was asked to cache since its last full report.
+     */
+    private final Set<Long> pendingCached = new HashSet<Long>();
+    /**
+     * Bytes of the blocks of pendingCached, used to not overcommit the
+     * cache of the datanode.
+     */
+    private long pendingBytes;
+    private final List<Long> toCache = new ArrayList<Long>();
+    private final List<Long> toUncache = new ArrayList<Long>();
+
+    boolean isCached(long blockId) {
+      return (cached.contains(blockId) || pendingCached.contains(blockId)) &&
+          !toUncache.contains(blockId);
+    }
+
+    /**
+     * @return a copy of the blocks for which {@link #isCached} holds
+     */
+    Set<Long> getCachedBlocks() {
+      Set<Long> blocks = new HashSet<Long>(cached);
+      blocks.addAll(pendingCached);
+      for (Long blockId : toUncache) {
+        blocks.remove(blockId);
+      }
+      return blocks;
+    }
+
+    long getRemaining() {
+      return capacity - used - pendingBytes;
+    }
+  }
+
+  private final FSNamesystem namesystem;
+  private final long rescanInterval;
+
+  /**
+   * Guarded by this.
+   */
+  private final Map<Long, CacheDirective> directives =
+      new TreeMap<Long, CacheDirective>();
+  private long nextDirectiveId = 1;
+
+  /**
+   * Keyed by the storage id of the datanode. Guarded by this.
+   */
+  private final Map<String, DatanodeCache> datanodes =
+      new HashMap<String, DatanodeCache>();
+
+  /**
+   * The cached blocks of each datanode, keyed by its storage id. Replaced
+   * under this whenever the caches change and never modified, so that the
+   * locations of the blocks of a file are sorted without taking the lock.
+   */
+  private volatile Map<String, Set<Long>> cachedBlocks =
+      Collections.emptyMap();
+
+  private Daemon rescanThread = null;
+  private volatile boolean running = false;
+  private final Object rescanTrigger = new Object();
+
+  CacheManager(FSNamesystem namesystem, Configuration conf) {
+    this.namesystem = namesystem;
+    this.rescanInterval =
+        conf.getLong(DFSConfigKeys.DFS_NAMENODE_CACHE_RESCAN_INTERVAL_MS_KEY,
+            DFSConfigKeys.DFS_NAMENODE_CACHE_RESCAN_INTERVAL_MS_DEFAULT);
+  }
+
+  void activate() {
+    running = true;
+    rescanThread = new Daemon(new CacheRescanMonitor());
+    rescanThread.start();
+  }
+
+  void close() {
+    running = false;
+    if (rescanThread != null) {
+      triggerRescan();
+      try {
+        rescanThread.join(3000);
+      } catch (InterruptedException ie) {
+      }
+      rescanThread = null;
+    }
+  }
+
+  long addDirective(String path, short replication) throws IOException {
+    if (replication <= 0) {
+      throw new IllegalArgumentException(
+          "Invalid cache replication " + replication);
+    }
+    if (namesystem.getFileInfo(path, true) == null) {
+      throw new FileNotFoundException("File does not exist: " + path);
+    }
+    CacheDirective directive;
+    synchronized (this) {
+      long id = nextDirectiveId++;
+      directive = new CacheDirective(id, path, replication);
+      directives.put(id, directive);
+    }
+    LOG.info("Added cache directive " + directive);
+    triggerRescan();
+    return directive.getId();
+  }
+
+  synchronized void removeDirective(long id) throws IOException {
+    CacheDirective directive = directives.remove(id);
+    if (directive == null) {
+      throw new IOException("No cache directive with id " + id);
+    }
+    LOG.info("Removed cache directive " + directive);
+    triggerRescan();
+  }
+
+  synchronized List<CacheDirective> listDirectives() {
+    return new ArrayList<CacheDirective>(directives.values());
+  }
+
+  private void triggerRescan() {
+    synchronized (rescanTrigger) {
+      rescanTrigger.notifyAll();
+    }
+  }
+
+  /**
+   * Records the cache report of a heartbeat and, on the leader, adds the
+   * pending cache and uncache commands of the datanode to the commands of
+   * the heartbeat response.
+   *
+   * @return the commands for the datanode
+   */
+  synchronized DatanodeCommand[] handleHeartbeat(DatanodeID datanode,
+      String blockPoolId, CacheReport report, DatanodeCommand[] cmds) {
+    if (report == null) {
+      if (datanodes.remove(datanode.getStorageID()) != null) {
+        publishCachedBlocks(datanode.getStorageID(), null);
+      }
+      return cmds;
+    }
+    DatanodeCache cache = datanodes.get(datanode.getStorageID());
+    if (cache == null) {
+      cache = new DatanodeCache();
+      datanodes.put(datanode.getStorageID(), cache);
+    }
+    cache.capacity = report.getCacheCapacity();
+    cache.used = report.getCacheUsed();
+    if (report.isFull()) {
+      Set<Long> cached = new HashSet<Long>(report.getBlockIds().length);
+      for (long blockId : report.getBlockIds()) {
+        cached.add(blockId);
+      }
+      cache.cached = cached;
+      cache.pendingCached.clear();
+      cache.pendingBytes = 0;
+      publishCachedBlocks(datanode.getStorageID(), cache);
+    }
+
+    if (cache.toCache.isEmpty() && cache.toUncache.isEmpty()) {
+      return cmds;
+    }
+    for (DatanodeCommand cmd : cmds) {
+      if (cmd.getAction() == DatanodeProtocol.DNA_REGISTER) {
+        return cmds;
+      }
+    }
+    List<DatanodeCommand> result =
+        new ArrayList<DatanodeCommand>(Arrays.asList(cmds));
+    if (!cache.toUncache.isEmpty()) {
+      result.add(new BlockIdCommand(DatanodeProtocol.DNA_UNCACHE, blockPoolId,
+          toArray(cache.toUncache)));
+      cache.cached.removeAll(cache.toUncache);
+      cache.pendingCached.removeAll(cache.toUncache);
+      cache.toUncache.clear();
+    }
+    if (!cache.toCache.isEmpty()) {
+      result.add(new BlockIdCommand(DatanodeProtocol.DNA_CACHE, blockPoolId,
+          toArray(cache.toCache)));
+      cache.pendingCached.addAll(cache.toCache);
+      cache.toCache.clear();
+    }
+    publishCachedBlocks(datanode.getStorageID(), cache);
+    return result.toArray(new DatanodeCommand[result.size()]);
+  }
+
+  /**
+   * Publishes the cached blocks of one datanode, or that it has no cache.
+   * Guarded by this.
+   */
+  private void publishCachedBlocks(String storageId, DatanodeCache cache) {
+    Map<String, Set<Long>> published =
+        new HashMap<String, Set<Long>>(cachedBlocks);
+    if (cache == null) {
+      published.remove(storageId);
+    } else {
+      published.put(storageId, cache.getCachedBlocks());
+    }
+    cachedBlocks = published;
+  }
+
+  /**
+   * Publishes the cached blocks of all the datanodes. Guarded by this.
+   */
+  private void publishCachedBlocks() {
+    Map<String, Set<Long>> published = new HashMap<String, Set<Long>>();
+    for (Map.Entry<String, DatanodeCache> entry : datanodes.entrySet()) {
+      published.put(entry.getKey(), entry.getValue().getCachedBlocks());
+    }
+    cachedBlocks = published;
+  }
+
+  /**
+   * Moves the datanodes caching a block ahead of the other locations of the
+   * block, keeping a location on the client itself first. Reads the
+   * published cached blocks, so it does not wait for heartbeats or rescans.
+   */
+  void sortLocatedBlocks(DatanodeInfo client,
+      List<LocatedBlock> locatedBlocks) {
+    Map<String, Set<Long>> cachedBlocks = this.cachedBlocks;
+    if (cachedBlocks.isEmpty()) {
+      return;
+    }
+    for (LocatedBlock b : locatedBlocks) {
+      DatanodeInfo[] locations = b.getLocations();
+      int start = locations.length > 0 && locations[0].equals(client) ? 1 : 0;
+      List<DatanodeInfo> cached = new ArrayList<DatanodeInfo>();
+      List<DatanodeInfo> others = new ArrayList<DatanodeInfo>();
+      for (int i = start; i < locations.length; i++) {
+        Set<Long> cache = cachedBlocks.get(locations[i].getStorageID());
+        if (cache != null && !locations[i].isDecommissioned() &&
+            cache.contains(b.getBlock().getBlockId())) {
+          cached.add(locations[i]);
+        } else {
+          others.add(locations[i]);
+        }
+      }
+      if (cached.isEmpty()) {
+        continue;
+      }
+      for (DatanodeInfo location : cached) {
+        locations[start++] = location;
+      }
+      for (DatanodeInfo location : others) {
+        locations[start++] = location;
+      }
+    }
+  }
+
+  /**
+   * Schedules the caching and uncaching needed to satisfy the directives.
+   */
+  void rescan() throws IOException {
+    List<CacheDirective> current = listDirectives();
+    // block id -> the located block and the requested cached replication
+    Map<Long, LocatedBlock> blocks = new HashMap<Long, LocatedBlock>();
+    Map<Long, Short> replication = new HashMap<Long, Short>();
+    for (CacheDirective directive : current) {
+      try {
+        for (LocatedBlock block : getBlocks(directive.getPath())) {
+          long blockId = block.getBlock().getBlockId();
+          Short prev = replication.get(blockId);
+          if (prev == null || prev < directive.getReplication()) {
+            replication.put(blockId, directive.getReplication());
+            blocks.put(blockId, block);
+          }
+        }
+      } catch (FileNotFoundException e) {
+        LOG.info("Path of cache directive " + directive + " does not exist");
+      }
+    }
+
+    synchronized (this) {
+      // uncache the blocks of the removed directives
+      for (DatanodeCache cache : datanodes.values()) {
+        Set<Long> all = new HashSet<Long>(cache.cached);
+        all.addAll(cache.pendingCached);
+        for (long blockId : all) {
+          if (!replication.containsKey(blockId) &&
+              !cache.toUncache.contains(blockId)) {
+            cache.toUncache.add(blockId);
+          }
+        }
+        for (Iterator<Long> it = cache.toCache.iterator(); it.hasNext(); ) {
+          if (!replication.containsKey(it.next())) {
+            it.remove();
+          }
+        }
+      }
+
+      for (Map.Entry<Long, LocatedBlock> entry : blocks.entrySet()) {
+        rescanBlock(entry.getValue(), replication.get(entry.getKey()));
+      }
+      publishCachedBlocks();
+    }
+  }
+
+  /**
+   * Caches or uncaches replicas of a block to reach the requested cached
+   * replication. Guarded by this.
+   */
+  private void rescanBlock(LocatedBlock block, short wanted) {
+    long blockId = block.getBlock().getBlockId();
+    List<DatanodeCache> cachedOn = new ArrayList<DatanodeCache>();
+    List<DatanodeCache> candidates = new ArrayList<DatanodeCache>();
+    for (DatanodeInfo location : block.getLocations()) {
+      DatanodeCache cache = datanodes.get(location.getStorageID());
+      if (cache == null) {
+        continue;
+      }
+      if (cache.isCached(blockId) || cache.toCache.contains(blockId)) {
+        cachedOn.add(cache);
+      } else if (!location.isDecommissioned() &&
+          !location.isDecommissionInProgress() &&
+          cache.getRemaining() >= block.getBlockSize()) {
+        candidates.add(cache);
+      }
+    }
+    int missing = wanted - cachedOn.size();
+    for (int i = 0; i < missing && i < candidates.size(); i++) {
+      DatanodeCache cache = candidates.get(i);
+      cache.toUncache.remove(blockId);
+      cache.toCache.add(blockId);
+      cache.pendingBytes += block.getBlockSize();
+    }
+    for (int i = wanted; i < cachedOn.size(); i++) {
+      DatanodeCache cache = cachedOn.get(i);
+      if (!cache.toCache.remove(blockId)) {
+        cache.toUncache.add(blockId);
+      }
+    }
+  }
+
+  /**
+   * @return the complete blocks of a file, or of the files of a directory
+   */
+  private List<LocatedBlock> getBlocks(String path) throws IOException {
+    List<LocatedBlock> result = new ArrayList<LocatedBlock>();
+    byte[] startAfter = HdfsFileStatus.EMPTY_NAME;
+    DirectoryListing listing;
+    do {
+      listing = namesystem.getListing(path, startAfter, true);
+      if (listing == null) {
+        throw new FileNotFoundException(path);
+      }
+      for (HdfsFileStatus status : listing.getPartialListing()) {
+        if (status.isDir() || !(status instanceof HdfsLocatedFileStatus)) {
+          continue;
+        }
+        LocatedBlocks locatedBlocks =
+            ((HdfsLocatedFileStatus) status).getBlockLocations();
+        if (locatedBlocks == null) {
+          continue;
+        }
+        List<LocatedBlock> fileBlocks = locatedBlocks.getLocatedBlocks();
+        int complete = locatedBlocks.isUnderConstruction() ?
+            fileBlocks.size() - 1 : fileBlocks.size();
+        for (int i = 0; i < complete; i++) {
+          result.add(fileBlocks.get(i));
+        }
+      }
+      startAfter = listing.getLastName();
+    } while (listing.hasMore());
+    return result;
+  }
+
+  private static long[] toArray(List<Long> list) {
+    long[] array = new long[list.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = list.get(i);
+    }
+    return array;
+  }
+
+  private class CacheRescanMonitor implements Runnable {
+    @Override
+    public void run() {
+      while (running && namesystem.isRunning()) {
+        try {
+          if (namesystem.isLeader() && !namesystem.isInSafeMode()) {
+            rescan();
+          }
+        } catch (IOException e) {
+          LOG.warn("Cache rescan failed: " + StringUtils.stringifyException(e));
+        }
+        try {
+          synchronized (rescanTrigger) {
+            if (running) {
+              // woken up early when a directive is added or removed
+              rescanTrigger.wait(rescanInterval);
+            }
+          }
+        } catch (InterruptedException ie) {
+          break;
+        }
+      }
+    }
+  }
+}
@@ -74,6 +74,7 @@
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.protocol.AlreadyBeingCreatedException;
 import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.CacheDirective;
 import org.apache.hadoop.hdfs.protocol.ClientProtocol;
 import org.apache.hadoop.hdfs.protocol.DatanodeID;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
@@ -107,8 +108,10 @@
 import org.apache.hadoop.hdfs.server.namenode.metrics.FSNamesystemMBean;
 import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
 import org.apache.hadoop.hdfs.server.namenode.web.resources.NamenodeWebHdfsMethods;
+import org.apache.hadoop.hdfs.server.protocol.CacheReport;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeCommand;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
+import org.apache.hadoop.hdfs.server.protocol.ErasureCodingTaskStatus;
 import org.apache.hadoop.hdfs.server.protocol.HeartbeatResponse;
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
 import org.apache.hadoop.io.IOUtils;
@@ -389,6 +392,7 @@ private void logAuditEvent(boolean succeeded, UserGroupInformation ugi,
   private final ExecutorService subtreeOperationsExecutor;
   private final boolean erasureCodingEnabled;
   private final ErasureCodingManager erasureCodingManager;
+  private final CacheManager cacheManager;
 
   /**
    * Clear all loaded data
@@ -461,6 +465,7 @@ public static FSNamesystem loadFromDisk(Configuration conf, NameNode namenode)
       this.erasureCodingEnabled =
           ErasureCodingManager.isErasureCodingEnabled(conf);
       this.erasureCodingManager = new ErasureCodingManager(this, conf);
+      this.cacheManager = new CacheManager(this, conf);
       this.datanodeStatistics =
           blockManager.getDatanodeManager().getDatanodeStatistics();
 
@@ -680,6 +685,7 @@ void startActiveServices() throws IOException {
     if (erasureCodingEnabled) {
       erasureCodingManager.activate();
     }
+    cacheManager.activate();
   }
 
   private boolean shouldUseDelegationTokens() {
@@ -705,6 +711,9 @@ void stopActiveServices() {
     if (erasureCodingManager != null) {
       erasureCodingManager.close();
     }
+    if (cacheManager != null) {
+      cacheManager.close();
+    }
   }
 
   NamespaceInfo getNamespaceInfo() throws IOException {
@@ -894,16 +903,18 @@ public Object performTask() throws StorageException, IOException {
                 getBlockLocationsInternal(src, offset, length, true, true,
                     true);
             if (blocks != null) {
-              blockManager.getDatanodeManager()
-                  .sortLocatedBlocks(clientMachine, blocks.getLocatedBlocks());
+              DatanodeManager dm = blockManager.getDatanodeManager();
+              DatanodeDescriptor client = dm.getDatanodeByHost(clientMachine);
+              dm.sortLocatedBlocks(clientMachine, blocks.getLocatedBlocks());
+              cacheManager.sortLocatedBlocks(client, blocks.getLocatedBlocks());
 
               LocatedBlock lastBlock = blocks.getLastLocatedBlock();
               if (lastBlock != null) {
                 ArrayList<LocatedBlock> lastBlockList =
                     new ArrayList<LocatedBlock>();
                 lastBlockList.add(lastBlock);
-                blockManager.getDatanodeManager()
-                    .sortLocatedBlocks(clientMachine, lastBlockList);
+                dm.sortLocatedBlocks(clientMachine, lastBlockList);
+                cacheManager.sortLocatedBlocks(client, lastBlockList);
               }
             }
             return blocks;
@@ -3402,12 +3413,20 @@ String getRegistrationID() throws IOException {
    */
   HeartbeatResponse handleHeartbeat(DatanodeRegistration nodeReg, long capacity,
       long dfsUsed, long remaining, long blockPoolUsed, int xceiverCount,
-      int xmitsInProgress, int failedVolumes) throws IOException {
+      int xmitsInProgress, int failedVolumes,
+      ErasureCodingTaskStatus[] codingStatuses, CacheReport cacheReport)
+      throws IOException {
     final int maxTransfer =
         blockManager.getMaxReplicationStreams() - xmitsInProgress;
     DatanodeCommand[] cmds = blockManager.getDatanodeManager()
         .handleHeartbeat(nodeReg, blockPoolId, capacity, dfsUsed, remaining,
             blockPoolUsed, xceiverCount, maxTransfer, failedVolumes);
+    if (erasureCodingEnabled) {
+      cmds = erasureCodingManager.handleHeartbeat(nodeReg, codingStatuses,
+          cmds);
+    }
+    cmds = cacheManager.handleHeartbeat(nodeReg, blockPoolId, cacheReport,
+        cmds);
     return new HeartbeatResponse(cmds);
   }
 
@@ -5423,6 +5442,37 @@ public void changeConf(List<String> props, List<String> newVals)
     }
   }
 
+  /**
+   * Adds a directive to cache the blocks of a file, or of the files of a
+   * directory, in the memory of replication datanodes.
+   *
+   * @return the id of the new directive
+   */
+  long addCacheDirective(String path, short replication) throws IOException {
+    checkSuperuserPrivilege();
+    if (!isLeader()) {
+      throw new RuntimeException("Asked non leading node to addCacheDirective");
+    }
+    return cacheManager.addDirective(path, replication);
+  }
+
+  void removeCacheDirective(long id) throws IOException {
+    checkSuperuserPrivilege();
+    if (!isLeader()) {
+      throw new RuntimeException(
+          "Asked non leading node to removeCacheDirective");
+    }
+    cacheManager.removeDirective(id);
+  }
+
+  List<CacheDirective> listCacheDirectives() throws IOException {
+    if (!isLeader()) {
+      throw new RuntimeException(
+          "Asked non leading node to listCacheDirectives");
+    }
+    return cacheManager.listDirectives();
+  }
+
   public class FNode implements Comparable<FNode> {
     private String parentPath;
     private INode inode;
@@ -6399,6 +6449,47 @@ public Object performTask() throws IOException {
     return (EncodingStatus) result;
   }
 
+  /**
+   * Get the encoding status of the source file of a parity file.
+   *
+   * @param parityPath
+   *    the path of the parity file
+   * @return
+   *    the encoding status, NOT_ENCODED if the parity file does not exist or
+   *    is not the parity file of an encoded file
+   * @throws IOException
+   */
+  public EncodingStatus getParityEncodingStatus(final String parityPath)
+      throws IOException {
+    HopsTransactionalRequestHandler findReq =
+        new HopsTransactionalRequestHandler(
+            HDFSOperationType.FIND_ENCODING_STATUS) {
+          @Override
+          public void acquireLock(TransactionLocks locks) throws IOException {
+            LockFactory lf = LockFactory.getInstance();
+            locks.add(lf.getINodeLock(nameNode, INodeLockType.READ_COMMITTED,
+                INodeResolveType.PATH, parityPath)).add(
+                lf.getParityEncodingStatusLock(LockType.READ_COMMITTED,
+                    parityPath));
+          }
+
+          @Override
+          public Object performTask() throws IOException {
+            INode parityNode = getINode(parityPath);
+            if (parityNode == null) {
+              return null;
+            }
+            return EntityManager.find(EncodingStatus.Finder.ByParityInodeId,
+                parityNode.getId());
+          }
+        };
+    Object result = findReq.handle();
+    if (result == null) {
+      return new EncodingStatus(EncodingStatus.Status.NOT_ENCODED);
+    }
+    return (EncodingStatus) result;
+  }
+
   /**
    * Get the inode with the given id.
    *
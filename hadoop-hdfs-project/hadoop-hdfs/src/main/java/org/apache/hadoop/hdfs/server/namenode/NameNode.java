@@ -31,6 +31,7 @@
 import io.hops.metadata.hdfs.dal.PendingBlockDataAccess;
 import io.hops.metadata.hdfs.dal.SafeBlocksDataAccess;
 import io.hops.metadata.hdfs.dal.UnderReplicatedBlockDataAccess;
+import io.hops.transaction.handler.TransactionMetrics;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.HadoopIllegalArgumentException;
@@ -256,6 +257,7 @@ public NamenodeProtocols getRpcServer() {
 
   static void initMetrics(Configuration conf, NamenodeRole role) {
     metrics = NameNodeMetrics.create(conf, role);
+    TransactionMetrics.create(conf);
   }
 
   public static NameNodeMetrics getNameNodeMetrics() {
@@ -649,6 +651,7 @@ public void stop() {
       LOG.warn("Encountered exception while exiting state ", e);
     }
     stopCommonServices();
+    TransactionMetrics.shutdown();
     if (metrics != null) {
       metrics.shutdown();
     }
@@ -17,6 +17,7 @@
  */
 package org.apache.hadoop.hdfs.server.namenode;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.BlockingService;
 import io.hops.erasure_coding.Codec;
 import io.hops.leader_election.node.ActiveNode;
@@ -38,6 +39,7 @@
 import org.apache.hadoop.hdfs.DFSUtil;
 import org.apache.hadoop.hdfs.HDFSPolicyProvider;
 import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
+import org.apache.hadoop.hdfs.protocol.CacheDirective;
 import org.apache.hadoop.hdfs.protocol.CorruptFileBlocks;
 import org.apache.hadoop.hdfs.protocol.DatanodeID;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
@@ -70,9 +72,11 @@
 import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
 import org.apache.hadoop.hdfs.server.namenode.web.resources.NamenodeWebHdfsMethods;
 import org.apache.hadoop.hdfs.server.protocol.BlocksWithLocations;
+import org.apache.hadoop.hdfs.server.protocol.CacheReport;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeCommand;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
+import org.apache.hadoop.hdfs.server.protocol.ErasureCodingTaskStatus;
 import org.apache.hadoop.hdfs.server.protocol.FinalizeCommand;
 import org.apache.hadoop.hdfs.server.protocol.HeartbeatResponse;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
@@ -115,11 +119,16 @@
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_HANDLER_COUNT_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_HANDLER_COUNT_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SERVICE_HANDLER_COUNT_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SERVICE_HANDLER_COUNT_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_STORAGE_IO_THREADS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_STORAGE_IO_THREADS_KEY;
 import static org.apache.hadoop.hdfs.protocol.HdfsConstants.MAX_PATH_DEPTH;
 import static org.apache.hadoop.hdfs.protocol.HdfsConstants.MAX_PATH_LENGTH;
 
@@ -151,6 +160,13 @@ class NameNodeRpcServer implements NamenodeProtocols {
    */
   protected final RPC.Server clientRpcServer;
   protected final InetSocketAddress clientRpcAddress;
+
+  /**
+   * Runs client calls instead of the RPC handlers when
+   * dfs.namenode.storage.io.threads is set, so that the number of operations
+   * waiting on the database is not capped by the handler count
+   */
+  private final ThreadPoolExecutor storageIoExecutor;
   
   private final String minimumDataNodeVersion;
 
@@ -263,6 +279,23 @@ public NameNodeRpcServer(Configuration conf, NameNode nn) throws IOException {
       }
     }
 
+    int storageIoThreads = conf.getInt(DFS_NAMENODE_STORAGE_IO_THREADS_KEY,
+        DFS_NAMENODE_STORAGE_IO_THREADS_DEFAULT);
+    if (storageIoThreads > 0) {
+      // No queueing: once all threads are busy the handlers run calls
+      // themselves, which stops them from draining the call queue
+      storageIoExecutor = new ThreadPoolExecutor(storageIoThreads,
+          storageIoThreads, 60, TimeUnit.SECONDS,
+          new SynchronousQueue<Runnable>(), new ThreadFactoryBuilder()
+          .setDaemon(true).setNameFormat("NameNode storage I/O %d").build());
+      storageIoExecutor.allowCoreThreadTimeOut(true);
+      clientRpcServer.setCallExecutor(storageIoExecutor);
+      LOG.info("Running client RPC calls on " + storageIoThreads +
+          " storage I/O threads");
+    } else {
+      storageIoExecutor = null;
+    }
+
     // The rpc-server port can be ephemeral... ensure we have the correct info
     clientRpcAddress = clientRpcServer.getListenerAddress();
     nn.setRpcServerAddress(conf, clientRpcAddress);
@@ -302,6 +335,9 @@ void stop() {
     if (serviceRpcServer != null) {
       serviceRpcServer.stop();
     }
+    if (storageIoExecutor != null) {
+      storageIoExecutor.shutdownNow();
+    }
   }
   
   InetSocketAddress getServiceRpcAddress() {
@@ -794,12 +830,13 @@ public DatanodeRegistration registerDatanode(DatanodeRegistration nodeReg)
   @Override // DatanodeProtocol
   public HeartbeatResponse sendHeartbeat(DatanodeRegistration nodeReg,
       StorageReport[] report, int xmitsInProgress, int xceiverCount,
-      int failedVolumes) throws IOException {
+      int failedVolumes, ErasureCodingTaskStatus[] codingStatuses,
+      CacheReport cacheReport) throws IOException {
     verifyRequest(nodeReg);
     return namesystem.handleHeartbeat(nodeReg, report[0].getCapacity(),
         report[0].getDfsUsed(), report[0].getRemaining(),
         report[0].getBlockPoolUsed(), xceiverCount, xmitsInProgress,
-        failedVolumes);
+        failedVolumes, codingStatuses, cacheReport);
   }
 
   @Override // DatanodeProtocol
@@ -998,6 +1035,22 @@ public void changeConf(List<String> props, List<String> newVals)
     namesystem.changeConf(props, newVals);
   }
 
+  @Override // ClientProtocol
+  public long addCacheDirective(String path, short replication)
+      throws IOException {
+    return namesystem.addCacheDirective(path, replication);
+  }
+
+  @Override // ClientProtocol
+  public void removeCacheDirective(long id) throws IOException {
+    namesystem.removeCacheDirective(id);
+  }
+
+  @Override // ClientProtocol
+  public List<CacheDirective> listCacheDirectives() throws IOException {
+    return namesystem.listCacheDirectives();
+  }
+
   @Override // ClientProtocol
   public HdfsFileStatus create(String src, FsPermission masked,
       String clientName, EnumSetWritable<CreateFlag> flag, boolean createParent,
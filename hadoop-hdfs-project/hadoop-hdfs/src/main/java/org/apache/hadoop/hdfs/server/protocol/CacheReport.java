@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.protocol;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * The state of the cache of a datanode sent with its heartbeats: the
+ * memory available for and used by cached replicas and, every
+ * dfs.cachereport.intervalMsec, the ids of the cached blocks of the block
+ * pool.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class CacheReport {
+  private final long cacheCapacity;
+  private final long cacheUsed;
+  private final long[] blockIds;
+
+  /**
+   * @param blockIds
+   *     the ids of the cached blocks, or null if the report does not list
+   *     them
+   */
+  public CacheReport(long cacheCapacity, long cacheUsed, long[] blockIds) {
+    this.cacheCapacity = cacheCapacity;
+    this.cacheUsed = cacheUsed;
+    this.blockIds = blockIds;
+  }
+
+  public long getCacheCapacity() {
+    return cacheCapacity;
+  }
+
+  public long getCacheUsed() {
+    return cacheUsed;
+  }
+
+  /**
+   * @return true if the report lists the cached blocks
+   */
+  public boolean isFull() {
+    return blockIds != null;
+  }
+
+  public long[] getBlockIds() {
+    return blockIds;
+  }
+}
@@ -76,6 +76,9 @@ public interface DatanodeProtocol {
   final static int DNA_RECOVERBLOCK = 6;  // request a block recovery
   final static int DNA_ACCESSKEYUPDATE = 7;  // update access key
   final static int DNA_BALANCERBANDWIDTHUPDATE = 8; // update balancer bandwidth
+  final static int DNA_ERASURE_CODING = 9; // run erasure coding tasks
+  final static int DNA_CACHE = 10;     // cache blocks
+  final static int DNA_UNCACHE = 11;   // uncache blocks
 
   /**
    * Register Datanode.
@@ -108,12 +111,18 @@ public DatanodeRegistration registerDatanode(
    *     number of active transceiver threads
    * @param failedVolumes
    *     number of failed volumes
+   * @param codingStatuses
+   *     states of the erasure coding tasks of the datanode
+   * @param cacheReport
+   *     usage of the cache of the datanode and, periodically, the blocks
+   *     of the block pool cached in it
    * @throws IOException
    *     on error
    */
   public HeartbeatResponse sendHeartbeat(DatanodeRegistration registration,
       StorageReport[] reports, int xmitsInProgress, int xceiverCount,
-      int failedVolumes) throws IOException;
+      int failedVolumes, ErasureCodingTaskStatus[] codingStatuses,
+      CacheReport cacheReport) throws IOException;
 
   /**
    * blockReport() tells the NameNode about all the locally-stored blocks.
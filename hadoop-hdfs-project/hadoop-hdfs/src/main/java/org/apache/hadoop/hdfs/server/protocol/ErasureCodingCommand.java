@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.protocol;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * An ErasureCodingCommand is an instruction to a datanode to run the given
+ * erasure coding tasks and to cancel the given tasks it is running.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class ErasureCodingCommand extends DatanodeCommand {
+  private final ErasureCodingTask[] tasks;
+  private final long[] canceledTaskIds;
+
+  public ErasureCodingCommand(ErasureCodingTask[] tasks,
+      long[] canceledTaskIds) {
+    super(DatanodeProtocol.DNA_ERASURE_CODING);
+    this.tasks = tasks;
+    this.canceledTaskIds = canceledTaskIds;
+  }
+
+  public ErasureCodingTask[] getTasks() {
+    return tasks;
+  }
+
+  public long[] getCanceledTaskIds() {
+    return canceledTaskIds;
+  }
+}
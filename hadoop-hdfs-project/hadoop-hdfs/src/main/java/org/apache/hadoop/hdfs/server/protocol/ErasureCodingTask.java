@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.protocol;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * An encoding or a repair of an erasure-coded file which the namenode
+ * assigns to a datanode with an {@link ErasureCodingCommand}.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class ErasureCodingTask {
+
+  public enum Type {
+    ENCODE,
+    REPAIR_SOURCE,
+    REPAIR_PARITY
+  }
+
+  private final long taskId;
+  private final Type type;
+  private final String codecId;
+  private final String sourcePath;
+  private final String parityPath;
+  private final int targetReplication;
+
+  /**
+   * @param taskId
+   *     the identifier of the task, unique on the namenode
+   * @param targetReplication
+   *     the replication of the source and parity file after an encoding,
+   *     ignored by repairs
+   */
+  public ErasureCodingTask(long taskId, Type type, String codecId,
+      String sourcePath, String parityPath, int targetReplication) {
+    this.taskId = taskId;
+    this.type = type;
+    this.codecId = codecId;
+    this.sourcePath = sourcePath;
+    this.parityPath = parityPath;
+    this.targetReplication = targetReplication;
+  }
+
+  public long getTaskId() {
+    return taskId;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public String getCodecId() {
+    return codecId;
+  }
+
+  public String getSourcePath() {
+    return sourcePath;
+  }
+
+  public String getParityPath() {
+    return parityPath;
+  }
+
+  public int getTargetReplication() {
+    return targetReplication;
+  }
+
+  @Override
+  public String toString() {
+    return type + " task " + taskId + " (codec=" + codecId + ", source=" +
+        sourcePath + ", parity=" + parityPath + ")";
+  }
+}
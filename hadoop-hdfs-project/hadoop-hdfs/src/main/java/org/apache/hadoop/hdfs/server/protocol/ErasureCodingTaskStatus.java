@@ -0,0 +1,58 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.protocol;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * The state of an {@link ErasureCodingTask} on the datanode running it,
+ * reported to the namenode with the heartbeats.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class ErasureCodingTaskStatus {
+
+  public enum State {
+    ACTIVE,
+    FINISHED,
+    FAILED,
+    CANCELED
+  }
+
+  private final long taskId;
+  private final State state;
+
+  public ErasureCodingTaskStatus(long taskId, State state) {
+    this.taskId = taskId;
+    this.state = state;
+  }
+
+  public long getTaskId() {
+    return taskId;
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  @Override
+  public String toString() {
+    return "task " + taskId + " " + state;
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.erasure_coding;
+
+import io.hops.metadata.hdfs.entity.EncodingPolicy;
+import io.hops.metadata.hdfs.entity.EncodingStatus;
+import org.apache.hadoop.hdfs.server.namenode.INode;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestEncodingStatusUpdates {
+
+  private static EncodingStatus newStatus(int inodeId) {
+    return new EncodingStatus(inodeId, EncodingStatus.Status.ENCODING_ACTIVE,
+        new EncodingPolicy("codec", (short) 1), 1L);
+  }
+
+  @Test
+  public void testBatchesInInodeIdOrder() {
+    EncodingStatusUpdates updates = new EncodingStatusUpdates();
+    updates.add(5, EncodingStatusUpdates.Transition.ENCODING_FAILED, null);
+    updates.add(1, EncodingStatusUpdates.Transition.ENCODING_FINISHED,
+        "/parity/1");
+    updates.add(3, EncodingStatusUpdates.Transition.SOURCE_REPAIR_FAILED,
+        null);
+    updates.add(5, EncodingStatusUpdates.Transition.PARITY_REPAIR_CANCELED,
+        null);
+    assertEquals(3, updates.size());
+
+    List<List<EncodingStatusUpdates.Update>> batches = updates.drain(2);
+    assertEquals(0, updates.size());
+    assertEquals(2, batches.size());
+    assertEquals(1, batches.get(0).get(0).getInodeId());
+    assertEquals("/parity/1", batches.get(0).get(0).getParityPath());
+    assertEquals(3, batches.get(0).get(1).getInodeId());
+    EncodingStatusUpdates.Update last = batches.get(1).get(0);
+    assertEquals(5, last.getInodeId());
+    assertEquals(
+        Arrays.asList(EncodingStatusUpdates.Transition.ENCODING_FAILED,
+            EncodingStatusUpdates.Transition.PARITY_REPAIR_CANCELED),
+        last.getTransitions());
+  }
+
+  @Test
+  public void testRetry() {
+    EncodingStatusUpdates updates = new EncodingStatusUpdates();
+    updates.add(1, EncodingStatusUpdates.Transition.ENCODING_CANCELED, null);
+    List<EncodingStatusUpdates.Update> batch = updates.drain(10).get(0);
+    // reported while the batch was being committed
+    updates.add(1, EncodingStatusUpdates.Transition.SOURCE_REPAIR_FAILED,
+        null);
+    updates.retry(batch);
+    assertEquals(1, updates.size());
+    batch = updates.drain(10).get(0);
+    assertEquals(
+        Arrays.asList(EncodingStatusUpdates.Transition.ENCODING_CANCELED,
+            EncodingStatusUpdates.Transition.SOURCE_REPAIR_FAILED),
+        batch.get(0).getTransitions());
+
+    for (int i = 2; i < EncodingStatusUpdates.MAX_ATTEMPTS; i++) {
+      updates.retry(batch);
+      assertEquals(1, updates.size());
+      batch = updates.drain(10).get(0);
+    }
+    updates.retry(batch);
+    assertEquals(0, updates.size());
+  }
+
+  @Test
+  public void testClear() {
+    EncodingStatusUpdates updates = new EncodingStatusUpdates();
+    updates.add(1, EncodingStatusUpdates.Transition.ENCODING_FINISHED,
+        "/parity/1");
+    updates.add(2, EncodingStatusUpdates.Transition.PARITY_REPAIR_FAILED,
+        null);
+    updates.clear();
+    assertEquals(0, updates.size());
+    assertTrue(updates.drain(10).isEmpty());
+  }
+
+  @Test
+  public void testTransitions() {
+    INode parity = mock(INode.class);
+    when(parity.getId()).thenReturn(42);
+
+    EncodingStatus status = newStatus(1);
+    EncodingStatusUpdates.Transition.ENCODING_FINISHED.apply(status, parity,
+        10L);
+    assertEquals(EncodingStatus.Status.ENCODED, status.getStatus());
+    assertEquals(EncodingStatus.ParityStatus.HEALTHY, status.getParityStatus());
+    assertEquals(Integer.valueOf(42), status.getParityInodeId());
+
+    status = newStatus(2);
+    EncodingStatusUpdates.Transition.ENCODING_FINISHED.apply(status, null,
+        10L);
+    assertEquals(EncodingStatus.Status.ENCODING_FAILED, status.getStatus());
+
+    // a failed encoding updates both statuses at once
+    status = newStatus(3);
+    EncodingStatusUpdates.Transition.ENCODING_FAILED.apply(status, null, 10L);
+    assertEquals(EncodingStatus.Status.ENCODING_FAILED, status.getStatus());
+    assertEquals(EncodingStatus.ParityStatus.REPAIR_FAILED,
+        status.getParityStatus());
+  }
+}
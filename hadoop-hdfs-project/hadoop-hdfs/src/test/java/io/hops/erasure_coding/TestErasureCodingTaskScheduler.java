@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.erasure_coding;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.protocol.DatanodeID;
+import org.apache.hadoop.hdfs.server.protocol.ErasureCodingCommand;
+import org.apache.hadoop.hdfs.server.protocol.ErasureCodingTask;
+import org.apache.hadoop.hdfs.server.protocol.ErasureCodingTaskStatus;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestErasureCodingTaskScheduler {
+
+  private static final EnumSet<ErasureCodingTask.Type> ENCODE =
+      EnumSet.of(ErasureCodingTask.Type.ENCODE);
+
+  private final DatanodeID dn1 =
+      new DatanodeID("127.0.0.1", "localhost", "storage-1", 1, 2, 3);
+  private final DatanodeID dn2 =
+      new DatanodeID("127.0.0.2", "localhost", "storage-2", 1, 2, 3);
+
+  private Configuration conf;
+
+  @Before
+  public void setUp() {
+    conf = new Configuration();
+    conf.setInt(DFSConfigKeys.ERASURE_CODING_DATANODE_MAX_TASKS_KEY, 1);
+    conf.setInt(DFSConfigKeys.ERASURE_CODING_LOCALITY_WAIT_KEY, 60 * 1000);
+  }
+
+  /**
+   * Places every file on the first datanode.
+   */
+  private ErasureCodingTaskScheduler newScheduler() {
+    return new ErasureCodingTaskScheduler(null, conf) {
+      @Override
+      Set<String> locate(String path) {
+        return Collections.singleton(dn1.getStorageID());
+      }
+    };
+  }
+
+  private static ErasureCodingTaskStatus[] status(long taskId,
+      ErasureCodingTaskStatus.State state) {
+    return new ErasureCodingTaskStatus[]{
+        new ErasureCodingTaskStatus(taskId, state)};
+  }
+
+  @Test
+  public void testLocalityAndLimit() {
+    ErasureCodingTaskScheduler scheduler = newScheduler();
+    long first = scheduler
+        .submit(ErasureCodingTask.Type.ENCODE, "src", "/a", "/parity/a", 1);
+    long second = scheduler
+        .submit(ErasureCodingTask.Type.ENCODE, "src", "/b", "/parity/b", 1);
+
+    // the data is not on the second datanode
+    assertNull(scheduler.getCommand(dn2));
+
+    ErasureCodingCommand cmd = scheduler.getCommand(dn1);
+    assertEquals(1, cmd.getTasks().length);
+    assertEquals(first, cmd.getTasks()[0].getTaskId());
+    // the datanode is busy
+    assertNull(scheduler.getCommand(dn1));
+
+    scheduler.processStatuses(dn1,
+        status(first, ErasureCodingTaskStatus.State.FINISHED));
+    cmd = scheduler.getCommand(dn1);
+    assertEquals(second, cmd.getTasks()[0].getTaskId());
+
+    List<Report> reports = scheduler.computeReports(ENCODE);
+    assertEquals(2, reports.size());
+    assertEquals("/a", reports.get(0).getFilePath());
+    assertEquals(Report.Status.FINISHED, reports.get(0).getStatus());
+    assertEquals(Report.Status.ACTIVE, reports.get(1).getStatus());
+    // completed tasks are reported once
+    assertEquals(1, scheduler.computeReports(ENCODE).size());
+    assertEquals(0, scheduler
+        .computeReports(EnumSet.of(ErasureCodingTask.Type.REPAIR_SOURCE))
+        .size());
+  }
+
+  @Test
+  public void testLocalityWait() {
+    conf.setInt(DFSConfigKeys.ERASURE_CODING_LOCALITY_WAIT_KEY, 0);
+    ErasureCodingTaskScheduler scheduler = newScheduler();
+    long taskId = scheduler
+        .submit(ErasureCodingTask.Type.ENCODE, "src", "/a", "/parity/a", 1);
+    ErasureCodingCommand cmd = scheduler.getCommand(dn2);
+    assertEquals(taskId, cmd.getTasks()[0].getTaskId());
+
+    // states reported by another datanode are ignored
+    scheduler.processStatuses(dn1,
+        status(taskId, ErasureCodingTaskStatus.State.FAILED));
+    assertEquals(Report.Status.ACTIVE,
+        scheduler.computeReports(ENCODE).get(0).getStatus());
+    scheduler.processStatuses(dn2,
+        status(taskId, ErasureCodingTaskStatus.State.FAILED));
+    assertEquals(Report.Status.FAILED,
+        scheduler.computeReports(ENCODE).get(0).getStatus());
+  }
+
+  @Test
+  public void testCancel() {
+    ErasureCodingTaskScheduler scheduler = newScheduler();
+    long running = scheduler
+        .submit(ErasureCodingTask.Type.REPAIR_PARITY, "src", "/a", "/parity/a",
+            0);
+    scheduler
+        .submit(ErasureCodingTask.Type.REPAIR_PARITY, "src", "/b", "/parity/b",
+            0);
+    scheduler.getCommand(dn1);
+
+    EnumSet<ErasureCodingTask.Type> repairs =
+        EnumSet.of(ErasureCodingTask.Type.REPAIR_PARITY);
+    scheduler.cancelAll(repairs);
+    // canceling again does not send the running task to the datanode twice
+    scheduler.cancel("/parity/a", repairs);
+    // both tasks are reported canceled, the running one is also stopped on
+    // the datanode
+    List<Report> reports = scheduler.computeReports(repairs);
+    assertEquals(2, reports.size());
+    assertEquals("/parity/b", reports.get(0).getFilePath());
+    assertEquals(Report.Status.CANCELED, reports.get(0).getStatus());
+    assertEquals("/parity/a", reports.get(1).getFilePath());
+    assertEquals(Report.Status.CANCELED, reports.get(1).getStatus());
+
+    ErasureCodingCommand cmd = scheduler.getCommand(dn1);
+    assertEquals(0, cmd.getTasks().length);
+    assertEquals(1, cmd.getCanceledTaskIds().length);
+    assertEquals(running, cmd.getCanceledTaskIds()[0]);
+
+    // the state the datanode reports for the stopped task is not reported
+    scheduler.processStatuses(dn1,
+        status(running, ErasureCodingTaskStatus.State.FAILED));
+    assertEquals(0, scheduler.computeReports(repairs).size());
+  }
+
+  @Test
+  public void testTimeout() {
+    conf.setInt(DFSConfigKeys.ERASURE_CODING_TASK_TIMEOUT_KEY, -1);
+    ErasureCodingTaskScheduler scheduler = newScheduler();
+    long taskId = scheduler
+        .submit(ErasureCodingTask.Type.ENCODE, "src", "/a", "/parity/a", 1);
+    scheduler.getCommand(dn1);
+    assertEquals(Report.Status.FAILED,
+        scheduler.computeReports(ENCODE).get(0).getStatus());
+    assertEquals(taskId, scheduler.getCommand(dn1).getCanceledTaskIds()[0]);
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata;
+
+import io.hops.DalStorageFactory;
+import io.hops.StorageConnector;
+import io.hops.metadata.hdfs.dal.LeaseDataAccess;
+import io.hops.metadata.hdfs.entity.Lease;
+import io.hops.metadata.memory.InMemoryStorageFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestDelayedStorageFactory {
+  private static final long LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+  private StorageConnector connector;
+  private LeaseDataAccess<Lease> leases;
+
+  @Before
+  public void setUp() {
+    DelayedStorageFactory.resetSimulatedLatency();
+    DalStorageFactory factory = DelayedStorageFactory.wrap(
+        new InMemoryStorageFactory(),
+        TimeUnit.NANOSECONDS.toMicros(LATENCY_NANOS));
+    connector = factory.getConnector();
+    leases = (LeaseDataAccess<Lease>) factory.getDataAccess(
+        LeaseDataAccess.class);
+  }
+
+  private static long getDelayedRoundTrips() {
+    return DelayedStorageFactory.getSimulatedLatencyNanos() / LATENCY_NANOS;
+  }
+
+  @Test
+  public void testReadsAndCommitsAreDelayed() throws Exception {
+    Collection<Lease> none = Collections.emptyList();
+    connector.beginTransaction();
+    long start = System.nanoTime();
+    assertNull(leases.findByPKey("client"));
+    assertTrue(System.nanoTime() - start >= LATENCY_NANOS);
+    assertEquals(1, getDelayedRoundTrips());
+
+    // sent with the commit
+    leases.prepare(none, Collections.singletonList(new Lease("client", 1, 0L)),
+        none);
+    assertEquals(1, getDelayedRoundTrips());
+    connector.commit();
+    assertEquals(2, getDelayedRoundTrips());
+
+    assertNotNull(leases.findByPKey("client"));
+    assertEquals(1, leases.countAll());
+    assertEquals(4, getDelayedRoundTrips());
+  }
+
+  @Test
+  public void testTransactionStateIsNotDelayed() throws Exception {
+    connector.beginTransaction();
+    connector.rollback();
+    leases.toString();
+    assertEquals(0, getDelayedRoundTrips());
+  }
+
+  @Test
+  public void testRoundTrips() throws Exception {
+    assertTrue(DelayedStorageFactory.isRoundTrip(
+        LeaseDataAccess.class.getMethod("findByPKey", String.class)));
+    assertTrue(DelayedStorageFactory.isRoundTrip(
+        LeaseDataAccess.class.getMethod("findByHolderId", int.class)));
+    assertTrue(DelayedStorageFactory.isRoundTrip(
+        LeaseDataAccess.class.getMethod("countAll")));
+    assertFalse(DelayedStorageFactory.isRoundTrip(
+        LeaseDataAccess.class.getMethod("prepare", Collection.class,
+            Collection.class, Collection.class)));
+    assertFalse(DelayedStorageFactory.isRoundTrip(
+        LeaseDataAccess.class.getMethod("removeAll")));
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+import io.hops.metadata.hdfs.dal.BlockInfoDataAccess;
+import io.hops.metadata.hdfs.entity.BlockInfo;
+import io.hops.metadata.hdfs.entity.IndexedReplica;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The blocks, keyed by inode and block id like in the database. The blocks
+ * of a storage are found through its replicas.
+ */
+class InMemoryBlockInfoDataAccess implements BlockInfoDataAccess<BlockInfo> {
+
+  private final InMemoryTable<List<Object>, BlockInfo> table;
+  private final InMemoryTable<List<Object>, BlockInfo>.Index<Integer>
+      byINodeId;
+  private final InMemoryTable<List<Object>, BlockInfo>.Index<Long> byBlockId;
+  private final InMemoryReplicaTable<IndexedReplica> replicas;
+
+  InMemoryBlockInfoDataAccess(InMemoryConnector connector,
+      InMemoryReplicaTable<IndexedReplica> replicas) {
+    this.replicas = replicas;
+    table = new InMemoryTable<List<Object>, BlockInfo>(connector, "blocks") {
+      @Override
+      List<Object> getKey(BlockInfo block) {
+        return key(block.getInodeId(), block.getBlockId());
+      }
+    };
+    byINodeId = table.new Index<Integer>() {
+      @Override
+      Integer getValue(BlockInfo block) {
+        return block.getInodeId();
+      }
+    };
+    byBlockId = table.new Index<Long>() {
+      @Override
+      Long getValue(BlockInfo block) {
+        return block.getBlockId();
+      }
+    };
+    connector.addTable(BlockInfoDataAccess.class, table);
+  }
+
+  /**
+   * For the block lookups, which the database keeps in a table of their own.
+   */
+  List<BlockInfo> findByBlockId(long blockId) throws StorageException {
+    return table.find(byBlockId, blockId);
+  }
+
+  @Override
+  public int countAll() throws StorageException {
+    return table.countAll();
+  }
+
+  @Override
+  public int countAllCompleteBlocks() throws StorageException {
+    return table.count(new InMemoryTable.Filter<BlockInfo>() {
+      @Override
+      public boolean matches(BlockInfo block) {
+        // BlockUCState.COMPLETE
+        return block.getBlockUCState() == 0;
+      }
+    });
+  }
+
+  @Override
+  public BlockInfo findById(long blockId, int inodeId)
+      throws StorageException {
+    return table.get(InMemoryTable.key(inodeId, blockId));
+  }
+
+  @Override
+  public List<BlockInfo> findByInodeId(int inodeId) throws StorageException {
+    return table.find(byINodeId, inodeId);
+  }
+
+  @Override
+  public List<BlockInfo> findByInodeIds(int[] inodeIds)
+      throws StorageException {
+    return table.find(byINodeId, InMemoryTable.asList(inodeIds));
+  }
+
+  @Override
+  public List<BlockInfo> findAllBlocks() throws StorageException {
+    return table.findAll();
+  }
+
+  @Override
+  public List<BlockInfo> findByStorageId(int storageId)
+      throws StorageException {
+    List<List<Object>> keys = new ArrayList<List<Object>>();
+    for (IndexedReplica replica : replicas.findByStorageId(storageId)) {
+      keys.add(InMemoryTable.key(replica.getInodeId(), replica.getBlockId()));
+    }
+    return table.get(keys);
+  }
+
+  @Override
+  public Set<Long> findByStorageIdOnlyIds(int storageId)
+      throws StorageException {
+    Set<Long> blockIds = new HashSet<Long>();
+    for (IndexedReplica replica : replicas.findByStorageId(storageId)) {
+      blockIds.add(replica.getBlockId());
+    }
+    return blockIds;
+  }
+
+  @Override
+  public List<BlockInfo> findByIds(long[] blockIds, int[] inodeIds)
+      throws StorageException {
+    List<List<Object>> keys = new ArrayList<List<Object>>(blockIds.length);
+    for (int i = 0; i < blockIds.length; i++) {
+      keys.add(InMemoryTable.key(inodeIds[i], blockIds[i]));
+    }
+    return table.get(keys);
+  }
+
+  @Override
+  public void prepare(Collection<BlockInfo> removed, Collection<BlockInfo> newed,
+      Collection<BlockInfo> modified) throws StorageException {
+    table.prepare(removed, newed, modified);
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+import io.hops.metadata.hdfs.dal.BlockLookUpDataAccess;
+import io.hops.metadata.hdfs.entity.BlockInfo;
+import io.hops.metadata.hdfs.entity.BlockLookUp;
+
+import java.util.List;
+
+/**
+ * The file of a block. The database keeps a table for it, here it is read
+ * from the blocks.
+ */
+class InMemoryBlockLookUpDataAccess
+    implements BlockLookUpDataAccess<BlockLookUp> {
+
+  private final InMemoryBlockInfoDataAccess blocks;
+
+  InMemoryBlockLookUpDataAccess(InMemoryBlockInfoDataAccess blocks) {
+    this.blocks = blocks;
+  }
+
+  @Override
+  public BlockLookUp findByBlockId(long blockId) throws StorageException {
+    List<BlockInfo> found = blocks.findByBlockId(blockId);
+    return found.isEmpty() ? null :
+        new BlockLookUp(blockId, found.get(0).getInodeId());
+  }
+
+  @Override
+  public int[] findINodeIdsByBlockIds(long[] blockIds)
+      throws StorageException {
+    int[] inodeIds = new int[blockIds.length];
+    for (int i = 0; i < blockIds.length; i++) {
+      List<BlockInfo> found = blocks.findByBlockId(blockIds[i]);
+      inodeIds[i] = found.isEmpty() ?
+          org.apache.hadoop.hdfs.server.namenode.INode.NON_EXISTING_ID :
+          found.get(0).getInodeId();
+    }
+    return inodeIds;
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.StorageConnector;
+import io.hops.exception.StorageException;
+import io.hops.metadata.common.EntityDataAccess;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The connector of the {@link InMemoryStorageFactory}. A transaction belongs
+ * to the thread which began it, and the lock mode set on the connector
+ * applies to the reads of that transaction which follow.
+ */
+class InMemoryConnector implements StorageConnector {
+
+  static final long DEFAULT_LOCK_TIMEOUT_MS = 10000;
+
+  private final ThreadLocal<Transaction> transaction =
+      new ThreadLocal<Transaction>();
+  private final Map<Class, InMemoryTable<?, ?>> tables =
+      new ConcurrentHashMap<Class, InMemoryTable<?, ?>>();
+  private volatile long lockTimeout = DEFAULT_LOCK_TIMEOUT_MS;
+
+  void addTable(Class<? extends EntityDataAccess> type,
+      InMemoryTable<?, ?> table) {
+    tables.put(type, table);
+  }
+
+  Transaction getTransaction() {
+    return transaction.get();
+  }
+
+  long getLockTimeout() {
+    return lockTimeout;
+  }
+
+  void setLockTimeout(long lockTimeout) {
+    this.lockTimeout = lockTimeout;
+  }
+
+  public void setConfiguration(Properties conf) throws StorageException {
+    // nothing to connect to
+  }
+
+  public <T> T obtainSession() throws StorageException {
+    return null;
+  }
+
+  @Override
+  public void beginTransaction() throws StorageException {
+    if (transaction.get() != null) {
+      throw new StorageException("A transaction is already active");
+    }
+    transaction.set(new Transaction());
+  }
+
+  @Override
+  public void commit() throws StorageException {
+    Transaction tx = transaction.get();
+    if (tx == null) {
+      throw new StorageException("No transaction to commit");
+    }
+    transaction.remove();
+    tx.commit();
+  }
+
+  @Override
+  public void rollback() throws StorageException {
+    Transaction tx = transaction.get();
+    if (tx != null) {
+      transaction.remove();
+      tx.rollback();
+    }
+  }
+
+  public boolean isTransactionActive() throws StorageException {
+    return transaction.get() != null;
+  }
+
+  @Override
+  public void readLock() throws StorageException {
+    setLockMode(Transaction.LockMode.SHARED);
+  }
+
+  @Override
+  public void writeLock() throws StorageException {
+    setLockMode(Transaction.LockMode.EXCLUSIVE);
+  }
+
+  @Override
+  public void readCommitted() throws StorageException {
+    setLockMode(Transaction.LockMode.READ_COMMITTED);
+  }
+
+  private void setLockMode(Transaction.LockMode mode) {
+    Transaction tx = transaction.get();
+    if (tx != null) {
+      tx.setLockMode(mode);
+    }
+  }
+
+  public void setPartitionKey(Class className, Object key)
+      throws StorageException {
+    // a single partition
+  }
+
+  @Override
+  public boolean formatStorage() throws StorageException {
+    for (InMemoryTable<?, ?> table : tables.values()) {
+      table.clear();
+    }
+    return true;
+  }
+
+  @Override
+  public boolean formatStorage(Class<? extends EntityDataAccess>... das)
+      throws StorageException {
+    for (Class<? extends EntityDataAccess> da : das) {
+      InMemoryTable<?, ?> table = tables.get(da);
+      if (table != null) {
+        table.clear();
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public boolean formatStorageNonTransactional() throws StorageException {
+    return formatStorage();
+  }
+
+  public void stopStorage() throws StorageException {
+    // nothing to disconnect from
+  }
+
+  public void flush() throws StorageException {
+    // the writes are applied as they are prepared
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+import io.hops.metadata.hdfs.dal.CorruptReplicaDataAccess;
+import io.hops.metadata.hdfs.entity.CorruptReplica;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+class InMemoryCorruptReplicaDataAccess
+    implements CorruptReplicaDataAccess<CorruptReplica> {
+
+  private final InMemoryReplicaTable<CorruptReplica> table;
+
+  InMemoryCorruptReplicaDataAccess(InMemoryConnector connector) {
+    table = new InMemoryReplicaTable<CorruptReplica>(connector,
+        "corrupt_replicas") {
+      @Override
+      long getBlockId(CorruptReplica replica) {
+        return replica.getBlockId();
+      }
+
+      @Override
+      int getInodeId(CorruptReplica replica) {
+        return replica.getInodeId();
+      }
+
+      @Override
+      int getStorageId(CorruptReplica replica) {
+        return replica.getStorageId();
+      }
+    };
+    connector.addTable(CorruptReplicaDataAccess.class, table);
+  }
+
+  @Override
+  public int countAllUniqueBlk() throws StorageException {
+    Set<Long> blockIds = new HashSet<Long>();
+    for (CorruptReplica replica : table.findAll()) {
+      blockIds.add(replica.getBlockId());
+    }
+    return blockIds.size();
+  }
+
+  @Override
+  public List<CorruptReplica> findByBlockId(long blockId, int inodeId)
+      throws StorageException {
+    return table.findByBlock(blockId, inodeId);
+  }
+
+  @Override
+  public List<CorruptReplica> findByINodeId(int inodeId)
+      throws StorageException {
+    return table.findByINodeId(inodeId);
+  }
+
+  @Override
+  public List<CorruptReplica> findByINodeIds(int[] inodeIds)
+      throws StorageException {
+    return table.findByINodeIds(inodeIds);
+  }
+
+  @Override
+  public void prepare(Collection<CorruptReplica> removed,
+      Collection<CorruptReplica> newed, Collection<CorruptReplica> modified)
+      throws StorageException {
+    table.prepare(removed, newed, modified);
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+import io.hops.metadata.hdfs.dal.ExcessReplicaDataAccess;
+import io.hops.metadata.hdfs.entity.ExcessReplica;
+
+import java.util.Collection;
+import java.util.List;
+
+class InMemoryExcessReplicaDataAccess
+    implements ExcessReplicaDataAccess<ExcessReplica> {
+
+  private final InMemoryReplicaTable<ExcessReplica> table;
+
+  InMemoryExcessReplicaDataAccess(InMemoryConnector connector) {
+    table = new InMemoryReplicaTable<ExcessReplica>(connector,
+        "excess_replicas") {
+      @Override
+      long getBlockId(ExcessReplica replica) {
+        return replica.getBlockId();
+      }
+
+      @Override
+      int getInodeId(ExcessReplica replica) {
+        return replica.getInodeId();
+      }
+
+      @Override
+      int getStorageId(ExcessReplica replica) {
+        return replica.getStorageId();
+      }
+    };
+    connector.addTable(ExcessReplicaDataAccess.class, table);
+  }
+
+  @Override
+  public ExcessReplica findByPK(long blockId, int storageId, int inodeId)
+      throws StorageException {
+    return table.findByPk(blockId, inodeId, storageId);
+  }
+
+  @Override
+  public List<ExcessReplica> findExcessReplicaByBlockId(long blockId,
+      int inodeId) throws StorageException {
+    return table.findByBlock(blockId, inodeId);
+  }
+
+  @Override
+  public List<ExcessReplica> findExcessReplicaByINodeId(int inodeId)
+      throws StorageException {
+    return table.findByINodeId(inodeId);
+  }
+
+  @Override
+  public List<ExcessReplica> findExcessReplicaByINodeIds(int[] inodeIds)
+      throws StorageException {
+    return table.findByINodeIds(inodeIds);
+  }
+
+  @Override
+  public List<ExcessReplica> findExcessReplicaByStorageId(int storageId)
+      throws StorageException {
+    return table.findByStorageId(storageId);
+  }
+
+  @Override
+  public void prepare(Collection<ExcessReplica> removed,
+      Collection<ExcessReplica> newed, Collection<ExcessReplica> modified)
+      throws StorageException {
+    table.prepare(removed, newed, modified);
+  }
+
+  @Override
+  public void removeAll() throws StorageException {
+    table.removeAll();
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+import io.hops.metadata.hdfs.dal.INodeAttributesDataAccess;
+import io.hops.metadata.hdfs.entity.INodeAttributes;
+import io.hops.metadata.hdfs.entity.INodeCandidatePrimaryKey;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The quotas and usage of the directories with a quota, keyed by inode id.
+ */
+class InMemoryINodeAttributesDataAccess
+    implements INodeAttributesDataAccess<INodeAttributes> {
+
+  private final InMemoryTable<Integer, INodeAttributes> table;
+
+  InMemoryINodeAttributesDataAccess(InMemoryConnector connector) {
+    table = new InMemoryTable<Integer, INodeAttributes>(connector,
+        "inode_attributes") {
+      @Override
+      Integer getKey(INodeAttributes attributes) {
+        return attributes.getInodeId();
+      }
+    };
+    connector.addTable(INodeAttributesDataAccess.class, table);
+  }
+
+  @Override
+  public INodeAttributes findAttributesByPk(Integer inodeId)
+      throws StorageException {
+    return table.get(inodeId);
+  }
+
+  @Override
+  public Collection<INodeAttributes> findAttributesByPkList(
+      List<INodeCandidatePrimaryKey> inodePks) throws StorageException {
+    List<Integer> keys = new ArrayList<Integer>(inodePks.size());
+    for (INodeCandidatePrimaryKey pk : inodePks) {
+      keys.add(pk.getInodeId());
+    }
+    return table.get(keys);
+  }
+
+  @Override
+  public void prepare(Collection<INodeAttributes> modified,
+      Collection<INodeAttributes> removed) throws StorageException {
+    table.prepare(removed, null, modified);
+  }
+}
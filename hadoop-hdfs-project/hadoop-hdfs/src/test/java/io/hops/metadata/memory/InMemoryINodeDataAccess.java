@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+import io.hops.metadata.hdfs.dal.INodeDataAccess;
+import io.hops.metadata.hdfs.entity.INode;
+import io.hops.metadata.hdfs.entity.INodeIdentifier;
+import io.hops.metadata.hdfs.entity.ProjectedINode;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The inodes, keyed by their parent and name like in the database.
+ */
+class InMemoryINodeDataAccess implements INodeDataAccess<INode> {
+
+  /**
+   * The files with an id in [start, end).
+   */
+  private static class FilesBetween implements InMemoryTable.Filter<INode> {
+    private final long start;
+    private final long end;
+
+    FilesBetween(long start, long end) {
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public boolean matches(INode inode) {
+      return !inode.isDir() && inode.getId() >= start && inode.getId() < end;
+    }
+  }
+
+  private static final FilesBetween ALL_FILES =
+      new FilesBetween(Long.MIN_VALUE, Long.MAX_VALUE);
+
+  private final InMemoryTable<List<Object>, INode> table;
+  private final InMemoryTable<List<Object>, INode>.Index<Integer> byId;
+  private final InMemoryTable<List<Object>, INode>.Index<Integer> byParentId;
+
+  InMemoryINodeDataAccess(InMemoryConnector connector) {
+    table = new InMemoryTable<List<Object>, INode>(connector, "inodes") {
+      @Override
+      List<Object> getKey(INode inode) {
+        return key(inode.getParentId(), inode.getName());
+      }
+    };
+    byId = table.new Index<Integer>() {
+      @Override
+      Integer getValue(INode inode) {
+        return inode.getId();
+      }
+    };
+    byParentId = table.new Index<Integer>() {
+      @Override
+      Integer getValue(INode inode) {
+        return inode.getParentId();
+      }
+    };
+    connector.addTable(INodeDataAccess.class, table);
+  }
+
+  @Override
+  public INode indexScanfindInodeById(int inodeId) throws StorageException {
+    List<INode> found = table.find(byId, inodeId);
+    return found.isEmpty() ? null : found.get(0);
+  }
+
+  @Override
+  public List<INode> indexScanFindInodesByParentId(int parentId)
+      throws StorageException {
+    return table.find(byParentId, parentId);
+  }
+
+  @Override
+  public List<ProjectedINode> findInodesForSubtreeOperationsWithReadLock(
+      int parentId) throws StorageException {
+    List<ProjectedINode> children = new ArrayList<ProjectedINode>();
+    for (INode inode : table.find(byParentId, parentId,
+        Transaction.LockMode.SHARED)) {
+      children.add(new ProjectedINode(inode.getId(), inode.getParentId(),
+          inode.getName(), inode.getPermission(), inode.getHeader(),
+          inode.getSymlink() != null, inode.isDirWithQuota(),
+          inode.isUnderConstruction(), inode.isSubtreeLocked(),
+          inode.getSubtreeLockOwner()));
+    }
+    return children;
+  }
+
+  @Override
+  public INode pkLookUpFindInodeByNameAndParentId(String name, int parentId)
+      throws StorageException {
+    return table.get(InMemoryTable.key(parentId, name));
+  }
+
+  @Override
+  public List<INode> getINodesPkBatched(String[] names, int[] parentIds)
+      throws StorageException {
+    List<List<Object>> keys = new ArrayList<List<Object>>(names.length);
+    for (int i = 0; i < names.length; i++) {
+      keys.add(InMemoryTable.key(parentIds[i], names[i]));
+    }
+    return table.get(keys);
+  }
+
+  @Override
+  public void prepare(Collection<INode> removed, Collection<INode> newed,
+      Collection<INode> modified) throws StorageException {
+    table.prepare(removed, newed, modified);
+  }
+
+  @Override
+  public int countAll() throws StorageException {
+    return table.countAll();
+  }
+
+  @Override
+  public List<INodeIdentifier> getAllINodeFiles(long startId, long endId)
+      throws StorageException {
+    List<INodeIdentifier> files = new ArrayList<INodeIdentifier>();
+    for (INode inode : table.find(new FilesBetween(startId, endId))) {
+      INodeIdentifier file = new INodeIdentifier(inode.getId());
+      file.setName(inode.getName());
+      file.setPid(inode.getParentId());
+      files.add(file);
+    }
+    return files;
+  }
+
+  @Override
+  public boolean haveFilesWithIdsGreaterThan(long id) throws StorageException {
+    return table.count(new FilesBetween(id + 1, Long.MAX_VALUE)) > 0;
+  }
+
+  @Override
+  public boolean haveFilesWithIdsBetween(long startId, long endId)
+      throws StorageException {
+    return table.count(new FilesBetween(startId, endId)) > 0;
+  }
+
+  @Override
+  public long getMinFileId() throws StorageException {
+    long min = 0;
+    for (INode inode : table.find(ALL_FILES)) {
+      min = min == 0 ? inode.getId() : Math.min(min, inode.getId());
+    }
+    return min;
+  }
+
+  @Override
+  public long getMaxFileId() throws StorageException {
+    long max = 0;
+    for (INode inode : table.find(ALL_FILES)) {
+      max = Math.max(max, inode.getId());
+    }
+    return max;
+  }
+
+  @Override
+  public int countAllFiles() throws StorageException {
+    return table.count(ALL_FILES);
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+import io.hops.metadata.hdfs.dal.InvalidateBlockDataAccess;
+import io.hops.metadata.hdfs.entity.InvalidatedBlock;
+
+import java.util.Collection;
+import java.util.List;
+
+class InMemoryInvalidateBlockDataAccess
+    implements InvalidateBlockDataAccess<InvalidatedBlock> {
+
+  private final InMemoryReplicaTable<InvalidatedBlock> table;
+
+  InMemoryInvalidateBlockDataAccess(InMemoryConnector connector) {
+    table = new InMemoryReplicaTable<InvalidatedBlock>(connector,
+        "invalidated_blocks") {
+      @Override
+      long getBlockId(InvalidatedBlock block) {
+        return block.getBlockId();
+      }
+
+      @Override
+      int getInodeId(InvalidatedBlock block) {
+        return block.getInodeId();
+      }
+
+      @Override
+      int getStorageId(InvalidatedBlock block) {
+        return block.getStorageId();
+      }
+    };
+    connector.addTable(InvalidateBlockDataAccess.class, table);
+  }
+
+  @Override
+  public int countAll() throws StorageException {
+    return table.countAll();
+  }
+
+  @Override
+  public List<InvalidatedBlock> findAllInvalidatedBlocks()
+      throws StorageException {
+    return table.findAll();
+  }
+
+  @Override
+  public List<InvalidatedBlock> findInvalidatedBlockByStorageId(int storageId)
+      throws StorageException {
+    return table.findByStorageId(storageId);
+  }
+
+  @Override
+  public List<InvalidatedBlock> findInvalidatedBlocksByBlockId(long blockId,
+      int inodeId) throws StorageException {
+    return table.findByBlock(blockId, inodeId);
+  }
+
+  @Override
+  public List<InvalidatedBlock> findInvalidatedBlocksByINodeId(int inodeId)
+      throws StorageException {
+    return table.findByINodeId(inodeId);
+  }
+
+  @Override
+  public List<InvalidatedBlock> findInvalidatedBlocksByINodeIds(
+      int[] inodeIds) throws StorageException {
+    return table.findByINodeIds(inodeIds);
+  }
+
+  @Override
+  public List<InvalidatedBlock> findInvalidatedBlocksbyPKS(long[] blockIds,
+      int[] inodeIds, int[] storageIds) throws StorageException {
+    return table.findByPks(blockIds, inodeIds, storageIds);
+  }
+
+  @Override
+  public InvalidatedBlock findInvBlockByPkey(long blockId, int storageId,
+      int inodeId) throws StorageException {
+    return table.findByPk(blockId, inodeId, storageId);
+  }
+
+  @Override
+  public void prepare(Collection<InvalidatedBlock> removed,
+      Collection<InvalidatedBlock> newed, Collection<InvalidatedBlock> modified)
+      throws StorageException {
+    table.prepare(removed, newed, modified);
+  }
+
+  @Override
+  public void removeAll() throws StorageException {
+    table.removeAll();
+  }
+
+  @Override
+  public void removeAllByStorageId(int storageId) throws StorageException {
+    table.remove(table.findByStorageId(storageId));
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+import io.hops.metadata.election.dal.HdfsLeDescriptorDataAccess;
+import io.hops.metadata.election.entity.LeDescriptor;
+
+import java.util.Collection;
+
+/**
+ * The descriptors of the name-nodes taking part in the leader election,
+ * keyed by id.
+ */
+class InMemoryLeDescriptorDataAccess
+    implements HdfsLeDescriptorDataAccess<LeDescriptor> {
+
+  private final InMemoryTable<Long, LeDescriptor> table;
+
+  InMemoryLeDescriptorDataAccess(InMemoryConnector connector) {
+    table = new InMemoryTable<Long, LeDescriptor>(connector,
+        "hdfs_le_descriptors") {
+      @Override
+      Long getKey(LeDescriptor descriptor) {
+        return descriptor.getId();
+      }
+    };
+    connector.addTable(HdfsLeDescriptorDataAccess.class, table);
+  }
+
+  @Override
+  public LeDescriptor findByPkey(long id, int partitionKey)
+      throws StorageException {
+    return table.get(id);
+  }
+
+  @Override
+  public Collection<LeDescriptor> findAll() throws StorageException {
+    return table.findAll();
+  }
+
+  @Override
+  public void prepare(Collection<LeDescriptor> removed,
+      Collection<LeDescriptor> newed, Collection<LeDescriptor> modified)
+      throws StorageException {
+    table.prepare(removed, newed, modified);
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+import io.hops.metadata.hdfs.dal.LeaseDataAccess;
+import io.hops.metadata.hdfs.entity.Lease;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The leases, keyed by their holder.
+ */
+class InMemoryLeaseDataAccess implements LeaseDataAccess<Lease> {
+
+  private final InMemoryTable<String, Lease> table;
+  private final InMemoryTable<String, Lease>.Index<Integer> byHolderId;
+
+  InMemoryLeaseDataAccess(InMemoryConnector connector) {
+    table = new InMemoryTable<String, Lease>(connector, "leases") {
+      @Override
+      String getKey(Lease lease) {
+        return lease.getHolder();
+      }
+    };
+    byHolderId = table.new Index<Integer>() {
+      @Override
+      Integer getValue(Lease lease) {
+        return lease.getHolderId();
+      }
+    };
+    connector.addTable(LeaseDataAccess.class, table);
+  }
+
+  @Override
+  public int countAll() throws StorageException {
+    return table.countAll();
+  }
+
+  @Override
+  public Collection<Lease> findByTimeLimit(final long timeLimit)
+      throws StorageException {
+    return table.find(new InMemoryTable.Filter<Lease>() {
+      @Override
+      public boolean matches(Lease lease) {
+        return lease.getLastUpdate() < timeLimit;
+      }
+    });
+  }
+
+  @Override
+  public Collection<Lease> findAll() throws StorageException {
+    return table.findAll();
+  }
+
+  @Override
+  public Lease findByPKey(String holder) throws StorageException {
+    return table.get(holder);
+  }
+
+  @Override
+  public Lease findByHolderId(int holderId) throws StorageException {
+    List<Lease> found = table.find(byHolderId, holderId);
+    return found.isEmpty() ? null : found.get(0);
+  }
+
+  @Override
+  public void prepare(Collection<Lease> removed, Collection<Lease> newed,
+      Collection<Lease> modified) throws StorageException {
+    table.prepare(removed, newed, modified);
+  }
+
+  @Override
+  public void removeAll() throws StorageException {
+    table.removeAll();
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+import io.hops.metadata.hdfs.dal.LeasePathDataAccess;
+import io.hops.metadata.hdfs.entity.LeasePath;
+
+import java.util.Collection;
+
+/**
+ * The paths of the files under construction, keyed by path.
+ */
+class InMemoryLeasePathDataAccess implements LeasePathDataAccess<LeasePath> {
+
+  private final InMemoryTable<String, LeasePath> table;
+  private final InMemoryTable<String, LeasePath>.Index<Integer> byHolderId;
+
+  InMemoryLeasePathDataAccess(InMemoryConnector connector) {
+    table = new InMemoryTable<String, LeasePath>(connector, "lease_paths") {
+      @Override
+      String getKey(LeasePath path) {
+        return path.getPath();
+      }
+    };
+    byHolderId = table.new Index<Integer>() {
+      @Override
+      Integer getValue(LeasePath path) {
+        return path.getHolderId();
+      }
+    };
+    connector.addTable(LeasePathDataAccess.class, table);
+  }
+
+  @Override
+  public Collection<LeasePath> findByHolderId(int holderId)
+      throws StorageException {
+    return table.find(byHolderId, holderId);
+  }
+
+  @Override
+  public LeasePath findByPKey(String path) throws StorageException {
+    return table.get(path);
+  }
+
+  @Override
+  public Collection<LeasePath> findByPrefix(final String prefix)
+      throws StorageException {
+    return table.find(new InMemoryTable.Filter<LeasePath>() {
+      @Override
+      public boolean matches(LeasePath path) {
+        return path.getPath().startsWith(prefix);
+      }
+    });
+  }
+
+  @Override
+  public void prepare(Collection<LeasePath> removed,
+      Collection<LeasePath> newed, Collection<LeasePath> modified)
+      throws StorageException {
+    table.prepare(removed, newed, modified);
+  }
+
+  @Override
+  public void removeAll() throws StorageException {
+    table.removeAll();
+  }
+}
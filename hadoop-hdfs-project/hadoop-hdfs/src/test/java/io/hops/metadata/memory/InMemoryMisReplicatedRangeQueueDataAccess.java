@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+import io.hops.metadata.hdfs.dal.MisReplicatedRangeQueueDataAccess;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The ranges of file ids being checked for mis-replicated blocks, a range
+ * being its own key.
+ */
+class InMemoryMisReplicatedRangeQueueDataAccess
+    implements MisReplicatedRangeQueueDataAccess {
+
+  private final InMemoryTable<List<Object>, List<Object>> table;
+
+  InMemoryMisReplicatedRangeQueueDataAccess(InMemoryConnector connector) {
+    table = new InMemoryTable<List<Object>, List<Object>>(connector,
+        "mis_replicated_ranges") {
+      @Override
+      List<Object> getKey(List<Object> range) {
+        return range;
+      }
+    };
+    connector.addTable(MisReplicatedRangeQueueDataAccess.class, table);
+  }
+
+  @Override
+  public void insert(long start, long end) throws StorageException {
+    table.put(Collections.singletonList(InMemoryTable.key(start, end)));
+  }
+
+  @Override
+  public void remove(long start, long end) throws StorageException {
+    table.remove(Collections.singletonList(InMemoryTable.key(start, end)));
+  }
+
+  @Override
+  public int countAll() throws StorageException {
+    return table.countAll();
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+import io.hops.metadata.hdfs.dal.PendingBlockDataAccess;
+import io.hops.metadata.hdfs.entity.PendingBlockInfo;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The blocks being replicated, keyed by inode and block id.
+ */
+class InMemoryPendingBlockDataAccess
+    implements PendingBlockDataAccess<PendingBlockInfo> {
+
+  private final InMemoryTable<List<Object>, PendingBlockInfo> table;
+  private final InMemoryTable<List<Object>, PendingBlockInfo>.Index<Integer>
+      byINodeId;
+
+  InMemoryPendingBlockDataAccess(InMemoryConnector connector) {
+    table = new InMemoryTable<List<Object>, PendingBlockInfo>(connector,
+        "pending_blocks") {
+      @Override
+      List<Object> getKey(PendingBlockInfo block) {
+        return key(block.getInodeId(), block.getBlockId());
+      }
+    };
+    byINodeId = table.new Index<Integer>() {
+      @Override
+      Integer getValue(PendingBlockInfo block) {
+        return block.getInodeId();
+      }
+    };
+    connector.addTable(PendingBlockDataAccess.class, table);
+  }
+
+  @Override
+  public PendingBlockInfo findByPKey(long blockId, int inodeId)
+      throws StorageException {
+    return table.get(InMemoryTable.key(inodeId, blockId));
+  }
+
+  @Override
+  public List<PendingBlockInfo> findByINodeId(int inodeId)
+      throws StorageException {
+    return table.find(byINodeId, inodeId);
+  }
+
+  @Override
+  public List<PendingBlockInfo> findByINodeIds(int[] inodeIds)
+      throws StorageException {
+    return table.find(byINodeId, InMemoryTable.asList(inodeIds));
+  }
+
+  @Override
+  public List<PendingBlockInfo> findAll() throws StorageException {
+    return table.findAll();
+  }
+
+  @Override
+  public List<PendingBlockInfo> findByTimeLimitLessThan(final long timeLimit)
+      throws StorageException {
+    return table.find(new InMemoryTable.Filter<PendingBlockInfo>() {
+      @Override
+      public boolean matches(PendingBlockInfo block) {
+        return block.getTimeStamp() < timeLimit;
+      }
+    });
+  }
+
+  @Override
+  public int countValidPendingBlocks(final long timeLimit)
+      throws StorageException {
+    return table.count(new InMemoryTable.Filter<PendingBlockInfo>() {
+      @Override
+      public boolean matches(PendingBlockInfo block) {
+        return block.getTimeStamp() > timeLimit;
+      }
+    });
+  }
+
+  @Override
+  public void prepare(Collection<PendingBlockInfo> removed,
+      Collection<PendingBlockInfo> newed, Collection<PendingBlockInfo> modified)
+      throws StorageException {
+    table.prepare(removed, newed, modified);
+  }
+
+  @Override
+  public void removeAll() throws StorageException {
+    table.removeAll();
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+import io.hops.metadata.hdfs.dal.QuotaUpdateDataAccess;
+import io.hops.metadata.hdfs.entity.QuotaUpdate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The quota updates waiting to be applied, keyed by their id.
+ */
+class InMemoryQuotaUpdateDataAccess
+    implements QuotaUpdateDataAccess<QuotaUpdate> {
+
+  private final InMemoryTable<Integer, QuotaUpdate> table;
+  private final InMemoryTable<Integer, QuotaUpdate>.Index<Integer> byINodeId;
+
+  InMemoryQuotaUpdateDataAccess(InMemoryConnector connector) {
+    table = new InMemoryTable<Integer, QuotaUpdate>(connector,
+        "quota_updates") {
+      @Override
+      Integer getKey(QuotaUpdate update) {
+        return update.getId();
+      }
+    };
+    byINodeId = table.new Index<Integer>() {
+      @Override
+      Integer getValue(QuotaUpdate update) {
+        return update.getInodeId();
+      }
+    };
+    connector.addTable(QuotaUpdateDataAccess.class, table);
+  }
+
+  @Override
+  public void prepare(Collection<QuotaUpdate> added,
+      Collection<QuotaUpdate> removed) throws StorageException {
+    table.prepare(removed, added, null);
+  }
+
+  @Override
+  public List<QuotaUpdate> findByInodeId(int inodeId) throws StorageException {
+    return table.find(byINodeId, inodeId);
+  }
+
+  @Override
+  public List<QuotaUpdate> findLimited(int limit) throws StorageException {
+    List<QuotaUpdate> all = table.findAll();
+    return new ArrayList<QuotaUpdate>(
+        all.subList(0, Math.min(limit, all.size())));
+  }
+}
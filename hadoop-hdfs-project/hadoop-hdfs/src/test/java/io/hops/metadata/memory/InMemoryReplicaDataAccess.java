@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+import io.hops.metadata.hdfs.dal.ReplicaDataAccess;
+import io.hops.metadata.hdfs.entity.IndexedReplica;
+
+import java.util.Collection;
+import java.util.List;
+
+class InMemoryReplicaDataAccess implements ReplicaDataAccess<IndexedReplica> {
+
+  private final InMemoryReplicaTable<IndexedReplica> table;
+
+  InMemoryReplicaDataAccess(InMemoryConnector connector) {
+    table = new InMemoryReplicaTable<IndexedReplica>(connector, "replicas") {
+      @Override
+      long getBlockId(IndexedReplica replica) {
+        return replica.getBlockId();
+      }
+
+      @Override
+      int getInodeId(IndexedReplica replica) {
+        return replica.getInodeId();
+      }
+
+      @Override
+      int getStorageId(IndexedReplica replica) {
+        return replica.getStorageId();
+      }
+    };
+    connector.addTable(ReplicaDataAccess.class, table);
+  }
+
+  InMemoryReplicaTable<IndexedReplica> getTable() {
+    return table;
+  }
+
+  @Override
+  public List<IndexedReplica> findReplicasById(long blockId, int inodeId)
+      throws StorageException {
+    return table.findByBlock(blockId, inodeId);
+  }
+
+  @Override
+  public List<IndexedReplica> findReplicasByINodeId(int inodeId)
+      throws StorageException {
+    return table.findByINodeId(inodeId);
+  }
+
+  @Override
+  public List<IndexedReplica> findReplicasByINodeIds(int[] inodeIds)
+      throws StorageException {
+    return table.findByINodeIds(inodeIds);
+  }
+
+  @Override
+  public List<IndexedReplica> findReplicasByPKS(long[] blockIds,
+      int[] inodeIds, int[] storageIds) throws StorageException {
+    return table.findByPks(blockIds, inodeIds, storageIds);
+  }
+
+  @Override
+  public int countAllReplicasForStorageId(int storageId)
+      throws StorageException {
+    return table.countByStorageId(storageId);
+  }
+
+  @Override
+  public void prepare(Collection<IndexedReplica> removed,
+      Collection<IndexedReplica> newed, Collection<IndexedReplica> modified)
+      throws StorageException {
+    table.prepare(removed, newed, modified);
+  }
+}
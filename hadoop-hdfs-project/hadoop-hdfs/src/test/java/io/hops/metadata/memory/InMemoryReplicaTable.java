@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A table of the replicas of blocks on the storages of the data-nodes, keyed
+ * by inode, block and storage id like in the database.
+ */
+abstract class InMemoryReplicaTable<R> extends InMemoryTable<List<Object>, R> {
+
+  private final Index<List<Object>> byBlock = new Index<List<Object>>() {
+    @Override
+    List<Object> getValue(R replica) {
+      return key(getInodeId(replica), getBlockId(replica));
+    }
+  };
+  private final Index<Integer> byINodeId = new Index<Integer>() {
+    @Override
+    Integer getValue(R replica) {
+      return getInodeId(replica);
+    }
+  };
+  private final Index<Integer> byStorageId = new Index<Integer>() {
+    @Override
+    Integer getValue(R replica) {
+      return getStorageId(replica);
+    }
+  };
+
+  InMemoryReplicaTable(InMemoryConnector connector, String name) {
+    super(connector, name);
+  }
+
+  abstract long getBlockId(R replica);
+
+  abstract int getInodeId(R replica);
+
+  abstract int getStorageId(R replica);
+
+  @Override
+  List<Object> getKey(R replica) {
+    return key(getInodeId(replica), getBlockId(replica),
+        getStorageId(replica));
+  }
+
+  R findByPk(long blockId, int inodeId, int storageId)
+      throws StorageException {
+    return get(key(inodeId, blockId, storageId));
+  }
+
+  List<R> findByPks(long[] blockIds, int[] inodeIds, int[] storageIds)
+      throws StorageException {
+    List<List<Object>> keys = new ArrayList<List<Object>>(blockIds.length);
+    for (int i = 0; i < blockIds.length; i++) {
+      keys.add(key(inodeIds[i], blockIds[i], storageIds[i]));
+    }
+    return get(keys);
+  }
+
+  List<R> findByBlock(long blockId, int inodeId) throws StorageException {
+    return find(byBlock, key(inodeId, blockId));
+  }
+
+  List<R> findByINodeId(int inodeId) throws StorageException {
+    return find(byINodeId, inodeId);
+  }
+
+  List<R> findByINodeIds(int[] inodeIds) throws StorageException {
+    return find(byINodeId, asList(inodeIds));
+  }
+
+  List<R> findByStorageId(int storageId) throws StorageException {
+    return find(byStorageId, storageId);
+  }
+
+  int countByStorageId(int storageId) {
+    return count(byStorageId, storageId);
+  }
+}
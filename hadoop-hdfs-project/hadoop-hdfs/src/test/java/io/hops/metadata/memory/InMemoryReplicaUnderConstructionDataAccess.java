@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+import io.hops.metadata.hdfs.dal.ReplicaUnderConstructionDataAccess;
+import io.hops.metadata.hdfs.entity.ReplicaUnderConstruction;
+
+import java.util.Collection;
+import java.util.List;
+
+class InMemoryReplicaUnderConstructionDataAccess
+    implements ReplicaUnderConstructionDataAccess<ReplicaUnderConstruction> {
+
+  private final InMemoryReplicaTable<ReplicaUnderConstruction> table;
+
+  InMemoryReplicaUnderConstructionDataAccess(InMemoryConnector connector) {
+    table = new InMemoryReplicaTable<ReplicaUnderConstruction>(connector,
+        "replicas_under_construction") {
+      @Override
+      long getBlockId(ReplicaUnderConstruction replica) {
+        return replica.getBlockId();
+      }
+
+      @Override
+      int getInodeId(ReplicaUnderConstruction replica) {
+        return replica.getInodeId();
+      }
+
+      @Override
+      int getStorageId(ReplicaUnderConstruction replica) {
+        return replica.getStorageId();
+      }
+    };
+    connector.addTable(ReplicaUnderConstructionDataAccess.class, table);
+  }
+
+  @Override
+  public List<ReplicaUnderConstruction> findReplicaUnderConstructionByBlockId(
+      long blockId, int inodeId) throws StorageException {
+    return table.findByBlock(blockId, inodeId);
+  }
+
+  @Override
+  public List<ReplicaUnderConstruction> findReplicaUnderConstructionByINodeId(
+      int inodeId) throws StorageException {
+    return table.findByINodeId(inodeId);
+  }
+
+  @Override
+  public List<ReplicaUnderConstruction> findReplicaUnderConstructionByINodeIds(
+      int[] inodeIds) throws StorageException {
+    return table.findByINodeIds(inodeIds);
+  }
+
+  @Override
+  public void prepare(Collection<ReplicaUnderConstruction> removed,
+      Collection<ReplicaUnderConstruction> newed,
+      Collection<ReplicaUnderConstruction> modified) throws StorageException {
+    table.prepare(removed, newed, modified);
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+import io.hops.metadata.hdfs.dal.SafeBlocksDataAccess;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * The ids of the blocks reported safe while in safe mode.
+ */
+class InMemorySafeBlocksDataAccess implements SafeBlocksDataAccess {
+
+  private final InMemoryTable<Long, Long> table;
+
+  InMemorySafeBlocksDataAccess(InMemoryConnector connector) {
+    table = new InMemoryTable<Long, Long>(connector, "safe_blocks") {
+      @Override
+      Long getKey(Long blockId) {
+        return blockId;
+      }
+    };
+    connector.addTable(SafeBlocksDataAccess.class, table);
+  }
+
+  @Override
+  public void insert(Collection<Long> safeBlocks) throws StorageException {
+    table.put(new ArrayList<Long>(safeBlocks));
+  }
+
+  @Override
+  public void remove(Long safeBlock) throws StorageException {
+    table.remove(Collections.singletonList(safeBlock));
+  }
+
+  @Override
+  public int countAll() throws StorageException {
+    return table.countAll();
+  }
+
+  @Override
+  public void removeAll() throws StorageException {
+    table.removeAll();
+  }
+}
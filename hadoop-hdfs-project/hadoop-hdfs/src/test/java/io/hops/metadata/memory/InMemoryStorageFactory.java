@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.DalStorageFactory;
+import io.hops.StorageConnector;
+import io.hops.exception.StorageInitializtionException;
+import io.hops.metadata.common.EntityDataAccess;
+import io.hops.metadata.election.dal.HdfsLeDescriptorDataAccess;
+import io.hops.metadata.hdfs.dal.BlockInfoDataAccess;
+import io.hops.metadata.hdfs.dal.BlockLookUpDataAccess;
+import io.hops.metadata.hdfs.dal.CorruptReplicaDataAccess;
+import io.hops.metadata.hdfs.dal.ExcessReplicaDataAccess;
+import io.hops.metadata.hdfs.dal.INodeAttributesDataAccess;
+import io.hops.metadata.hdfs.dal.INodeDataAccess;
+import io.hops.metadata.hdfs.dal.InvalidateBlockDataAccess;
+import io.hops.metadata.hdfs.dal.LeaseDataAccess;
+import io.hops.metadata.hdfs.dal.LeasePathDataAccess;
+import io.hops.metadata.hdfs.dal.MisReplicatedRangeQueueDataAccess;
+import io.hops.metadata.hdfs.dal.PendingBlockDataAccess;
+import io.hops.metadata.hdfs.dal.QuotaUpdateDataAccess;
+import io.hops.metadata.hdfs.dal.ReplicaDataAccess;
+import io.hops.metadata.hdfs.dal.ReplicaUnderConstructionDataAccess;
+import io.hops.metadata.hdfs.dal.SafeBlocksDataAccess;
+import io.hops.metadata.hdfs.dal.StorageIdMapDataAccess;
+import io.hops.metadata.hdfs.dal.UnderReplicatedBlockDataAccess;
+import io.hops.metadata.hdfs.dal.VariableDataAccess;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A storage driver which keeps the metadata in memory, to run the name-node
+ * and its benchmarks without a database. It is selected with
+ * <pre>
+ * dfs.storage.driver.class = io.hops.metadata.memory.InMemoryStorageFactory
+ * </pre>
+ * and, like any other driver, gets the latency of
+ * dfs.storage.simulated.latency.us added to its round trips, see
+ * {@link io.hops.metadata.DelayedStorageFactory}.
+ * <p/>
+ * The reads of a transaction lock the rows they read, in the mode set on the
+ * connector, until the transaction commits or rolls back, see
+ * {@link InMemoryTable}. Its writes are applied as they are prepared and
+ * undone on rollback. The entities are kept as they are handed in, not
+ * copied.
+ * <p/>
+ * It covers the data access objects of the transaction contexts and of the
+ * name-node operations, leader election included. Erasure coding is not
+ * covered: there is no data access object for the encoding status or the
+ * block checksums.
+ */
+public class InMemoryStorageFactory implements DalStorageFactory {
+
+  private final InMemoryConnector connector = new InMemoryConnector();
+  private final Map<Class, EntityDataAccess> dataAccess =
+      new HashMap<Class, EntityDataAccess>();
+
+  public InMemoryStorageFactory() {
+    InMemoryReplicaDataAccess replicas =
+        new InMemoryReplicaDataAccess(connector);
+    InMemoryBlockInfoDataAccess blocks =
+        new InMemoryBlockInfoDataAccess(connector, replicas.getTable());
+    dataAccess.put(INodeDataAccess.class,
+        new InMemoryINodeDataAccess(connector));
+    dataAccess.put(INodeAttributesDataAccess.class,
+        new InMemoryINodeAttributesDataAccess(connector));
+    dataAccess.put(BlockInfoDataAccess.class, blocks);
+    dataAccess.put(BlockLookUpDataAccess.class,
+        new InMemoryBlockLookUpDataAccess(blocks));
+    dataAccess.put(ReplicaDataAccess.class, replicas);
+    dataAccess.put(ExcessReplicaDataAccess.class,
+        new InMemoryExcessReplicaDataAccess(connector));
+    dataAccess.put(CorruptReplicaDataAccess.class,
+        new InMemoryCorruptReplicaDataAccess(connector));
+    dataAccess.put(InvalidateBlockDataAccess.class,
+        new InMemoryInvalidateBlockDataAccess(connector));
+    dataAccess.put(ReplicaUnderConstructionDataAccess.class,
+        new InMemoryReplicaUnderConstructionDataAccess(connector));
+    dataAccess.put(UnderReplicatedBlockDataAccess.class,
+        new InMemoryUnderReplicatedBlockDataAccess(connector));
+    dataAccess.put(PendingBlockDataAccess.class,
+        new InMemoryPendingBlockDataAccess(connector));
+    dataAccess.put(LeaseDataAccess.class,
+        new InMemoryLeaseDataAccess(connector));
+    dataAccess.put(LeasePathDataAccess.class,
+        new InMemoryLeasePathDataAccess(connector));
+    dataAccess.put(QuotaUpdateDataAccess.class,
+        new InMemoryQuotaUpdateDataAccess(connector));
+    dataAccess.put(VariableDataAccess.class,
+        new InMemoryVariableDataAccess(connector));
+    dataAccess.put(StorageIdMapDataAccess.class,
+        new InMemoryStorageIdMapDataAccess(connector));
+    dataAccess.put(SafeBlocksDataAccess.class,
+        new InMemorySafeBlocksDataAccess(connector));
+    dataAccess.put(MisReplicatedRangeQueueDataAccess.class,
+        new InMemoryMisReplicatedRangeQueueDataAccess(connector));
+    dataAccess.put(HdfsLeDescriptorDataAccess.class,
+        new InMemoryLeDescriptorDataAccess(connector));
+  }
+
+  @Override
+  public void setConfiguration(Properties conf)
+      throws StorageInitializtionException {
+    // nothing to connect to
+  }
+
+  @Override
+  public StorageConnector getConnector() {
+    return connector;
+  }
+
+  @Override
+  public EntityDataAccess getDataAccess(Class type) {
+    return dataAccess.get(type);
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+import io.hops.metadata.hdfs.dal.StorageIdMapDataAccess;
+import io.hops.metadata.hdfs.entity.StorageId;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * The ids given to the storages of the data-nodes, keyed by storage.
+ */
+class InMemoryStorageIdMapDataAccess
+    implements StorageIdMapDataAccess<StorageId> {
+
+  private final InMemoryTable<String, StorageId> table;
+
+  InMemoryStorageIdMapDataAccess(InMemoryConnector connector) {
+    table = new InMemoryTable<String, StorageId>(connector, "storage_ids") {
+      @Override
+      String getKey(StorageId storageId) {
+        return storageId.getStorageId();
+      }
+    };
+    connector.addTable(StorageIdMapDataAccess.class, table);
+  }
+
+  @Override
+  public void add(StorageId storageId) throws StorageException {
+    table.put(Collections.singletonList(storageId));
+  }
+
+  @Override
+  public StorageId findByPk(String storageId) throws StorageException {
+    return table.get(storageId);
+  }
+
+  @Override
+  public Collection<StorageId> findAll() throws StorageException {
+    return table.findAll();
+  }
+}
@@ -0,0 +1,490 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+import io.hops.exception.TransientStorageException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The rows of one table of the in-memory storage, kept by their primary key,
+ * with the secondary indexes declared by the data access object of the table.
+ * <p/>
+ * Rows are locked like the database does it: a read takes a shared or an
+ * exclusive lock on every row it returns, depending on the lock mode of the
+ * transaction, and a write takes an exclusive lock on the row. The locks are
+ * held until the transaction commits or rolls back. Read committed reads,
+ * and reads outside of a transaction, take no lock but wait until the row
+ * is not being written. A lock which cannot be granted within the lock
+ * timeout fails the transaction with a {@link TransientStorageException}, so
+ * the request is retried, which also breaks deadlocks.
+ * <p/>
+ * Writes outside of a transaction commit on their own. The monitor of the
+ * table guards its rows, indexes and locks, and is never held while waiting
+ * for anything but a row lock.
+ */
+abstract class InMemoryTable<K, R> {
+
+  interface Filter<T> {
+    boolean matches(T row);
+  }
+
+  /**
+   * A secondary index of the table. Indexes register themselves with the
+   * table when they are created.
+   */
+  abstract class Index<I> {
+    private final Map<I, Map<K, R>> entries = new HashMap<I, Map<K, R>>();
+
+    Index() {
+      indexes.add(this);
+    }
+
+    abstract I getValue(R row);
+
+    private void add(K key, R row) {
+      I value = getValue(row);
+      Map<K, R> matches = entries.get(value);
+      if (matches == null) {
+        matches = new LinkedHashMap<K, R>();
+        entries.put(value, matches);
+      }
+      matches.put(key, row);
+    }
+
+    private void remove(K key, R row) {
+      I value = getValue(row);
+      Map<K, R> matches = entries.get(value);
+      if (matches != null) {
+        matches.remove(key);
+        if (matches.isEmpty()) {
+          entries.remove(value);
+        }
+      }
+    }
+
+    private List<K> getKeys(I value) {
+      Map<K, R> matches = entries.get(value);
+      return matches == null ? new ArrayList<K>() :
+          new ArrayList<K>(matches.keySet());
+    }
+
+    private boolean matches(R row, I value) {
+      I rowValue = getValue(row);
+      return rowValue == null ? value == null : rowValue.equals(value);
+    }
+  }
+
+  /**
+   * The lock of a row, there while a transaction holds it or waits for it.
+   */
+  class RowLock {
+    private final K key;
+    private Transaction exclusive;
+    private final Set<Transaction> shared = new HashSet<Transaction>(2);
+
+    private RowLock(K key) {
+      this.key = key;
+    }
+
+    private boolean isHeldBy(Transaction tx) {
+      return exclusive == tx || shared.contains(tx);
+    }
+
+    private boolean isFree() {
+      return exclusive == null && shared.isEmpty();
+    }
+
+    /**
+     * @return whether the transaction may go on reading or writing the row
+     */
+    private boolean grant(Transaction tx, Transaction.LockMode mode) {
+      if (exclusive != null && exclusive != tx) {
+        return false;
+      }
+      switch (mode) {
+        case READ_COMMITTED:
+          return true;
+        case SHARED:
+          if (!isHeldBy(tx)) {
+            shared.add(tx);
+            tx.locked(this);
+          }
+          return true;
+        default:
+          if (exclusive == tx) {
+            return true;
+          }
+          boolean held = shared.contains(tx);
+          if (shared.size() > (held ? 1 : 0)) {
+            return false;
+          }
+          shared.remove(tx);
+          exclusive = tx;
+          if (!held) {
+            tx.locked(this);
+          }
+          return true;
+      }
+    }
+
+    void release(Transaction tx) {
+      synchronized (InMemoryTable.this) {
+        if (exclusive == tx) {
+          exclusive = null;
+        }
+        shared.remove(tx);
+        if (isFree() && locks.get(key) == this) {
+          locks.remove(key);
+        }
+        InMemoryTable.this.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * A write to undo if the transaction rolls back. The transaction still
+   * holds the exclusive lock of the row when it does.
+   */
+  class Write {
+    private final K key;
+    private final R previous;
+
+    private Write(K key, R previous) {
+      this.key = key;
+      this.previous = previous;
+    }
+
+    void undo() {
+      synchronized (InMemoryTable.this) {
+        if (previous == null) {
+          removeRow(key);
+        } else {
+          putRow(key, previous);
+        }
+      }
+    }
+  }
+
+  private final InMemoryConnector connector;
+  private final String name;
+  private final Map<K, R> rows = new LinkedHashMap<K, R>();
+  private final Map<K, RowLock> locks = new HashMap<K, RowLock>();
+  private final List<Index<?>> indexes = new ArrayList<Index<?>>();
+
+  InMemoryTable(InMemoryConnector connector, String name) {
+    this.connector = connector;
+    this.name = name;
+  }
+
+  abstract K getKey(R row);
+
+  String getName() {
+    return name;
+  }
+
+  /**
+   * Looks a row up by its primary key. The key is locked even if there is no
+   * row, so that no other transaction can insert it meanwhile.
+   */
+  R get(K key) throws StorageException {
+    Transaction tx = connector.getTransaction();
+    return lock(key, tx, getLockMode(tx));
+  }
+
+  /**
+   * @return the rows of the keys, in the order of the keys, without the
+   * missing ones
+   */
+  List<R> get(Collection<K> keys) throws StorageException {
+    Transaction tx = connector.getTransaction();
+    Transaction.LockMode mode = getLockMode(tx);
+    List<R> found = new ArrayList<R>(keys.size());
+    for (K key : new LinkedHashSet<K>(keys)) {
+      R row = lock(key, tx, mode);
+      if (row != null) {
+        found.add(row);
+      }
+    }
+    return found;
+  }
+
+  <I> List<R> find(Index<I> index, I value) throws StorageException {
+    return find(index, value, getLockMode(connector.getTransaction()));
+  }
+
+  /**
+   * Looks rows up with the given lock mode instead of the one of the
+   * transaction.
+   */
+  <I> List<R> find(Index<I> index, I value, Transaction.LockMode mode)
+      throws StorageException {
+    List<K> keys;
+    synchronized (this) {
+      keys = index.getKeys(value);
+    }
+    return lockRows(keys, index, value, mode);
+  }
+
+  /**
+   * @return the rows matching any of the values, in the order of the values
+   */
+  <I> List<R> find(Index<I> index, Collection<I> values)
+      throws StorageException {
+    List<R> found = new ArrayList<R>();
+    for (I value : new LinkedHashSet<I>(values)) {
+      found.addAll(find(index, value));
+    }
+    return found;
+  }
+
+  /**
+   * @return the rows matching the filter, all of them if it is null
+   */
+  List<R> find(Filter<R> filter) throws StorageException {
+    List<K> keys = new ArrayList<K>();
+    synchronized (this) {
+      for (Map.Entry<K, R> row : rows.entrySet()) {
+        if (filter == null || filter.matches(row.getValue())) {
+          keys.add(row.getKey());
+        }
+      }
+    }
+    List<R> found =
+        lockRows(keys, null, null, getLockMode(connector.getTransaction()));
+    if (filter != null) {
+      // the rows may have changed while waiting for their locks
+      for (int i = found.size() - 1; i >= 0; i--) {
+        if (!filter.matches(found.get(i))) {
+          found.remove(i);
+        }
+      }
+    }
+    return found;
+  }
+
+  List<R> findAll() throws StorageException {
+    return find((Filter<R>) null);
+  }
+
+  /**
+   * Counts like the database does outside of a transaction, without waiting
+   * for the rows being written.
+   */
+  synchronized int count(Filter<R> filter) {
+    if (filter == null) {
+      return rows.size();
+    }
+    int count = 0;
+    for (R row : rows.values()) {
+      if (filter.matches(row)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  synchronized <I> int count(Index<I> index, I value) {
+    return index.getKeys(value).size();
+  }
+
+  int countAll() {
+    return count(null);
+  }
+
+  void prepare(Collection<R> removed, Collection<R> added,
+      Collection<R> modified) throws StorageException {
+    Transaction tx = connector.getTransaction();
+    Transaction autoCommit = tx == null ? new Transaction() : null;
+    boolean done = false;
+    try {
+      if (removed != null) {
+        for (R row : removed) {
+          write(autoCommit == null ? tx : autoCommit, getKey(row), null);
+        }
+      }
+      if (added != null) {
+        for (R row : added) {
+          write(autoCommit == null ? tx : autoCommit, getKey(row), row);
+        }
+      }
+      if (modified != null) {
+        for (R row : modified) {
+          write(autoCommit == null ? tx : autoCommit, getKey(row), row);
+        }
+      }
+      done = true;
+    } finally {
+      if (autoCommit != null) {
+        if (done) {
+          autoCommit.commit();
+        } else {
+          autoCommit.rollback();
+        }
+      }
+    }
+  }
+
+  void put(Collection<R> rows) throws StorageException {
+    prepare(null, rows, null);
+  }
+
+  void remove(Collection<R> rows) throws StorageException {
+    prepare(rows, null, null);
+  }
+
+  void removeAll() throws StorageException {
+    remove(findAllForUpdate());
+  }
+
+  /**
+   * Drops the rows, for formatting the storage.
+   */
+  synchronized void clear() {
+    rows.clear();
+    for (Index<?> index : indexes) {
+      index.entries.clear();
+    }
+  }
+
+  private List<R> findAllForUpdate() throws StorageException {
+    List<K> keys;
+    synchronized (this) {
+      keys = new ArrayList<K>(rows.keySet());
+    }
+    Transaction tx = connector.getTransaction();
+    List<R> found = new ArrayList<R>(keys.size());
+    for (K key : keys) {
+      // removeAll may run outside of a transaction, take no lock then
+      R row = lock(key, tx, tx == null ? Transaction.LockMode.READ_COMMITTED :
+          Transaction.LockMode.EXCLUSIVE);
+      if (row != null) {
+        found.add(row);
+      }
+    }
+    return found;
+  }
+
+  private <I> List<R> lockRows(List<K> keys, Index<I> index, I value,
+      Transaction.LockMode mode) throws StorageException {
+    Transaction tx = connector.getTransaction();
+    if (tx == null) {
+      mode = Transaction.LockMode.READ_COMMITTED;
+    }
+    List<R> found = new ArrayList<R>(keys.size());
+    for (K key : keys) {
+      R row = lock(key, tx, mode);
+      // the row may have changed while waiting for its lock
+      if (row != null && (index == null || index.matches(row, value))) {
+        found.add(row);
+      }
+    }
+    return found;
+  }
+
+  static List<Object> key(Object... parts) {
+    return Arrays.asList(parts);
+  }
+
+  static List<Integer> asList(int[] values) {
+    List<Integer> list = new ArrayList<Integer>(values.length);
+    for (int value : values) {
+      list.add(value);
+    }
+    return list;
+  }
+
+  private static Transaction.LockMode getLockMode(Transaction tx) {
+    return tx == null ? Transaction.LockMode.READ_COMMITTED :
+        tx.getLockMode();
+  }
+
+  /**
+   * Waits until the transaction may read the row in the given mode, taking
+   * its lock if the mode asks for one.
+   *
+   * @return the row, null if there is none
+   */
+  private synchronized R lock(K key, Transaction tx, Transaction.LockMode mode)
+      throws StorageException {
+    long deadline = System.currentTimeMillis() + connector.getLockTimeout();
+    while (true) {
+      RowLock lock = locks.get(key);
+      if (lock == null) {
+        lock = new RowLock(key);
+        locks.put(key, lock);
+      }
+      boolean granted = lock.grant(tx, mode);
+      if (lock.isFree()) {
+        locks.remove(key);
+      }
+      if (granted) {
+        return rows.get(key);
+      }
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        throw new TransientStorageException(
+            "Lock wait timeout exceeded on " + name + " " + key);
+      }
+      try {
+        wait(remaining);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new StorageException(e);
+      }
+    }
+  }
+
+  private synchronized void write(Transaction tx, K key, R row)
+      throws StorageException {
+    lock(key, tx, Transaction.LockMode.EXCLUSIVE);
+    R previous = row == null ? removeRow(key) : putRow(key, row);
+    if (previous != null || row != null) {
+      tx.written(new Write(key, previous));
+    }
+  }
+
+  private R putRow(K key, R row) {
+    R previous = rows.put(key, row);
+    for (Index<?> index : indexes) {
+      if (previous != null) {
+        index.remove(key, previous);
+      }
+      index.add(key, row);
+    }
+    return previous;
+  }
+
+  private R removeRow(K key) {
+    R previous = rows.remove(key);
+    if (previous != null) {
+      for (Index<?> index : indexes) {
+        index.remove(key, previous);
+      }
+    }
+    return previous;
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+import io.hops.metadata.hdfs.dal.UnderReplicatedBlockDataAccess;
+import io.hops.metadata.hdfs.entity.UnderReplicatedBlock;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The blocks waiting for replication, keyed by inode and block id and
+ * listed by their priority level.
+ */
+class InMemoryUnderReplicatedBlockDataAccess
+    implements UnderReplicatedBlockDataAccess<UnderReplicatedBlock> {
+
+  private final InMemoryTable<List<Object>, UnderReplicatedBlock> table;
+  private final InMemoryTable<List<Object>, UnderReplicatedBlock>.Index<Integer>
+      byINodeId;
+  private final InMemoryTable<List<Object>, UnderReplicatedBlock>.Index<Integer>
+      byLevel;
+
+  InMemoryUnderReplicatedBlockDataAccess(InMemoryConnector connector) {
+    table = new InMemoryTable<List<Object>, UnderReplicatedBlock>(connector,
+        "under_replicated_blocks") {
+      @Override
+      List<Object> getKey(UnderReplicatedBlock block) {
+        return key(block.getInodeId(), block.getBlockId());
+      }
+    };
+    byINodeId = table.new Index<Integer>() {
+      @Override
+      Integer getValue(UnderReplicatedBlock block) {
+        return block.getInodeId();
+      }
+    };
+    byLevel = table.new Index<Integer>() {
+      @Override
+      Integer getValue(UnderReplicatedBlock block) {
+        return block.getLevel();
+      }
+    };
+    connector.addTable(UnderReplicatedBlockDataAccess.class, table);
+  }
+
+  @Override
+  public UnderReplicatedBlock findByPk(long blockId, int inodeId)
+      throws StorageException {
+    return table.get(InMemoryTable.key(inodeId, blockId));
+  }
+
+  @Override
+  public List<UnderReplicatedBlock> findByINodeId(int inodeId)
+      throws StorageException {
+    return table.find(byINodeId, inodeId);
+  }
+
+  @Override
+  public List<UnderReplicatedBlock> findByINodeIds(int[] inodeIds)
+      throws StorageException {
+    return table.find(byINodeId, InMemoryTable.asList(inodeIds));
+  }
+
+  @Override
+  public List<UnderReplicatedBlock> findAll() throws StorageException {
+    return table.findAll();
+  }
+
+  @Override
+  public List<UnderReplicatedBlock> findByLevel(int level)
+      throws StorageException {
+    return table.find(byLevel, level);
+  }
+
+  @Override
+  public List<UnderReplicatedBlock> findByLevel(int level, int offset,
+      int count) throws StorageException {
+    List<UnderReplicatedBlock> blocks = table.find(byLevel, level);
+    int from = Math.min(offset, blocks.size());
+    int to = Math.min(from + count, blocks.size());
+    return new ArrayList<UnderReplicatedBlock>(blocks.subList(from, to));
+  }
+
+  @Override
+  public int countAll() throws StorageException {
+    return table.countAll();
+  }
+
+  @Override
+  public int countByLevel(int level) throws StorageException {
+    return table.count(byLevel, level);
+  }
+
+  @Override
+  public int countLessThanALevel(final int level) throws StorageException {
+    return table.count(new InMemoryTable.Filter<UnderReplicatedBlock>() {
+      @Override
+      public boolean matches(UnderReplicatedBlock block) {
+        return block.getLevel() < level;
+      }
+    });
+  }
+
+  @Override
+  public void prepare(Collection<UnderReplicatedBlock> removed,
+      Collection<UnderReplicatedBlock> newed,
+      Collection<UnderReplicatedBlock> modified) throws StorageException {
+    table.prepare(removed, newed, modified);
+  }
+
+  @Override
+  public void removeAll() throws StorageException {
+    table.removeAll();
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+import io.hops.metadata.common.entity.Variable;
+import io.hops.metadata.hdfs.dal.VariableDataAccess;
+
+import java.util.Collections;
+
+/**
+ * The variables, keyed by their type. A variable which was never set has its
+ * default value, as the database gets it when it is formatted.
+ */
+class InMemoryVariableDataAccess
+    implements VariableDataAccess<Variable, Variable.Finder> {
+
+  private final InMemoryTable<Variable.Finder, Variable> table;
+
+  InMemoryVariableDataAccess(InMemoryConnector connector) {
+    table = new InMemoryTable<Variable.Finder, Variable>(connector,
+        "variables") {
+      @Override
+      Variable.Finder getKey(Variable variable) {
+        return variable.getType();
+      }
+    };
+    connector.addTable(VariableDataAccess.class, table);
+  }
+
+  @Override
+  public Variable getVariable(Variable.Finder type) throws StorageException {
+    Variable variable = table.get(type);
+    return variable == null ?
+        Variable.initVariable(type, type.getDefaultValue()) : variable;
+  }
+
+  @Override
+  public void setVariable(Variable variable) throws StorageException {
+    table.put(Collections.singletonList(variable));
+  }
+}
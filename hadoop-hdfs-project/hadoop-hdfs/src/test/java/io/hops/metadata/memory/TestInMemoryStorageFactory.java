@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.StorageConnector;
+import io.hops.exception.TransientStorageException;
+import io.hops.metadata.hdfs.dal.INodeDataAccess;
+import io.hops.metadata.hdfs.dal.LeaseDataAccess;
+import io.hops.metadata.hdfs.dal.LeasePathDataAccess;
+import io.hops.metadata.hdfs.entity.INode;
+import io.hops.metadata.hdfs.entity.Lease;
+import io.hops.metadata.hdfs.entity.LeasePath;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestInMemoryStorageFactory {
+  private static final Collection<INode> NO_INODES = Collections.emptyList();
+  private static final Collection<Lease> NO_LEASES = Collections.emptyList();
+  private static final Collection<LeasePath> NO_PATHS =
+      Collections.emptyList();
+
+  private StorageConnector connector;
+  private INodeDataAccess<INode> inodes;
+  private LeaseDataAccess<Lease> leases;
+  private LeasePathDataAccess<LeasePath> leasePaths;
+
+  @Before
+  public void setUp() {
+    InMemoryStorageFactory factory = new InMemoryStorageFactory();
+    connector = factory.getConnector();
+    inodes = (INodeDataAccess<INode>) factory.getDataAccess(
+        INodeDataAccess.class);
+    leases = (LeaseDataAccess<Lease>) factory.getDataAccess(
+        LeaseDataAccess.class);
+    leasePaths = (LeasePathDataAccess<LeasePath>) factory.getDataAccess(
+        LeasePathDataAccess.class);
+  }
+
+  private static INode newINode(int id, int parentId, String name) {
+    INode inode = new INode();
+    inode.setId(id);
+    inode.setParentId(parentId);
+    inode.setName(name);
+    return inode;
+  }
+
+  private void addINodes(INode... added) throws Exception {
+    connector.beginTransaction();
+    inodes.prepare(NO_INODES, Arrays.asList(added), NO_INODES);
+    connector.commit();
+  }
+
+  @Test
+  public void testLookUps() throws Exception {
+    INode dir = newINode(2, 1, "dir");
+    INode file = newINode(3, 2, "file");
+    addINodes(dir, file);
+
+    assertSame(dir, inodes.indexScanfindInodeById(2));
+    assertSame(file, inodes.pkLookUpFindInodeByNameAndParentId("file", 2));
+    assertNull(inodes.pkLookUpFindInodeByNameAndParentId("file", 1));
+    assertEquals(Collections.singletonList(file),
+        inodes.indexScanFindInodesByParentId(2));
+    assertEquals(2, inodes.countAll());
+  }
+
+  @Test
+  public void testBatchedLookUp() throws Exception {
+    INode a = newINode(2, 1, "a");
+    INode b = newINode(3, 2, "b");
+    INode c = newINode(4, 3, "c");
+    addINodes(a, b, c);
+
+    // in the order of the batch, without the missing ones
+    List<INode> batch = inodes.getINodesPkBatched(
+        new String[]{"c", "a", "x"}, new int[]{3, 1, 1});
+    assertEquals(Arrays.asList(c, a), batch);
+  }
+
+  @Test
+  public void testRollback() throws Exception {
+    INode dir = newINode(2, 1, "dir");
+    addINodes(dir);
+
+    connector.beginTransaction();
+    // a rename removes the row under the old key, like INodeContext does it
+    INode renamed = newINode(2, 1, "renamed");
+    inodes.prepare(Collections.singletonList(dir),
+        Collections.singletonList(renamed), NO_INODES);
+    inodes.prepare(NO_INODES, Collections.singletonList(newINode(3, 2, "file")),
+        NO_INODES);
+    assertSame(renamed, inodes.indexScanfindInodeById(2));
+    connector.rollback();
+
+    assertSame(dir, inodes.indexScanfindInodeById(2));
+    assertSame(dir, inodes.pkLookUpFindInodeByNameAndParentId("dir", 1));
+    assertNull(inodes.pkLookUpFindInodeByNameAndParentId("renamed", 1));
+    assertNull(inodes.indexScanfindInodeById(3));
+    assertTrue(inodes.indexScanFindInodesByParentId(2).isEmpty());
+  }
+
+  @Test
+  public void testLeases() throws Exception {
+    connector.beginTransaction();
+    leases.prepare(NO_LEASES, Arrays.asList(new Lease("client1", 1, 10L),
+        new Lease("client2", 2, 20L)), NO_LEASES);
+    leasePaths.prepare(NO_PATHS, Arrays.asList(new LeasePath("/a/file", 1),
+        new LeasePath("/b/file", 2)), NO_PATHS);
+    connector.commit();
+
+    assertEquals("client2", leases.findByHolderId(2).getHolder());
+    assertEquals(1, leases.findByTimeLimit(15L).size());
+    assertEquals("/a/file", leasePaths.findByPrefix("/a").iterator().next()
+        .getPath());
+    assertEquals(1, leasePaths.findByHolderId(2).size());
+
+    connector.formatStorage();
+    assertEquals(0, leases.countAll());
+    assertTrue(leases.findAll().isEmpty());
+  }
+
+  /**
+   * Looks the inode up under a write lock in a transaction of its own.
+   */
+  private INode lookUpForUpdate(String name, int parentId) throws Exception {
+    connector.beginTransaction();
+    try {
+      connector.writeLock();
+      INode inode = inodes.pkLookUpFindInodeByNameAndParentId(name, parentId);
+      connector.commit();
+      return inode;
+    } finally {
+      connector.rollback();
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testWriteLockWaitsForCommit() throws Exception {
+    INode dir = newINode(2, 1, "dir");
+    INode file = newINode(3, 2, "file");
+    addINodes(dir, file);
+
+    connector.beginTransaction();
+    connector.writeLock();
+    assertSame(dir, inodes.pkLookUpFindInodeByNameAndParentId("dir", 1));
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<INode> locked = executor.submit(new Callable<INode>() {
+        @Override
+        public INode call() throws Exception {
+          return lookUpForUpdate("dir", 1);
+        }
+      });
+      // the rows which are not locked can be locked meanwhile
+      Future<INode> other = executor.submit(new Callable<INode>() {
+        @Override
+        public INode call() throws Exception {
+          return lookUpForUpdate("file", 2);
+        }
+      });
+      assertSame(file, other.get(30, TimeUnit.SECONDS));
+      Thread.sleep(500);
+      assertFalse(locked.isDone());
+
+      connector.commit();
+      assertSame(dir, locked.get(30, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testLockTimeout() throws Exception {
+    addINodes(newINode(2, 1, "dir"));
+    ((InMemoryConnector) connector).setLockTimeout(100);
+
+    connector.beginTransaction();
+    connector.readLock();
+    inodes.pkLookUpFindInodeByNameAndParentId("dir", 1);
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<INode> locked = executor.submit(new Callable<INode>() {
+        @Override
+        public INode call() throws Exception {
+          return lookUpForUpdate("dir", 1);
+        }
+      });
+      try {
+        locked.get(30, TimeUnit.SECONDS);
+        fail("The write lock was granted while the read lock was held");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof TransientStorageException);
+      }
+    } finally {
+      executor.shutdownNow();
+      connector.commit();
+    }
+    // the failed transaction released what it had
+    assertEquals("dir", lookUpForUpdate("dir", 1).getName());
+  }
+}
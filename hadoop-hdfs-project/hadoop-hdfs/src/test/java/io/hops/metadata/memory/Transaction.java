@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A transaction of the {@link InMemoryConnector}: the lock mode of its reads,
+ * the row locks it holds and the writes to undo if it is rolled back.
+ */
+class Transaction {
+
+  enum LockMode {
+    READ_COMMITTED,
+    SHARED,
+    EXCLUSIVE
+  }
+
+  private LockMode lockMode = LockMode.READ_COMMITTED;
+  private final List<InMemoryTable<?, ?>.RowLock> locks =
+      new ArrayList<InMemoryTable<?, ?>.RowLock>();
+  private final List<InMemoryTable<?, ?>.Write> writes =
+      new ArrayList<InMemoryTable<?, ?>.Write>();
+
+  LockMode getLockMode() {
+    return lockMode;
+  }
+
+  void setLockMode(LockMode lockMode) {
+    this.lockMode = lockMode;
+  }
+
+  void locked(InMemoryTable<?, ?>.RowLock lock) {
+    locks.add(lock);
+  }
+
+  void written(InMemoryTable<?, ?>.Write write) {
+    writes.add(write);
+  }
+
+  void commit() {
+    writes.clear();
+    releaseLocks();
+  }
+
+  void rollback() {
+    for (int i = writes.size() - 1; i >= 0; i--) {
+      writes.get(i).undo();
+    }
+    writes.clear();
+    releaseLocks();
+  }
+
+  private void releaseLocks() {
+    for (InMemoryTable<?, ?>.RowLock lock : locks) {
+      lock.release(this);
+    }
+    locks.clear();
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.transaction.handler;
+
+import io.hops.transaction.handler.RequestHandler.OperationType;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the number of storage round trips of the common name-node
+ * operations at several path depths.
+ * <p/>
+ * The round trips are those counted by {@link TransactionMetrics}: one per
+ * read of an entity context which misses its cache, and one per commit. The
+ * round trips of an operation at depth d are {@code base + perComponent *
+ * d}. Without the path memcache every component of a path is read on its
+ * own, so perComponent is 1; it would be 0 for a path resolved in one
+ * batch. Each operation is checked both per transaction and in total, so
+ * that an operation which starts running more transactions is caught too.
+ * <p/>
+ * The bounds are the current round trips of the operations. When a change
+ * lowers them, lower the bounds too.
+ */
+public class TestOperationRoundTrips {
+  private static final Log LOG =
+      LogFactory.getLog(TestOperationRoundTrips.class);
+
+  private static final int[] DEPTHS = {1, 4, 8};
+
+  private static MiniDFSCluster cluster;
+  private static DistributedFileSystem dfs;
+
+  @BeforeClass
+  public static void setUpCluster() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_REPLICATION_KEY, 1);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    dfs = cluster.getFileSystem();
+  }
+
+  @AfterClass
+  public static void shutDownCluster() throws IOException {
+    if (dfs != null) {
+      dfs.close();
+    }
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  @After
+  public void tearDown() {
+    TransactionMetrics.stopRecording();
+  }
+
+  private static Path getDir(String name, int depth) {
+    Path dir = new Path("/" + name);
+    for (int i = 1; i < depth; i++) {
+      dir = new Path(dir, "d" + i);
+    }
+    return dir;
+  }
+
+  private static Map<OperationType, TransactionMetrics.OperationCounts>
+      stopRecording(String what) {
+    Map<OperationType, TransactionMetrics.OperationCounts> recorded =
+        TransactionMetrics.stopRecording();
+    LOG.info(what + ": " + recorded);
+    return recorded;
+  }
+
+  /**
+   * @param transactions
+   *     the number of transactions the operation runs, or 0 if it may be
+   *     retried by the client
+   */
+  private static void assertRoundTrips(
+      Map<OperationType, TransactionMetrics.OperationCounts> recorded,
+      HDFSOperationType opType, int depth, int base, int perComponent,
+      int transactions) {
+    TransactionMetrics.OperationCounts counts = recorded.get(opType);
+    assertNotNull(opType + " was not recorded", counts);
+    if (transactions > 0) {
+      assertEquals(opType + " at depth " + depth + ": " + counts,
+          transactions, counts.getTransactions());
+    }
+    int bound = base + perComponent * depth;
+    double roundTrips =
+        (double) counts.getRoundTrips() / counts.getTransactions();
+    assertTrue(opType + " at depth " + depth + " made " + roundTrips +
+            " round trips per transaction, more than " + bound,
+        roundTrips <= bound);
+  }
+
+  @Test
+  public void testMkdirs() throws IOException {
+    for (int depth : DEPTHS) {
+      Path dir = getDir("mkdirs", depth);
+      dfs.mkdirs(dir.getParent());
+      TransactionMetrics.startRecording();
+      assertTrue(dfs.mkdirs(dir));
+      assertRoundTrips(stopRecording("mkdirs " + depth),
+          HDFSOperationType.MKDIRS, depth, 3, 1, 1);
+    }
+  }
+
+  @Test
+  public void testCreate() throws IOException {
+    for (int depth : DEPTHS) {
+      Path dir = getDir("create", depth);
+      dfs.mkdirs(dir);
+      TransactionMetrics.startRecording();
+      FSDataOutputStream out = dfs.create(new Path(dir, "file"));
+      out.write(new byte[1024]);
+      out.close();
+      Map<OperationType, TransactionMetrics.OperationCounts> recorded =
+          stopRecording("create " + depth);
+      assertRoundTrips(recorded, HDFSOperationType.START_FILE, depth, 6, 1,
+          1);
+      assertRoundTrips(recorded, HDFSOperationType.GET_ADDITIONAL_BLOCK,
+          depth, 11, 1, 1);
+      // the client retries until the block has been reported
+      assertRoundTrips(recorded, HDFSOperationType.COMPLETE_FILE, depth, 13,
+          1, 0);
+    }
+  }
+
+  @Test
+  public void testOpen() throws IOException {
+    for (int depth : DEPTHS) {
+      Path file = new Path(getDir("open", depth), "file");
+      FSDataOutputStream out = dfs.create(file);
+      out.write(new byte[1024]);
+      out.close();
+      TransactionMetrics.startRecording();
+      dfs.open(file).close();
+      assertRoundTrips(stopRecording("open " + depth),
+          HDFSOperationType.GET_BLOCK_LOCATIONS, depth, 9, 1, 1);
+    }
+  }
+
+  @Test
+  public void testList() throws IOException {
+    for (int depth : DEPTHS) {
+      Path dir = getDir("list", depth);
+      for (int i = 0; i < 4; i++) {
+        dfs.create(new Path(dir, "file" + i)).close();
+      }
+      TransactionMetrics.startRecording();
+      dfs.listStatus(dir);
+      assertRoundTrips(stopRecording("list " + depth),
+          HDFSOperationType.GET_LISTING, depth, 24, 1, 1);
+    }
+  }
+
+  @Test
+  public void testRename() throws IOException {
+    for (int depth : DEPTHS) {
+      Path dir = getDir("rename", depth);
+      Path src = new Path(dir, "src");
+      dfs.create(src).close();
+      TransactionMetrics.startRecording();
+      assertTrue(dfs.rename(src, new Path(dir, "dst")));
+      assertRoundTrips(stopRecording("rename " + depth),
+          HDFSOperationType.RENAME_TO, depth, 17, 1, 1);
+    }
+  }
+
+  @Test
+  public void testDelete() throws IOException {
+    for (int depth : DEPTHS) {
+      Path file = new Path(getDir("delete", depth), "file");
+      FSDataOutputStream out = dfs.create(file);
+      out.write(new byte[1024]);
+      out.close();
+      TransactionMetrics.startRecording();
+      assertTrue(dfs.delete(file, false));
+      assertRoundTrips(stopRecording("delete " + depth),
+          HDFSOperationType.DELETE, depth, 12, 1, 1);
+    }
+  }
+}
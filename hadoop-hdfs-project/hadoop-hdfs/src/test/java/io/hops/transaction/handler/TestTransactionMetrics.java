@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.transaction.handler;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestTransactionMetrics {
+
+  @After
+  public void tearDown() {
+    TransactionMetrics.setInstance(null);
+    TransactionMetrics.stopRecording();
+  }
+
+  private static void runAttempt(int hits, int misses) {
+    TransactionMetrics.setUpStarted();
+    TransactionMetrics.setUpFinished();
+    TransactionMetrics.lockAcquisitionStarted();
+    for (int i = 0; i < misses; i++) {
+      TransactionMetrics.roundTrip();
+      TransactionMetrics.cacheMiss(Arrays.asList("a", "b"));
+    }
+    TransactionMetrics.lockAcquisitionFinished();
+    for (int i = 0; i < hits; i++) {
+      TransactionMetrics.cacheHit();
+    }
+    TransactionMetrics.prepareStarted(Collections.emptyList(),
+        Arrays.asList("a"), Collections.emptyList());
+    TransactionMetrics.prepareStarted(Collections.emptyList(),
+        Collections.emptyList(), Collections.emptyList());
+  }
+
+  @Test
+  public void testPhasesAndCounters() {
+    TransactionMetrics metrics = new TransactionMetrics(new int[]{60});
+    TransactionMetrics.setInstance(metrics);
+
+    assertTrue(
+        TransactionMetrics.transactionStarted(HDFSOperationType.MKDIRS));
+    // a nested transaction is accounted to the outer one
+    assertFalse(
+        TransactionMetrics.transactionStarted(HDFSOperationType.MKDIRS));
+    runAttempt(1, 2);
+    runAttempt(3, 2);
+    TransactionMetrics.readAheadHit();
+    TransactionMetrics.committed();
+    TransactionMetrics.transactionFinished(true);
+
+    assertEquals(4, metrics.getCacheHits());
+    assertEquals(4, metrics.getCacheMisses());
+    // one per miss, and the commit
+    assertEquals(5, metrics.getRoundTrips());
+    assertEquals(8, metrics.getRowsRead());
+    assertEquals(2, metrics.getRowsWritten());
+    assertEquals(1, metrics.getRetries());
+    assertEquals(1, metrics.getReadAheadHits());
+    for (TransactionMetrics.Phase phase : TransactionMetrics.Phase.values()) {
+      assertTrue(phase.toString(),
+          metrics.hasQuantiles(HDFSOperationType.MKDIRS, phase));
+    }
+    assertFalse(metrics.hasQuantiles(HDFSOperationType.GET_BLOCK_LOCATIONS,
+        TransactionMetrics.Phase.TOTAL));
+  }
+
+  @Test
+  public void testRecording() {
+    // recording works with the metrics disabled
+    TransactionMetrics.startRecording();
+    assertTrue(
+        TransactionMetrics.transactionStarted(HDFSOperationType.MKDIRS));
+    runAttempt(1, 3);
+    TransactionMetrics.committed();
+    TransactionMetrics.transactionFinished(true);
+    assertTrue(
+        TransactionMetrics.transactionStarted(HDFSOperationType.MKDIRS));
+    runAttempt(0, 1);
+    TransactionMetrics.transactionFinished(true);
+    assertTrue(
+        TransactionMetrics.transactionStarted(HDFSOperationType.DELETE));
+    runAttempt(0, 2);
+    runAttempt(0, 2);
+    TransactionMetrics.transactionFinished(true);
+
+    Map<RequestHandler.OperationType, TransactionMetrics.OperationCounts>
+        recorded = TransactionMetrics.stopRecording();
+    assertEquals(2, recorded.size());
+    TransactionMetrics.OperationCounts mkdirs =
+        recorded.get(HDFSOperationType.MKDIRS);
+    assertEquals(2, mkdirs.getTransactions());
+    assertEquals(2, mkdirs.getAttempts());
+    assertEquals(5, mkdirs.getRoundTrips());
+    assertEquals(8, mkdirs.getRowsRead());
+    assertEquals(2, mkdirs.getRowsWritten());
+    TransactionMetrics.OperationCounts delete =
+        recorded.get(HDFSOperationType.DELETE);
+    assertEquals(1, delete.getTransactions());
+    assertEquals(2, delete.getAttempts());
+    assertEquals(4, delete.getRoundTrips());
+
+    // nothing is tracked once the recording has stopped
+    assertFalse(
+        TransactionMetrics.transactionStarted(HDFSOperationType.MKDIRS));
+    assertTrue(TransactionMetrics.stopRecording().isEmpty());
+  }
+
+  @Test
+  public void testDisabled() {
+    assertFalse(
+        TransactionMetrics.transactionStarted(HDFSOperationType.MKDIRS));
+    TransactionMetrics.cacheHit();
+    TransactionMetrics.transactionFinished(true);
+
+    TransactionMetrics metrics = new TransactionMetrics(new int[0]);
+    TransactionMetrics.setInstance(metrics);
+    assertTrue(
+        TransactionMetrics.transactionStarted(HDFSOperationType.MKDIRS));
+    runAttempt(1, 1);
+    TransactionMetrics.transactionFinished(false);
+    assertEquals(1, metrics.getCacheHits());
+    assertFalse(metrics.hasQuantiles(HDFSOperationType.MKDIRS,
+        TransactionMetrics.Phase.TOTAL));
+  }
+}
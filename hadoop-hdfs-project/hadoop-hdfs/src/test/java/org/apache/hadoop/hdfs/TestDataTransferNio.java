@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.net.NetUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_MAX_BLOCK_ACQUIRE_FAILURES_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_XCEIVER_NIO_ENABLED_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_XCEIVER_NIO_WORKER_THREADS_KEY;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Runs reads and pipeline writes against data-nodes with the NIO mode of
+ * the DataXceiverServer enabled, and checks that idle connections are
+ * reused and expire like in the thread per connection mode.
+ */
+public class TestDataTransferNio {
+  private static final int KEEPALIVE_TIMEOUT = 1000;
+  private static final int WORKER_THREADS = 2;
+  private static final int NUM_DATANODES = 3;
+  private static final Path TEST_FILE = new Path("/test");
+
+  private final Configuration conf = new HdfsConfiguration();
+  private MiniDFSCluster cluster;
+  private FileSystem fs;
+  private DFSClient dfsClient;
+
+  @Before
+  public void setup() throws Exception {
+    conf.setBoolean(DFS_DATANODE_XCEIVER_NIO_ENABLED_KEY, true);
+    conf.setInt(DFS_DATANODE_XCEIVER_NIO_WORKER_THREADS_KEY, WORKER_THREADS);
+    conf.setInt(DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_KEY, KEEPALIVE_TIMEOUT);
+    conf.setInt(DFS_CLIENT_MAX_BLOCK_ACQUIRE_FAILURES_KEY, 0);
+
+    cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(NUM_DATANODES).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    dfsClient = ((DistributedFileSystem) fs).dfs;
+  }
+
+  @After
+  public void teardown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  private static byte[] createFile(FileSystem fs, Path path, int length,
+      short replication) throws Exception {
+    byte[] data = new byte[length];
+    new Random(length).nextBytes(data);
+    FSDataOutputStream out = fs.create(path, replication);
+    try {
+      out.write(data);
+    } finally {
+      out.close();
+    }
+    return data;
+  }
+
+  private static byte[] readFile(FileSystem fs, Path path, int length)
+      throws Exception {
+    byte[] data = new byte[length];
+    FSDataInputStream in = fs.open(path);
+    try {
+      in.readFully(0, data);
+    } finally {
+      in.close();
+    }
+    return data;
+  }
+
+  private int getXceiverCount() {
+    int count = 0;
+    for (DataNode dn : cluster.getDataNodes()) {
+      count += dn.getXceiverCount();
+    }
+    return count;
+  }
+
+  private void waitForXceiverCount(int expected) throws Exception {
+    long deadline = System.currentTimeMillis() + 10 * KEEPALIVE_TIMEOUT;
+    while (getXceiverCount() != expected &&
+        System.currentTimeMillis() < deadline) {
+      Thread.sleep(100);
+    }
+    assertEquals(expected, getXceiverCount());
+  }
+
+  /**
+   * A block is written through a pipeline of all the data-nodes, whose
+   * connections are closed when the write is done.
+   */
+  @Test(timeout = 60000)
+  public void testPipelineWrite() throws Exception {
+    int length = 3 * 1024 * 1024 + 17;
+    byte[] data = createFile(fs, TEST_FILE, length, (short) NUM_DATANODES);
+    waitForXceiverCount(0);
+    DFSTestUtil.waitReplication(fs, TEST_FILE, (short) NUM_DATANODES);
+    assertArrayEquals(data, readFile(fs, TEST_FILE, length));
+  }
+
+  /**
+   * A read connection waits in the selector after the read, is reused by the
+   * next read and closed once idle for longer than the keepalive timeout.
+   */
+  @Test(timeout = 60000)
+  public void testKeepaliveReuseAndExpiry() throws Exception {
+    byte[] data = createFile(fs, TEST_FILE, 1024, (short) 1);
+    waitForXceiverCount(0);
+
+    assertArrayEquals(data, readFile(fs, TEST_FILE, data.length));
+    assertEquals(1, dfsClient.socketCache.size());
+    assertEquals(1, getXceiverCount());
+
+    // The cached connection is reused instead of opening a second one
+    assertArrayEquals(data, readFile(fs, TEST_FILE, data.length));
+    assertEquals(1, dfsClient.socketCache.size());
+    assertEquals(1, getXceiverCount());
+
+    // The idle connection expires
+    Thread.sleep(KEEPALIVE_TIMEOUT * 2);
+    waitForXceiverCount(0);
+
+    // The client notices the closed connection when it reads from it
+    InetSocketAddress dnAddr = NetUtils.createSocketAddr(
+        dfsClient.getLocatedBlocks(TEST_FILE.toString(), 0, 1).get(0)
+            .getLocations()[0].getXferAddr());
+    Socket s = dfsClient.socketCache.get(dnAddr).sock;
+    assertNotNull(s);
+    assertEquals(-1, NetUtils.getInputStream(s).read());
+    s.close();
+
+    // The next read opens a new connection
+    assertArrayEquals(data, readFile(fs, TEST_FILE, data.length));
+    assertEquals(1, getXceiverCount());
+  }
+
+  /**
+   * More concurrent readers than worker threads are all served.
+   */
+  @Test(timeout = 60000)
+  public void testMoreReadersThanWorkers() throws Exception {
+    final int length = 1024 * 1024;
+    final byte[] data = createFile(fs, TEST_FILE, length, (short) 1);
+    ExecutorService readers = Executors.newFixedThreadPool(4 * WORKER_THREADS);
+    try {
+      List<Future<byte[]>> reads = new ArrayList<Future<byte[]>>();
+      for (int i = 0; i < 4 * WORKER_THREADS; i++) {
+        reads.add(readers.submit(new Callable<byte[]>() {
+          @Override
+          public byte[] call() throws Exception {
+            return readFile(fs, TEST_FILE, length);
+          }
+        }));
+      }
+      for (Future<byte[]> read : reads) {
+        assertArrayEquals(data, read.get());
+      }
+    } finally {
+      readers.shutdownNow();
+    }
+  }
+}
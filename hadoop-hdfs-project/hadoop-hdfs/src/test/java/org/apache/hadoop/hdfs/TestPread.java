@@ -245,6 +245,37 @@ private void dfsPreadTest(boolean disableTransferTo, boolean verifyChecksum)
     }
   }
   
+  /**
+   * Tests positional read in DFS with hedged reads. The hedged read
+   * threshold is 0 so that every read is hedged by a read from another
+   * datanode.
+   */
+  @Test
+  public void testHedgedPreadDFSBasic() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 4096);
+    conf.setLong(DFSConfigKeys.DFS_CLIENT_READ_PREFETCH_SIZE_KEY, 4096);
+    conf.setInt(DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_THREADPOOL_SIZE, 5);
+    conf.setLong(DFSConfigKeys.DFS_DFSCLIENT_HEDGED_READ_THRESHOLD_MILLIS, 0);
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(3).build();
+    DistributedFileSystem fileSys = cluster.getFileSystem();
+    try {
+      DFSHedgedReadMetrics metrics = fileSys.getClient().getHedgedReadMetrics();
+      long hedgedReadOps = metrics.getHedgedReadOps();
+      Path file1 = new Path("hedgedpreadtest.dat");
+      writeFile(fileSys, file1);
+      pReadFile(fileSys, file1);
+      assertTrue(metrics.getHedgedReadOps() > hedgedReadOps);
+      assertTrue(metrics.getHedgedReadWins() <= metrics.getHedgedReadOps());
+      datanodeRestartTest(cluster, fileSys, file1);
+      cleanupFile(fileSys, file1);
+    } finally {
+      fileSys.close();
+      cluster.shutdown();
+    }
+  }
+
   @Test
   public void testPreadDFSSimulated() throws IOException {
     simulatedStorage = true;
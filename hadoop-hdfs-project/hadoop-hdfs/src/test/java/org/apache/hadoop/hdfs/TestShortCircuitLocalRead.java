@@ -22,6 +22,7 @@
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.ReadOption;
 import org.apache.hadoop.hdfs.DFSClient.DFSDataInputStream;
 import org.apache.hadoop.hdfs.protocol.BlockLocalPathInfo;
 import org.apache.hadoop.hdfs.protocol.ClientDatanodeProtocol;
@@ -33,6 +34,7 @@
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
 import org.apache.hadoop.hdfs.server.datanode.DataNodeTestUtils;
 import org.apache.hadoop.hdfs.server.datanode.SimulatedFSDataset;
+import org.apache.hadoop.io.ElasticByteBufferPool;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.security.token.Token;
@@ -41,9 +43,12 @@
 import org.junit.Test;
 
 import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.security.PrivilegedExceptionAction;
+import java.util.EnumSet;
 
 import static org.junit.Assert.assertTrue;
 
@@ -163,6 +168,41 @@ static void checkFileContentDirect(FileSystem fs, Path name, byte[] expected,
     stm.close();
   }
 
+  /**
+   * Verifies that reading a file with the zero-copy read(ByteBufferPool, int)
+   * api, mixed with ordinary reads, gives the expected set of bytes.
+   */
+  static void checkFileContentZeroCopy(FileSystem fs, Path name,
+      byte[] expected, int readOffset) throws IOException {
+    FSDataInputStream stm = fs.open(name);
+    ElasticByteBufferPool pool = new ElasticByteBufferPool();
+    byte[] actual = new byte[expected.length - readOffset];
+    IOUtils.skipFully(stm, readOffset);
+    int nread = 0;
+    while (nread < actual.length) {
+      ByteBuffer buf = stm.read(pool, 517);
+      if (buf == null) {
+        throw new EOFException("End of file reached before reading fully.");
+      }
+      // a mapped replica, not a copy in a buffer of the pool
+      Assert.assertTrue("Zero copy read copied the bytes", buf.isReadOnly());
+      int nbytes = buf.remaining();
+      buf.get(actual, nread, nbytes);
+      stm.releaseBuffer(buf);
+      nread += nbytes;
+      // the stream stays in sync with ordinary reads
+      if (nread < actual.length) {
+        nbytes = stm.read(actual, nread, 1);
+        if (nbytes > 0) {
+          nread += nbytes;
+        }
+      }
+    }
+    Assert.assertNull(stm.read(pool, 1));
+    checkData(actual, readOffset, expected, "Zero copy read");
+    stm.close();
+  }
+
   /**
    * Test that file data can be read by reading the block file
    * directly from the local store.
@@ -198,6 +238,7 @@ public void doTestShortCircuitRead(boolean ignoreChecksum, int size,
       stm.close();
       checkFileContent(fs, file1, fileData, readOffset);
       checkFileContentDirect(fs, file1, fileData, readOffset);
+      checkFileContentZeroCopy(fs, file1, fileData, readOffset);
     } finally {
       fs.close();
       cluster.shutdown();
@@ -234,6 +275,67 @@ public void testLongFile() throws IOException {
     doTestShortCircuitRead(true, 10 * blockSize + 100, 777);
   }
 
+  /**
+   * The mapping of a replica made by a client which skips checksums is
+   * shared with the clients which verify them, which must still detect a
+   * corrupt replica.
+   */
+  @Test
+  public void testZeroCopyReadVerifiesSharedMapping() throws IOException {
+    Configuration conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_CLIENT_READ_SHORTCIRCUIT_KEY, true);
+    conf.set(DFSConfigKeys.DFS_BLOCK_LOCAL_PATH_ACCESS_USER_KEY,
+        UserGroupInformation.getCurrentUser().getShortUserName());
+    conf.setInt(DFSConfigKeys.DFS_CLIENT_MAX_BLOCK_ACQUIRE_FAILURES_KEY, 0);
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(1).format(true).build();
+    FileSystem fs = cluster.getFileSystem();
+    Configuration skipConf = new Configuration(conf);
+    skipConf.setBoolean(
+        DFSConfigKeys.DFS_CLIENT_READ_SHORTCIRCUIT_SKIP_CHECKSUM_KEY, true);
+    FileSystem skipFs = FileSystem.newInstance(fs.getUri(), skipConf);
+    ElasticByteBufferPool pool = new ElasticByteBufferPool();
+    try {
+      Path file = new Path("/zerocopy.dat");
+      FSDataOutputStream out = createFile(fs, file, 1);
+      out.write(AppendTestUtil.randomBytes(seed, blockSize));
+      out.close();
+
+      FSDataInputStream in = skipFs.open(file);
+      ByteBuffer buf = in.read(pool, blockSize,
+          EnumSet.of(ReadOption.SKIP_CHECKSUMS));
+      Assert.assertTrue("Zero copy read copied the bytes", buf.isReadOnly());
+      in.releaseBuffer(buf);
+      in.close();
+
+      // the mapping is shared, so it sees the corruption
+      File blockFile =
+          MiniDFSCluster.getBlockFile(0, DFSTestUtil.getFirstBlock(fs, file));
+      RandomAccessFile raf = new RandomAccessFile(blockFile, "rw");
+      try {
+        int b = raf.read();
+        raf.seek(0);
+        raf.write(b ^ 0xff);
+      } finally {
+        raf.close();
+      }
+
+      in = fs.open(file);
+      try {
+        buf = in.read(pool, blockSize, EnumSet.noneOf(ReadOption.class));
+        Assert.fail("Read a corrupt replica without verifying its checksums");
+      } catch (IOException e) {
+        // the corruption was detected
+      } finally {
+        in.close();
+      }
+    } finally {
+      skipFs.close();
+      fs.close();
+      cluster.shutdown();
+    }
+  }
+
   @Test
   public void testGetBlockLocalPathInfo()
       throws IOException, InterruptedException {
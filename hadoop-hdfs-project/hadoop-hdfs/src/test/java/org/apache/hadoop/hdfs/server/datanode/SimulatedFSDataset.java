@@ -494,6 +494,45 @@ public int getNumFailedVolumes() {
     return storage.getNumFailedVolumes();
   }
 
+  @Override // FSDatasetMBean
+  public long getCacheUsed() {
+    return 0L;
+  }
+
+  @Override // FSDatasetMBean
+  public long getCacheCapacity() {
+    return 0L;
+  }
+
+  @Override // FSDatasetMBean
+  public long getNumBlocksCached() {
+    return 0L;
+  }
+
+  @Override // FSDatasetMBean
+  public long getNumBlocksFailedToCache() {
+    return 0L;
+  }
+
+  @Override // FsDatasetSpi
+  public void cache(String bpid, long[] blockIds) {
+    // the simulated blocks are in memory already
+  }
+
+  @Override // FsDatasetSpi
+  public void uncache(String bpid, long[] blockIds) {
+  }
+
+  @Override // FsDatasetSpi
+  public long[] getCacheReport(String bpid) {
+    return new long[0];
+  }
+
+  @Override // FsDatasetSpi
+  public boolean isCached(String bpid, long blockId) {
+    return false;
+  }
+
   @Override // FsDatasetSpi
   public synchronized long getLength(ExtendedBlock b) throws IOException {
     final Map<Block, BInfo> map = getMap(b.getBlockPoolId());
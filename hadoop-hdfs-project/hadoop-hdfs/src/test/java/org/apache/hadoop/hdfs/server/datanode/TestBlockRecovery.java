@@ -46,9 +46,11 @@
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.ReplicaOutputStreams;
 import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
 import org.apache.hadoop.hdfs.server.protocol.BlockRecoveryCommand.RecoveringBlock;
+import org.apache.hadoop.hdfs.server.protocol.CacheReport;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeCommand;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
+import org.apache.hadoop.hdfs.server.protocol.ErasureCodingTaskStatus;
 import org.apache.hadoop.hdfs.server.protocol.HeartbeatResponse;
 import org.apache.hadoop.hdfs.server.protocol.InterDatanodeProtocol;
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
@@ -152,7 +154,8 @@ public DatanodeRegistration answer(InvocationOnMock invocation)
 
     when(namenode.sendHeartbeat(Mockito.any(DatanodeRegistration.class),
         Mockito.any(StorageReport[].class), Mockito.anyInt(), Mockito.anyInt(),
-        Mockito.anyInt()))
+        Mockito.anyInt(), Mockito.any(ErasureCodingTaskStatus[].class),
+        Mockito.any(CacheReport.class)))
         .thenReturn(new HeartbeatResponse(new DatanodeCommand[0]));
 
     when(namenode.getActiveNamenodes()).thenReturn(new SortedActiveNodeList() {
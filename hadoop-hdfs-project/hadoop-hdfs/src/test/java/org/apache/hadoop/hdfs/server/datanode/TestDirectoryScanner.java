@@ -37,6 +37,7 @@
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
@@ -368,6 +369,60 @@ public void runTest(int parallelism) throws Exception {
     }
   }
 
+  @Test
+  public void testIncrementalScan() throws Exception {
+    Configuration conf = new HdfsConfiguration(CONF);
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_INCREMENTAL_KEY,
+        true);
+    cluster = new MiniDFSCluster.Builder(conf).build();
+    try {
+      cluster.waitActive();
+      bpid = cluster.getNamesystem().getBlockPoolId();
+      fds = DataNodeTestUtils.getFSDataset(cluster.getDataNodes().get(0));
+      scanner = new DirectoryScanner(fds, conf);
+      scanner.setRetainDiffs(true);
+
+      // Add files with 100 blocks
+      createFile("/tmp/t1", 10000);
+      long totalBlocks = 100;
+
+      // The differences are reconciled without compiling a report
+      deleteMetaFile();
+      long deletedId = deleteBlockFile();
+      long createdId = createBlockMetaFile();
+      truncateBlockFile();
+      scanner.reconcileIncrementally();
+      verifyDeletion(deletedId);
+      verifyAddition(createdId, DEFAULT_GEN_STAMP, 0);
+      scan(totalBlocks, 0, 0, 0, 0, 0);
+
+      // A walk resumes after the directory in the cursor file
+      long blockId = createBlockFile();
+      List<File> cursorFiles = new ArrayList<File>();
+      for (FsVolumeSpi vol : fds.getVolumes()) {
+        File cursorFile = new File(vol.getFinalizedDir(bpid).getParentFile(),
+            DirectoryScanner.SCAN_CURSOR_FILE);
+        FileOutputStream out = new FileOutputStream(cursorFile);
+        try {
+          out.write("/\n".getBytes());
+        } finally {
+          out.close();
+        }
+        cursorFiles.add(cursorFile);
+      }
+      scanner.reconcileIncrementally();
+      assertNull(FsDatasetTestUtil.fetchReplicaInfo(fds, bpid, blockId));
+      for (File cursorFile : cursorFiles) {
+        assertFalse(cursorFile.exists());
+      }
+      scanner.reconcileIncrementally();
+      verifyAddition(blockId, GenerationStamp.GRANDFATHER_GENERATION_STAMP, 0);
+    } finally {
+      scanner.shutdown();
+      cluster.shutdown();
+    }
+  }
+
   private void verifyAddition(long blockId, long genStamp, long size) {
     final ReplicaInfo replicainfo;
     replicainfo = FsDatasetTestUtil.fetchReplicaInfo(fds, bpid, blockId);
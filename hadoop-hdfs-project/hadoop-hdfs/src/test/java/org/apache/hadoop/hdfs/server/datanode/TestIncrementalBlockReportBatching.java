@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import com.google.common.base.Supplier;
+import io.hops.transaction.handler.HDFSOperationType;
+import io.hops.transaction.handler.TransactionMetrics;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.impl.FsDatasetTestUtil;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that files are written and deleted correctly when the datanodes
+ * hold back their incremental block reports and the namenode applies them
+ * per file.
+ */
+public class TestIncrementalBlockReportBatching {
+  private static final int BLOCK_SIZE = 1024;
+  private static final int NUM_BLOCKS = 8;
+  private static final short REPLICATION = 2;
+
+  private MiniDFSCluster cluster;
+
+  @After
+  public void shutDownCluster() {
+    TransactionMetrics.stopRecording();
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private DistributedFileSystem startCluster(boolean groupByFile)
+      throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setInt(DFSConfigKeys.DFS_BYTES_PER_CHECKSUM_KEY, BLOCK_SIZE / 2);
+    conf.setLong(DFSConfigKeys.DFS_BLOCKREPORT_INCREMENTAL_INTERVAL_MSEC_KEY,
+        2000);
+    conf.setInt(DFSConfigKeys.DFS_BLOCKREPORT_INCREMENTAL_MAX_BLOCKS_KEY, 4);
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_INCREMENTAL_BR_GROUP_BY_FILE_KEY,
+        groupByFile);
+    cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(REPLICATION).build();
+    cluster.waitActive();
+    return cluster.getFileSystem();
+  }
+
+  private void writeAndDelete(DistributedFileSystem fs) throws Exception {
+    Path file = new Path("/ibr/file");
+    DFSTestUtil.createFile(fs, file, NUM_BLOCKS * BLOCK_SIZE, REPLICATION, 0L);
+    DFSTestUtil.waitReplication(fs, file, REPLICATION);
+
+    LocatedBlocks blocks = cluster.getNameNodeRpc()
+        .getBlockLocations(file.toString(), 0, Long.MAX_VALUE);
+    assertEquals(NUM_BLOCKS, blocks.locatedBlockCount());
+    for (LocatedBlock block : blocks.getLocatedBlocks()) {
+      assertEquals(REPLICATION, block.getLocations().length);
+    }
+
+    assertTrue(fs.delete(file, false));
+    waitForDeletions();
+  }
+
+  /**
+   * Waits until the datanodes have deleted the replicas of the deleted file
+   * and the namenode has been told about it.
+   */
+  private void waitForDeletions() throws Exception {
+    final String bpid = cluster.getNamesystem().getBlockPoolId();
+    for (final DataNode dn : cluster.getDataNodes()) {
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return dn.getFSDataset().getFinalizedBlocks(bpid).isEmpty() &&
+              FsDatasetTestUtil.getPendingAsyncDeletions(dn.getFSDataset()) ==
+                  0;
+        }
+      }, 100, 60000);
+      // the report is sent before this returns
+      DataNodeTestUtils.triggerDeletionReport(dn);
+    }
+  }
+
+  /**
+   * Writes and deletes a file, and returns the number of transactions the
+   * namenode ran to apply the incremental block reports of the datanodes.
+   */
+  private long countReportTransactions(boolean groupByFile) throws Exception {
+    DistributedFileSystem fs = startCluster(groupByFile);
+    try {
+      TransactionMetrics.startRecording();
+      writeAndDelete(fs);
+      TransactionMetrics.OperationCounts counts =
+          TransactionMetrics.stopRecording().get(
+              HDFSOperationType.BLOCK_RECEIVED_AND_DELETED_INC_BLK_REPORT);
+      assertNotNull(counts);
+      return counts.getTransactions();
+    } finally {
+      shutDownCluster();
+    }
+  }
+
+  @Test
+  public void testGroupedByFile() throws Exception {
+    long perBlock = countReportTransactions(false);
+    long grouped = countReportTransactions(true);
+    // every replica is received, being received and deleted, at most one
+    // transaction each
+    assertTrue(perBlock + " transactions per block",
+        perBlock <= 3 * NUM_BLOCKS * REPLICATION);
+    // the deletions are reported at least four blocks of the file at a time
+    assertTrue(grouped + " transactions grouped by file, " + perBlock +
+        " per block", grouped < perBlock);
+  }
+
+  @Test
+  public void testPerBlock() throws Exception {
+    writeAndDelete(startCluster(false));
+  }
+}
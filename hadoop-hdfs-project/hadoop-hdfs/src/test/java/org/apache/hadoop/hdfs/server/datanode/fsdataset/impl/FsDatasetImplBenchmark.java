@@ -0,0 +1,200 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.datanode.DataNodeTestUtils;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaInPipelineInterface;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.ReplicaOutputStreams;
+import org.apache.hadoop.util.DataChecksum;
+import org.apache.hadoop.util.Time;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the throughput of concurrent writes to a {@link FsDatasetImpl}.
+ * <p/>
+ * Each thread repeatedly creates a replica being written, writes its data
+ * and checksums, and finalizes it, which are the dataset operations of a
+ * block write pipeline. The benchmark is run for an increasing number of
+ * volumes, so that it shows how the write and finalize throughput scales
+ * with the number of volumes of the datanode.
+ * <p/>
+ * Command line arguments:
+ * <pre>
+ * [-threads T] [-blocks B] [-blockSize S] [-maxVolumes V]
+ * </pre>
+ * Every thread writes B blocks of S bytes. The benchmark is run with
+ * 1, 2, 4, ... volumes up to V.
+ */
+public class FsDatasetImplBenchmark {
+  private static final long FIRST_BLOCK_ID = 1L << 40;
+  private static final long GENERATION_STAMP = 1000;
+
+  private final int numThreads;
+  private final int blocksPerThread;
+  private final int blockSize;
+
+  FsDatasetImplBenchmark(int numThreads, int blocksPerThread, int blockSize) {
+    this.numThreads = numThreads;
+    this.blocksPerThread = blocksPerThread;
+    this.blockSize = blockSize;
+  }
+
+  /**
+   * Runs the benchmark against a datanode with the given number of volumes.
+   *
+   * @return the number of replicas written and finalized per second
+   */
+  double run(int numVolumes) throws Exception {
+    File baseDir = new File(MiniDFSCluster.getBaseDirectory(),
+        "fsdataset-benchmark");
+    FileUtil.fullyDelete(baseDir);
+    StringBuilder dataDirs = new StringBuilder();
+    for (int i = 0; i < numVolumes; i++) {
+      if (i > 0) {
+        dataDirs.append(",");
+      }
+      dataDirs.append(new File(baseDir, "data" + i).toURI());
+    }
+    Configuration conf = new HdfsConfiguration();
+    conf.set(DFSConfigKeys.DFS_DATANODE_DATA_DIR_KEY, dataDirs.toString());
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .manageDataDfsDirs(false).build();
+    try {
+      cluster.waitActive();
+      final FsDatasetImpl dataset = (FsDatasetImpl) DataNodeTestUtils
+          .getFSDataset(cluster.getDataNodes().get(0));
+      final String bpid = cluster.getNamesystem().getBlockPoolId();
+      final AtomicLong nextBlockId = new AtomicLong(FIRST_BLOCK_ID);
+      final List<Throwable> errors = new ArrayList<Throwable>();
+
+      List<Thread> threads = new ArrayList<Thread>(numThreads);
+      for (int i = 0; i < numThreads; i++) {
+        threads.add(new Thread("writer-" + i) {
+          @Override
+          public void run() {
+            try {
+              for (int j = 0; j < blocksPerThread; j++) {
+                writeBlock(dataset, new ExtendedBlock(bpid,
+                    nextBlockId.getAndIncrement(), 0, GENERATION_STAMP));
+              }
+            } catch (Throwable t) {
+              synchronized (errors) {
+                errors.add(t);
+              }
+            }
+          }
+        });
+      }
+      long start = Time.now();
+      for (Thread t : threads) {
+        t.start();
+      }
+      for (Thread t : threads) {
+        t.join();
+      }
+      long elapsed = Math.max(1, Time.now() - start);
+      if (!errors.isEmpty()) {
+        throw new IOException("Writer failed", errors.get(0));
+      }
+      return (double) numThreads * blocksPerThread * 1000 / elapsed;
+    } finally {
+      cluster.shutdown();
+      FileUtil.fullyDelete(baseDir);
+    }
+  }
+
+  private void writeBlock(FsDatasetImpl dataset, ExtendedBlock b)
+      throws IOException {
+    DataChecksum checksum =
+        DataChecksum.newDataChecksum(DataChecksum.Type.CRC32, 512);
+    byte[] data = new byte[blockSize];
+    int numChunks =
+        (blockSize + checksum.getBytesPerChecksum() - 1) /
+            checksum.getBytesPerChecksum();
+    byte[] sums = new byte[numChunks * checksum.getChecksumSize()];
+    checksum
+        .calculateChunkedSums(ByteBuffer.wrap(data), ByteBuffer.wrap(sums));
+
+    ReplicaInPipelineInterface replica = dataset.createRbw(b);
+    ReplicaOutputStreams out = replica.createStreams(true, checksum);
+    try {
+      out.getDataOut().write(data);
+      out.getChecksumOut().write(sums);
+      out.getDataOut().flush();
+      out.getChecksumOut().flush();
+    } finally {
+      out.close();
+    }
+    replica.setNumBytesNoPersistance(blockSize);
+    replica.setBytesAcked(blockSize);
+    b.setNumBytes(blockSize);
+    dataset.finalizeBlock(b);
+  }
+
+  private static void printUsage() {
+    System.err.println("Usage: FsDatasetImplBenchmark [-threads T] " +
+        "[-blocks B] [-blockSize S] [-maxVolumes V]");
+    System.exit(-1);
+  }
+
+  public static void main(String[] args) throws Exception {
+    int numThreads = 16;
+    int blocksPerThread = 200;
+    int blockSize = 64 * 1024;
+    int maxVolumes = 4;
+    for (int i = 0; i < args.length; i++) {
+      if (i + 1 == args.length) {
+        printUsage();
+      }
+      if (args[i].equals("-threads")) {
+        numThreads = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-blocks")) {
+        blocksPerThread = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-blockSize")) {
+        blockSize = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-maxVolumes")) {
+        maxVolumes = Integer.parseInt(args[++i]);
+      } else {
+        printUsage();
+      }
+    }
+
+    FsDatasetImplBenchmark bench =
+        new FsDatasetImplBenchmark(numThreads, blocksPerThread, blockSize);
+    for (int v = 1; v <= maxVolumes; v *= 2) {
+      double opsPerSec = bench.run(v);
+      System.out.println("--- volumes: " + v + ", threads: " + numThreads +
+          ", blocks: " + numThreads * blocksPerThread + ", block size: " +
+          blockSize + " ---");
+      System.out.println("# write and finalize ops/s: " +
+          String.format("%.2f", opsPerSec));
+    }
+  }
+}
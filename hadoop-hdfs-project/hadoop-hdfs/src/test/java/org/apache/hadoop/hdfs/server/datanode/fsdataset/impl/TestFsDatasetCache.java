@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.nativeio.NativeIO;
+import org.apache.hadoop.io.nativeio.NativeIO.POSIX.CacheManipulator;
+import org.apache.hadoop.io.nativeio.NativeIO.POSIX.NoMlockCacheManipulator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestFsDatasetCache {
+  private static final String BPID = "BP-TEST";
+  private static final long PAGE_SIZE = 4096;
+
+  private CacheManipulator prevCacheManipulator;
+  private File dir;
+  private FsDatasetCache cache;
+
+  @Before
+  public void setUp() {
+    prevCacheManipulator = NativeIO.POSIX.getCacheManipulator();
+    NativeIO.POSIX.setCacheManipulator(new NoMlockCacheManipulator());
+    dir = new File(System.getProperty("test.build.data", "build/test/data"),
+        TestFsDatasetCache.class.getSimpleName());
+    dir.mkdirs();
+    cache = new FsDatasetCache(2 * PAGE_SIZE, false, 1);
+  }
+
+  @After
+  public void tearDown() {
+    cache.shutdown();
+    FileUtil.fullyDelete(dir);
+    NativeIO.POSIX.setCacheManipulator(prevCacheManipulator);
+  }
+
+  private File createBlockFile(long blockId, byte[] data) throws IOException {
+    File f = new File(dir, "blk_" + blockId);
+    FileOutputStream out = new FileOutputStream(f);
+    try {
+      out.write(data);
+    } finally {
+      out.close();
+    }
+    return f;
+  }
+
+  private void cacheAndWait(long blockId, byte[] data) throws Exception {
+    File blockFile = createBlockFile(blockId, data);
+    cache.cacheBlock(BPID, blockId, blockFile, blockFile, data.length);
+    for (int i = 0; i < 100 && !cache.isCached(BPID, blockId); i++) {
+      Thread.sleep(50);
+    }
+  }
+
+  @Test
+  public void testCacheAndRead() throws Exception {
+    byte[] data = new byte[1000];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+    cacheAndWait(1, data);
+    assertTrue(cache.isCached(BPID, 1));
+    assertArrayEquals(new long[]{1}, cache.getCachedBlocks(BPID));
+    assertEquals(0, cache.getCachedBlocks("BP-OTHER").length);
+    // the locked memory is accounted in pages
+    assertEquals(PAGE_SIZE, cache.getCacheUsed());
+    assertEquals(1, cache.getNumBlocksCached());
+
+    InputStream in = cache.getBlockInputStream(BPID, 1, 10);
+    byte[] read = new byte[data.length - 10];
+    IOUtils.readFully(in, read, 0, read.length);
+    for (int i = 0; i < read.length; i++) {
+      assertEquals(data[i + 10], read[i]);
+    }
+    assertEquals(-1, in.read());
+    in.close();
+  }
+
+  @Test
+  public void testUncacheWhileReading() throws Exception {
+    cacheAndWait(1, new byte[100]);
+    InputStream in = cache.getBlockInputStream(BPID, 1, 0);
+    cache.uncacheBlock(BPID, 1);
+    assertFalse(cache.isCached(BPID, 1));
+    assertNull(cache.getBlockInputStream(BPID, 1, 0));
+    // the replica stays mapped until its reader is done
+    assertEquals(PAGE_SIZE, cache.getCacheUsed());
+    IOUtils.skipFully(in, 100);
+    in.close();
+    assertEquals(0, cache.getCacheUsed());
+    assertEquals(0, cache.getNumBlocksCached());
+  }
+
+  @Test
+  public void testCapacity() throws Exception {
+    cacheAndWait(1, new byte[(int) PAGE_SIZE + 1]);
+    assertTrue(cache.isCached(BPID, 1));
+    cacheAndWait(2, new byte[1]);
+    assertFalse(cache.isCached(BPID, 2));
+    assertEquals(1, cache.getNumBlocksFailedToCache());
+
+    cache.uncacheBlock(BPID, 1);
+    assertEquals(0, cache.getCacheUsed());
+    cacheAndWait(2, new byte[1]);
+    assertTrue(cache.isCached(BPID, 2));
+  }
+}
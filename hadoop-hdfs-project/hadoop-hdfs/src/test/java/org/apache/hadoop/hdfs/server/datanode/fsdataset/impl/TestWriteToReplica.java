@@ -17,8 +17,12 @@
  */
 package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
 
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSTestUtil;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
 import org.apache.hadoop.hdfs.server.datanode.DataNodeTestUtils;
@@ -35,6 +39,9 @@
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Test if FSDataset#append, writeToRbw, and writeToTmp
@@ -116,6 +123,72 @@ public void testWriteToRbw() throws Exception {
     }
   }
   
+  /**
+   * Reads a replica while it is appended to and finalized over and over,
+   * which moves its files between the rbw and the finalized directories. The
+   * reads must always find the files.
+   */
+  @Test(timeout = 120000)
+  public void testReadDuringAppendAndFinalize() throws Exception {
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(new HdfsConfiguration()).build();
+    try {
+      cluster.waitActive();
+      FileSystem fs = cluster.getFileSystem();
+      Path file = new Path("/readDuringAppendAndFinalize");
+      DFSTestUtil.createFile(fs, file, 1024, (short) 1, 0L);
+      final ExtendedBlock b = DFSTestUtil.getFirstBlock(fs, file);
+      final FsDatasetImpl dataSet = (FsDatasetImpl) DataNodeTestUtils
+          .getFSDataset(cluster.getDataNodes().get(0));
+
+      final AtomicBoolean done = new AtomicBoolean(false);
+      final AtomicReference<Throwable> readError =
+          new AtomicReference<Throwable>();
+      Thread reader = new Thread() {
+        @Override
+        public void run() {
+          try {
+            while (!done.get()) {
+              InputStream in = dataSet.getBlockInputStream(b, 0);
+              try {
+                Assert.assertTrue(in.read() >= 0);
+              } finally {
+                in.close();
+              }
+              Block stored =
+                  dataSet.getStoredBlock(b.getBlockPoolId(), b.getBlockId());
+              Assert.assertNotNull(stored);
+              Assert.assertEquals(1024, stored.getNumBytes());
+            }
+          } catch (Throwable t) {
+            readError.set(t);
+          }
+        }
+      };
+      reader.start();
+
+      ExtendedBlock written = new ExtendedBlock(b);
+      long gs = written.getGenerationStamp();
+      try {
+        for (int i = 0; i < 200 && readError.get() == null; i++) {
+          // moves the replica to the rbw directory
+          dataSet.append(written, ++gs, 1024);
+          written.setGenerationStamp(gs);
+          // and back to the finalized one
+          dataSet.finalizeBlock(written);
+        }
+      } finally {
+        done.set(true);
+        reader.join();
+      }
+      if (readError.get() != null) {
+        throw new AssertionError(readError.get());
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   // test writeToTemporary
   @Test
   public void testWriteToTempoary() throws Exception {
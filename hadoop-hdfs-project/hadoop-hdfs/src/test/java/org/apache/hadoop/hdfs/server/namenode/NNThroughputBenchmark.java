@@ -17,6 +17,8 @@
  */
 package org.apache.hadoop.hdfs.server.namenode;
 
+import io.hops.metadata.memory.InMemoryStorageFactory;
+import io.hops.transaction.handler.TransactionMetrics;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.logging.impl.Log4JLogger;
@@ -60,6 +62,8 @@
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -90,8 +94,18 @@
  * By default the refresh is never called.</li>
  * <li>-keepResults do not clean up the name-space after execution.</li>
  * <li>-useExisting do not recreate the name-space, use existing data.</li>
+ * <li>-storageLatency U adds U microseconds to every round trip to the
+ * storage, to see how the name-node behaves with a slower network.</li>
+ * <li>-inMemoryStorage keeps the metadata in the memory of the name-node,
+ * see {@link InMemoryStorageFactory}, instead of using the configured
+ * storage driver.</li>
  * </ol>
  * <p/>
+ * Besides the throughput, the benchmark reports the average number of
+ * round trips to the storage and the average CPU time of the name-node per
+ * operation. The round trips are those counted by
+ * {@link TransactionMetrics}, as in the round trip tests.
+ * <p/>
  * The benchmark first generates inputs for each thread so that the
  * input generation overhead does not effect the resulting statistics.
  * The number of operations performed by threads is practically the same.
@@ -105,7 +119,8 @@ public class NNThroughputBenchmark {
   private static final Log LOG = LogFactory.getLog(NNThroughputBenchmark.class);
   private static final int BLOCK_SIZE = 16;
   private static final String GENERAL_OPTIONS_USAGE =
-      "     [-keepResults] | [-logLevel L] | [-UGCacheRefreshCount G]";
+      "     [-keepResults] | [-logLevel L] | [-UGCacheRefreshCount G] | " +
+      "[-storageLatency U] | [-inMemoryStorage]";
 
   static Configuration config;
   static NameNode nameNode;
@@ -172,6 +187,8 @@ abstract class OperationStatsBase {
     protected int numOpsExecuted = 0;    // number of operations executed
     protected long cumulativeTime = 0;    // sum of times for each op
     protected long elapsedTime = 0;       // time from start to finish
+    protected long cpuTime = 0;           // sum of thread cpu times, in ns
+    protected long roundTrips = 0;        // round trips to the storage
     protected boolean keepResults = false;// don't clean base directory on exit
     protected Level logLevel;             // logging level, ERROR by default
     protected int ugcRefreshCount = 0;    // user group cache refresh count
@@ -246,6 +263,8 @@ void benchmark() throws IOException {
       try {
         numOpsExecuted = 0;
         cumulativeTime = 0;
+        cpuTime = 0;
+        roundTrips = 0;
         if (numThreads < 1) {
           return;
         }
@@ -270,6 +289,7 @@ void benchmark() throws IOException {
           daemons.add(new StatsDaemon(tIdx, opsPerThread[tIdx], this));
         }
         start = Time.now();
+        TransactionMetrics.startRecording();
         LOG.info("Starting " + numOpsRequired + " " + getOpName() + "(s).");
         for (StatsDaemon d : daemons) {
           d.start();
@@ -279,8 +299,13 @@ void benchmark() throws IOException {
           // try {Thread.sleep(500);} catch (InterruptedException e) {}
         }
         elapsedTime = Time.now() - start;
+        for (TransactionMetrics.OperationCounts counts :
+            TransactionMetrics.stopRecording().values()) {
+          roundTrips += counts.getRoundTrips();
+        }
         for (StatsDaemon d : daemons) {
           incrementStats(d.localNumOpsExecuted, d.localCumulativeTime);
+          cpuTime += d.localCpuTime;
           // System.out.println(d.toString() + ": ops Exec = " + d.localNumOpsExecuted);
         }
       }
@@ -319,6 +344,14 @@ long getAverageTime() {
       return numOpsExecuted == 0 ? 0 : cumulativeTime / numOpsExecuted;
     }
 
+    double getRoundTripsPerOp() {
+      return numOpsExecuted == 0 ? 0 : (double) roundTrips / numOpsExecuted;
+    }
+
+    long getAverageCpuTime() {
+      return numOpsExecuted == 0 ? 0 : cpuTime / numOpsExecuted / 1000;
+    }
+
     double getOpsPerSecond() {
       return elapsedTime == 0 ? 0 :
           1000 * (double) numOpsExecuted / elapsedTime;
@@ -398,6 +431,8 @@ void printStats() {
       LOG.info("Elapsed Time: " + getElapsedTime());
       LOG.info(" Ops per sec: " + getOpsPerSecond());
       LOG.info("Average Time: " + getAverageTime());
+      LOG.info("Round trips per op: " + getRoundTripsPerOp());
+      LOG.info("Average CPU Time (us): " + getAverageCpuTime());
     }
   }
 
@@ -410,6 +445,7 @@ private class StatsDaemon extends Thread {
     private String arg1;      // argument passed to executeOp()
     private volatile int localNumOpsExecuted = 0;
     private volatile long localCumulativeTime = 0;
+    private volatile long localCpuTime = 0;
     private OperationStatsBase statsOp;
 
     StatsDaemon(int daemonId, int nrOps, OperationStatsBase op) {
@@ -423,6 +459,7 @@ private class StatsDaemon extends Thread {
     public void run() {
       localNumOpsExecuted = 0;
       localCumulativeTime = 0;
+      localCpuTime = 0;
       arg1 = statsOp.getExecutionArgument(daemonId);
       try {
         benchmarkOne();
@@ -438,11 +475,19 @@ public String toString() {
     }
 
     void benchmarkOne() throws IOException {
+      ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+      boolean cpuTimeSupported = threadBean.isCurrentThreadCpuTimeSupported();
+      long cpuStart = cpuTimeSupported ?
+          threadBean.getCurrentThreadCpuTime() : 0;
       for (int idx = 0; idx < opsPerThread; idx++) {
         if ((localNumOpsExecuted + 1) % statsOp.ugcRefreshCount == 0) {
           nameNodeProto.refreshUserToGroupsMappings();
         }
         long stat = statsOp.executeOp(daemonId, idx, arg1);
+        if (cpuTimeSupported) {
+          // before the op is counted, so that the total is read after it
+          localCpuTime = threadBean.getCurrentThreadCpuTime() - cpuStart;
+        }
         localNumOpsExecuted++;
         localCumulativeTime += stat;
       }
@@ -902,8 +947,8 @@ void sendHeartbeat() throws IOException {
           {new StorageReport(dnRegistration.getStorageID(), false, DF_CAPACITY,
               DF_USED, DF_CAPACITY - DF_USED, DF_USED)};
       DatanodeCommand[] cmds =
-          nameNodeProto.sendHeartbeat(dnRegistration, rep, 0, 0, 0)
-              .getCommands();
+          nameNodeProto.sendHeartbeat(dnRegistration, rep, 0, 0, 0, null,
+              null).getCommands();
       if (cmds != null) {
         for (DatanodeCommand cmd : cmds) {
           if (LOG.isDebugEnabled()) {
@@ -954,8 +999,8 @@ int replicateBlocks() throws IOException {
           {new StorageReport(dnRegistration.getStorageID(), false, DF_CAPACITY,
               DF_USED, DF_CAPACITY - DF_USED, DF_USED)};
       DatanodeCommand[] cmds =
-          nameNodeProto.sendHeartbeat(dnRegistration, rep, 0, 0, 0)
-              .getCommands();
+          nameNodeProto.sendHeartbeat(dnRegistration, rep, 0, 0, 0, null,
+              null).getCommands();
       if (cmds != null) {
         for (DatanodeCommand cmd : cmds) {
           if (cmd.getAction() == DatanodeProtocol.DNA_TRANSFER) {
@@ -1376,6 +1421,23 @@ public static void runBenchmark(Configuration conf, List<String> args)
       printUsage();
     }
 
+    int slIndex = args.indexOf("-storageLatency");
+    if (slIndex >= 0) {
+      if (args.size() <= slIndex + 1) {
+        printUsage();
+      }
+      conf.setLong(DFSConfigKeys.DFS_STORAGE_SIMULATED_LATENCY_US,
+          Long.parseLong(args.get(slIndex + 1)));
+      args.remove(slIndex + 1);
+      args.remove(slIndex);
+    }
+    int imIndex = args.indexOf("-inMemoryStorage");
+    if (imIndex >= 0) {
+      conf.set(DFSConfigKeys.DFS_STORAGE_DRIVER_CLASS,
+          InMemoryStorageFactory.class.getName());
+      args.remove(imIndex);
+    }
+
     String type = args.get(1);
     boolean runAll = OperationStatsBase.OP_ALL_NAME.equals(type);
 
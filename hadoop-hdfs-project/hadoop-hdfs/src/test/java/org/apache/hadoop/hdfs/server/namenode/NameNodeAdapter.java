@@ -101,7 +101,7 @@ public static HeartbeatResponse sendHeartBeat(DatanodeRegistration nodeReg,
       throws IOException, StorageException {
     return namesystem
         .handleHeartbeat(nodeReg, dd.getCapacity(), dd.getDfsUsed(),
-            dd.getRemaining(), dd.getBlockPoolUsed(), 0, 0, 0);
+            dd.getRemaining(), dd.getBlockPoolUsed(), 0, 0, 0, null, null);
   }
 
   public static boolean setReplication(final FSNamesystem ns, final String src,
@@ -0,0 +1,153 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import com.google.common.base.Supplier;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.server.datanode.DataNodeTestUtils;
+import org.apache.hadoop.io.nativeio.NativeIO;
+import org.apache.hadoop.io.nativeio.NativeIO.POSIX.CacheManipulator;
+import org.apache.hadoop.io.nativeio.NativeIO.POSIX.NoMlockCacheManipulator;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that the namenode lists the datanodes caching a block first, also
+ * while many clients get the locations of the block at once.
+ */
+public class TestCacheLocations {
+  private static final int NUM_DATANODES = 3;
+  private static final long BLOCK_SIZE = 4096;
+  /** A client which is not on any of the datanodes */
+  private static final String CLIENT_MACHINE = "10.255.255.1";
+
+  private CacheManipulator prevCacheManipulator;
+  private MiniDFSCluster cluster;
+
+  @Before
+  public void setUp() throws Exception {
+    prevCacheManipulator = NativeIO.POSIX.getCacheManipulator();
+    NativeIO.POSIX.setCacheManipulator(new NoMlockCacheManipulator());
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setLong(DFSConfigKeys.DFS_DATANODE_MAX_LOCKED_MEMORY_KEY,
+        16 * BLOCK_SIZE);
+    conf.setLong(DFSConfigKeys.DFS_HEARTBEAT_INTERVAL_KEY, 1);
+    conf.setLong(DFSConfigKeys.DFS_CACHEREPORT_INTERVAL_MSEC_KEY, 500);
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_CACHE_RESCAN_INTERVAL_MS_KEY,
+        500);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(NUM_DATANODES)
+        .build();
+    cluster.waitActive();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+    NativeIO.POSIX.setCacheManipulator(prevCacheManipulator);
+  }
+
+  private DataNode getCachingDataNode(ExtendedBlock block) {
+    for (DataNode dn : cluster.getDataNodes()) {
+      if (DataNodeTestUtils.getFSDataset(dn)
+          .isCached(block.getBlockPoolId(), block.getBlockId())) {
+        return dn;
+      }
+    }
+    return null;
+  }
+
+  private String getFirstLocation(String src) throws Exception {
+    LocatedBlock block = cluster.getNamesystem()
+        .getBlockLocations(CLIENT_MACHINE, src, 0, BLOCK_SIZE)
+        .getLocatedBlocks().get(0);
+    DatanodeInfo[] locations = block.getLocations();
+    assertEquals(NUM_DATANODES, locations.length);
+    return locations[0].getStorageID();
+  }
+
+  @Test(timeout = 120000)
+  public void testCachedLocationFirstUnderConcurrentOpens() throws Exception {
+    final DistributedFileSystem fs = cluster.getFileSystem();
+    final Path file = new Path("/cached/file");
+    final String src = file.toUri().getPath();
+    DFSTestUtil.createFile(fs, file, BLOCK_SIZE, (short) NUM_DATANODES, 0L);
+    final ExtendedBlock block = DFSTestUtil.getFirstBlock(fs, file);
+    fs.addCacheDirective(file, (short) 1);
+
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        DataNode dn = getCachingDataNode(block);
+        try {
+          return dn != null && getFirstLocation(src)
+              .equals(dn.getDatanodeId().getStorageID());
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }, 100, 60000);
+    final String cachedOn =
+        getCachingDataNode(block).getDatanodeId().getStorageID();
+
+    // The opens keep sorting while heartbeats and rescans update the caches
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Void>> opens = new ArrayList<Future<Void>>();
+      for (int i = 0; i < 8; i++) {
+        opens.add(pool.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int j = 0; j < 50; j++) {
+              assertEquals(cachedOn, getFirstLocation(src));
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> open : opens) {
+        open.get();
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+}
@@ -144,7 +144,8 @@ public void testDeadDatanode() throws Exception {
     // that asks datanode to register again
     StorageReport[] rep =
         {new StorageReport(reg.getStorageID(), false, 0, 0, 0, 0)};
-    DatanodeCommand[] cmd = dnp.sendHeartbeat(reg, rep, 0, 0, 0).getCommands();
+    DatanodeCommand[] cmd = dnp.sendHeartbeat(reg, rep, 0, 0, 0, null, null)
+        .getCommands();
     assertEquals(1, cmd.length);
     assertEquals(cmd[0].getAction(), RegisterCommand.REGISTER.getAction());
   }
@@ -28,7 +28,17 @@
 import java.nio.ByteOrder;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -44,6 +54,8 @@
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.RawLocalFileSystem;
 import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.KeyPrefixComparator;
 import org.apache.hadoop.io.RawComparator;
 import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.SequenceFile.CompressionType;
@@ -74,6 +86,8 @@
 import org.apache.hadoop.util.StringInterner;
 import org.apache.hadoop.util.StringUtils;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /** A Map task. */
 @InterfaceAudience.LimitedPrivate({"MapReduce"})
 @InterfaceStability.Unstable
@@ -888,8 +902,13 @@ private long getOutputBytes(List<Statistics> stats) {
     private static final int KEYSTART = 1;         // key offset in acct
     private static final int PARTITION = 2;        // partition offset in acct
     private static final int VALLEN = 3;           // length of value
-    private static final int NMETA = 4;            // num meta ints
-    private static final int METASIZE = NMETA * 4; // size in bytes
+    private static final int PREFIXHI = 4;         // key prefix high word
+    private static final int PREFIXLO = 5;         // key prefix low word
+    private int nmeta;                             // num meta ints
+    private int metasize;                          // size in bytes
+
+    // normalized key prefixes, null unless the sort compares them
+    private KeyPrefixComparator keyPrefixComparator;
 
     // spill accounting
     private int maxRec;
@@ -901,6 +920,9 @@ private long getOutputBytes(List<Statistics> stats) {
     int numSpills = 0;
     private int minSpillsForCombine;
     private IndexedSorter sorter;
+    // sorts and writes partitions concurrently, null if spills are sequential
+    private ExecutorService spillExecutor;
+    private int spillThreads;
     final ReentrantLock spillLock = new ReentrantLock();
     final Condition spillDone = spillLock.newCondition();
     final Condition spillReady = spillLock.newCondition();
@@ -957,9 +979,17 @@ public void init(MapOutputCollector.Context context
       }
       sorter = ReflectionUtils.newInstance(job.getClass("map.sort.class",
             QuickSort.class, IndexedSorter.class), job);
+      comparator = job.getOutputKeyComparator();
+      if (job.getBoolean(JobContext.MAP_SORT_KEY_PREFIX, false)) {
+        keyPrefixComparator = getKeyPrefixComparator(comparator);
+      }
+      // the key prefix is stored in the metadata of each record
+      nmeta = keyPrefixComparator != null ? 6 : 4;
+      metasize = nmeta * 4;
+      metaBufferTmp = new byte[metasize];
       // buffers and accounting
       int maxMemUsage = sortmb << 20;
-      maxMemUsage -= maxMemUsage % METASIZE;
+      maxMemUsage -= maxMemUsage % metasize;
       kvbuffer = new byte[maxMemUsage];
       bufvoid = kvbuffer.length;
       kvmeta = ByteBuffer.wrap(kvbuffer)
@@ -969,7 +999,7 @@ public void init(MapOutputCollector.Context context
       bufstart = bufend = bufindex = equator;
       kvstart = kvend = kvindex;
 
-      maxRec = kvmeta.capacity() / NMETA;
+      maxRec = kvmeta.capacity() / nmeta;
       softLimit = (int)(kvbuffer.length * spillper);
       bufferRemaining = softLimit;
       LOG.info(JobContext.IO_SORT_MB + ": " + sortmb);
@@ -978,7 +1008,6 @@ public void init(MapOutputCollector.Context context
       LOG.info("kvstart = " + kvstart + "; length = " + maxRec);
 
       // k/v serialization
-      comparator = job.getOutputKeyComparator();
       keyClass = (Class<K>)job.getMapOutputKeyClass();
       valClass = (Class<V>)job.getMapOutputValueClass();
       serializationFactory = new SerializationFactory(job);
@@ -1018,6 +1047,13 @@ public void init(MapOutputCollector.Context context
       }
       spillInProgress = false;
       minSpillsForCombine = job.getInt(JobContext.MAP_COMBINE_MIN_SPILLS, 3);
+      spillThreads = job.getInt(JobContext.MAP_SORT_SPILL_THREADS, 1);
+      if (spillThreads > 1 && partitions > 1) {
+        spillExecutor = Executors.newFixedThreadPool(spillThreads,
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("SpillThread #%d").build());
+        LOG.info("Spilling partitions with " + spillThreads + " threads");
+      }
       spillThread.setDaemon(true);
       spillThread.setName("SpillThread");
       spillLock.lock();
@@ -1060,7 +1096,7 @@ public synchronized void collect(K key, V value, final int partition
             partition + ")");
       }
       checkSpillException();
-      bufferRemaining -= METASIZE;
+      bufferRemaining -= metasize;
       if (bufferRemaining <= 0) {
         // start spill if the thread is not running and the soft limit has been
         // reached
@@ -1075,13 +1111,13 @@ public synchronized void collect(K key, V value, final int partition
               // created by a reset must be included in "used" bytes
               final int bUsed = distanceTo(kvbidx, bufindex);
               final boolean bufsoftlimit = bUsed >= softLimit;
-              if ((kvbend + METASIZE) % kvbuffer.length !=
-                  equator - (equator % METASIZE)) {
+              if ((kvbend + metasize) % kvbuffer.length !=
+                  equator - (equator % metasize)) {
                 // spill finished, reclaim space
                 resetSpill();
                 bufferRemaining = Math.min(
-                    distanceTo(bufindex, kvbidx) - 2 * METASIZE,
-                    softLimit - bUsed) - METASIZE;
+                    distanceTo(bufindex, kvbidx) - 2 * metasize,
+                    softLimit - bUsed) - metasize;
                 continue;
               } else if (bufsoftlimit && kvindex != kvend) {
                 // spill records, if any collected; check latter, as it may
@@ -1094,9 +1130,9 @@ public synchronized void collect(K key, V value, final int partition
                 // ensure that kvindex >= bufindex
                 final int distkvi = distanceTo(bufindex, kvbidx);
                 final int newPos = (bufindex +
-                  Math.max(2 * METASIZE - 1,
+                  Math.max(2 * metasize - 1,
                           Math.min(distkvi / 2,
-                                   distkvi / (METASIZE + avgRec) * METASIZE)))
+                                   distkvi / (metasize + avgRec) * metasize)))
                   % kvbuffer.length;
                 setEquator(newPos);
                 bufmark = bufindex = newPos;
@@ -1111,7 +1147,7 @@ public synchronized void collect(K key, V value, final int partition
                       // serialization max
                       distanceTo(newPos, serBound),
                       // soft limit
-                      softLimit)) - 2 * METASIZE;
+                      softLimit)) - 2 * metasize;
               }
             }
           } while (false);
@@ -1153,8 +1189,14 @@ public synchronized void collect(K key, V value, final int partition
         kvmeta.put(kvindex + KEYSTART, keystart);
         kvmeta.put(kvindex + VALSTART, valstart);
         kvmeta.put(kvindex + VALLEN, distanceTo(valstart, valend));
+        if (keyPrefixComparator != null) {
+          final long prefix = keyPrefixComparator.getKeyPrefix(kvbuffer,
+              keystart, valstart - keystart);
+          kvmeta.put(kvindex + PREFIXHI, (int) (prefix >>> 32));
+          kvmeta.put(kvindex + PREFIXLO, (int) prefix);
+        }
         // advance kvindex
-        kvindex = (kvindex - NMETA + kvmeta.capacity()) % kvmeta.capacity();
+        kvindex = (kvindex - nmeta + kvmeta.capacity()) % kvmeta.capacity();
       } catch (MapBufferTooSmallException e) {
         LOG.info("Record too large for in-memory buffer: " + e.getMessage());
         spillSingleRecord(key, value, partition);
@@ -1175,10 +1217,10 @@ private TaskAttemptID getTaskID() {
     private void setEquator(int pos) {
       equator = pos;
       // set index prior to first entry, aligned at meta boundary
-      final int aligned = pos - (pos % METASIZE);
+      final int aligned = pos - (pos % metasize);
       // Cast one of the operands to long to avoid integer overflow
       kvindex = (int)
-        (((long)aligned - METASIZE + kvbuffer.length) % kvbuffer.length) / 4;
+        (((long)aligned - metasize + kvbuffer.length) % kvbuffer.length) / 4;
       LOG.info("(EQUATOR) " + pos + " kvi " + kvindex +
           "(" + (kvindex * 4) + ")");
     }
@@ -1191,11 +1233,11 @@ private void setEquator(int pos) {
     private void resetSpill() {
       final int e = equator;
       bufstart = bufend = e;
-      final int aligned = e - (e % METASIZE);
+      final int aligned = e - (e % metasize);
       // set start/end to point to first meta record
       // Cast one of the operands to long to avoid integer overflow
       kvstart = kvend = (int)
-        (((long)aligned - METASIZE + kvbuffer.length) % kvbuffer.length) / 4;
+        (((long)aligned - metasize + kvbuffer.length) % kvbuffer.length) / 4;
       LOG.info("(RESET) equator " + e + " kv " + kvstart + "(" +
         (kvstart * 4) + ")" + " kvi " + kvindex + "(" + (kvindex * 4) + ")");
     }
@@ -1224,7 +1266,7 @@ int distanceTo(final int i, final int j, final int mod) {
      * kvmeta buffer.
      */
     int offsetFor(int metapos) {
-      return metapos * NMETA;
+      return metapos * nmeta;
     }
 
     /**
@@ -1233,6 +1275,15 @@ int offsetFor(int metapos) {
      * @see IndexedSortable#compare
      */
     public int compare(final int mi, final int mj) {
+      return compare(mi, mj, comparator);
+    }
+
+    /**
+     * Compare logical range, st i, j MOD offset capacity, using the given
+     * key comparator.
+     */
+    private int compare(final int mi, final int mj,
+        final RawComparator<K> comparator) {
       final int kvi = offsetFor(mi % maxRec);
       final int kvj = offsetFor(mj % maxRec);
       final int kvip = kvmeta.get(kvi + PARTITION);
@@ -1241,6 +1292,21 @@ public int compare(final int mi, final int mj) {
       if (kvip != kvjp) {
         return kvip - kvjp;
       }
+      // sort by key prefix
+      if (keyPrefixComparator != null) {
+        final int hi = compareInts(kvmeta.get(kvi + PREFIXHI),
+            kvmeta.get(kvj + PREFIXHI));
+        if (hi != 0) {
+          return hi;
+        }
+        // the low word is unsigned
+        final int lo = compareInts(
+            kvmeta.get(kvi + PREFIXLO) ^ Integer.MIN_VALUE,
+            kvmeta.get(kvj + PREFIXLO) ^ Integer.MIN_VALUE);
+        if (lo != 0) {
+          return lo;
+        }
+      }
       // sort by key
       return comparator.compare(kvbuffer,
           kvmeta.get(kvi + KEYSTART),
@@ -1250,17 +1316,63 @@ public int compare(final int mi, final int mj) {
           kvmeta.get(kvj + VALSTART) - kvmeta.get(kvj + KEYSTART));
     }
 
-    final byte META_BUFFER_TMP[] = new byte[METASIZE];
+    private static int compareInts(int i, int j) {
+      return i < j ? -1 : (i == j ? 0 : 1);
+    }
+
+    /**
+     * Return the comparator of the key prefixes of the given key comparator,
+     * or null if it has none. The prefixes are only used if they are computed
+     * by the class defining the order of the keys, as a subclass which
+     * changes the order would otherwise inherit prefixes in the wrong order.
+     */
+    private static KeyPrefixComparator getKeyPrefixComparator(
+        RawComparator<?> comparator) {
+      if (comparator instanceof KeyPrefixComparator) {
+        try {
+          Class<?> compareClass = comparator.getClass().getMethod("compare",
+              byte[].class, int.class, int.class,
+              byte[].class, int.class, int.class).getDeclaringClass();
+          Class<?> prefixClass = comparator.getClass().getMethod(
+              "getKeyPrefix", byte[].class, int.class, int.class)
+              .getDeclaringClass();
+          if (compareClass.isAssignableFrom(prefixClass)) {
+            return (KeyPrefixComparator) comparator;
+          }
+        } catch (NoSuchMethodException e) {
+          // cannot happen, as the methods are public
+        }
+      }
+      LOG.info("Key prefixes are not supported by " +
+          comparator.getClass().getName() + ", sorting by the full keys");
+      return null;
+    }
+
+    private byte[] metaBufferTmp;
     /**
      * Swap metadata for items i, j
      * @see IndexedSortable#swap
      */
     public void swap(final int mi, final int mj) {
-      int iOff = (mi % maxRec) * METASIZE;
-      int jOff = (mj % maxRec) * METASIZE;
-      System.arraycopy(kvbuffer, iOff, META_BUFFER_TMP, 0, METASIZE);
-      System.arraycopy(kvbuffer, jOff, kvbuffer, iOff, METASIZE);
-      System.arraycopy(META_BUFFER_TMP, 0, kvbuffer, jOff, METASIZE);
+      int iOff = (mi % maxRec) * metasize;
+      int jOff = (mj % maxRec) * metasize;
+      System.arraycopy(kvbuffer, iOff, metaBufferTmp, 0, metasize);
+      System.arraycopy(kvbuffer, jOff, kvbuffer, iOff, metasize);
+      System.arraycopy(metaBufferTmp, 0, kvbuffer, jOff, metasize);
+    }
+
+    /**
+     * Swap metadata for items i, j without the shared temporary buffer of
+     * {@link #swap}, so that swaps of disjoint items may run concurrently.
+     */
+    private void swapConcurrently(final int mi, final int mj) {
+      final int kvi = offsetFor(mi % maxRec);
+      final int kvj = offsetFor(mj % maxRec);
+      for (int k = 0; k < nmeta; ++k) {
+        final int tmp = kvmeta.get(kvi + k);
+        kvmeta.put(kvi + k, kvmeta.get(kvj + k));
+        kvmeta.put(kvj + k, tmp);
+      }
     }
 
     /**
@@ -1336,7 +1448,7 @@ public void write(int v)
       @Override
       public void write(byte b[], int off, int len)
           throws IOException {
-        // must always verify the invariant that at least METASIZE bytes are
+        // must always verify the invariant that at least metasize bytes are
         // available beyond kvindex, even when len == 0
         bufferRemaining -= len;
         if (bufferRemaining <= 0) {
@@ -1364,19 +1476,19 @@ public void write(byte b[], int off, int len)
               // either the metadata or the current write. Note that collect
               // ensures its metadata requirement with a zero-length write
               blockwrite = distkvi <= distkve
-                ? distkvi <= len + 2 * METASIZE
-                : distkve <= len || distanceTo(bufend, kvbidx) < 2 * METASIZE;
+                ? distkvi <= len + 2 * metasize
+                : distkve <= len || distanceTo(bufend, kvbidx) < 2 * metasize;
 
               if (!spillInProgress) {
                 if (blockwrite) {
-                  if ((kvbend + METASIZE) % kvbuffer.length !=
-                      equator - (equator % METASIZE)) {
+                  if ((kvbend + metasize) % kvbuffer.length !=
+                      equator - (equator % metasize)) {
                     // spill finished, reclaim space
                     // need to use meta exclusively; zero-len rec & 100% spill
                     // pcnt would fail
                     resetSpill(); // resetSpill doesn't move bufindex, kvindex
                     bufferRemaining = Math.min(
-                        distkvi - 2 * METASIZE,
+                        distkvi - 2 * metasize,
                         softLimit - distanceTo(kvbidx, bufindex)) - len;
                     continue;
                   }
@@ -1444,13 +1556,13 @@ public void flush() throws IOException, ClassNotFoundException,
         checkSpillException();
 
         final int kvbend = 4 * kvend;
-        if ((kvbend + METASIZE) % kvbuffer.length !=
-            equator - (equator % METASIZE)) {
+        if ((kvbend + metasize) % kvbuffer.length !=
+            equator - (equator % metasize)) {
           // spill finished
           resetSpill();
         }
         if (kvindex != kvend) {
-          kvend = (kvindex + NMETA) % kvmeta.capacity();
+          kvend = (kvindex + nmeta) % kvmeta.capacity();
           bufend = bufmark;
           LOG.info("Spilling map output");
           LOG.info("bufstart = " + bufstart + "; bufend = " + bufmark +
@@ -1479,6 +1591,9 @@ public void flush() throws IOException, ClassNotFoundException,
       } catch (InterruptedException e) {
         throw new IOException("Spill failed", e);
       }
+      if (spillExecutor != null) {
+        spillExecutor.shutdown();
+      }
       // release sort buffer before the merge
       kvbuffer = null;
       mergeParts();
@@ -1486,7 +1601,11 @@ public void flush() throws IOException, ClassNotFoundException,
       fileOutputByteCounter.increment(rfs.getFileStatus(outputPath).getLen());
     }
 
-    public void close() { }
+    public void close() {
+      if (spillExecutor != null) {
+        spillExecutor.shutdownNow();
+      }
+    }
 
     protected class SpillThread extends Thread {
 
@@ -1538,7 +1657,7 @@ private void checkSpillException() throws IOException {
 
     private void startSpill() {
       assert !spillInProgress;
-      kvend = (kvindex + NMETA) % kvmeta.capacity();
+      kvend = (kvindex + nmeta) % kvmeta.capacity();
       bufend = bufmark;
       spillInProgress = true;
       LOG.info("Spilling map output");
@@ -1567,63 +1686,67 @@ private void sortAndSpill() throws IOException, ClassNotFoundException,
             mapOutputFile.getSpillFileForWrite(numSpills, size);
         out = rfs.create(filename);
 
-        final int mstart = kvend / NMETA;
+        final int mstart = kvend / nmeta;
         final int mend = 1 + // kvend is a valid record
           (kvstart >= kvend
           ? kvstart
-          : kvmeta.capacity() + kvstart) / NMETA;
-        sorter.sort(MapOutputBuffer.this, mstart, mend, reporter);
-        int spindex = mstart;
-        final IndexRecord rec = new IndexRecord();
-        final InMemValBytes value = new InMemValBytes();
-        for (int i = 0; i < partitions; ++i) {
-          IFile.Writer<K, V> writer = null;
-          try {
-            long segmentStart = out.getPos();
-            writer = new Writer<K, V>(job, out, keyClass, valClass, codec,
-                                      spilledRecordsCounter);
-            if (combinerRunner == null) {
-              // spill directly
-              DataInputBuffer key = new DataInputBuffer();
-              while (spindex < mend &&
-                  kvmeta.get(offsetFor(spindex % maxRec) + PARTITION) == i) {
-                final int kvoff = offsetFor(spindex % maxRec);
-                int keystart = kvmeta.get(kvoff + KEYSTART);
-                int valstart = kvmeta.get(kvoff + VALSTART);
-                key.reset(kvbuffer, keystart, valstart - keystart);
-                getVBytesForOffset(kvoff, value);
-                writer.append(key, value);
-                ++spindex;
-              }
-            } else {
-              int spstart = spindex;
-              while (spindex < mend &&
-                  kvmeta.get(offsetFor(spindex % maxRec)
-                            + PARTITION) == i) {
-                ++spindex;
-              }
-              // Note: we would like to avoid the combiner if we've fewer
-              // than some threshold of records for a partition
-              if (spstart != spindex) {
-                combineCollector.setWriter(writer);
-                RawKeyValueIterator kvIter =
-                  new MRResultIterator(spstart, spindex);
-                combinerRunner.combine(kvIter, combineCollector);
+          : kvmeta.capacity() + kvstart) / nmeta;
+        if (spillExecutor != null) {
+          spillPartitions(out, spillRec, mstart, mend);
+        } else {
+          sorter.sort(MapOutputBuffer.this, mstart, mend, reporter);
+          int spindex = mstart;
+          final IndexRecord rec = new IndexRecord();
+          final InMemValBytes value = new InMemValBytes();
+          for (int i = 0; i < partitions; ++i) {
+            IFile.Writer<K, V> writer = null;
+            try {
+              long segmentStart = out.getPos();
+              writer = new Writer<K, V>(job, out, keyClass, valClass, codec,
+                                        spilledRecordsCounter);
+              if (combinerRunner == null) {
+                // spill directly
+                DataInputBuffer key = new DataInputBuffer();
+                while (spindex < mend &&
+                    kvmeta.get(offsetFor(spindex % maxRec) + PARTITION) == i) {
+                  final int kvoff = offsetFor(spindex % maxRec);
+                  int keystart = kvmeta.get(kvoff + KEYSTART);
+                  int valstart = kvmeta.get(kvoff + VALSTART);
+                  key.reset(kvbuffer, keystart, valstart - keystart);
+                  getVBytesForOffset(kvoff, value);
+                  writer.append(key, value);
+                  ++spindex;
+                }
+              } else {
+                int spstart = spindex;
+                while (spindex < mend &&
+                    kvmeta.get(offsetFor(spindex % maxRec)
+                              + PARTITION) == i) {
+                  ++spindex;
+                }
+                // Note: we would like to avoid the combiner if we've fewer
+                // than some threshold of records for a partition
+                if (spstart != spindex) {
+                  combineCollector.setWriter(writer);
+                  RawKeyValueIterator kvIter =
+                    new MRResultIterator(spstart, spindex);
+                  combinerRunner.combine(kvIter, combineCollector);
+                }
               }
-            }
 
-            // close the writer
-            writer.close();
+              // close the writer
+              writer.close();
 
-            // record offsets
-            rec.startOffset = segmentStart;
-            rec.rawLength = writer.getRawLength();
-            rec.partLength = writer.getCompressedLength();
-            spillRec.putIndex(rec, i);
+              // record offsets
+              rec.startOffset = segmentStart;
+              rec.rawLength = writer.getRawLength();
+              rec.partLength = writer.getCompressedLength();
+              spillRec.putIndex(rec, i);
 
-            writer = null;
-          } finally {
-            if (null != writer) writer.close();
+              writer = null;
+            } finally {
+              if (null != writer) writer.close();
+            }
           }
         }
 
@@ -1645,6 +1768,177 @@ private void sortAndSpill() throws IOException, ClassNotFoundException,
       }
     }
 
+    /**
+     * Group the records of a spill by partition, then sort, combine and
+     * compress the partitions concurrently on the spill executor. At most
+     * one partition per spill thread is in flight, buffered in memory, and
+     * each is written to the spill file as soon as it is done; the index of
+     * the spill records where each partition went.
+     */
+    private void spillPartitions(FSDataOutputStream out, SpillRecord spillRec,
+        int mstart, int mend) throws IOException, InterruptedException {
+      // partition i lies in [starts[i], starts[i + 1])
+      final int[] starts = new int[partitions + 1];
+      for (int m = mstart; m < mend; ++m) {
+        ++starts[partitionFor(m) + 1];
+      }
+      starts[0] = mstart;
+      for (int i = 0; i < partitions; ++i) {
+        starts[i + 1] += starts[i];
+      }
+      final int[] next = Arrays.copyOf(starts, partitions);
+      for (int i = 0; i < partitions; ++i) {
+        while (next[i] < starts[i + 1]) {
+          final int p = partitionFor(next[i]);
+          if (p == i) {
+            ++next[i];
+          } else {
+            swap(next[i], next[p]++);
+          }
+        }
+      }
+
+      final CompletionService<SpillSegment> spilled =
+          new ExecutorCompletionService<SpillSegment>(spillExecutor);
+      final Map<Future<SpillSegment>, Integer> inFlight =
+          new HashMap<Future<SpillSegment>, Integer>();
+      try {
+        final IndexRecord rec = new IndexRecord();
+        int submitted = 0;
+        for (int written = 0; written < partitions; ++written) {
+          while (submitted < partitions && inFlight.size() < spillThreads) {
+            inFlight.put(spilled.submit(new PartitionSpiller(
+                starts[submitted], starts[submitted + 1])), submitted);
+            ++submitted;
+          }
+          final Future<SpillSegment> future = spilled.take();
+          final int partition = inFlight.remove(future);
+          final SpillSegment segment;
+          try {
+            segment = future.get();
+          } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+              throw (IOException) e.getCause();
+            }
+            throw new IOException("Spill of partition " + partition +
+                " failed", e.getCause());
+          }
+
+          // record offsets
+          rec.startOffset = out.getPos();
+          out.write(segment.data.getData(), 0, segment.data.getLength());
+          rec.rawLength = segment.rawLength;
+          rec.partLength = segment.partLength;
+          spillRec.putIndex(rec, partition);
+
+          // the spilled records and the combiner counters included
+          for (Counters.Group group : segment.counters) {
+            for (Counters.Counter counter : group) {
+              reporter.incrCounter(group.getName(), counter.getName(),
+                  counter.getValue());
+            }
+          }
+        }
+      } finally {
+        for (Future<SpillSegment> segment : inFlight.keySet()) {
+          segment.cancel(true);
+        }
+      }
+    }
+
+    private int partitionFor(int metapos) {
+      return kvmeta.get(offsetFor(metapos % maxRec) + PARTITION);
+    }
+
+    /**
+     * A serialized partition of a spill.
+     */
+    private static class SpillSegment {
+      final DataOutputBuffer data = new DataOutputBuffer();
+      // counters updated while writing the segment, which are added to the
+      // counters of the task by the spill thread
+      final Counters counters = new Counters();
+      long rawLength;
+      long partLength;
+    }
+
+    /**
+     * Sorts the records of one partition of a spill and serializes them,
+     * running the combiner if there is one. The comparator, sorter and
+     * combiner are not shared with other partitions, as they may not be
+     * thread safe.
+     */
+    private class PartitionSpiller implements Callable<SpillSegment> {
+      private final int start;
+      private final int end;
+
+      PartitionSpiller(int start, int end) {
+        this.start = start;
+        this.end = end;
+      }
+
+      @Override
+      public SpillSegment call() throws Exception {
+        final RawComparator<K> keyComparator = job.getOutputKeyComparator();
+        final SpillSegment segment = new SpillSegment();
+        // the combiner counts in the segment, see spillPartitions
+        final TaskReporter segmentReporter =
+            mapTask.new CountersReporter(reporter, segment.counters);
+        final IndexedSorter partitionSorter = ReflectionUtils.newInstance(
+            job.getClass("map.sort.class", QuickSort.class,
+                IndexedSorter.class), job);
+        partitionSorter.sort(new IndexedSortable() {
+          @Override
+          public int compare(int mi, int mj) {
+            return MapOutputBuffer.this.compare(mi, mj, keyComparator);
+          }
+
+          @Override
+          public void swap(int mi, int mj) {
+            swapConcurrently(mi, mj);
+          }
+        }, start, end, segmentReporter);
+
+        IFile.Writer<K, V> writer = null;
+        try {
+          writer = new Writer<K, V>(job,
+              new FSDataOutputStream(segment.data, null), keyClass, valClass,
+              codec, segment.counters.findCounter(TaskCounter.SPILLED_RECORDS));
+          if (combinerRunner == null) {
+            // spill directly
+            DataInputBuffer key = new DataInputBuffer();
+            final InMemValBytes value = new InMemValBytes();
+            for (int spindex = start; spindex < end; ++spindex) {
+              final int kvoff = offsetFor(spindex % maxRec);
+              int keystart = kvmeta.get(kvoff + KEYSTART);
+              int valstart = kvmeta.get(kvoff + VALSTART);
+              key.reset(kvbuffer, keystart, valstart - keystart);
+              getVBytesForOffset(kvoff, value);
+              writer.append(key, value);
+            }
+          } else if (start != end) {
+            CombinerRunner<K, V> combiner = CombinerRunner.create(job,
+                getTaskID(), segment.counters.findCounter(
+                    TaskCounter.COMBINE_INPUT_RECORDS), segmentReporter, null);
+            CombineOutputCollector<K, V> collector =
+                new CombineOutputCollector<K, V>(segment.counters.findCounter(
+                    TaskCounter.COMBINE_OUTPUT_RECORDS), segmentReporter, job);
+            collector.setWriter(writer);
+            combiner.combine(new MRResultIterator(start, end), collector);
+          }
+
+          // close the writer
+          writer.close();
+          segment.rawLength = writer.getRawLength();
+          segment.partLength = writer.getCompressedLength();
+          writer = null;
+        } finally {
+          if (null != writer) writer.close();
+        }
+        return segment;
+      }
+    }
+
     /**
      * Handles the degenerate case where serialization fails to fit in
      * the in-memory buffer, so we must spill the record from collect
@@ -295,6 +295,12 @@ public Segment(Reader<K, V> reader, boolean preserve,
       this.mapOutputsCounter = mapOutputsCounter;
     }
 
+    public Segment(Reader<K, V> reader, boolean preserve,
+                   Counters.Counter mapOutputsCounter, long rawDataLength) {
+      this(reader, preserve, mapOutputsCounter);
+      this.rawDataLength = rawDataLength;
+    }
+
     void init(Counters.Counter readsCounter) throws IOException {
       if (reader == null) {
         FSDataInputStream in = fs.open(file);
@@ -794,6 +794,77 @@ public void stopCommunicationThread() throws InterruptedException {
       }
     }
   }
+
+  /**
+   * A reporter for work of the task running on a thread of its own. As
+   * counters are not thread safe, the counters updated through it are kept
+   * apart, for the caller to add them to the counters of the task; the
+   * progress and the status go to the reporter of the task, under its lock.
+   * It has no communication thread of its own.
+   */
+  class CountersReporter extends TaskReporter {
+    private final TaskReporter parent;
+    private final Counters localCounters;
+
+    CountersReporter(TaskReporter parent, Counters localCounters) {
+      super(parent.taskProgress, parent.umbilical);
+      this.parent = parent;
+      this.localCounters = localCounters;
+    }
+
+    @Override
+    public void setStatus(String status) {
+      synchronized (parent) {
+        parent.setStatus(status);
+      }
+    }
+
+    @Override
+    public void setProgress(float progress) {
+      synchronized (parent) {
+        parent.setProgress(progress);
+      }
+    }
+
+    @Override
+    public float getProgress() {
+      synchronized (parent) {
+        return parent.getProgress();
+      }
+    }
+
+    @Override
+    public void progress() {
+      parent.progress();
+    }
+
+    @Override
+    public Counters.Counter getCounter(String group, String name) {
+      return localCounters.findCounter(group, name);
+    }
+
+    @Override
+    public Counters.Counter getCounter(Enum<?> name) {
+      return localCounters.findCounter(name);
+    }
+
+    @Override
+    public void incrCounter(Enum key, long amount) {
+      localCounters.incrCounter(key, amount);
+      parent.progress();
+    }
+
+    @Override
+    public void incrCounter(String group, String counter, long amount) {
+      localCounters.incrCounter(group, counter, amount);
+      parent.progress();
+    }
+
+    @Override
+    public InputSplit getInputSplit() throws UnsupportedOperationException {
+      return parent.getInputSplit();
+    }
+  }
   
   /**
    *  Reports the next executing record range to TaskTracker.
@@ -197,6 +197,10 @@ public interface MRJobConfig {
 
   public static final String MAP_SORT_SPILL_PERCENT = "mapreduce.map.sort.spill.percent";
 
+  public static final String MAP_SORT_KEY_PREFIX = "mapreduce.map.sort.key.prefix";
+
+  public static final String MAP_SORT_SPILL_THREADS = "mapreduce.map.sort.spill.threads";
+
   public static final String MAP_INPUT_FILE = "mapreduce.map.input.file";
 
   public static final String MAP_INPUT_PATH = "mapreduce.map.input.length";
@@ -286,6 +290,15 @@ public interface MRJobConfig {
 
   public static final String SHUFFLE_READ_TIMEOUT = "mapreduce.reduce.shuffle.read.timeout";
 
+  public static final String SHUFFLE_NIO_ENABLED = "mapreduce.reduce.shuffle.nio.enabled";
+  public static final boolean DEFAULT_SHUFFLE_NIO_ENABLED = false;
+
+  public static final String SHUFFLE_NIO_EVENT_LOOPS = "mapreduce.reduce.shuffle.nio.event-loops";
+  public static final int DEFAULT_SHUFFLE_NIO_EVENT_LOOPS = 1;
+
+  public static final String SHUFFLE_NIO_MAX_INFLIGHT_BYTES = "mapreduce.reduce.shuffle.nio.max-inflight-bytes";
+  public static final long DEFAULT_SHUFFLE_NIO_MAX_INFLIGHT_BYTES = 64 * 1024 * 1024;
+
   public static final String SHUFFLE_FETCH_FAILURES = "mapreduce.reduce.shuffle.maxfetchfailures";
 
   public static final String SHUFFLE_NOTIFY_READERROR = "mapreduce.reduce.shuffle.notify.readerror";
@@ -301,6 +314,12 @@ public interface MRJobConfig {
 
   public static final String REDUCE_MEMTOMEM_ENABLED = "mapreduce.reduce.merge.memtomem.enabled";
 
+  public static final String REDUCE_MERGE_ONDISK_THREADS = "mapreduce.reduce.merge.ondisk.threads";
+  public static final int DEFAULT_REDUCE_MERGE_ONDISK_THREADS = 1;
+
+  public static final String REDUCE_MERGE_READAHEAD_THREADS = "mapreduce.reduce.merge.read-ahead.threads";
+  public static final int DEFAULT_REDUCE_MERGE_READAHEAD_THREADS = 0;
+
   public static final String COMBINE_RECORDS_BEFORE_PROGRESS = "mapreduce.task.combine.progress.records";
 
   public static final String JOB_NAMENODES = "mapreduce.job.hdfs-servers";
@@ -66,9 +66,9 @@
   
   private final static String SHUFFLE_ERR_GRP_NAME = "Shuffle Errors";
   private final Counters.Counter connectionErrs;
-  private final Counters.Counter ioErrs;
+  protected final Counters.Counter ioErrs;
   private final Counters.Counter wrongLengthErrs;
-  private final Counters.Counter badIdErrs;
+  protected final Counters.Counter badIdErrs;
   private final Counters.Counter wrongMapErrs;
   private final Counters.Counter wrongReduceErrs;
   protected final MergeManager<K,V> merger;
@@ -79,13 +79,13 @@
   private static int nextId = 0;
   protected final int reduce;
   
-  private final int connectionTimeout;
-  private final int readTimeout;
+  protected final int connectionTimeout;
+  protected final int readTimeout;
   
-  private final SecretKey shuffleSecretKey;
+  protected final SecretKey shuffleSecretKey;
 
   protected HttpURLConnection connection;
-  private volatile boolean stopped = false;
+  protected volatile boolean stopped = false;
 
   private static boolean sslShuffle;
   private static SSLFactory sslFactory;
@@ -158,8 +158,13 @@ public void run() {
           merger.waitForResource();
 
           // Get a host to shuffle from
+          long waitStart = System.currentTimeMillis();
           host = scheduler.getHost();
+          long assigned = System.currentTimeMillis();
           metrics.threadBusy();
+          long pendingSince = host.getPendingSince();
+          metrics.hostAssigned(assigned - waitStart,
+              pendingSince > 0 ? Math.max(0, assigned - pendingSince) : 0);
 
           // Shuffle
           copyFromHost(host);
@@ -479,7 +484,7 @@ private TaskAttemptID[] copyMapOutput(MapHost host,
    * @param mapId
    * @return true/false, based on if the verification succeeded or not
    */
-  private boolean verifySanity(long compressedLength, long decompressedLength,
+  protected boolean verifySanity(long compressedLength, long decompressedLength,
       int forReduce, Set<TaskAttemptID> remaining, TaskAttemptID mapId) {
     if (compressedLength < 0 || decompressedLength < 0) {
       wrongLengthErrs.increment(1);
@@ -515,7 +520,7 @@ private boolean verifySanity(long compressedLength, long decompressedLength,
    * @return
    * @throws MalformedURLException
    */
-  private URL getMapOutputURL(MapHost host, List<TaskAttemptID> maps
+  protected URL getMapOutputURL(MapHost host, List<TaskAttemptID> maps
                               )  throws MalformedURLException {
     // Get the base url
     StringBuffer url = new StringBuffer(host.getBaseUrl());
@@ -77,6 +77,11 @@ public BoundedByteArrayOutputStream getArrayStream() {
     return byteStream;
   }
 
+  /** The codec of the map output, or null if it is not compressed */
+  CompressionCodec getCodec() {
+    return codec;
+  }
+
   @Override
   public void shuffle(MapHost host, InputStream input,
                       long compressedLength, long decompressedLength,
@@ -19,6 +19,7 @@
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
@@ -36,10 +37,17 @@ public static enum State {
     PENALIZED           // Host penalized due to shuffle failures
   }
   
-  private State state = State.IDLE;
+  // read without the lock of the host; the transitions which depend on
+  // the known maps are made while holding it
+  private final AtomicReference<State> state =
+      new AtomicReference<State>(State.IDLE);
   private final String hostName;
   private final String baseUrl;
   private List<TaskAttemptID> maps = new ArrayList<TaskAttemptID>();
+  // when the host last became pending
+  private volatile long pendingSince;
+  // when the host was last assigned to a fetcher
+  private volatile long busySince;
   
   public MapHost(String hostName, String baseUrl) {
     this.hostName = hostName;
@@ -47,7 +55,7 @@ public MapHost(String hostName, String baseUrl) {
   }
   
   public State getState() {
-    return state;
+    return state.get();
   }
 
   public String getHostName() {
@@ -58,11 +66,29 @@ public String getBaseUrl() {
     return baseUrl;
   }
 
-  public synchronized void addKnownMap(TaskAttemptID mapId) {
+  /**
+   * Adds a map output which can be fetched from this host.
+   * @return true if the host became pending, in which case the caller must
+   *         queue it for a fetcher
+   */
+  public synchronized boolean addKnownMap(TaskAttemptID mapId) {
     maps.add(mapId);
-    if (state == State.IDLE) {
-      state = State.PENDING;
+    return setPending(State.IDLE);
+  }
+
+  private boolean setPending(State expect) {
+    if (state.compareAndSet(expect, State.PENDING)) {
+      pendingSince = System.currentTimeMillis();
+      return true;
     }
+    return false;
+  }
+
+  /**
+   * @return when the host last became pending
+   */
+  long getPendingSince() {
+    return pendingSince;
   }
   
   public synchronized List<TaskAttemptID> getAndClearKnownMaps() {
@@ -71,12 +97,32 @@ public synchronized List<TaskAttemptID> getAndClearKnownMaps() {
     return currentKnownMaps;
   }
   
-  public synchronized void markBusy() {
-    state = State.BUSY;
+  public void markBusy() {
+    state.set(State.BUSY);
+    busySince = System.currentTimeMillis();
+  }
+
+  /**
+   * Marks a pending host busy.
+   * @return false if the host was not pending
+   */
+  public boolean markBusyIfPending() {
+    if (state.compareAndSet(State.PENDING, State.BUSY)) {
+      busySince = System.currentTimeMillis();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return when the host was last marked busy
+   */
+  long getBusySince() {
+    return busySince;
   }
   
-  public synchronized void markPenalized() {
-    state = State.PENALIZED;
+  public void markPenalized() {
+    state.set(State.PENALIZED);
   }
   
   public synchronized int getNumKnownMapOutputs() {
@@ -89,11 +135,14 @@ public synchronized int getNumKnownMapOutputs() {
    */
   public synchronized State markAvailable() {
     if (maps.isEmpty()) {
-      state = State.IDLE;
-    } else {
-      state = State.PENDING;
+      state.set(State.IDLE);
+      return State.IDLE;
+    }
+    State current = state.get();
+    if (current != State.PENDING) {
+      setPending(current);
     }
-    return state;
+    return State.PENDING;
   }
   
   @Override
@@ -104,7 +153,7 @@ public String toString() {
   /**
    * Mark the host as penalized
    */
-  public synchronized void penalize() {
-    state = State.PENALIZED;
+  public void penalize() {
+    state.set(State.PENALIZED);
   }
 }
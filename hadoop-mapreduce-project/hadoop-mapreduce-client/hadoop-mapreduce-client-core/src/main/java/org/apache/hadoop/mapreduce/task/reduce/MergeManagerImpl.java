@@ -24,6 +24,10 @@
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -51,6 +55,7 @@
 import org.apache.hadoop.mapred.Merger.Segment;
 import org.apache.hadoop.mapred.Task.CombineOutputCollector;
 import org.apache.hadoop.mapred.Task.CombineValuesIterator;
+import org.apache.hadoop.mapreduce.MRConfig;
 import org.apache.hadoop.mapreduce.MRJobConfig;
 import org.apache.hadoop.mapreduce.TaskAttemptID;
 import org.apache.hadoop.mapreduce.TaskID;
@@ -59,6 +64,7 @@
 import org.apache.hadoop.util.ReflectionUtils;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 @SuppressWarnings(value={"unchecked"})
 @InterfaceAudience.LimitedPrivate({"MapReduce"})
@@ -90,9 +96,20 @@
   private final MergeThread<InMemoryMapOutput<K,V>, K,V> inMemoryMerger;
   
   Set<CompressAwarePath> onDiskMapOutputs = new TreeSet<CompressAwarePath>();
-  private final OnDiskMerger onDiskMerger;
+  private final List<OnDiskMerger> onDiskMergers;
+
+  /**
+   * Pool which reads on-disk map-outputs ahead of the merges, or null if
+   * the merges read them themselves.
+   */
+  private final ExecutorService readAheadPool;
   
   private final long memoryLimit;
+  /**
+   * Bytes of compressed map outputs the non-blocking shuffle may buffer,
+   * taken off the shuffle memory when map outputs are compressed
+   */
+  private final long maxInFlightBytes;
   private long usedMemory;
   private long commitMemory;
   private final long maxSingleShuffleLimit;
@@ -164,11 +181,38 @@ public MergeManagerImpl(TaskAttemptID reduceId, JobConf jobConf,
     }
 
     // Allow unit tests to fix Runtime memory
-    this.memoryLimit = 
+    long memoryLimit =
       (long)(jobConf.getLong(MRJobConfig.REDUCE_MEMORY_TOTAL_BYTES,
           Math.min(Runtime.getRuntime().maxMemory(), Integer.MAX_VALUE))
         * maxInMemCopyUse);
- 
+
+    // The non-blocking shuffle buffers compressed map outputs until they
+    // are complete, next to the memory reserved for them
+    long maxInFlightBytes =
+      jobConf.getLong(MRJobConfig.SHUFFLE_NIO_MAX_INFLIGHT_BYTES,
+          MRJobConfig.DEFAULT_SHUFFLE_NIO_MAX_INFLIGHT_BYTES);
+    if (maxInFlightBytes < 0) {
+      LOG.warn("Invalid value for " +
+          MRJobConfig.SHUFFLE_NIO_MAX_INFLIGHT_BYTES + ": " +
+          maxInFlightBytes + ", using 0");
+      maxInFlightBytes = 0;
+    }
+    if (codec != null &&
+        jobConf.getBoolean(MRJobConfig.SHUFFLE_NIO_ENABLED,
+            MRJobConfig.DEFAULT_SHUFFLE_NIO_ENABLED) &&
+        !jobConf.getBoolean(MRConfig.SHUFFLE_SSL_ENABLED_KEY,
+            MRConfig.SHUFFLE_SSL_ENABLED_DEFAULT)) {
+      if (maxInFlightBytes >= memoryLimit) {
+        LOG.warn(MRJobConfig.SHUFFLE_NIO_MAX_INFLIGHT_BYTES + " of " +
+            maxInFlightBytes + " bytes is not less than the shuffle memory" +
+            " of " + memoryLimit + " bytes, using " + memoryLimit / 2);
+        maxInFlightBytes = memoryLimit / 2;
+      }
+      memoryLimit -= maxInFlightBytes;
+    }
+    this.maxInFlightBytes = maxInFlightBytes;
+    this.memoryLimit = memoryLimit;
+
     this.ioSortFactor = jobConf.getInt(MRJobConfig.IO_SORT_FACTOR, 100);
 
     final float singleShuffleMemoryLimitPercent =
@@ -217,8 +261,37 @@ public MergeManagerImpl(TaskAttemptID reduceId, JobConf jobConf,
     this.inMemoryMerger = createInMemoryMerger();
     this.inMemoryMerger.start();
     
-    this.onDiskMerger = new OnDiskMerger(this);
-    this.onDiskMerger.start();
+    int onDiskMergeThreads = Math.max(1, jobConf.getInt(
+        MRJobConfig.REDUCE_MERGE_ONDISK_THREADS,
+        MRJobConfig.DEFAULT_REDUCE_MERGE_ONDISK_THREADS));
+    this.onDiskMergers = new ArrayList<OnDiskMerger>(onDiskMergeThreads);
+    for (int i = 0; i < onDiskMergeThreads; i++) {
+      OnDiskMerger onDiskMerger = new OnDiskMerger(this, i);
+      onDiskMerger.start();
+      onDiskMergers.add(onDiskMerger);
+    }
+
+    int readAheadThreads = jobConf.getInt(
+        MRJobConfig.REDUCE_MERGE_READAHEAD_THREADS,
+        MRJobConfig.DEFAULT_REDUCE_MERGE_READAHEAD_THREADS);
+    if (readAheadThreads > 0) {
+      // The final merge is read after close(), so the pool is never shut
+      // down; its idle threads exit instead.
+      ThreadPoolExecutor pool = new ThreadPoolExecutor(readAheadThreads,
+          readAheadThreads, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(),
+          new ThreadFactoryBuilder().setDaemon(true)
+              .setNameFormat("MergeReadAhead #%d").build());
+      pool.allowCoreThreadTimeOut(true);
+      this.readAheadPool = pool;
+      // Every merge of on-disk segments holds two chunks per segment, which
+      // are not taken from memoryLimit
+      LOG.info("MergerManager: readAheadThreads=" + readAheadThreads +
+               ", read-ahead memory per merge up to " +
+               ((long) ioSortFactor << 20) + " bytes");
+    } else {
+      this.readAheadPool = null;
+    }
     
     this.mergePhase = mergePhase;
   }
@@ -241,6 +314,14 @@ public void waitForResource() throws InterruptedException {
     inMemoryMerger.waitForMerge();
   }
   
+  /**
+   * @return the bytes of compressed map outputs the non-blocking shuffle
+   *         may buffer, after checking them against the shuffle memory
+   */
+  long getMaxInFlightBytes() {
+    return maxInFlightBytes;
+  }
+
   private boolean canShuffleToMemory(long requestedSize) {
     return (requestedSize < maxSingleShuffleLimit); 
   }
@@ -340,6 +421,14 @@ public synchronized void closeOnDiskFile(CompressAwarePath file) {
     onDiskMapOutputs.add(file);
     
     if (onDiskMapOutputs.size() >= (2 * ioSortFactor - 1)) {
+      // run the merge on the least busy merger, so that merges of different
+      // files run concurrently
+      OnDiskMerger onDiskMerger = onDiskMergers.get(0);
+      for (OnDiskMerger merger : onDiskMergers) {
+        if (merger.getNumPending() < onDiskMerger.getNumPending()) {
+          onDiskMerger = merger;
+        }
+      }
       onDiskMerger.startMerge(onDiskMapOutputs);
     }
   }
@@ -351,7 +440,9 @@ public RawKeyValueIterator close() throws Throwable {
       memToMemMerger.close();
     }
     inMemoryMerger.close();
-    onDiskMerger.close();
+    for (OnDiskMerger onDiskMerger : onDiskMergers) {
+      onDiskMerger.close();
+    }
     
     List<InMemoryMapOutput<K, V>> memory = 
       new ArrayList<InMemoryMapOutput<K, V>>(inMemoryMergedMapOutputs);
@@ -502,9 +593,10 @@ public void merge(List<InMemoryMapOutput<K,V>> inputs) throws IOException {
   
   private class OnDiskMerger extends MergeThread<CompressAwarePath,K,V> {
     
-    public OnDiskMerger(MergeManagerImpl<K, V> manager) {
+    public OnDiskMerger(MergeManagerImpl<K, V> manager, int index) {
       super(manager, ioSortFactor, exceptionReporter);
-      setName("OnDiskMerger - Thread to merge on-disk map-outputs");
+      setName("OnDiskMerger #" + index +
+              " - Thread to merge on-disk map-outputs");
       setDaemon(true);
     }
     
@@ -545,14 +637,28 @@ public void merge(List<CompressAwarePath> inputs) throws IOException {
       CompressAwarePath compressAwarePath;
       Path tmpDir = new Path(reduceId.toString());
       try {
-        iter = Merger.merge(jobConf, rfs,
-                            (Class<K>) jobConf.getMapOutputKeyClass(),
-                            (Class<V>) jobConf.getMapOutputValueClass(),
-                            codec, inputs.toArray(new Path[inputs.size()]), 
-                            true, ioSortFactor, tmpDir, 
-                            (RawComparator<K>) jobConf.getOutputKeyComparator(), 
-                            reporter, spilledRecordsCounter, null, 
-                            mergedMapOutputsCounter, null);
+        if (readAheadPool == null) {
+          iter = Merger.merge(jobConf, rfs,
+                              (Class<K>) jobConf.getMapOutputKeyClass(),
+                              (Class<V>) jobConf.getMapOutputValueClass(),
+                              codec, inputs.toArray(new Path[inputs.size()]),
+                              true, ioSortFactor, tmpDir,
+                              (RawComparator<K>) jobConf.getOutputKeyComparator(),
+                              reporter, spilledRecordsCounter, null,
+                              mergedMapOutputsCounter, null);
+        } else {
+          List<Segment<K, V>> segments = new ArrayList<Segment<K, V>>();
+          for (CompressAwarePath file : inputs) {
+            segments.add(createReadAheadSegment(rfs, file, false));
+          }
+          iter = Merger.merge(jobConf, rfs,
+                              (Class<K>) jobConf.getMapOutputKeyClass(),
+                              (Class<V>) jobConf.getMapOutputValueClass(),
+                              codec, segments, ioSortFactor, 0, tmpDir,
+                              (RawComparator<K>) jobConf.getOutputKeyComparator(),
+                              reporter, true, spilledRecordsCounter, null,
+                              null);
+        }
 
         Merger.writeFile(iter, writer, reporter, jobConf);
         writer.close();
@@ -624,6 +730,22 @@ private long createInMemorySegments(List<InMemoryMapOutput<K,V>> inMemoryMapOutp
     return totalSize;
   }
 
+  /**
+   * Create a segment of an on-disk map-output which is read ahead of the
+   * merge on the read-ahead pool, so that the merge compares keys while the
+   * segment is read and decompressed.
+   */
+  private Segment<K, V> createReadAheadSegment(FileSystem fs,
+                                               CompressAwarePath file,
+                                               boolean preserve)
+      throws IOException {
+    Reader<K, V> reader = new ReadAheadReader<K, V>(jobConf, fs, file, codec,
+        preserve, spilledRecordsCounter, readAheadPool);
+    return new Segment<K, V>(reader, true,
+        (file.toString().endsWith(Task.MERGED_OUTPUT_PREFIX) ?
+         null : mergedMapOutputsCounter), file.getRawDataLength());
+  }
+
   class RawKVIteratorReader extends IFile.Reader<K,V> {
 
     private final RawKeyValueIterator kvIter;
@@ -763,6 +885,10 @@ private RawKeyValueIterator finalMerge(JobConf job, FileSystem fs,
       rawBytes += (file.getRawDataLength() > 0) ? file.getRawDataLength() : fileLength;
 
       LOG.debug("Disk file: " + file + " Length is " + fileLength);
+      if (readAheadPool != null) {
+        diskSegments.add(createReadAheadSegment(fs, file, keepInputs));
+        continue;
+      }
       diskSegments.add(new Segment<K, V>(job, fs, file, codec, keepInputs,
                                          (file.toString().endsWith(
                                              Task.MERGED_OUTPUT_PREFIX) ?
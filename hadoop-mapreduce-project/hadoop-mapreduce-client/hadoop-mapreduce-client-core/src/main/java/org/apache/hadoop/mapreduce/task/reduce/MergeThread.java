@@ -71,6 +71,13 @@ public void startMerge(Set<T> inputs) {
     }
   }
 
+  /**
+   * @return the number of merges started but not finished
+   */
+  int getNumPending() {
+    return numPending.get();
+  }
+
   public synchronized void waitForMerge() throws InterruptedException {
     while (numPending.get() > 0) {
       wait();
@@ -0,0 +1,789 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mapreduce.task.reduce;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.ChecksumException;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.security.SecureShuffleUtils;
+import org.apache.hadoop.util.DataChecksum;
+
+import com.google.common.base.Charsets;
+
+/**
+ * A fetcher which runs many connections to the shuffle servers on a single
+ * thread with non-blocking IO, instead of a connection per thread.
+ * <p/>
+ * Each connection fetches the map outputs of one host, with the same
+ * request and the same error handling as {@link Fetcher}. Map outputs
+ * which go to disk are written as their data arrives. Uncompressed map
+ * outputs which go to memory are read straight into the memory reserved for
+ * them, and their checksum is verified as the data arrives. Compressed map
+ * outputs which go to memory are buffered until they are complete, and then
+ * read by {@link MapOutput#shuffle}, which verifies the checksum and
+ * decompresses them. The buffered bytes of all the connections are limited,
+ * and the {@link MergeManagerImpl} takes the limit off its memory: a
+ * connection which would exceed the limit stops reading until other map
+ * outputs are complete.
+ * <p/>
+ * SSL is not supported, the shuffle uses {@link Fetcher} threads then.
+ */
+class NioFetcher<K,V> extends Fetcher<K,V> {
+
+  private static final Log LOG = LogFactory.getLog(NioFetcher.class);
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /** How long to wait for IO before polling for pending hosts again */
+  private static final long SELECT_TIMEOUT_MS = 50;
+
+  private static final String CRLF = "\r\n";
+
+  private enum Phase {CONNECTING, REQUEST, RESPONSE, HEADER, DATA}
+
+  private final int maxConnections;
+  private final long maxInFlightBytes;
+  private final Selector selector;
+  private final List<Connection> connections = new ArrayList<Connection>();
+  /** Connections waiting for buffer space, in the order they asked for it */
+  private final LinkedList<Connection> blocked = new LinkedList<Connection>();
+  private long inFlightBytes = 0;
+  /** Set if the merge manager asked us to wait for a merge */
+  private boolean waitForMerge = false;
+
+  NioFetcher(JobConf job, TaskAttemptID reduceId,
+             ShuffleSchedulerImpl<K,V> scheduler, MergeManager<K,V> merger,
+             Reporter reporter, ShuffleClientMetrics metrics,
+             ExceptionReporter exceptionReporter, SecretKey shuffleKey,
+             int maxConnections, long maxInFlightBytes) throws IOException {
+    super(job, reduceId, scheduler, merger, reporter, metrics,
+        exceptionReporter, shuffleKey);
+    this.maxConnections = maxConnections;
+    this.maxInFlightBytes = maxInFlightBytes;
+    this.selector = Selector.open();
+    setName("niofetcher#" + id);
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (!stopped && !Thread.currentThread().isInterrupted()) {
+        if (waitForMerge && connections.isEmpty()) {
+          // If merge is on, block
+          merger.waitForResource();
+          waitForMerge = false;
+        }
+        openConnections();
+        if (!connections.isEmpty()) {
+          selector.select(SELECT_TIMEOUT_MS);
+          processSelected();
+          resumeBlocked();
+          closeExpired();
+        }
+      }
+    } catch (InterruptedException ie) {
+      return;
+    } catch (Throwable t) {
+      exceptionReporter.reportException(t);
+    } finally {
+      for (Connection conn : new ArrayList<Connection>(connections)) {
+        conn.finish();
+      }
+      IOUtils.cleanup(LOG, selector);
+    }
+  }
+
+  /**
+   * Start fetching from pending hosts while there are free connections.
+   * Blocks for a short time waiting for a host if there are no connections.
+   */
+  private void openConnections() throws InterruptedException {
+    while (!waitForMerge && blocked.isEmpty() &&
+           connections.size() < maxConnections) {
+      long waitStart = System.currentTimeMillis();
+      MapHost host = scheduler.pollHost(
+          connections.isEmpty() ? SELECT_TIMEOUT_MS : 0,
+          TimeUnit.MILLISECONDS);
+      if (host == null) {
+        return;
+      }
+      long assigned = System.currentTimeMillis();
+      metrics.threadBusy();
+      long pendingSince = host.getPendingSince();
+      metrics.hostAssigned(assigned - waitStart,
+          pendingSince > 0 ? Math.max(0, assigned - pendingSince) : 0);
+
+      Connection conn = new Connection(host);
+      connections.add(conn);
+      conn.open();
+    }
+  }
+
+  private void processSelected() {
+    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+    while (it.hasNext()) {
+      SelectionKey key = it.next();
+      it.remove();
+      Connection conn = (Connection) key.attachment();
+      if (conn.closed || !key.isValid()) {
+        continue;
+      }
+      try {
+        if (key.isConnectable()) {
+          conn.finishConnect();
+        } else if (key.isWritable()) {
+          conn.writeRequest();
+        } else if (key.isReadable()) {
+          conn.read();
+        }
+      } catch (IOException ioe) {
+        conn.failed(ioe);
+      }
+    }
+  }
+
+  /**
+   * Let the blocked connections continue, in order, while their map outputs
+   * fit into the buffer space. A map output larger than the limit is
+   * buffered when nothing else is.
+   */
+  private void resumeBlocked() {
+    while (!blocked.isEmpty()) {
+      Connection conn = blocked.getFirst();
+      if (inFlightBytes > 0 &&
+          inFlightBytes + conn.compressedLength > maxInFlightBytes) {
+        return;
+      }
+      blocked.removeFirst();
+      try {
+        conn.startBuffering();
+        conn.key.interestOps(SelectionKey.OP_READ);
+        conn.process();
+      } catch (IOException ioe) {
+        conn.failed(ioe);
+      }
+    }
+  }
+
+  private void closeExpired() {
+    long now = System.currentTimeMillis();
+    for (Connection conn : new ArrayList<Connection>(connections)) {
+      if (conn.phase == Phase.CONNECTING) {
+        if (connectionTimeout > 0 &&
+            now - conn.lastActivity > connectionTimeout) {
+          conn.failed(new SocketTimeoutException("connect timed out"));
+        }
+      } else if (readTimeout > 0 && !blocked.contains(conn) &&
+                 now - conn.lastActivity > readTimeout) {
+        conn.failed(new SocketTimeoutException("Read timed out"));
+      }
+    }
+  }
+
+  /**
+   * The fetch of the map outputs of one host.
+   */
+  private class Connection {
+    private final MapHost host;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private Set<TaskAttemptID> remaining;
+    private URL url;
+    private String msgToEncode;
+    private String encHash;
+    private SocketChannel channel;
+    private SelectionKey key;
+    private ByteBuffer request;
+    private Phase phase = Phase.CONNECTING;
+    private long lastActivity = System.currentTimeMillis();
+    private boolean eof = false;
+    private boolean closed = false;
+    /** Length of the response body, or -1 if the server closes at its end */
+    private long contentLength = -1;
+    private long bodyRead = 0;
+
+    // The map output being read
+    private TaskAttemptID mapId;
+    private MapOutput<K,V> mapOutput;
+    private long compressedLength;
+    private long decompressedLength;
+    private long bytesLeft;
+    private long startTime;
+    /** The memory of an uncompressed in-memory map output being read */
+    private byte[] memory;
+    private final DataChecksum sum = DataChecksum.newDataChecksum(
+        DataChecksum.Type.CRC32, Integer.MAX_VALUE);
+    private final byte[] checksum = new byte[sum.getChecksumSize()];
+    /** The buffered bytes of a compressed in-memory map output */
+    private byte[] data;
+    private int dataLength;
+
+    Connection(MapHost host) {
+      this.host = host;
+    }
+
+    void open() {
+      // Get completed maps on 'host'
+      List<TaskAttemptID> maps = scheduler.getMapsForHost(host);
+
+      // Sanity check to catch hosts with only 'OBSOLETE' maps,
+      // especially at the tail of large jobs
+      if (maps.size() == 0) {
+        finish();
+        return;
+      }
+
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Fetcher " + id + " going to fetch from " + host + " for: "
+            + maps);
+      }
+
+      // List of maps to be fetched yet
+      remaining = new HashSet<TaskAttemptID>(maps);
+
+      try {
+        url = getMapOutputURL(host, maps);
+        // generate hash of the url
+        msgToEncode = SecureShuffleUtils.buildMsgFrom(url);
+        encHash = SecureShuffleUtils.hashFromString(msgToEncode,
+            shuffleSecretKey);
+        request = createRequest();
+
+        int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        InetSocketAddress address = new InetSocketAddress(url.getHost(), port);
+        if (address.isUnresolved()) {
+          throw new UnknownHostException(url.getHost());
+        }
+        channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        key = channel.register(selector, 0, this);
+        if (channel.connect(address)) {
+          connected();
+        } else {
+          key.interestOps(SelectionKey.OP_CONNECT);
+        }
+      } catch (IOException ioe) {
+        failed(ioe);
+      }
+    }
+
+    /**
+     * Build a request with the same headers as the request of
+     * {@link Fetcher}. A connection fetches a single response, which ends at
+     * its content length if the server keeps the connection alive.
+     */
+    private ByteBuffer createRequest() {
+      StringBuilder sb = new StringBuilder();
+      sb.append("GET ").append(url.getFile()).append(" HTTP/1.1").append(CRLF);
+      sb.append("Host: ").append(url.getAuthority()).append(CRLF);
+      sb.append(SecureShuffleUtils.HTTP_HEADER_URL_HASH).append(": ")
+        .append(encHash).append(CRLF);
+      sb.append(ShuffleHeader.HTTP_HEADER_NAME).append(": ")
+        .append(ShuffleHeader.DEFAULT_HTTP_HEADER_NAME).append(CRLF);
+      sb.append(ShuffleHeader.HTTP_HEADER_VERSION).append(": ")
+        .append(ShuffleHeader.DEFAULT_HTTP_HEADER_VERSION).append(CRLF);
+      sb.append("Connection: close").append(CRLF);
+      sb.append(CRLF);
+      return ByteBuffer.wrap(sb.toString().getBytes(Charsets.ISO_8859_1));
+    }
+
+    void finishConnect() throws IOException {
+      if (channel.finishConnect()) {
+        connected();
+      }
+    }
+
+    private void connected() throws IOException {
+      phase = Phase.REQUEST;
+      lastActivity = System.currentTimeMillis();
+      writeRequest();
+    }
+
+    void writeRequest() throws IOException {
+      channel.write(request);
+      lastActivity = System.currentTimeMillis();
+      if (request.hasRemaining()) {
+        key.interestOps(SelectionKey.OP_WRITE);
+      } else {
+        phase = Phase.RESPONSE;
+        key.interestOps(SelectionKey.OP_READ);
+      }
+    }
+
+    void read() throws IOException {
+      if (channel.read(buffer) < 0) {
+        eof = true;
+      }
+      lastActivity = System.currentTimeMillis();
+      process();
+    }
+
+    /**
+     * Consume the bytes read so far.
+     */
+    void process() throws IOException {
+      buffer.flip();
+      try {
+        boolean progress = true;
+        while (progress && !closed) {
+          switch (phase) {
+          case RESPONSE:
+            progress = readResponseHead();
+            break;
+          case HEADER:
+            if (remaining.isEmpty()) {
+              finish();
+              return;
+            }
+            progress = readShuffleHeader();
+            break;
+          case DATA:
+            progress = readData();
+            break;
+          default:
+            progress = false;
+          }
+        }
+      } finally {
+        buffer.compact();
+      }
+      if (eof && !closed && !blocked.contains(this)) {
+        endOfStream();
+      }
+    }
+
+    private boolean endOfBody() {
+      return eof || (contentLength >= 0 && bodyRead >= contentLength);
+    }
+
+    /**
+     * The number of buffered bytes of the response body. Bytes after the
+     * content length are not part of the response.
+     */
+    private int bodyAvailable() {
+      if (contentLength < 0) {
+        return buffer.remaining();
+      }
+      return (int) Math.min(buffer.remaining(),
+          Math.max(0, contentLength - bodyRead));
+    }
+
+    private void endOfStream() throws IOException {
+      if (closed) {
+        return;
+      }
+      if (phase == Phase.HEADER && remaining.isEmpty()) {
+        finish();
+        return;
+      }
+      if (phase == Phase.DATA) {
+        throw new IOException("read past end of stream reading " + mapId);
+      }
+      throw new EOFException("Unexpected end of response from " + host);
+    }
+
+    private boolean readResponseHead() throws IOException {
+      byte[] b = buffer.array();
+      int start = buffer.position();
+      int end = -1;
+      for (int i = start; i + 3 < buffer.limit(); i++) {
+        if (b[i] == '\r' && b[i + 1] == '\n' &&
+            b[i + 2] == '\r' && b[i + 3] == '\n') {
+          end = i;
+          break;
+        }
+      }
+      if (end < 0) {
+        if (buffer.remaining() == buffer.capacity()) {
+          throw new IOException("Response header too large from " + url);
+        }
+        return false;
+      }
+      String head = new String(b, start, end - start, Charsets.ISO_8859_1);
+      buffer.position(end + 4);
+
+      String[] lines = head.split(CRLF);
+      String[] status = lines[0].split(" ", 3);
+      int rc;
+      try {
+        rc = Integer.parseInt(status[1]);
+      } catch (RuntimeException e) {
+        throw new IOException("Invalid response status '" + lines[0] +
+            "' from " + url);
+      }
+      // Validate response code
+      if (rc != 200) {
+        throw new IOException(
+            "Got invalid response code " + rc + " from " + url +
+            ": " + (status.length > 2 ? status[2] : ""));
+      }
+      Map<String, String> headers = new HashMap<String, String>();
+      for (int i = 1; i < lines.length; i++) {
+        int colon = lines[i].indexOf(':');
+        if (colon > 0) {
+          headers.put(lines[i].substring(0, colon).trim().toLowerCase(),
+              lines[i].substring(colon + 1).trim());
+        }
+      }
+      // get the shuffle version
+      if (!ShuffleHeader.DEFAULT_HTTP_HEADER_NAME.equals(
+          headers.get(ShuffleHeader.HTTP_HEADER_NAME.toLowerCase()))
+          || !ShuffleHeader.DEFAULT_HTTP_HEADER_VERSION.equals(
+              headers.get(ShuffleHeader.HTTP_HEADER_VERSION.toLowerCase()))) {
+        throw new IOException("Incompatible shuffle response version");
+      }
+      // get the replyHash which is HMac of the encHash we sent to the server
+      String replyHash = headers.get(
+          SecureShuffleUtils.HTTP_HEADER_REPLY_URL_HASH.toLowerCase());
+      if (replyHash == null) {
+        throw new IOException("security validation of TT Map output failed");
+      }
+      LOG.debug("url=" + msgToEncode + ";encHash=" + encHash +
+          ";replyHash=" + replyHash);
+      // verify that replyHash is HMac of encHash
+      SecureShuffleUtils.verifyReply(replyHash, encHash, shuffleSecretKey);
+      LOG.info("for url=" + msgToEncode + " sent hash and received reply");
+
+      if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+        throw new IOException("Unsupported chunked response from " + url);
+      }
+      String length = headers.get("content-length");
+      if (length != null) {
+        try {
+          contentLength = Long.parseLong(length);
+        } catch (NumberFormatException e) {
+          throw new IOException("Invalid content length " + length +
+              " from " + url);
+        }
+      }
+      phase = Phase.HEADER;
+      return true;
+    }
+
+    private boolean readShuffleHeader() throws IOException {
+      int available = bodyAvailable();
+      if (endOfBody() && available == 0) {
+        throw new EOFException("Unexpected end of response from " + host);
+      }
+      int start = buffer.position();
+      DataInputBuffer in = new DataInputBuffer();
+      in.reset(buffer.array(), start, available);
+      ShuffleHeader header = new ShuffleHeader();
+      try {
+        header.readFields(in);
+      } catch (EOFException e) {
+        if (buffer.remaining() == buffer.capacity() || endOfBody() ||
+            (contentLength >= 0 && bodyRead + available >= contentLength)) {
+          throw e;
+        }
+        // wait for the rest of the header
+        return false;
+      }
+      buffer.position(in.getPosition());
+      bodyRead += in.getPosition() - start;
+
+      startTime = System.currentTimeMillis();
+      try {
+        mapId = TaskAttemptID.forName(header.mapId);
+      } catch (IllegalArgumentException e) {
+        badIdErrs.increment(1);
+        LOG.warn("Invalid map id ", e);
+        //Don't know which one was bad, so consider all of them as bad
+        copyFailed(remaining.toArray(new TaskAttemptID[remaining.size()]));
+        return false;
+      }
+      compressedLength = header.compressedLength;
+      decompressedLength = header.uncompressedLength;
+
+      // Do some basic sanity verification
+      if (!verifySanity(compressedLength, decompressedLength,
+          header.forReduce, remaining, mapId)) {
+        copyFailed(new TaskAttemptID[] {mapId});
+        return false;
+      }
+
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("header: " + mapId + ", len: " + compressedLength +
+            ", decomp len: " + decompressedLength);
+      }
+
+      // Get the location for the map output - either in-memory or on-disk
+      try {
+        mapOutput = merger.reserve(mapId, decompressedLength, id);
+      } catch (IOException ioe) {
+        // kill this reduce attempt
+        ioErrs.increment(1);
+        scheduler.reportLocalError(ioe);
+        copyFailed(new TaskAttemptID[0]);
+        return false;
+      }
+
+      // Check if we can shuffle *now* ...
+      if (mapOutput == null) {
+        LOG.info("fetcher#" + id + " - MergeManager returned status WAIT ...");
+        //Not an error but wait to process data.
+        waitForMerge = true;
+        copyFailed(new TaskAttemptID[0]);
+        return false;
+      }
+
+      LOG.info("fetcher#" + id + " about to shuffle output of map "
+          + mapOutput.getMapId() + " decomp: " + decompressedLength
+          + " len: " + compressedLength + " to " + mapOutput.getDescription());
+      bytesLeft = compressedLength;
+      phase = Phase.DATA;
+      if (mapOutput instanceof InMemoryMapOutput &&
+          ((InMemoryMapOutput<K,V>) mapOutput).getCodec() == null) {
+        startReadingIntoMemory((InMemoryMapOutput<K,V>) mapOutput);
+      } else if (!(mapOutput instanceof OnDiskMapOutput)) {
+        if (compressedLength > Integer.MAX_VALUE) {
+          throw new IOException("Map output " + mapId + " of " +
+              compressedLength + " bytes is too large for memory");
+        }
+        if (inFlightBytes > 0 &&
+            inFlightBytes + compressedLength > maxInFlightBytes) {
+          // wait until other map outputs are complete
+          key.interestOps(0);
+          blocked.add(this);
+          return false;
+        }
+        startBuffering();
+      }
+      return true;
+    }
+
+    private void startReadingIntoMemory(InMemoryMapOutput<K,V> output)
+        throws IOException {
+      memory = output.getMemory();
+      if (compressedLength != memory.length + checksum.length) {
+        throw new IOException("Map output " + mapId + " of " +
+            compressedLength + " bytes does not hold " + memory.length +
+            " bytes and a checksum");
+      }
+      sum.reset();
+    }
+
+    void startBuffering() {
+      data = new byte[(int) compressedLength];
+      dataLength = 0;
+      inFlightBytes += compressedLength;
+    }
+
+    private void stopBuffering() {
+      memory = null;
+      if (data != null) {
+        inFlightBytes -= data.length;
+        data = null;
+      }
+    }
+
+    private boolean readData() throws IOException {
+      int n = (int) Math.min(bodyAvailable(), bytesLeft);
+      if (n == 0 && bytesLeft > 0) {
+        if (endOfBody()) {
+          throw new IOException("read past end of response reading " + mapId);
+        }
+        return false;
+      }
+      if (memory != null) {
+        readIntoMemory(n);
+      } else if (data != null) {
+        buffer.get(data, dataLength, n);
+        dataLength += n;
+      } else {
+        ((OnDiskMapOutput<K,V>) mapOutput).write(buffer.array(),
+            buffer.arrayOffset() + buffer.position(), n);
+        buffer.position(buffer.position() + n);
+        metrics.inputBytes(n);
+      }
+      bytesLeft -= n;
+      bodyRead += n;
+      reporter.progress();
+      if (bytesLeft > 0) {
+        return false;
+      }
+
+      if (memory != null) {
+        stopBuffering();
+        if (!sum.compare(checksum, 0)) {
+          throw new ChecksumException("Checksum Error", 0);
+        }
+        metrics.inputBytes(compressedLength - checksum.length);
+        LOG.info("Read " + (compressedLength - checksum.length) +
+            " bytes from map-output for " + mapId);
+      } else if (data != null) {
+        // The codec for lz0,lz4,snappy,bz2,etc. throw java.lang.InternalError
+        // on decompression failures. Catching and re-throwing as IOException
+        // to allow fetch failure logic to be processed
+        try {
+          mapOutput.shuffle(host, new ByteArrayInputStream(data),
+              compressedLength, decompressedLength, metrics, reporter);
+        } catch (java.lang.InternalError e) {
+          LOG.warn("Failed to shuffle for fetcher#" + id, e);
+          throw new IOException(e);
+        } finally {
+          stopBuffering();
+        }
+      } else {
+        LOG.info("Read " + compressedLength + " bytes from map-output for " +
+            mapId);
+        ((OnDiskMapOutput<K,V>) mapOutput).finish(compressedLength);
+      }
+
+      // Inform the shuffle scheduler
+      long endTime = System.currentTimeMillis();
+      scheduler.copySucceeded(mapId, host, compressedLength,
+          endTime - startTime, mapOutput);
+      // Note successful shuffle
+      remaining.remove(mapId);
+      metrics.successFetch();
+      mapId = null;
+      mapOutput = null;
+      phase = Phase.HEADER;
+      return true;
+    }
+
+    /**
+     * Copy the data of the map output into its memory and the checksum
+     * which follows the data aside, and update the checksum of the data.
+     */
+    private void readIntoMemory(int n) {
+      int offset = (int) (compressedLength - bytesLeft);
+      int toMemory = Math.max(0, Math.min(n, memory.length - offset));
+      if (toMemory > 0) {
+        buffer.get(memory, offset, toMemory);
+        sum.update(memory, offset, toMemory);
+      }
+      if (n > toMemory) {
+        buffer.get(checksum, offset + toMemory - memory.length,
+            n - toMemory);
+      }
+    }
+
+    /**
+     * Handle an error of the connection, the same way {@link Fetcher} does.
+     */
+    void failed(IOException ioe) {
+      if (closed) {
+        return;
+      }
+      ioErrs.increment(1);
+      if (phase.compareTo(Phase.HEADER) < 0) {
+        boolean connectExcpt = ioe instanceof ConnectException;
+        LOG.warn("Failed to connect to " + host + " with " +
+            remaining.size() + " map outputs", ioe);
+
+        // If connect did not succeed, just mark all the maps as failed,
+        // indirectly penalizing the host
+        for (TaskAttemptID left : remaining) {
+          scheduler.copyFailed(left, host, false, connectExcpt);
+        }
+        finish();
+      } else if (mapOutput == null) {
+        LOG.info("fetcher#" + id + " failed to read map header" +
+            mapId + " decomp: " + decompressedLength + ", " +
+            compressedLength, ioe);
+        if (mapId == null) {
+          copyFailed(remaining.toArray(new TaskAttemptID[remaining.size()]));
+        } else {
+          copyFailed(new TaskAttemptID[] {mapId});
+        }
+      } else {
+        LOG.warn("Failed to shuffle output of " + mapId +
+            " from " + host.getHostName(), ioe);
+
+        // Inform the shuffle-scheduler
+        abortMapOutput();
+        metrics.failedFetch();
+        copyFailed(new TaskAttemptID[] {mapId});
+      }
+    }
+
+    private void copyFailed(TaskAttemptID[] failedTasks) {
+      if (failedTasks.length > 0) {
+        LOG.warn("copyMapOutput failed for tasks " +
+            Arrays.toString(failedTasks));
+        for (TaskAttemptID left : failedTasks) {
+          scheduler.copyFailed(left, host, true, false);
+        }
+      }
+      finish();
+    }
+
+    private void abortMapOutput() {
+      blocked.remove(this);
+      stopBuffering();
+      if (mapOutput != null) {
+        mapOutput.abort();
+        mapOutput = null;
+      }
+    }
+
+    /**
+     * Close the connection, put back the maps not fetched and free the host.
+     */
+    void finish() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      abortMapOutput();
+      if (key != null) {
+        key.cancel();
+      }
+      IOUtils.cleanup(LOG, channel);
+      if (remaining != null) {
+        for (TaskAttemptID left : remaining) {
+          scheduler.putBackKnownMapOutput(host, left);
+        }
+      }
+      connections.remove(this);
+      scheduler.freeHost(host);
+      metrics.threadFree();
+    }
+  }
+}
@@ -128,6 +128,24 @@ public void shuffle(MapHost host, InputStream input,
     this.compressedSize = compressedLength;
   }
 
+  /**
+   * Write the next part of the map output. Used by fetchers which do not
+   * read the map output from a stream, instead of
+   * {@link #shuffle(MapHost, InputStream, long, long, ShuffleClientMetrics,
+   * Reporter)}.
+   */
+  void write(byte[] buf, int off, int len) throws IOException {
+    disk.write(buf, off, len);
+  }
+
+  /**
+   * Complete a map output written with {@link #write(byte[], int, int)}.
+   */
+  void finish(long compressedLength) throws IOException {
+    disk.close();
+    this.compressedSize = compressedLength;
+  }
+
   @Override
   public void commit() throws IOException {
     fs.rename(tmpOutputPath, outputPath);
@@ -138,6 +156,7 @@ public void commit() throws IOException {
   
   @Override
   public void abort() {
+    IOUtils.cleanup(LOG, disk);
     try {
       fs.delete(tmpOutputPath, false);
     } catch (IOException ie) {
@@ -0,0 +1,223 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mapreduce.task.reduce;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.mapred.Counters;
+import org.apache.hadoop.mapred.IFile.Reader;
+
+/**
+ * <code>IFile.Reader</code> which reads and decompresses the records of an
+ * on-disk map-output ahead of the merge, on a shared pool of threads. The
+ * merge compares the keys of the records read so far while the next
+ * records are read. The file is opened when the first record is needed,
+ * and deleted when the reader is closed unless it is preserved.
+ * <p>
+ * Each reader holds the chunk being merged and the chunk read ahead, about
+ * 2 * 256KB, and a chunk may grow to twice that when its last record
+ * overflows the buffer. A merge of <code>mapreduce.task.io.sort.factor</code>
+ * segments therefore holds up to io.sort.factor * 1MB on the heap, beyond
+ * the shuffle memory of the <code>MergeManager</code>, which does not
+ * account for it.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+class ReadAheadReader<K, V> extends Reader<K, V> {
+  /** Bytes of records read ahead at a time */
+  private static final int CHUNK_SIZE = 256 * 1024;
+
+  /** Records read by one read-ahead */
+  private static class Chunk {
+    private byte[] data;
+    /** Key and value length of each record */
+    private int[] lengths = new int[256];
+    /** Position of the file reader after each record */
+    private long[] positions = new long[128];
+    private int numRecords = 0;
+    private boolean last = false;
+  }
+
+  private final Configuration conf;
+  private final FileSystem fs;
+  private final Path file;
+  private final CompressionCodec codec;
+  private final boolean preserve;
+  private final Counters.Counter readsCounter;
+  private final ExecutorService pool;
+
+  // Used by the read-ahead, which never runs concurrently with itself
+  private Reader<K, V> reader;
+  private final DataInputBuffer readKey = new DataInputBuffer();
+  private final DataInputBuffer readValue = new DataInputBuffer();
+  private final Callable<Chunk> readAhead = new Callable<Chunk>() {
+    @Override
+    public Chunk call() throws IOException {
+      return readChunk();
+    }
+  };
+
+  private Future<Chunk> next;
+  private Chunk chunk;
+  private int record;
+  private int offset;
+  private long position = 0;
+
+  ReadAheadReader(Configuration conf, FileSystem fs, Path file,
+                  CompressionCodec codec, boolean preserve,
+                  Counters.Counter readsCounter, ExecutorService pool)
+      throws IOException {
+    super(conf, null, fs.getFileStatus(file).getLen(), null, null);
+    this.conf = conf;
+    this.fs = fs;
+    this.file = file;
+    this.codec = codec;
+    this.preserve = preserve;
+    this.readsCounter = readsCounter;
+    this.pool = pool;
+  }
+
+  private Chunk readChunk() throws IOException {
+    if (reader == null) {
+      reader = new Reader<K, V>(conf, fs.open(file), fileLength, codec,
+          readsCounter);
+    }
+    Chunk c = new Chunk();
+    DataOutputBuffer out = new DataOutputBuffer(CHUNK_SIZE);
+    while (out.getLength() < CHUNK_SIZE) {
+      if (!reader.nextRawKey(readKey)) {
+        c.last = true;
+        break;
+      }
+      reader.nextRawValue(readValue);
+      int keyLength = readKey.getLength() - readKey.getPosition();
+      int valueLength = readValue.getLength() - readValue.getPosition();
+      out.write(readKey.getData(), readKey.getPosition(), keyLength);
+      out.write(readValue.getData(), readValue.getPosition(), valueLength);
+
+      if (c.positions.length == c.numRecords) {
+        c.positions = Arrays.copyOf(c.positions, c.numRecords * 2);
+        c.lengths = Arrays.copyOf(c.lengths, c.numRecords * 4);
+      }
+      c.lengths[2 * c.numRecords] = keyLength;
+      c.lengths[2 * c.numRecords + 1] = valueLength;
+      c.positions[c.numRecords] = reader.getPosition();
+      c.numRecords++;
+    }
+    c.data = out.getData();
+    return c;
+  }
+
+  /**
+   * Wait for the next chunk of records, and start reading the chunk after.
+   */
+  private Chunk nextChunk() throws IOException {
+    if (next == null) {
+      next = pool.submit(readAhead);
+    }
+    Chunk c;
+    try {
+      c = next.get();
+    } catch (InterruptedException ie) {
+      throw (IOException) new InterruptedIOException(
+          "Interrupted while reading " + file).initCause(ie);
+    } catch (ExecutionException ee) {
+      if (ee.getCause() instanceof IOException) {
+        throw (IOException) ee.getCause();
+      }
+      throw new IOException("Failed to read " + file, ee.getCause());
+    }
+    next = c.last ? null : pool.submit(readAhead);
+    return c;
+  }
+
+  @Override
+  public boolean nextRawKey(DataInputBuffer key) throws IOException {
+    while (chunk == null || record == chunk.numRecords) {
+      if (chunk != null && chunk.last) {
+        return false;
+      }
+      chunk = nextChunk();
+      record = 0;
+      offset = 0;
+    }
+    key.reset(chunk.data, offset, chunk.lengths[2 * record]);
+    return true;
+  }
+
+  @Override
+  public void nextRawValue(DataInputBuffer value) throws IOException {
+    int keyLength = chunk.lengths[2 * record];
+    int valueLength = chunk.lengths[2 * record + 1];
+    value.reset(chunk.data, offset + keyLength, valueLength);
+    offset += keyLength + valueLength;
+    position = chunk.positions[record];
+    record++;
+  }
+
+  @Override
+  public long getPosition() throws IOException {
+    return position;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (next != null) {
+      // Wait for the read-ahead instead of cancelling it: a cancelled future
+      // returns at once while the read may still be running on the file.
+      boolean interrupted = false;
+      while (true) {
+        try {
+          next.get();
+          break;
+        } catch (InterruptedException ie) {
+          interrupted = true;
+        } catch (ExecutionException ee) {
+          // the records are not needed
+          break;
+        }
+      }
+      next = null;
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    chunk = null;
+    if (reader != null) {
+      reader.close();
+      reader = null;
+    }
+    if (!preserve) {
+      fs.delete(file, false);
+    }
+  }
+}
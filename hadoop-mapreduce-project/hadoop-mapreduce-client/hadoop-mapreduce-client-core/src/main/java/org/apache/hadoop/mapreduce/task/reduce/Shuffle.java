@@ -20,6 +20,8 @@
 import java.io.IOException;
 import java.util.Map;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.mapred.JobConf;
@@ -30,6 +32,7 @@
 import org.apache.hadoop.mapred.TaskStatus;
 import org.apache.hadoop.mapred.TaskUmbilicalProtocol;
 import org.apache.hadoop.mapred.ShuffleConsumerPlugin;
+import org.apache.hadoop.mapreduce.MRConfig;
 import org.apache.hadoop.mapreduce.MRJobConfig;
 import org.apache.hadoop.mapreduce.TaskAttemptID;
 import org.apache.hadoop.util.Progress;
@@ -38,6 +41,7 @@
 @InterfaceStability.Unstable
 @SuppressWarnings({"unchecked", "rawtypes"})
 public class Shuffle<K, V> implements ShuffleConsumerPlugin<K, V>, ExceptionReporter {
+  private static final Log LOG = LogFactory.getLog(Shuffle.class);
   private static final int PROGRESS_FREQUENCY = 2000;
   private static final int MAX_EVENTS_TO_FETCH = 10000;
   private static final int MIN_EVENTS_TO_FETCH = 100;
@@ -108,14 +112,36 @@ public RawKeyValueIterator run() throws IOException, InterruptedException {
     
     // Start the map-output fetcher threads
     boolean isLocal = localMapFiles != null;
-    final int numFetchers = isLocal ? 1 :
+    final int parallelCopies =
       jobConf.getInt(MRJobConfig.SHUFFLE_PARALLEL_COPIES, 5);
+    boolean isNio = !isLocal && useNioFetcher();
+    final int numFetchers = isLocal ? 1 :
+      isNio ? Math.min(parallelCopies,
+                       jobConf.getInt(MRJobConfig.SHUFFLE_NIO_EVENT_LOOPS,
+                           MRJobConfig.DEFAULT_SHUFFLE_NIO_EVENT_LOOPS)) :
+      parallelCopies;
     Fetcher<K,V>[] fetchers = new Fetcher[numFetchers];
     if (isLocal) {
       fetchers[0] = new LocalFetcher<K, V>(jobConf, reduceId, scheduler,
           merger, reporter, metrics, this, reduceTask.getShuffleSecret(),
           localMapFiles);
       fetchers[0].start();
+    } else if (isNio) {
+      // spread the connections and the buffer space over the event loops
+      long maxInFlightBytes = merger instanceof MergeManagerImpl ?
+          ((MergeManagerImpl<K, V>) merger).getMaxInFlightBytes() :
+          jobConf.getLong(MRJobConfig.SHUFFLE_NIO_MAX_INFLIGHT_BYTES,
+              MRJobConfig.DEFAULT_SHUFFLE_NIO_MAX_INFLIGHT_BYTES);
+      maxInFlightBytes /= numFetchers;
+      for (int i=0; i < numFetchers; ++i) {
+        int connections = parallelCopies / numFetchers +
+            (i < parallelCopies % numFetchers ? 1 : 0);
+        fetchers[i] = new NioFetcher<K,V>(jobConf, reduceId, scheduler,
+                                          merger, reporter, metrics, this,
+                                          reduceTask.getShuffleSecret(),
+                                          connections, maxInFlightBytes);
+        fetchers[i].start();
+      }
     } else {
       for (int i=0; i < numFetchers; ++i) {
         fetchers[i] = new Fetcher<K,V>(jobConf, reduceId, scheduler, merger, 
@@ -171,6 +197,20 @@ public RawKeyValueIterator run() throws IOException, InterruptedException {
     return kvIter;
   }
 
+  private boolean useNioFetcher() {
+    if (!jobConf.getBoolean(MRJobConfig.SHUFFLE_NIO_ENABLED,
+                            MRJobConfig.DEFAULT_SHUFFLE_NIO_ENABLED)) {
+      return false;
+    }
+    if (jobConf.getBoolean(MRConfig.SHUFFLE_SSL_ENABLED_KEY,
+                           MRConfig.SHUFFLE_SSL_ENABLED_DEFAULT)) {
+      LOG.warn(MRJobConfig.SHUFFLE_NIO_ENABLED + " is not supported with " +
+          "SSL, using a fetcher thread per parallel copy");
+      return false;
+    }
+    return true;
+  }
+
   @Override
   public void close(){
   }
@@ -37,6 +37,9 @@ public class ShuffleClientMetrics implements Updater {
   private int numSuccessFetches = 0;
   private long numBytes = 0;
   private int numThreadsBusy = 0;
+  private int numHostAssignments = 0;
+  private long fetcherWaitMillis = 0;
+  private long hostWaitMillis = 0;
   private final int numCopiers;
   
   ShuffleClientMetrics(TaskAttemptID reduceId, JobConf jobConf) {
@@ -67,6 +70,16 @@ public synchronized void threadBusy() {
   public synchronized void threadFree() {
     --numThreadsBusy;
   }
+  /**
+   * Records the assignment of a host to a fetcher.
+   * @param fetcherWait how long the fetcher waited for a host
+   * @param hostWait how long the host waited for a fetcher
+   */
+  public synchronized void hostAssigned(long fetcherWait, long hostWait) {
+    ++numHostAssignments;
+    fetcherWaitMillis += fetcherWait;
+    hostWaitMillis += hostWait;
+  }
   public void doUpdates(MetricsContext unused) {
     synchronized (this) {
       shuffleMetrics.incrMetric("shuffle_input_bytes", numBytes);
@@ -74,6 +87,12 @@ public void doUpdates(MetricsContext unused) {
                                 numFailedFetches);
       shuffleMetrics.incrMetric("shuffle_success_fetches", 
                                 numSuccessFetches);
+      shuffleMetrics.incrMetric("shuffle_host_assignments",
+                                numHostAssignments);
+      shuffleMetrics.incrMetric("shuffle_fetcher_wait_millis",
+                                fetcherWaitMillis);
+      shuffleMetrics.incrMetric("shuffle_host_wait_millis",
+                                hostWaitMillis);
       if (numCopiers != 0) {
         shuffleMetrics.setMetric("shuffle_fetchers_busy_percent",
             100*((float)numThreadsBusy/numCopiers));
@@ -83,6 +102,9 @@ public void doUpdates(MetricsContext unused) {
       numBytes = 0;
       numSuccessFetches = 0;
       numFailedFetches = 0;
+      numHostAssignments = 0;
+      fetcherWaitMillis = 0;
+      hostWaitMillis = 0;
     }
     shuffleMetrics.update();
   }
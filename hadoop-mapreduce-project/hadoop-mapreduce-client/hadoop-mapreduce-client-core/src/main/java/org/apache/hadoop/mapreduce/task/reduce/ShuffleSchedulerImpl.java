@@ -24,16 +24,23 @@
 import java.net.UnknownHostException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.DelayQueue;
 import java.util.concurrent.Delayed;
+import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -50,37 +57,54 @@
 import org.apache.hadoop.mapreduce.task.reduce.MapHost.State;
 import org.apache.hadoop.util.Progress;
 
+/**
+ * Assigns the hosts with map outputs to the fetchers. The fetchers do not
+ * share a lock: the pending hosts are kept in a blocking queue, the state of
+ * each host is changed atomically, and the progress of each map is tracked
+ * in an atomic array. Only the updates of the counters and the status, and
+ * the handling of fetch failures, are serialized. The updates of the known
+ * hosts, the pending hosts and the obsolete maps share a read lock, which
+ * {@link #resetKnownMaps()} takes exclusively.
+ */
 @InterfaceAudience.Private
 @InterfaceStability.Unstable
 public class ShuffleSchedulerImpl<K,V> implements ShuffleScheduler<K,V> {
-  static ThreadLocal<Long> shuffleStart = new ThreadLocal<Long>() {
-    protected Long initialValue() {
-      return 0L;
-    }
-  };
-
   private static final Log LOG = LogFactory.getLog(ShuffleSchedulerImpl.class);
   private static final int MAX_MAPS_AT_ONCE = 20;
   private static final long INITIAL_PENALTY = 10000;
   private static final float PENALTY_GROWTH_RATE = 1.3f;
   private final static int REPORT_FAILURE_LIMIT = 10;
 
-  private final boolean[] finishedMaps;
+  // the states of the maps
+  private static final int MAP_PENDING = 0;
+  private static final int MAP_COMMITTING = 1;
+  private static final int MAP_FINISHED = 2;
+  private final AtomicIntegerArray mapStates;
+  // notified when the commit of a map output ends
+  private final Object commitLock = new Object();
 
   private final int totalMaps;
-  private int remainingMaps;
-  private Map<String, MapHost> mapLocations = new HashMap<String, MapHost>();
-  private Set<MapHost> pendingHosts = new HashSet<MapHost>();
-  private Set<TaskAttemptID> obsoleteMaps = new HashSet<TaskAttemptID>();
+  private final AtomicInteger remainingMaps;
+  private final ConcurrentMap<String, MapHost> mapLocations =
+      new ConcurrentHashMap<String, MapHost>();
+  // a host is queued when it becomes pending, and may be queued more than
+  // once, as only the fetcher which marks it busy gets it
+  private final BlockingDeque<MapHost> pendingHosts =
+      new LinkedBlockingDeque<MapHost>();
+  private final Set<TaskAttemptID> obsoleteMaps = Collections.newSetFromMap(
+      new ConcurrentHashMap<TaskAttemptID, Boolean>());
+  // shared by the updates of the hosts and maps above, exclusive for
+  // resetting them
+  private final ReadWriteLock knownMapsLock = new ReentrantReadWriteLock();
 
   private final TaskAttemptID reduceId;
   private final Random random = new Random();
   private final DelayQueue<Penalty> penalties = new DelayQueue<Penalty>();
   private final Referee referee = new Referee();
-  private final Map<TaskAttemptID,IntWritable> failureCounts =
-    new HashMap<TaskAttemptID,IntWritable>();
-  private final Map<String,IntWritable> hostFailures =
-    new HashMap<String,IntWritable>();
+  private final ConcurrentMap<TaskAttemptID,IntWritable> failureCounts =
+    new ConcurrentHashMap<TaskAttemptID,IntWritable>();
+  private final ConcurrentMap<String,IntWritable> hostFailures =
+    new ConcurrentHashMap<String,IntWritable>();
   private final TaskStatus status;
   private final ExceptionReporter reporter;
   private final int abortFailureLimit;
@@ -90,13 +114,15 @@ protected Long initialValue() {
   private final Counters.Counter failedShuffleCounter;
 
   private final long startTime;
-  private long lastProgressTime;
+  private volatile long lastProgressTime;
 
   private volatile int maxMapRuntime = 0;
   private final int maxFailedUniqueFetches;
   private final int maxFetchFailuresBeforeReporting;
 
-  private long totalBytesShuffledTillNow = 0;
+  private final AtomicLong totalBytesShuffledTillNow = new AtomicLong();
+  // serializes the updates of the counters and the status
+  private final Object statusLock = new Object();
   private final DecimalFormat mbpsFormat = new DecimalFormat("0.00");
 
   private final boolean reportReadErrorImmediately;
@@ -112,8 +138,8 @@ public ShuffleSchedulerImpl(JobConf job, TaskStatus status,
     totalMaps = job.getNumMapTasks();
     abortFailureLimit = Math.max(30, totalMaps / 10);
 
-    remainingMaps = totalMaps;
-    finishedMaps = new boolean[remainingMaps];
+    remainingMaps = new AtomicInteger(totalMaps);
+    mapStates = new AtomicIntegerArray(totalMaps);
     this.reporter = reporter;
     this.status = status;
     this.reduceId = reduceId;
@@ -173,36 +199,53 @@ static URI getBaseURI(TaskAttemptID reduceId, String url) {
     return u;
   }
 
-  public synchronized void copySucceeded(TaskAttemptID mapId,
-                                         MapHost host,
-                                         long bytes,
-                                         long millis,
-                                         MapOutput<K,V> output
-                                         ) throws IOException {
+  public void copySucceeded(TaskAttemptID mapId,
+                            MapHost host,
+                            long bytes,
+                            long millis,
+                            MapOutput<K,V> output
+                            ) throws IOException {
     failureCounts.remove(mapId);
     hostFailures.remove(host.getHostName());
     int mapIndex = mapId.getTaskID().getId();
 
-    if (!finishedMaps[mapIndex]) {
-      output.commit();
-      finishedMaps[mapIndex] = true;
-      shuffledMapsCounter.increment(1);
-      if (--remainingMaps == 0) {
-        notifyAll();
+    // only one output of a map is committed
+    if (mapStates.compareAndSet(mapIndex, MAP_PENDING, MAP_COMMITTING)) {
+      boolean committed = false;
+      try {
+        output.commit();
+        committed = true;
+      } finally {
+        mapStates.set(mapIndex, committed ? MAP_FINISHED : MAP_PENDING);
+        synchronized (commitLock) {
+          commitLock.notifyAll();
+        }
       }
+      totalBytesShuffledTillNow.addAndGet(bytes);
+      mapFinished();
 
       // update the status
-      totalBytesShuffledTillNow += bytes;
-      updateStatus();
-      reduceShuffleBytes.increment(bytes);
+      synchronized (statusLock) {
+        shuffledMapsCounter.increment(1);
+        updateStatus();
+        reduceShuffleBytes.increment(bytes);
+      }
       lastProgressTime = System.currentTimeMillis();
       LOG.debug("map " + mapId + " done " + status.getStateString());
     }
   }
 
+  private void mapFinished() {
+    if (remainingMaps.decrementAndGet() == 0) {
+      synchronized (this) {
+        notifyAll();
+      }
+    }
+  }
+
   private void updateStatus() {
-    float mbs = (float) totalBytesShuffledTillNow / (1024 * 1024);
-    int mapsDone = totalMaps - remainingMaps;
+    float mbs = (float) totalBytesShuffledTillNow.get() / (1024 * 1024);
+    int mapsDone = totalMaps - remainingMaps.get();
     long secsSinceStart = (System.currentTimeMillis() - startTime) / 1000 + 1;
 
     float transferRate = mbs / secsSinceStart;
@@ -218,16 +261,17 @@ public synchronized void copyFailed(TaskAttemptID mapId, MapHost host,
                                       boolean readError, boolean connectExcpt) {
     host.penalize();
     int failures = 1;
-    if (failureCounts.containsKey(mapId)) {
-      IntWritable x = failureCounts.get(mapId);
+    // the counts may be removed concurrently by copySucceeded
+    IntWritable x = failureCounts.get(mapId);
+    if (x != null) {
       x.set(x.get() + 1);
       failures = x.get();
     } else {
       failureCounts.put(mapId, new IntWritable(1));
     }
     String hostname = host.getHostName();
-    if (hostFailures.containsKey(hostname)) {
-      IntWritable x = hostFailures.get(hostname);
+    x = hostFailures.get(hostname);
+    if (x != null) {
       x.set(x.get() + 1);
     } else {
       hostFailures.put(hostname, new IntWritable(1));
@@ -284,7 +328,7 @@ private void checkReducerHealth() {
     final float MAX_ALLOWED_STALL_TIME_PERCENT = 0.5f;
 
     long totalFailures = failedShuffleCounter.getValue();
-    int doneMaps = totalMaps - remainingMaps;
+    int doneMaps = totalMaps - remainingMaps.get();
 
     boolean reducerHealthy =
       (((float)totalFailures / (totalFailures + doneMaps))
@@ -325,67 +369,141 @@ private void checkReducerHealth() {
 
   }
 
-  public synchronized void tipFailed(TaskID taskId) {
-    if (!finishedMaps[taskId.getId()]) {
-      finishedMaps[taskId.getId()] = true;
-      if (--remainingMaps == 0) {
-        notifyAll();
+  public void tipFailed(TaskID taskId) {
+    final int mapIndex = taskId.getId();
+    while (true) {
+      int mapState = mapStates.get(mapIndex);
+      if (mapState == MAP_FINISHED) {
+        return;
+      } else if (mapState == MAP_PENDING) {
+        if (mapStates.compareAndSet(mapIndex, MAP_PENDING, MAP_FINISHED)) {
+          break;
+        }
+      } else {
+        awaitCommit(mapIndex);
       }
+    }
+    mapFinished();
+    synchronized (statusLock) {
       updateStatus();
     }
   }
 
-  public synchronized void addKnownMapOutput(String hostName,
-                                             String hostUrl,
-                                             TaskAttemptID mapId) {
-    MapHost host = mapLocations.get(hostName);
-    if (host == null) {
-      host = new MapHost(hostName, hostUrl);
-      mapLocations.put(hostName, host);
+  /**
+   * Waits until an output of the map is no longer being committed. An
+   * on-disk output is committed with a rename, so this may take a while.
+   */
+  private void awaitCommit(int mapIndex) {
+    boolean interrupted = false;
+    synchronized (commitLock) {
+      while (mapStates.get(mapIndex) == MAP_COMMITTING) {
+        try {
+          commitLock.wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
     }
-    host.addKnownMap(mapId);
+  }
 
-    // Mark the host as pending
-    if (host.getState() == State.PENDING) {
-      pendingHosts.add(host);
-      notifyAll();
+  public void addKnownMapOutput(String hostName,
+                                String hostUrl,
+                                TaskAttemptID mapId) {
+    knownMapsLock.readLock().lock();
+    try {
+      MapHost host = mapLocations.get(hostName);
+      if (host == null) {
+        MapHost newHost = new MapHost(hostName, hostUrl);
+        host = mapLocations.putIfAbsent(hostName, newHost);
+        if (host == null) {
+          host = newHost;
+        }
+      }
+
+      // Mark the host as pending
+      if (host.addKnownMap(mapId)) {
+        addPendingHost(host);
+      }
+    } finally {
+      knownMapsLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Queues a pending host. Hosts are added to either end of the queue at
+   * random, so that the reducers do not all fetch from the hosts in the
+   * order in which the maps completed.
+   */
+  private void addPendingHost(MapHost host) {
+    knownMapsLock.readLock().lock();
+    try {
+      if (random.nextBoolean()) {
+        pendingHosts.addFirst(host);
+      } else {
+        pendingHosts.addLast(host);
+      }
+    } finally {
+      knownMapsLock.readLock().unlock();
     }
   }
 
 
-  public synchronized void obsoleteMapOutput(TaskAttemptID mapId) {
-    obsoleteMaps.add(mapId);
+  public void obsoleteMapOutput(TaskAttemptID mapId) {
+    knownMapsLock.readLock().lock();
+    try {
+      obsoleteMaps.add(mapId);
+    } finally {
+      knownMapsLock.readLock().unlock();
+    }
   }
 
-  public synchronized void putBackKnownMapOutput(MapHost host,
-                                                 TaskAttemptID mapId) {
-    host.addKnownMap(mapId);
+  public void putBackKnownMapOutput(MapHost host,
+                                    TaskAttemptID mapId) {
+    if (host.addKnownMap(mapId)) {
+      addPendingHost(host);
+    }
   }
 
 
-  public synchronized MapHost getHost() throws InterruptedException {
-      while(pendingHosts.isEmpty()) {
-        wait();
-      }
+  public MapHost getHost() throws InterruptedException {
+      MapHost host;
+      do {
+        host = pendingHosts.take();
+      } while (!host.markBusyIfPending());
 
-      MapHost host = null;
-      Iterator<MapHost> iter = pendingHosts.iterator();
-      int numToPick = random.nextInt(pendingHosts.size());
-      for (int i=0; i <= numToPick; ++i) {
-        host = iter.next();
-      }
+      return assignHost(host);
+  }
 
-      pendingHosts.remove(host);
-      host.markBusy();
+  /**
+   * Get a pending host without blocking for longer than the given time.
+   *
+   * @return the host, or null if no host became pending in time
+   */
+  public MapHost pollHost(long timeout, TimeUnit unit)
+      throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    MapHost host;
+    do {
+      host = pendingHosts.poll(Math.max(0, deadline - System.nanoTime()),
+          TimeUnit.NANOSECONDS);
+      if (host == null) {
+        return null;
+      }
+    } while (!host.markBusyIfPending());
 
-      LOG.info("Assigning " + host + " with " + host.getNumKnownMapOutputs() +
-               " to " + Thread.currentThread().getName());
-      shuffleStart.set(System.currentTimeMillis());
+    return assignHost(host);
+  }
 
-      return host;
+  private MapHost assignHost(MapHost host) {
+    LOG.info("Assigning " + host + " with " + host.getNumKnownMapOutputs() +
+             " to " + Thread.currentThread().getName());
+    return host;
   }
 
-  public synchronized List<TaskAttemptID> getMapsForHost(MapHost host) {
+  public List<TaskAttemptID> getMapsForHost(MapHost host) {
     List<TaskAttemptID> list = host.getAndClearKnownMaps();
     Iterator<TaskAttemptID> itr = list.iterator();
     List<TaskAttemptID> result = new ArrayList<TaskAttemptID>();
@@ -394,7 +512,7 @@ public synchronized List<TaskAttemptID> getMapsForHost(MapHost host) {
     // find the maps that we still need, up to the limit
     while (itr.hasNext()) {
       TaskAttemptID id = itr.next();
-      if (!obsoleteMaps.contains(id) && !finishedMaps[id.getTaskID().getId()]) {
+      if (!obsoleteMaps.contains(id) && !isMapFinished(id)) {
         result.add(id);
         if (++includedMaps >= MAX_MAPS_AT_ONCE) {
           break;
@@ -404,7 +522,7 @@ public synchronized List<TaskAttemptID> getMapsForHost(MapHost host) {
     // put back the maps left after the limit
     while (itr.hasNext()) {
       TaskAttemptID id = itr.next();
-      if (!obsoleteMaps.contains(id) && !finishedMaps[id.getTaskID().getId()]) {
+      if (!obsoleteMaps.contains(id) && !isMapFinished(id)) {
         host.addKnownMap(id);
       }
     }
@@ -413,21 +531,32 @@ public synchronized List<TaskAttemptID> getMapsForHost(MapHost host) {
     return result;
   }
 
-  public synchronized void freeHost(MapHost host) {
+  private boolean isMapFinished(TaskAttemptID id) {
+    return mapStates.get(id.getTaskID().getId()) != MAP_PENDING;
+  }
+
+  public void freeHost(MapHost host) {
+    // a fetcher may hold several hosts at once, so the time is the host's;
+    // read before another fetcher can take the host again
+    long busyTime = System.currentTimeMillis() - host.getBusySince();
     if (host.getState() != State.PENALIZED) {
       if (host.markAvailable() == State.PENDING) {
-        pendingHosts.add(host);
-        notifyAll();
+        addPendingHost(host);
       }
     }
     LOG.info(host + " freed by " + Thread.currentThread().getName() + " in " +
-             (System.currentTimeMillis()-shuffleStart.get()) + "ms");
+             busyTime + "ms");
   }
 
-  public synchronized void resetKnownMaps() {
-    mapLocations.clear();
-    obsoleteMaps.clear();
-    pendingHosts.clear();
+  public void resetKnownMaps() {
+    knownMapsLock.writeLock().lock();
+    try {
+      mapLocations.clear();
+      obsoleteMaps.clear();
+      pendingHosts.clear();
+    } finally {
+      knownMapsLock.writeLock().unlock();
+    }
   }
 
   /**
@@ -439,9 +568,9 @@ public synchronized void resetKnownMaps() {
   @Override
   public synchronized boolean waitUntilDone(int millis
                                             ) throws InterruptedException {
-    if (remainingMaps > 0) {
+    if (remainingMaps.get() > 0) {
       wait(millis);
-      return remainingMaps == 0;
+      return remainingMaps.get() == 0;
     }
     return true;
   }
@@ -486,11 +615,8 @@ public void run() {
         while (true) {
           // take the first host that has an expired penalty
           MapHost host = penalties.take().host;
-          synchronized (ShuffleSchedulerImpl.this) {
-            if (host.markAvailable() == MapHost.State.PENDING) {
-              pendingHosts.add(host);
-              ShuffleSchedulerImpl.this.notifyAll();
-            }
+          if (host.markAvailable() == MapHost.State.PENDING) {
+            addPendingHost(host);
           }
         }
       } catch (InterruptedException ie) {
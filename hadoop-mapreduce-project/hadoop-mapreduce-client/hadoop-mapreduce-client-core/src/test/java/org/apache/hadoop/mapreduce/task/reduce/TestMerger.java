@@ -19,6 +19,8 @@
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.doAnswer;
 
@@ -29,6 +31,8 @@
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import junit.framework.Assert;
 
@@ -36,7 +40,10 @@
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.LocalDirAllocator;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.io.DataInputBuffer;
 import org.apache.hadoop.io.RawComparator;
 import org.apache.hadoop.io.Text;
@@ -49,12 +56,15 @@
 import org.apache.hadoop.mapred.Merger.Segment;
 import org.apache.hadoop.mapred.RawKeyValueIterator;
 import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.Task;
 import org.apache.hadoop.mapreduce.JobID;
 import org.apache.hadoop.mapreduce.MRConfig;
+import org.apache.hadoop.mapreduce.MRJobConfig;
 import org.apache.hadoop.mapreduce.TaskAttemptID;
 import org.apache.hadoop.mapreduce.TaskID;
 import org.apache.hadoop.mapreduce.TaskType;
 import org.apache.hadoop.mapreduce.task.reduce.MergeManagerImpl;
+import org.apache.hadoop.mapreduce.task.reduce.MergeManagerImpl.CompressAwarePath;
 import org.apache.hadoop.util.Progress;
 import org.apache.hadoop.util.Progressable;
 import org.junit.After;
@@ -138,7 +148,120 @@ public void testInMemoryMerger() throws Throwable {
     Assert.assertEquals(0, mergeManager.inMemoryMergedMapOutputs.size());
     Assert.assertEquals(0, mergeManager.onDiskMapOutputs.size());
   }
-  
+
+  @Test
+  public void testReadAheadReader() throws IOException {
+    // enough records for several read-ahead chunks
+    Path path = new Path(jobConf.getLocalDirs()[0], "readahead.out");
+    IFile.Writer<Text, Text> writer = new IFile.Writer<Text, Text>(conf, fs,
+        path, Text.class, Text.class, null, null);
+    int numRecords = 50000;
+    for (int i = 0; i < numRecords; i++) {
+      writer.append(new Text("key" + i), new Text("value" + i));
+    }
+    writer.close();
+
+    ExecutorService pool = Executors.newFixedThreadPool(1);
+    try {
+      ReadAheadReader<Text, Text> reader = new ReadAheadReader<Text, Text>(
+          conf, fs, path, null, false, null, pool);
+      DataInputBuffer keyBuff = new DataInputBuffer();
+      DataInputBuffer valueBuff = new DataInputBuffer();
+      Text key = new Text();
+      Text value = new Text();
+      int i = 0;
+      while (reader.nextRawKey(keyBuff)) {
+        key.readFields(keyBuff);
+        reader.nextRawValue(valueBuff);
+        value.readFields(valueBuff);
+        Assert.assertEquals("key" + i, key.toString());
+        Assert.assertEquals("value" + i, value.toString());
+        i++;
+      }
+      Assert.assertEquals(numRecords, i);
+      reader.close();
+      Assert.assertFalse(fs.exists(path));
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testConcurrentOnDiskMergers() throws Throwable {
+    JobID jobId = new JobID("a", 0);
+    TaskAttemptID reduceId = new TaskAttemptID(
+        new TaskID(jobId, TaskType.REDUCE, 0), 0);
+    jobConf.setMapOutputKeyClass(Text.class);
+    jobConf.setMapOutputValueClass(Text.class);
+    // merge on disk as soon as three map outputs are on disk
+    jobConf.setInt(MRJobConfig.IO_SORT_FACTOR, 2);
+    jobConf.setInt(MRJobConfig.REDUCE_MERGE_ONDISK_THREADS, 2);
+    jobConf.setInt(MRJobConfig.REDUCE_MERGE_READAHEAD_THREADS, 2);
+
+    LocalDirAllocator lda = new LocalDirAllocator(MRConfig.LOCAL_DIR);
+    ExceptionReporter reporter = mock(ExceptionReporter.class);
+    MergeManagerImpl<Text, Text> mergeManager = new MergeManagerImpl<Text, Text>(
+        reduceId, jobConf, fs, lda, Reporter.NULL, null, null, null, null, null,
+        null, reporter, new Progress(), new MROutputFiles());
+
+    // map output f holds the keys f, f + numMaps, f + 2 * numMaps, ...
+    FileSystem rfs = ((LocalFileSystem) fs).getRaw();
+    int numMaps = 10;
+    int numRecords = 1000;
+    List<Path> inputs = new ArrayList<Path>();
+    for (int f = 0; f < numMaps; f++) {
+      Path path = new Path(jobConf.getLocalDirs()[0], "map" + f + ".out");
+      IFile.Writer<Text, Text> writer = new IFile.Writer<Text, Text>(jobConf,
+          rfs, path, Text.class, Text.class, null, null);
+      for (int i = f; i < numMaps * numRecords; i += numMaps) {
+        writer.append(new Text(String.format("key%06d", i)),
+            new Text("value" + i));
+      }
+      writer.close();
+      inputs.add(path);
+      mergeManager.closeOnDiskFile(new CompressAwarePath(path,
+          writer.getRawLength(), writer.getCompressedLength()));
+    }
+
+    // wait for the on-disk merges to write a merged map output
+    boolean merged = false;
+    while (!merged) {
+      synchronized (mergeManager) {
+        for (Path path : mergeManager.onDiskMapOutputs) {
+          merged |= path.getName().endsWith(Task.MERGED_OUTPUT_PREFIX);
+        }
+      }
+      Thread.sleep(10);
+    }
+
+    RawKeyValueIterator iter = mergeManager.close();
+    Text key = new Text();
+    Text value = new Text();
+    int i = 0;
+    while (iter.next()) {
+      key.readFields(iter.getKey());
+      value.readFields(iter.getValue());
+      Assert.assertEquals(String.format("key%06d", i), key.toString());
+      Assert.assertEquals("value" + i, value.toString());
+      i++;
+    }
+    iter.close();
+    Assert.assertEquals(numMaps * numRecords, i);
+
+    // the map outputs and the merged map outputs are deleted
+    for (Path path : inputs) {
+      Assert.assertFalse(path + " exists", rfs.exists(path));
+    }
+    RemoteIterator<LocatedFileStatus> files =
+        rfs.listFiles(new Path(jobConf.getLocalDirs()[0]), true);
+    while (files.hasNext()) {
+      Path path = files.next().getPath();
+      Assert.assertFalse(path + " exists",
+          path.getName().endsWith(Task.MERGED_OUTPUT_PREFIX));
+    }
+    verify(reporter, never()).reportException(any(Throwable.class));
+  }
+
   private byte[] writeMapOutput(Configuration conf, Map<String, String> keysToValues)
       throws IOException {
     ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -0,0 +1,588 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.mapreduce.task.reduce;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapred.Counters;
+import org.apache.hadoop.mapred.IFileOutputStream;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapOutputFile;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.security.SecureShuffleUtils;
+import org.apache.hadoop.mapreduce.security.token.JobTokenSecretManager;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Test that the NioFetcher fetches map outputs like the Fetcher does.
+ */
+public class TestNioFetcher {
+  private JobConf job;
+  private TaskAttemptID id;
+  private ShuffleSchedulerImpl<Text, Text> ss;
+  private MergeManagerImpl<Text, Text> mm;
+  private Reporter r;
+  private ShuffleClientMetrics metrics;
+  private ExceptionReporter except;
+  private SecretKey key;
+
+  private final TaskAttemptID map1ID =
+      TaskAttemptID.forName("attempt_0_1_m_1_1");
+  private final TaskAttemptID map2ID =
+      TaskAttemptID.forName("attempt_0_1_m_2_1");
+
+  @Before
+  @SuppressWarnings("unchecked") // mocked generics
+  public void setup() {
+    job = new JobConf();
+    id = TaskAttemptID.forName("attempt_0_1_r_1_1");
+    ss = mock(ShuffleSchedulerImpl.class);
+    mm = mock(MergeManagerImpl.class);
+    r = mock(Reporter.class);
+    metrics = mock(ShuffleClientMetrics.class);
+    except = mock(ExceptionReporter.class);
+    key = JobTokenSecretManager.createSecretKey(new byte[]{0,0,0,0});
+    when(r.getCounter(anyString(), anyString()))
+        .thenReturn(mock(Counters.Counter.class));
+  }
+
+  private MapHost createHost(int port) throws InterruptedException {
+    MapHost host = new MapHost("localhost:" + port, "http://localhost:" +
+        port + "/mapOutput?job=job_0_0001&reduce=1&map=");
+    when(ss.pollHost(anyLong(), any(TimeUnit.class)))
+        .thenReturn(host).thenReturn(null);
+    when(ss.getMapsForHost(host)).thenReturn(
+        new ArrayList<TaskAttemptID>(Arrays.asList(map1ID, map2ID)));
+    return host;
+  }
+
+  private static byte[] createSegment(byte[] data) throws IOException {
+    return createSegment(data, null);
+  }
+
+  private static byte[] createSegment(byte[] data, CompressionCodec codec)
+      throws IOException {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    IFileOutputStream checksumOut = new IFileOutputStream(bout);
+    if (codec != null) {
+      CompressionOutputStream out = codec.createOutputStream(checksumOut);
+      out.write(data);
+      out.finish();
+    } else {
+      checksumOut.write(data);
+    }
+    checksumOut.finish();
+    return bout.toByteArray();
+  }
+
+  private static byte[] createBody(TaskAttemptID mapId, byte[] segment,
+      int decompressedLength) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(body);
+    new ShuffleHeader(mapId.toString(), segment.length, decompressedLength, 1)
+        .write(out);
+    out.write(segment);
+    return body.toByteArray();
+  }
+
+  private void fetch(MapHost host, ShuffleServer server,
+      long maxInFlightBytes) throws Exception {
+    NioFetcher<Text, Text> underTest = new NioFetcher<Text, Text>(job, id,
+        ss, mm, r, metrics, except, key, 1, maxInFlightBytes);
+    underTest.start();
+    try {
+      verify(ss, timeout(20000)).freeHost(host);
+    } finally {
+      underTest.shutDown();
+      server.join();
+    }
+  }
+
+  @Test(timeout=30000)
+  public void testCopyFromHost() throws Exception {
+    byte[] data1 = new byte[100000];
+    byte[] data2 = new byte[1000];
+    Arrays.fill(data1, (byte) 1);
+    Arrays.fill(data2, (byte) 2);
+    byte[] segment1 = createSegment(data1);
+    byte[] segment2 = createSegment(data2);
+
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(body);
+    new ShuffleHeader(map1ID.toString(), segment1.length, data1.length, 1)
+        .write(out);
+    out.write(segment1);
+    new ShuffleHeader(map2ID.toString(), segment2.length, data2.length, 1)
+        .write(out);
+    out.write(segment2);
+
+    ShuffleServer server = new ShuffleServer(body.toByteArray());
+    server.start();
+    MapHost host = createHost(server.getPort());
+
+    InMemoryMapOutput<Text, Text> output1 = new InMemoryMapOutput<Text, Text>(
+        job, map1ID, mm, data1.length, null, true);
+    InMemoryMapOutput<Text, Text> output2 = new InMemoryMapOutput<Text, Text>(
+        job, map2ID, mm, data2.length, null, true);
+    when(mm.reserve(eq(map1ID), anyLong(), anyInt())).thenReturn(output1);
+    when(mm.reserve(eq(map2ID), anyLong(), anyInt())).thenReturn(output2);
+
+    // uncompressed map outputs are not buffered
+    NioFetcher<Text, Text> underTest = new NioFetcher<Text, Text>(job, id,
+        ss, mm, r, metrics, except, key, 1, 1);
+    underTest.start();
+    try {
+      verify(ss, timeout(20000)).freeHost(host);
+    } finally {
+      underTest.shutDown();
+      server.join();
+    }
+
+    String encHash = SecureShuffleUtils.hashFromString(
+        SecureShuffleUtils.buildMsgFrom(
+            underTest.getMapOutputURL(host, Arrays.asList(map1ID, map2ID))),
+        key);
+    assertEquals(encHash, server.urlHash);
+    verify(ss).copySucceeded(eq(map1ID), eq(host), eq((long) segment1.length),
+        anyLong(), eq(output1));
+    verify(ss).copySucceeded(eq(map2ID), eq(host), eq((long) segment2.length),
+        anyLong(), eq(output2));
+    verify(ss, never()).copyFailed(any(TaskAttemptID.class),
+        any(MapHost.class), anyBoolean(), anyBoolean());
+    verify(ss, never()).putBackKnownMapOutput(any(MapHost.class),
+        any(TaskAttemptID.class));
+    verify(except, never()).reportException(any(Throwable.class));
+    assertArrayEquals(data1, output1.getMemory());
+    assertArrayEquals(data2, output2.getMemory());
+  }
+
+  @Test(timeout=30000)
+  public void testCopyFromHostCompressed() throws Exception {
+    CompressionCodec codec = ReflectionUtils.newInstance(DefaultCodec.class,
+        job);
+    byte[] data1 = new byte[100000];
+    byte[] data2 = new byte[1000];
+    Arrays.fill(data1, (byte) 1);
+    Arrays.fill(data2, (byte) 2);
+    byte[] segment1 = createSegment(data1, codec);
+    byte[] segment2 = createSegment(data2, codec);
+
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    body.write(createBody(map1ID, segment1, data1.length));
+    body.write(createBody(map2ID, segment2, data2.length));
+    ShuffleServer server = new ShuffleServer(body.toByteArray());
+    server.start();
+    MapHost host = createHost(server.getPort());
+
+    InMemoryMapOutput<Text, Text> output1 = new InMemoryMapOutput<Text, Text>(
+        job, map1ID, mm, data1.length, codec, true);
+    InMemoryMapOutput<Text, Text> output2 = new InMemoryMapOutput<Text, Text>(
+        job, map2ID, mm, data2.length, codec, true);
+    when(mm.reserve(eq(map1ID), anyLong(), anyInt())).thenReturn(output1);
+    when(mm.reserve(eq(map2ID), anyLong(), anyInt())).thenReturn(output2);
+
+    // a buffer limit smaller than the map outputs
+    fetch(host, server, 1);
+
+    verify(ss).copySucceeded(eq(map1ID), eq(host), eq((long) segment1.length),
+        anyLong(), eq(output1));
+    verify(ss).copySucceeded(eq(map2ID), eq(host), eq((long) segment2.length),
+        anyLong(), eq(output2));
+    verify(except, never()).reportException(any(Throwable.class));
+    assertArrayEquals(data1, output1.getMemory());
+    assertArrayEquals(data2, output2.getMemory());
+  }
+
+  /**
+   * Connections to several hosts share a buffer limit which is smaller than
+   * each map output, so the map outputs are buffered one at a time: the
+   * connections which read a header while another map output is buffered
+   * block, and are resumed in order as the buffered map outputs complete.
+   */
+  @Test(timeout=30000)
+  public void testCopyFromHostsCompressedBlocked() throws Exception {
+    CompressionCodec codec = ReflectionUtils.newInstance(DefaultCodec.class,
+        job);
+    Random random = new Random(1);
+    int numHosts = 3;
+    MapHost[] hosts = new MapHost[numHosts];
+    ShuffleServer[] servers = new ShuffleServer[numHosts];
+    List<TaskAttemptID> mapIds = new ArrayList<TaskAttemptID>();
+    List<byte[]> datas = new ArrayList<byte[]>();
+    List<byte[]> segments = new ArrayList<byte[]>();
+    List<InMemoryMapOutput<Text, Text>> outputs =
+        new ArrayList<InMemoryMapOutput<Text, Text>>();
+    for (int i = 0; i < numHosts; i++) {
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      List<TaskAttemptID> hostMaps = new ArrayList<TaskAttemptID>();
+      for (int j = 0; j < 2; j++) {
+        TaskAttemptID mapId = TaskAttemptID.forName(
+            "attempt_0_1_m_" + (10 * i + j) + "_1");
+        // random data, so that the compressed map outputs are large
+        byte[] data = new byte[50000];
+        random.nextBytes(data);
+        byte[] segment = createSegment(data, codec);
+        body.write(createBody(mapId, segment, data.length));
+        InMemoryMapOutput<Text, Text> output =
+            new InMemoryMapOutput<Text, Text>(job, mapId, mm, data.length,
+                codec, true);
+        when(mm.reserve(eq(mapId), anyLong(), anyInt())).thenReturn(output);
+        hostMaps.add(mapId);
+        mapIds.add(mapId);
+        datas.add(data);
+        segments.add(segment);
+        outputs.add(output);
+      }
+      servers[i] = new ShuffleServer(body.toByteArray());
+      servers[i].start();
+      int port = servers[i].getPort();
+      hosts[i] = new MapHost("localhost:" + port, "http://localhost:" +
+          port + "/mapOutput?job=job_0_0001&reduce=1&map=");
+      when(ss.getMapsForHost(hosts[i])).thenReturn(hostMaps);
+    }
+    when(ss.pollHost(anyLong(), any(TimeUnit.class)))
+        .thenReturn(hosts[0], hosts[1], hosts[2]).thenReturn(null);
+
+    NioFetcher<Text, Text> underTest = new NioFetcher<Text, Text>(job, id,
+        ss, mm, r, metrics, except, key, numHosts, 1);
+    underTest.start();
+    try {
+      for (MapHost host : hosts) {
+        verify(ss, timeout(20000)).freeHost(host);
+      }
+    } finally {
+      underTest.shutDown();
+      for (ShuffleServer server : servers) {
+        server.join();
+      }
+    }
+
+    for (int i = 0; i < mapIds.size(); i++) {
+      verify(ss).copySucceeded(eq(mapIds.get(i)), eq(hosts[i / 2]),
+          eq((long) segments.get(i).length), anyLong(), eq(outputs.get(i)));
+      assertArrayEquals(datas.get(i), outputs.get(i).getMemory());
+    }
+    verify(ss, never()).copyFailed(any(TaskAttemptID.class),
+        any(MapHost.class), anyBoolean(), anyBoolean());
+    verify(ss, never()).putBackKnownMapOutput(any(MapHost.class),
+        any(TaskAttemptID.class));
+    verify(except, never()).reportException(any(Throwable.class));
+  }
+
+  /**
+   * A response with a content length on a connection which the server keeps
+   * open ends at its content length, and the bytes after it are not read as
+   * map outputs.
+   */
+  @Test(timeout=30000)
+  public void testCopyFromHostKeepAlive() throws Exception {
+    byte[] data1 = new byte[1000];
+    byte[] data2 = new byte[1000];
+    Arrays.fill(data1, (byte) 1);
+    Arrays.fill(data2, (byte) 2);
+    byte[] body = createBody(map1ID, createSegment(data1), data1.length);
+    byte[] trailer = createBody(map2ID, createSegment(data2), data2.length);
+
+    ShuffleServer server = new ShuffleServer(body, trailer);
+    server.start();
+    MapHost host = createHost(server.getPort());
+
+    InMemoryMapOutput<Text, Text> output1 = new InMemoryMapOutput<Text, Text>(
+        job, map1ID, mm, data1.length, null, true);
+    when(mm.reserve(eq(map1ID), anyLong(), anyInt())).thenReturn(output1);
+
+    fetch(host, server, 1024 * 1024);
+
+    verify(ss).copySucceeded(eq(map1ID), eq(host), anyLong(), anyLong(),
+        eq(output1));
+    verify(ss, never()).copySucceeded(eq(map2ID), any(MapHost.class),
+        anyLong(), anyLong(), any(MapOutput.class));
+    verify(mm, never()).reserve(eq(map2ID), anyLong(), anyInt());
+    verify(ss).copyFailed(map2ID, host, true, false);
+    verify(ss).putBackKnownMapOutput(host, map2ID);
+    assertArrayEquals(data1, output1.getMemory());
+  }
+
+  @Test(timeout=30000)
+  public void testCopyFromHostOnDisk() throws Exception {
+    byte[] data1 = new byte[100000];
+    new Random(1).nextBytes(data1);
+    byte[] segment1 = createSegment(data1);
+
+    ShuffleServer server = new ShuffleServer(
+        createBody(map1ID, segment1, data1.length));
+    server.start();
+    MapHost host = createHost(server.getPort());
+
+    FileSystem fs = FileSystem.getLocal(job).getRaw();
+    Path dir = new Path(System.getProperty("test.build.data", "/tmp"),
+        "TestNioFetcher");
+    fs.delete(dir, true);
+    OnDiskMapOutput<Text, Text> output1 = new OnDiskMapOutput<Text, Text>(
+        map1ID, id, mm, data1.length, job, mock(MapOutputFile.class), 0,
+        true, fs, new Path(dir, "map1.out"));
+    when(mm.reserve(eq(map1ID), anyLong(), anyInt())).thenReturn(output1);
+
+    // map outputs which go to disk are not buffered
+    fetch(host, server, 1);
+
+    verify(ss).copySucceeded(eq(map1ID), eq(host), eq((long) segment1.length),
+        anyLong(), eq(output1));
+    verify(ss).putBackKnownMapOutput(host, map2ID);
+    verify(except, never()).reportException(any(Throwable.class));
+    FileStatus[] files = fs.listStatus(dir);
+    assertEquals(1, files.length);
+    byte[] written = new byte[(int) files[0].getLen()];
+    InputStream in = fs.open(files[0].getPath());
+    try {
+      IOUtils.readFully(in, written, 0, written.length);
+    } finally {
+      in.close();
+    }
+    assertArrayEquals(segment1, written);
+    fs.delete(dir, true);
+  }
+
+  /**
+   * If the merge manager has no memory for a map output, the connection
+   * puts back the map outputs, and the fetcher waits for a merge.
+   */
+  @Test(timeout=30000)
+  public void testCopyFromHostWait() throws Exception {
+    byte[] data1 = new byte[1000];
+    byte[] segment1 = createSegment(data1);
+
+    ShuffleServer server = new ShuffleServer(
+        createBody(map1ID, segment1, data1.length));
+    server.start();
+    MapHost host = createHost(server.getPort());
+
+    when(mm.reserve(eq(map1ID), anyLong(), anyInt())).thenReturn(null);
+
+    fetch(host, server, 1024 * 1024);
+
+    verify(mm, timeout(20000)).waitForResource();
+    verify(ss).putBackKnownMapOutput(host, map1ID);
+    verify(ss).putBackKnownMapOutput(host, map2ID);
+    verify(ss, never()).copyFailed(any(TaskAttemptID.class),
+        any(MapHost.class), anyBoolean(), anyBoolean());
+    verify(ss, never()).copySucceeded(any(TaskAttemptID.class),
+        any(MapHost.class), anyLong(), anyLong(), any(MapOutput.class));
+  }
+
+  @Test(timeout=30000)
+  public void testCopyFromHostChecksumError() throws Exception {
+    byte[] data1 = new byte[1000];
+    byte[] segment1 = createSegment(data1);
+    segment1[10] ^= 1;
+
+    ShuffleServer server = new ShuffleServer(
+        createBody(map1ID, segment1, data1.length));
+    server.start();
+    MapHost host = createHost(server.getPort());
+
+    InMemoryMapOutput<Text, Text> output1 = spy(
+        new InMemoryMapOutput<Text, Text>(job, map1ID, mm, data1.length,
+            null, true));
+    when(mm.reserve(eq(map1ID), anyLong(), anyInt())).thenReturn(output1);
+
+    fetch(host, server, 1024 * 1024);
+
+    verify(output1).abort();
+    verify(ss).copyFailed(map1ID, host, true, false);
+    verify(ss, never()).copySucceeded(any(TaskAttemptID.class),
+        any(MapHost.class), anyLong(), anyLong(), any(MapOutput.class));
+  }
+
+  @Test(timeout=30000)
+  public void testCopyFromHostTruncated() throws Exception {
+    byte[] data1 = new byte[1000];
+    byte[] segment1 = createSegment(data1);
+
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(body);
+    new ShuffleHeader(map1ID.toString(), segment1.length, data1.length, 1)
+        .write(out);
+    out.write(segment1, 0, segment1.length / 2);
+
+    ShuffleServer server = new ShuffleServer(body.toByteArray());
+    server.start();
+    MapHost host = createHost(server.getPort());
+
+    InMemoryMapOutput<Text, Text> output1 = spy(
+        new InMemoryMapOutput<Text, Text>(job, map1ID, mm, data1.length,
+            null, true));
+    when(mm.reserve(eq(map1ID), anyLong(), anyInt())).thenReturn(output1);
+
+    NioFetcher<Text, Text> underTest = new NioFetcher<Text, Text>(job, id,
+        ss, mm, r, metrics, except, key, 1, 1024 * 1024);
+    underTest.start();
+    try {
+      verify(ss, timeout(20000)).freeHost(host);
+    } finally {
+      underTest.shutDown();
+      server.join();
+    }
+
+    verify(output1).abort();
+    verify(ss).copyFailed(map1ID, host, true, false);
+    verify(ss).putBackKnownMapOutput(host, map1ID);
+    verify(ss).putBackKnownMapOutput(host, map2ID);
+    verify(ss, never()).copySucceeded(any(TaskAttemptID.class),
+        any(MapHost.class), anyLong(), anyLong(), any(MapOutput.class));
+  }
+
+  @Test(timeout=30000)
+  public void testCopyFromHostConnectionRefused() throws Exception {
+    ServerSocket socket = new ServerSocket(0);
+    int port = socket.getLocalPort();
+    socket.close();
+    MapHost host = createHost(port);
+
+    NioFetcher<Text, Text> underTest = new NioFetcher<Text, Text>(job, id,
+        ss, mm, r, metrics, except, key, 1, 1024 * 1024);
+    underTest.start();
+    try {
+      verify(ss, timeout(20000)).freeHost(host);
+    } finally {
+      underTest.shutDown();
+    }
+
+    verify(ss).copyFailed(map1ID, host, false, true);
+    verify(ss).copyFailed(map2ID, host, false, true);
+    verify(ss).putBackKnownMapOutput(host, map1ID);
+    verify(ss).putBackKnownMapOutput(host, map2ID);
+  }
+
+  /**
+   * Answers a single shuffle request with the given body, the way the
+   * ShuffleHandler does. With a trailer, the response has a content length
+   * and is followed by the trailer, and the connection is kept open until
+   * the client closes it.
+   */
+  private class ShuffleServer extends Thread {
+    private final ServerSocket server;
+    private final byte[] body;
+    private final byte[] trailer;
+    private volatile String urlHash;
+
+    ShuffleServer(byte[] body) throws IOException {
+      this(body, null);
+    }
+
+    ShuffleServer(byte[] body, byte[] trailer) throws IOException {
+      this.server = new ServerSocket(0);
+      this.body = body;
+      this.trailer = trailer;
+      setDaemon(true);
+    }
+
+    int getPort() {
+      return server.getLocalPort();
+    }
+
+    @Override
+    public void run() {
+      try {
+        Socket socket = server.accept();
+        try {
+          BufferedReader in = new BufferedReader(new InputStreamReader(
+              socket.getInputStream(), Charsets.ISO_8859_1));
+          List<String> request = new ArrayList<String>();
+          String line;
+          while ((line = in.readLine()) != null && !line.isEmpty()) {
+            request.add(line);
+          }
+          for (String header : request) {
+            if (header.startsWith(SecureShuffleUtils.HTTP_HEADER_URL_HASH +
+                ":")) {
+              urlHash = header.substring(header.indexOf(':') + 1).trim();
+            }
+          }
+          String replyHash = SecureShuffleUtils.generateHash(
+              urlHash.getBytes(Charsets.UTF_8), key);
+          StringBuilder response = new StringBuilder();
+          response.append("HTTP/1.1 200 OK\r\n");
+          response.append(SecureShuffleUtils.HTTP_HEADER_REPLY_URL_HASH)
+              .append(": ").append(replyHash).append("\r\n");
+          response.append(ShuffleHeader.HTTP_HEADER_NAME).append(": ")
+              .append(ShuffleHeader.DEFAULT_HTTP_HEADER_NAME).append("\r\n");
+          response.append(ShuffleHeader.HTTP_HEADER_VERSION).append(": ")
+              .append(ShuffleHeader.DEFAULT_HTTP_HEADER_VERSION)
+              .append("\r\n");
+          if (trailer != null) {
+            response.append("Content-Length: ").append(body.length)
+                .append("\r\n");
+            response.append("Connection: keep-alive\r\n\r\n");
+          } else {
+            response.append("Connection: close\r\n\r\n");
+          }
+          OutputStream out = socket.getOutputStream();
+          out.write(response.toString().getBytes(Charsets.ISO_8859_1));
+          out.write(body);
+          if (trailer != null) {
+            out.write(trailer);
+          }
+          out.flush();
+          if (trailer != null) {
+            // wait for the client to close the connection
+            while (in.read() >= 0) {
+            }
+          }
+        } finally {
+          socket.close();
+          server.close();
+        }
+      } catch (IOException ioe) {
+        throw new RuntimeException(ioe);
+      }
+    }
+  }
+}
@@ -17,15 +17,27 @@
  */
 package org.apache.hadoop.mapreduce.task.reduce;
 
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.hadoop.mapred.Counters;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.TaskAttemptID;
 import org.apache.hadoop.mapred.TaskStatus;
 import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.TaskCounter;
 import org.apache.hadoop.mapreduce.TaskID;
 import org.apache.hadoop.mapreduce.TaskType;
 import org.apache.hadoop.util.Progress;
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 public class TestShuffleScheduler {
 
@@ -66,4 +78,157 @@ public void addFetchFailedMap(TaskAttemptID mapTaskId) {
         0.0f);
     Assert.assertTrue(scheduler.waitUntilDone(1));
   }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  @Test(timeout=30000)
+  public void testTipFailedWaitsForCommit() throws Exception {
+    JobConf job = new JobConf();
+    job.setNumMapTasks(1);
+
+    TaskStatus status = new TaskStatus() {
+      @Override
+      public boolean getIsMap() {
+        return false;
+      }
+
+      @Override
+      public void addFetchFailedMap(TaskAttemptID mapTaskId) {
+      }
+    };
+    Progress progress = new Progress();
+    Counters counters = new Counters();
+    Counters.Counter shuffledMaps =
+        counters.findCounter(TaskCounter.SHUFFLED_MAPS);
+    TaskAttemptID reduceId = new TaskAttemptID("314159", 0, TaskType.REDUCE,
+        0, 0);
+    final ShuffleSchedulerImpl scheduler = new ShuffleSchedulerImpl(job,
+        status, reduceId, null, progress, shuffledMaps,
+        counters.findCounter(TaskCounter.REDUCE_SHUFFLE_BYTES),
+        counters.findCounter(TaskCounter.FAILED_SHUFFLE));
+
+    // the commit of the output blocks until it is released
+    final CountDownLatch committing = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final MapOutput output = mock(MapOutput.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        committing.countDown();
+        release.await();
+        return null;
+      }
+    }).when(output).commit();
+
+    final TaskAttemptID mapId = new TaskAttemptID("314159", 0, TaskType.MAP,
+        0, 0);
+    final MapHost host = new MapHost("host0", "http://host0:80/");
+    Thread fetcher = new Thread() {
+      @Override
+      public void run() {
+        try {
+          scheduler.copySucceeded(mapId, host, 1, 1, output);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    fetcher.start();
+    committing.await();
+
+    Thread failer = new Thread() {
+      @Override
+      public void run() {
+        scheduler.tipFailed(mapId.getTaskID());
+      }
+    };
+    failer.start();
+    failer.join(500);
+    Assert.assertTrue("tipFailed should wait for the commit",
+        failer.isAlive());
+
+    release.countDown();
+    fetcher.join();
+    failer.join();
+    // the map is counted once
+    Assert.assertEquals(1, shuffledMaps.getValue());
+    Assert.assertEquals(1.0f, progress.getProgress(), 0.0f);
+    Assert.assertTrue(scheduler.waitUntilDone(1));
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  @Test(timeout=30000)
+  public void testConcurrentFetchers() throws Exception {
+    final int numMaps = 200;
+    final int numHosts = 10;
+    JobConf job = new JobConf();
+    job.setNumMapTasks(numMaps);
+
+    TaskStatus status = new TaskStatus() {
+      @Override
+      public boolean getIsMap() {
+        return false;
+      }
+
+      @Override
+      public void addFetchFailedMap(TaskAttemptID mapTaskId) {
+      }
+    };
+    Counters counters = new Counters();
+    Counters.Counter shuffledMaps =
+        counters.findCounter(TaskCounter.SHUFFLED_MAPS);
+    TaskAttemptID reduceId = new TaskAttemptID("314159", 0, TaskType.REDUCE,
+        0, 0);
+    final ShuffleSchedulerImpl scheduler = new ShuffleSchedulerImpl(job,
+        status, reduceId, null, new Progress(), shuffledMaps,
+        counters.findCounter(TaskCounter.REDUCE_SHUFFLE_BYTES),
+        counters.findCounter(TaskCounter.FAILED_SHUFFLE));
+
+    List<Thread> fetchers = new ArrayList<Thread>();
+    for (int i = 0; i < 8; i++) {
+      Thread fetcher = new Thread() {
+        @Override
+        public void run() {
+          try {
+            while (true) {
+              MapHost host = scheduler.getHost();
+              try {
+                for (Object mapId : scheduler.getMapsForHost(host)) {
+                  scheduler.copySucceeded(
+                      (org.apache.hadoop.mapreduce.TaskAttemptID) mapId,
+                      host, 1, 1, mock(MapOutput.class));
+                }
+              } finally {
+                scheduler.freeHost(host);
+              }
+            }
+          } catch (InterruptedException e) {
+            // done
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+      fetcher.start();
+      fetchers.add(fetcher);
+    }
+
+    // every map output is announced twice, as by two attempts
+    for (int attempt = 0; attempt < 2; attempt++) {
+      for (int i = 0; i < numMaps; i++) {
+        TaskAttemptID mapId = new TaskAttemptID("314159", 0, TaskType.MAP,
+            i, attempt);
+        scheduler.addKnownMapOutput("host" + ((i + attempt) % numHosts),
+            "http://host" + ((i + attempt) % numHosts) + ":80/", mapId);
+      }
+    }
+
+    while (!scheduler.waitUntilDone(100)) {
+    }
+    for (Thread fetcher : fetchers) {
+      fetcher.interrupt();
+      fetcher.join();
+    }
+    scheduler.close();
+    Assert.assertEquals(numMaps, shuffledMaps.getValue());
+  }
 }
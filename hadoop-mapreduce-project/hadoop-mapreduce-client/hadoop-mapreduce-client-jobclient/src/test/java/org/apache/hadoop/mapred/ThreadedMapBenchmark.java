@@ -46,6 +46,7 @@
  * <li>File size per map.
  * <li>Number of spills per map. 
  * <li>Number of maps per host.
+ * <li>Whether the map side sort compares normalized key prefixes.
  * <p>
  * Sort is used for benchmarking the performance. 
  */
@@ -190,11 +191,13 @@ public int run (String[] args) throws Exception {
       "Usage: threadedmapbenchmark " +
       "[-dataSizePerMap <data size (in mb) per map, default is 128 mb>] " + 
       "[-numSpillsPerMap <number of spills per map, default is 2>] " +
-      "[-numMapsPerHost <number of maps per host, default is 1>]";
+      "[-numMapsPerHost <number of maps per host, default is 1>] " +
+      "[-sortKeyPrefix (also sort with key prefixes)]";
     
     int dataSizePerMap = 128; // in mb
     int numSpillsPerMap = 2;
     int numMapsPerHost = 1;
+    boolean sortKeyPrefix = false;
     JobConf masterConf = new JobConf(getConf());
     
     for (int i = 0; i < args.length; i++) { // parse command line
@@ -204,6 +207,8 @@ public int run (String[] args) throws Exception {
         numSpillsPerMap = Integer.parseInt(args[++i]);
       } else if (args[i].equals("-numMapsPerHost")) {
         numMapsPerHost = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-sortKeyPrefix")) {
+        sortKeyPrefix = true;
       } else {
         System.err.println(usage);
         System.exit(-1);
@@ -260,6 +265,23 @@ public int run (String[] args) throws Exception {
                + " millisec");
       fs.delete(OUTPUT_DIR, true);
       
+      if (sortKeyPrefix) {
+        // compare the key prefixes in the map side sort
+        JobConf prefixJob = new JobConf(job, ThreadedMapBenchmark.class);
+        prefixJob.setBoolean(JobContext.MAP_SORT_KEY_PREFIX, true);
+        prefixJob.setJobName("threaded-map-benchmark-key-prefix");
+        prefixJob.setJarByClass(ThreadedMapBenchmark.class);
+
+        LOG.info("Running sort with 1 spill per map and key prefixes");
+        startTime = System.currentTimeMillis();
+        JobClient.runJob(prefixJob);
+        endTime = System.currentTimeMillis();
+
+        LOG.info("Total time taken : " + String.valueOf(endTime - startTime)
+                 + " millisec");
+        fs.delete(OUTPUT_DIR, true);
+      }
+
       // set mapreduce.task.io.sort.mb to have multiple spills
       JobConf spilledJob = new JobConf(job, ThreadedMapBenchmark.class);
       ioSortMb = (int)Math.ceil(FACTOR 
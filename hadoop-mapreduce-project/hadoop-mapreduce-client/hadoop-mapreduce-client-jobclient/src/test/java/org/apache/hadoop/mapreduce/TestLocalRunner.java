@@ -512,6 +512,13 @@ private void verifyNumberJob(int numMaps) throws Exception {
    */
   private void doMultiReducerTest(int numMaps, int numReduces,
       int parallelMaps, int parallelReduces) throws Exception {
+    doMultiReducerTest(numMaps, numReduces, parallelMaps, parallelReduces, 1,
+        false);
+  }
+
+  private void doMultiReducerTest(int numMaps, int numReduces,
+      int parallelMaps, int parallelReduces, int spillThreads,
+      boolean combine) throws Exception {
 
     Path in = getNumberDirPath();
     Path out = getOutputPath();
@@ -533,8 +540,15 @@ private void doMultiReducerTest(int numMaps, int numReduces,
 
     Job job = Job.getInstance();
     job.setNumReduceTasks(numReduces);
+    job.getConfiguration().setInt(MRJobConfig.MAP_SORT_SPILL_THREADS,
+        spillThreads);
 
     job.setMapperClass(SequenceMapper.class);
+    if (combine) {
+      // The identity reducer keeps every record, so the output is unchanged
+      // while the combine counters of each spilled partition add up.
+      job.setCombinerClass(Reducer.class);
+    }
     job.setOutputKeyClass(Text.class);
     job.setOutputValueClass(NullWritable.class);
     FileInputFormat.addInputPath(job, in);
@@ -547,6 +561,15 @@ private void doMultiReducerTest(int numMaps, int numReduces,
     assertTrue("Job failed!!", result);
 
     verifyNumberJob(numMaps);
+    if (combine) {
+      Counters counters = job.getCounters();
+      long mapOutput =
+          counters.findCounter(TaskCounter.MAP_OUTPUT_RECORDS).getValue();
+      assertEquals("Combine input records", mapOutput,
+          counters.findCounter(TaskCounter.COMBINE_INPUT_RECORDS).getValue());
+      assertEquals("Combine output records", mapOutput,
+          counters.findCounter(TaskCounter.COMBINE_OUTPUT_RECORDS).getValue());
+    }
   }
   
   @Test
@@ -569,5 +592,10 @@ public void testMultiMapMultiReduce() throws Exception {
     doMultiReducerTest(4, 4, 2, 2);
   }
 
+  @Test
+  public void testMultiReduceParallelSpill() throws Exception {
+    doMultiReducerTest(2, 4, 1, 2, 3, true);
+  }
+
 }
 
@@ -25,12 +25,16 @@
 import java.io.DataOutput;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Random;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
 import static org.junit.Assert.*;
 
 import org.apache.commons.logging.Log;
@@ -43,11 +47,27 @@
 import org.apache.hadoop.mapreduce.MRConfig;
 import org.apache.hadoop.util.ReflectionUtils;
 
+/**
+ * Runs the map side collection with and without
+ * {@link MRJobConfig#MAP_SORT_KEY_PREFIX}.
+ */
+@RunWith(Parameterized.class)
 public class TestMapCollection {
 
   private static final Log LOG = LogFactory.getLog(
       TestMapCollection.class.getName());
 
+  private final boolean sortKeyPrefix;
+
+  public TestMapCollection(boolean sortKeyPrefix) {
+    this.sortKeyPrefix = sortKeyPrefix;
+  }
+
+  @Parameters
+  public static Collection<Object[]> getParameters() {
+    return Arrays.asList(new Object[][]{{false}, {true}});
+  }
+
   public static abstract class FillWritable implements Writable, Configurable {
     private int len;
     protected boolean disableRead;
@@ -143,8 +163,14 @@ public void setConf(Configuration conf) {
     }
   }
 
+  /**
+   * Orders the keys by length. The key prefix is half the serialized length,
+   * so keys whose lengths differ by one have equal prefixes and are still
+   * compared.
+   */
   public static class VariableComparator
-      implements RawComparator<KeyWritable>, Configurable {
+      implements RawComparator<KeyWritable>, KeyPrefixComparator,
+      Configurable {
     private boolean readLen;
     public VariableComparator() { }
     @Override
@@ -176,6 +202,15 @@ public int compare(byte[] b1, int s1, int l1,
       }
       return l1 - l2;
     }
+    @Override
+    public long getKeyPrefix(byte[] b, int s, int l) {
+      final int n = readLen && l > 0 ? WritableUtils.decodeVIntSize(b[s]) : 0;
+      for (int i = s + n; i < s + l; ++i) {
+        assertEquals("Invalid key prefix at " + s, (int)KeyWritable.keyFill,
+            b[i]);
+      }
+      return l / 2;
+    }
   }
 
   public static class SpillReducer
@@ -294,7 +329,7 @@ public void close() {
     }
   }
 
-  private static void runTest(String name, int keylen, int vallen,
+  private void runTest(String name, int keylen, int vallen,
       int records, int ioSortMB, float spillPer)
       throws Exception {
     Configuration conf = new Configuration();
@@ -310,8 +345,10 @@ private static void runTest(String name, int keylen, int vallen,
     runTest(name, job);
   }
 
-  private static void runTest(String name, Job job) throws Exception {
+  private void runTest(String name, Job job) throws Exception {
     job.setNumReduceTasks(1);
+    job.getConfiguration().setBoolean(MRJobConfig.MAP_SORT_KEY_PREFIX,
+        sortKeyPrefix);
     job.getConfiguration().set(MRConfig.FRAMEWORK_NAME, MRConfig.LOCAL_FRAMEWORK_NAME);
     job.getConfiguration().setInt(MRJobConfig.IO_SORT_FACTOR, 1000);
     job.getConfiguration().set("fs.defaultFS", "file:///");
@@ -324,7 +361,8 @@ private static void runTest(String name, Job job) throws Exception {
     job.setMapOutputValueClass(ValWritable.class);
     job.setSortComparatorClass(VariableComparator.class);
 
-    LOG.info("Running " + name);
+    LOG.info("Running " + name +
+        (sortKeyPrefix ? " with key prefixes" : ""));
     assertTrue("Job failed!", job.waitForCompletion(false));
   }
 
@@ -85,6 +85,7 @@
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SlidingWindowReservoir;
+import com.codahale.metrics.Snapshot;
 import com.codahale.metrics.Timer;
 import io.hops.ha.common.TransactionState;
 
@@ -92,6 +93,7 @@ public class ResourceSchedulerWrapper implements ResourceScheduler,
         Configurable {
   private static final String EOL = System.getProperty("line.separator");
   private static final int SAMPLING_SIZE = 60;
+  private static final double NANOS_PER_MS = 1000000.0;
   private ScheduledExecutorService pool;
   // counters for scheduler allocate/handle operations
   private Counter schedulerAllocateCounter;
@@ -432,10 +434,44 @@ private void tearDown() throws IOException {
     if (jobRuntimeLogBW != null) {
       jobRuntimeLogBW.close();
     }
+    // scheduler throughput summary
+    if (metricsON && running) {
+      writeThroughputReport();
+    }
     // shut pool
     if (pool != null)  pool.shutdown();
   }
 
+  /**
+   * Writes the scheduler throughput observed over the whole simulation, one
+   * line per scheduler operation, to throughput.csv in the metrics output
+   * directory. Comparing this file between runs of the same trace is the
+   * scheduler throughput benchmark.
+   */
+  private void writeThroughputReport() throws IOException {
+    BufferedWriter bw = new BufferedWriter(
+            new FileWriter(metricsOutputDir + "/throughput.csv"));
+    try {
+      bw.write("operation,count,ops_per_sec,mean_ms,p99_ms" + EOL);
+      writeThroughputLine(bw, "allocate", schedulerAllocateTimer);
+      writeThroughputLine(bw, "handle", schedulerHandleTimer);
+      for (SchedulerEventType e : SchedulerEventType.values()) {
+        writeThroughputLine(bw, "handle." + e, schedulerHandleTimerMap.get(e));
+      }
+    } finally {
+      bw.close();
+    }
+  }
+
+  private void writeThroughputLine(BufferedWriter bw, String operation,
+                                   Timer timer) throws IOException {
+    Snapshot snapshot = timer.getSnapshot();
+    bw.write(String.format(Locale.US, "%s,%d,%.2f,%.3f,%.3f%s", operation,
+            timer.getCount(), timer.getMeanRate(),
+            snapshot.getMean() / NANOS_PER_MS,
+            snapshot.get99thPercentile() / NANOS_PER_MS, EOL));
+  }
+
   @SuppressWarnings("unchecked")
   private void initMetrics() throws Exception {
     metrics = new MetricRegistry();
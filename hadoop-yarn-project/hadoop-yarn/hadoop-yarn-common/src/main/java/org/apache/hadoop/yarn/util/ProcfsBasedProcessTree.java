@@ -53,9 +53,9 @@ public class ProcfsBasedProcessTree extends ResourceCalculatorProcessTree {
 
   static final Log LOG = LogFactory.getLog(ProcfsBasedProcessTree.class);
 
-  private static final String PROCFS = "/proc/";
+  static final String PROCFS = "/proc/";
 
-  private static final Pattern PROCFS_STAT_FILE_FORMAT = Pattern.compile(
+  static final Pattern PROCFS_STAT_FILE_FORMAT = Pattern.compile(
       "^([0-9-]+)\\s([^\\s]+)\\s[^\\s]\\s([0-9-]+)\\s([0-9-]+)\\s([0-9-]+)\\s" +
           "([0-9-]+\\s){7}([0-9]+)\\s([0-9]+)\\s([0-9-]+\\s){7}([0-9]+)\\s([0-9]+)" +
           "(\\s[0-9-]+){15}");
@@ -148,6 +148,11 @@ public static MemInfo getMemInfoByName(String name) {
   static private Pattern numberPattern = Pattern.compile("[1-9][0-9]*");
   private Long cpuTime = 0L;
 
+  // the processes the tree is built from
+  private final ProcfsProcessTable processTable;
+  // whether the table is updated by its owner rather than by this tree
+  private final boolean sharedTable;
+
   protected Map<String, ProcessInfo> processTree =
       new HashMap<String, ProcessInfo>();
 
@@ -155,6 +160,24 @@ public ProcfsBasedProcessTree(String pid) {
     this(pid, PROCFS);
   }
 
+  /**
+   * Build a new process tree rooted at the pid from a process table shared
+   * with other process trees. Updating the tree does not update the table;
+   * the owner of the table must update it before updating the trees.
+   *
+   * @param pid
+   *     root of the process tree
+   * @param processTable
+   *     the shared process table
+   */
+  public ProcfsBasedProcessTree(String pid, ProcfsProcessTable processTable) {
+    super(pid);
+    this.pid = getValidPID(pid);
+    this.procfsDir = processTable.getProcfsDir();
+    this.processTable = processTable;
+    this.sharedTable = true;
+  }
+
   @Override
   public void setConf(Configuration conf) {
     super.setConf(conf);
@@ -180,6 +203,8 @@ public ProcfsBasedProcessTree(String pid, String procfsDir) {
     super(pid);
     this.pid = getValidPID(pid);
     this.procfsDir = procfsDir;
+    this.processTable = new ProcfsProcessTable(procfsDir);
+    this.sharedTable = false;
   }
 
   /**
@@ -208,55 +233,36 @@ public static boolean isAvailable() {
   @Override
   public void updateProcessTree() {
     if (!pid.equals(deadPid)) {
-      // Get the list of processes
-      List<String> processList = getProcessList();
-
-      Map<String, ProcessInfo> allProcessInfo =
-          new HashMap<String, ProcessInfo>();
+      if (!sharedTable) {
+        processTable.update();
+      }
 
       // cache the processTree to get the age for processes
       Map<String, ProcessInfo> oldProcs =
           new HashMap<String, ProcessInfo>(processTree);
       processTree.clear();
 
-      ProcessInfo me = null;
-      for (String proc : processList) {
-        // Get information for each process
-        ProcessInfo pInfo = new ProcessInfo(proc);
-        if (constructProcessInfo(pInfo, procfsDir) != null) {
-          allProcessInfo.put(proc, pInfo);
-          if (proc.equals(this.pid)) {
-            me = pInfo; // cache 'me'
-            processTree.put(proc, pInfo);
-          }
-        }
-      }
-
+      ProcessInfo me = copyOf(processTable.get(this.pid));
       if (me == null) {
         return;
       }
+      processTree.put(this.pid, me);
 
-      // Add each process to its parent.
-      for (Map.Entry<String, ProcessInfo> entry : allProcessInfo.entrySet()) {
-        String pID = entry.getKey();
-        if (!pID.equals("1")) {
-          ProcessInfo pInfo = entry.getValue();
-          ProcessInfo parentPInfo = allProcessInfo.get(pInfo.getPpid());
-          if (parentPInfo != null) {
-            parentPInfo.addChild(pInfo);
-          }
-        }
-      }
-
-      // now start constructing the process-tree
+      // now start constructing the process-tree, reading only the
+      // processes in the tree
       LinkedList<ProcessInfo> pInfoQueue = new LinkedList<ProcessInfo>();
-      pInfoQueue.addAll(me.getChildren());
+      pInfoQueue.add(me);
       while (!pInfoQueue.isEmpty()) {
-        ProcessInfo pInfo = pInfoQueue.remove();
-        if (!processTree.containsKey(pInfo.getPid())) {
-          processTree.put(pInfo.getPid(), pInfo);
+        ProcessInfo parent = pInfoQueue.remove();
+        for (String child : processTable.getChildren(parent.getPid())) {
+          ProcessInfo pInfo = copyOf(processTable.get(child));
+          // skip processes which exited or were reparented since the update
+          if (pInfo != null && parent.getPid().equals(pInfo.getPpid()) &&
+              !processTree.containsKey(child)) {
+            processTree.put(child, pInfo);
+            pInfoQueue.add(pInfo);
+          }
         }
-        pInfoQueue.addAll(pInfo.getChildren());
       }
 
       // update age values and compute the number of jiffies since last update
@@ -478,26 +484,18 @@ private static String getValidPID(String pid) {
   }
 
   /**
-   * Get the list of all processes in the system.
+   * Copy the information of a process in the process table, so that the
+   * ages and jiffies of the tree do not change the table.
    */
-  private List<String> getProcessList() {
-    String[] processDirs = (new File(procfsDir)).list();
-    List<String> processList = new ArrayList<String>();
-
-    for (String dir : processDirs) {
-      Matcher m = numberPattern.matcher(dir);
-      if (!m.matches()) {
-        continue;
-      }
-      try {
-        if ((new File(procfsDir, dir)).isDirectory()) {
-          processList.add(dir);
-        }
-      } catch (SecurityException s) {
-        // skip this process
-      }
-    }
-    return processList;
+  private static ProcessInfo copyOf(ProcessInfo info) {
+    if (info == null) {
+      return null;
+    }
+    ProcessInfo ret = new ProcessInfo(info.getPid());
+    ret.updateProcessInfo(info.getName(), info.getPpid(), info.getPgrpId(),
+        info.getSessionId(), info.getUtime(), info.getStime(), info.getVmem(),
+        info.getRssmemPage());
+    return ret;
   }
 
   /**
@@ -581,7 +579,7 @@ public String toString() {
   /**
    * Class containing information of a process.
    */
-  private static class ProcessInfo {
+  static class ProcessInfo {
     private String pid; // process-id
     private String name; // command name
     private Integer pgrpId; // process group-id
@@ -602,9 +600,6 @@ private static class ProcessInfo {
     // We need this to compute the cumulative CPU time
     // because the subprocess may finish earlier than root process
 
-    private List<ProcessInfo> children = new ArrayList<ProcessInfo>();
-        // list of children
-
     public ProcessInfo(String pid) {
       this.pid = pid;
       // seeing this the first time.
@@ -689,14 +684,6 @@ public void updateAge(ProcessInfo oldInfo) {
       this.age = oldInfo.age + 1;
     }
 
-    public boolean addChild(ProcessInfo p) {
-      return children.add(p);
-    }
-
-    public List<ProcessInfo> getChildren() {
-      return children;
-    }
-
     public String getCmdLine(String procfsDir) {
       String ret = "N/A";
       if (pid == null) {
@@ -0,0 +1,268 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.yarn.util;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.yarn.util.ProcfsBasedProcessTree.ProcessInfo;
+
+import com.google.common.base.Charsets;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The processes of a proc file-system, shared by the
+ * {@link ProcfsBasedProcessTree}s of a node so that the file-system is
+ * scanned once per update rather than once per process-tree. Works only on
+ * Linux.
+ * <p/>
+ * An update lists the processes and reads the stat file of the new ones
+ * only, which is enough to find the parent of every process. The stat file
+ * of a process is read again when a process-tree asks for it, at most once
+ * per update. The stat files of the other processes are read again every
+ * {@link #FULL_SCAN_INTERVAL} updates, in case their pids were reused.
+ * <p/>
+ * The table is not thread-safe.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public class ProcfsProcessTable {
+
+  static final Log LOG = LogFactory.getLog(ProcfsProcessTable.class);
+
+  /** Number of updates after which all stat files are read again */
+  static final int FULL_SCAN_INTERVAL = 10;
+
+  private static final Pattern NUMBER_PATTERN = Pattern.compile("[1-9][0-9]*");
+
+  private static class Entry {
+    private ProcessInfo info;
+    // the update in which the stat file was read
+    private long update;
+
+    Entry(ProcessInfo info, long update) {
+      this.info = info;
+      this.update = update;
+    }
+  }
+
+  private final String procfsDir;
+
+  private Map<String, Entry> processes = new HashMap<String, Entry>();
+  private final Map<String, List<String>> children =
+      new HashMap<String, List<String>>();
+  private long update = 0;
+
+  // reused for every stat file
+  private final StatBuffer stat = new StatBuffer();
+  private final Matcher statMatcher =
+      ProcfsBasedProcessTree.PROCFS_STAT_FILE_FORMAT.matcher("");
+
+  public ProcfsProcessTable() {
+    this(ProcfsBasedProcessTree.PROCFS);
+  }
+
+  /**
+   * @param procfsDir
+   *     the root of a proc file system - only used for testing.
+   */
+  public ProcfsProcessTable(String procfsDir) {
+    this.procfsDir = procfsDir;
+  }
+
+  String getProcfsDir() {
+    return procfsDir;
+  }
+
+  /**
+   * Update the table with the processes currently in the proc file system.
+   */
+  public void update() {
+    update++;
+    boolean fullScan = (update % FULL_SCAN_INTERVAL == 0);
+
+    String[] processDirs = (new File(procfsDir)).list();
+    if (processDirs == null) {
+      processDirs = new String[0];
+    }
+    Map<String, Entry> current = new HashMap<String, Entry>(
+        processDirs.length * 2);
+    for (String dir : processDirs) {
+      if (!NUMBER_PATTERN.matcher(dir).matches()) {
+        continue;
+      }
+      Entry entry = processes.get(dir);
+      if (entry == null || fullScan) {
+        ProcessInfo info = readProcessInfo(dir);
+        if (info == null) {
+          continue;
+        }
+        entry = new Entry(info, update);
+      }
+      current.put(dir, entry);
+    }
+    processes = current;
+
+    children.clear();
+    for (Map.Entry<String, Entry> e : processes.entrySet()) {
+      if (!e.getKey().equals("1")) {
+        String ppid = e.getValue().info.getPpid();
+        List<String> siblings = children.get(ppid);
+        if (siblings == null) {
+          siblings = new ArrayList<String>();
+          children.put(ppid, siblings);
+        }
+        siblings.add(e.getKey());
+      }
+    }
+  }
+
+  /**
+   * Get the current information of a process, reading its stat file if it
+   * was not read in this update.
+   *
+   * @return the information of the process, null if it is not running.
+   */
+  ProcessInfo get(String pid) {
+    Entry entry = processes.get(pid);
+    if (entry != null && entry.update == update) {
+      return entry.info;
+    }
+    ProcessInfo info = readProcessInfo(pid);
+    if (info == null) {
+      processes.remove(pid);
+      return null;
+    }
+    if (entry == null) {
+      processes.put(pid, new Entry(info, update));
+    } else {
+      entry.info = info;
+      entry.update = update;
+    }
+    return info;
+  }
+
+  /**
+   * @return the pids of the children of a process as of the last update
+   */
+  List<String> getChildren(String pid) {
+    List<String> ret = children.get(pid);
+    return ret == null ? Collections.<String>emptyList() : ret;
+  }
+
+  private ProcessInfo readProcessInfo(String pid) {
+    File pidDir = new File(procfsDir, pid);
+    if (!stat.read(new File(pidDir, ProcfsBasedProcessTree.PROCFS_STAT_FILE))) {
+      return null;
+    }
+    Matcher m = statMatcher.reset(stat);
+    if (!m.find()) {
+      LOG.warn("Unexpected: procfs stat file is not in the expected format" +
+          " for process with pid " + pid);
+      return null;
+    }
+    // Set (name) (ppid) (pgrpId) (session) (utime) (stime) (vsize) (rss)
+    ProcessInfo info = new ProcessInfo(pid);
+    info.updateProcessInfo(m.group(2), m.group(3),
+        Integer.parseInt(m.group(4)), Integer.parseInt(m.group(5)),
+        Long.parseLong(m.group(7)), new BigInteger(m.group(8)),
+        Long.parseLong(m.group(10)), Long.parseLong(m.group(11)));
+    return info;
+  }
+
+  /**
+   * The first line of a stat file, read into a reused buffer and matched
+   * without decoding it into a String.
+   */
+  private static class StatBuffer implements CharSequence {
+    private byte[] data = new byte[1024];
+    private int length = 0;
+
+    /**
+     * @return false if the file could not be read
+     */
+    boolean read(File file) {
+      FileInputStream in;
+      try {
+        in = new FileInputStream(file);
+      } catch (FileNotFoundException f) {
+        // The process vanished in the interim!
+        return false;
+      }
+      length = 0;
+      try {
+        int n;
+        while ((n = in.read(data, length, data.length - length)) > 0) {
+          length += n;
+          if (length == data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+          }
+        }
+      } catch (IOException io) {
+        LOG.warn("Error reading the stream " + io);
+        return false;
+      } finally {
+        IOUtils.closeQuietly(in);
+      }
+      // only one line
+      for (int i = 0; i < length; i++) {
+        if (data[i] == '\n') {
+          length = i;
+          break;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int length() {
+      return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+      return (char) (data[index] & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return new String(data, start, end - start, Charsets.ISO_8859_1);
+    }
+
+    @Override
+    public String toString() {
+      return new String(data, 0, length, Charsets.ISO_8859_1);
+    }
+  }
+}
@@ -645,6 +645,65 @@ private void testMemForOlderProcesses(boolean smapEnabled)
     }
   }
 
+  /**
+   * Verifies that process trees sharing a process table each find their own
+   * processes, including processes started and exited between updates.
+   *
+   * @throws IOException
+   *     if there was a problem setting up the fake procfs directories or
+   *     files.
+   */
+  @Test(timeout = 30000)
+  public void testSharedProcessTable() throws IOException {
+    String[] pids = {"100", "200", "300", "400"};
+    File procfsRootDir = new File(TEST_ROOT_DIR, "proc");
+
+    try {
+      setupProcfsRootDir(procfsRootDir);
+      setupPidDirs(procfsRootDir, pids);
+
+      // 100 and 300 are the roots of two trees
+      ProcessStatInfo[] procInfos = new ProcessStatInfo[4];
+      procInfos[0] = new ProcessStatInfo(
+          new String[]{"100", "proc1", "1", "100", "100", "100000", "100"});
+      procInfos[1] = new ProcessStatInfo(
+          new String[]{"200", "proc2", "100", "100", "100", "200000", "200"});
+      procInfos[2] = new ProcessStatInfo(
+          new String[]{"300", "proc3", "1", "300", "300", "300000", "300"});
+      procInfos[3] = new ProcessStatInfo(
+          new String[]{"400", "proc4", "300", "300", "300", "400000", "400"});
+      writeStatFiles(procfsRootDir, pids, procInfos, null);
+
+      ProcfsProcessTable table =
+          new ProcfsProcessTable(procfsRootDir.getAbsolutePath());
+      ProcfsBasedProcessTree tree1 = new ProcfsBasedProcessTree("100", table);
+      ProcfsBasedProcessTree tree2 = new ProcfsBasedProcessTree("300", table);
+      table.update();
+      tree1.updateProcessTree();
+      tree2.updateProcessTree();
+      Assert.assertEquals(300000L, tree1.getCumulativeVmem());
+      Assert.assertEquals(700000L, tree2.getCumulativeVmem());
+
+      // 500 starts under 100, 400 exits
+      String[] newPids = {"500"};
+      setupPidDirs(procfsRootDir, newPids);
+      ProcessStatInfo[] newProcInfos = new ProcessStatInfo[1];
+      newProcInfos[0] = new ProcessStatInfo(
+          new String[]{"500", "proc5", "100", "100", "100", "500000", "500"});
+      writeStatFiles(procfsRootDir, newPids, newProcInfos, null);
+      Assert.assertTrue(FileUtil.fullyDelete(new File(procfsRootDir, "400")));
+
+      table.update();
+      tree1.updateProcessTree();
+      tree2.updateProcessTree();
+      Assert.assertEquals(800000L, tree1.getCumulativeVmem());
+      Assert.assertEquals(300000L, tree2.getCumulativeVmem());
+      Assert.assertEquals(300000L, tree1.getCumulativeVmem(1));
+    } finally {
+      FileUtil.fullyDelete(procfsRootDir);
+    }
+  }
+
   /**
    * Verifies ProcfsBasedProcessTree.checkPidPgrpidForMatch() in case of
    * 'constructProcessInfo() returning null' by not writing stat file for the
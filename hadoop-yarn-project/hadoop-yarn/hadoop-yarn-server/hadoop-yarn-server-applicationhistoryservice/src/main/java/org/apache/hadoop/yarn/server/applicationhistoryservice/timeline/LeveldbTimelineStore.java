@@ -19,7 +19,7 @@
 package org.apache.hadoop.yarn.server.applicationhistoryservice.timeline;
 
 import com.google.common.annotations.VisibleForTesting;
-import org.apache.commons.collections.map.LRUMap;
+import com.google.common.cache.CacheBuilder;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -49,10 +49,9 @@
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.EnumSet;
-import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -134,14 +133,24 @@ public class LeveldbTimelineStore extends AbstractService
 
   private static final byte[] EMPTY_BYTES = new byte[0];
 
+  private static final int WRITE_LOCK_STRIPES = 256;
+
+  /**
+   * Maximum size of the writes of concurrent puts which are merged into
+   * one leveldb write batch.
+   */
+  private static final long MAX_WRITE_GROUP_BYTES = 4 * 1024 * 1024;
+
   private Map<EntityIdentifier, StartAndInsertTime> startTimeWriteCache;
   private Map<EntityIdentifier, Long> startTimeReadCache;
 
   /**
    * Per-entity locks are obtained when writing.
    */
-  private final LockMap<EntityIdentifier> writeLocks =
-      new LockMap<EntityIdentifier>();
+  private final StripedLockMap<EntityIdentifier> writeLocks =
+      new StripedLockMap<EntityIdentifier>(WRITE_LOCK_STRIPES);
+
+  private final GroupWriter groupWriter = new GroupWriter();
 
   private final ReentrantReadWriteLock deleteLock =
       new ReentrantReadWriteLock();
@@ -155,7 +164,6 @@ public LeveldbTimelineStore() {
   }
 
   @Override
-  @SuppressWarnings("unchecked")
   protected void serviceInit(Configuration conf) throws Exception {
     Options options = new Options();
     options.createIfMissing(true);
@@ -173,10 +181,12 @@ protected void serviceInit(Configuration conf) throws Exception {
     }
     LOG.info("Using leveldb path " + path);
     db = factory.open(new File(path, FILENAME), options);
-    startTimeWriteCache = Collections
-        .synchronizedMap(new LRUMap(getStartTimeWriteCacheSize(conf)));
-    startTimeReadCache = Collections
-        .synchronizedMap(new LRUMap(getStartTimeReadCacheSize(conf)));
+    startTimeWriteCache = CacheBuilder.newBuilder()
+        .maximumSize(getStartTimeWriteCacheSize(conf))
+        .<EntityIdentifier, StartAndInsertTime>build().asMap();
+    startTimeReadCache = CacheBuilder.newBuilder()
+        .maximumSize(getStartTimeReadCacheSize(conf))
+        .<EntityIdentifier, Long>build().asMap();
 
     if (conf.getBoolean(YarnConfiguration.TIMELINE_SERVICE_TTL_ENABLE, true)) {
       deletionThread = new EntityDeletionThread(conf);
@@ -243,42 +253,134 @@ public void run() {
     }
   }
 
-  private static class LockMap<K> {
-    private static class CountingReentrantLock<K> extends ReentrantLock {
-      private static final long serialVersionUID = 1L;
-      private int count;
-      private K key;
+  /**
+   * A fixed set of locks, each of which guards the keys hashing to it.
+   * Getting the lock of a key does not synchronize on the map, and keys
+   * sharing a lock only contend when they are written at the same time.
+   */
+  private static class StripedLockMap<K> {
+    private final ReentrantLock[] locks;
 
-      CountingReentrantLock(K key) {
-        super();
-        this.count = 0;
-        this.key = key;
+    StripedLockMap(int stripes) {
+      locks = new ReentrantLock[stripes];
+      for (int i = 0; i < stripes; i++) {
+        locks[i] = new ReentrantLock();
       }
     }
 
-    private Map<K, CountingReentrantLock<K>> locks =
-        new HashMap<K, CountingReentrantLock<K>>();
+    ReentrantLock getLock(K key) {
+      int h = key.hashCode();
+      h ^= (h >>> 16);
+      return locks[(h & Integer.MAX_VALUE) % locks.length];
+    }
+  }
 
-    synchronized CountingReentrantLock<K> getLock(K key) {
-      CountingReentrantLock<K> lock = locks.get(key);
-      if (lock == null) {
-        lock = new CountingReentrantLock<K>(key);
-        locks.put(key, lock);
-      }
+  /**
+   * The writes of a put, which are written to the db by a
+   * {@link GroupWriter}.
+   */
+  private static class PendingWriteBatch implements WriteBatch {
+    // keys and values, a null value is a delete
+    private final List<byte[]> entries = new ArrayList<byte[]>();
+    private long bytes = 0;
+    private boolean done = false;
+    private IOException error = null;
+
+    @Override
+    public WriteBatch put(byte[] key, byte[] value) {
+      entries.add(key);
+      entries.add(value);
+      bytes += key.length + value.length;
+      return this;
+    }
 
-      lock.count++;
-      return lock;
+    @Override
+    public WriteBatch delete(byte[] key) {
+      entries.add(key);
+      entries.add(null);
+      bytes += key.length;
+      return this;
+    }
+
+    @Override
+    public void close() {
     }
+  }
 
-    synchronized void returnLock(CountingReentrantLock<K> lock) {
-      if (lock.count == 0) {
-        throw new IllegalStateException(
-            "Returned lock more times than it " + "was retrieved");
+  /**
+   * Merges the writes of concurrent puts into one leveldb write batch. The
+   * put at the head of the queue writes the queued batches of the others
+   * along with its own, while they wait for it, so that concurrent clients
+   * share the cost of a db write.
+   */
+  private class GroupWriter {
+    private final LinkedList<PendingWriteBatch> queue =
+        new LinkedList<PendingWriteBatch>();
+
+    void write(PendingWriteBatch batch) throws IOException {
+      List<PendingWriteBatch> group = new ArrayList<PendingWriteBatch>();
+      synchronized (queue) {
+        queue.add(batch);
+        // the batch has to be written once queued, as the puts behind it
+        // wait for it to reach the head of the queue
+        boolean interrupted = false;
+        while (!batch.done && queue.getFirst() != batch) {
+          try {
+            queue.wait();
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+        if (batch.done) {
+          if (batch.error != null) {
+            throw batch.error;
+          }
+          return;
+        }
+        long bytes = 0;
+        for (PendingWriteBatch b : queue) {
+          if (!group.isEmpty() && bytes + b.bytes > MAX_WRITE_GROUP_BYTES) {
+            break;
+          }
+          group.add(b);
+          bytes += b.bytes;
+        }
       }
-      lock.count--;
 
-      if (lock.count == 0) {
-        locks.remove(lock.key);
+      IOException error = null;
+      WriteBatch writeBatch = null;
+      try {
+        writeBatch = db.createWriteBatch();
+        for (PendingWriteBatch b : group) {
+          for (int i = 0; i < b.entries.size(); i += 2) {
+            byte[] value = b.entries.get(i + 1);
+            if (value == null) {
+              writeBatch.delete(b.entries.get(i));
+            } else {
+              writeBatch.put(b.entries.get(i), value);
+            }
+          }
+        }
+        db.write(writeBatch);
+      } catch (RuntimeException e) {
+        error = new IOException("Error writing " + group.size() +
+            " batches", e);
+      } finally {
+        IOUtils.cleanup(LOG, writeBatch);
+        synchronized (queue) {
+          for (PendingWriteBatch b : group) {
+            queue.removeFirst();
+            b.error = error;
+            b.done = true;
+          }
+          queue.notifyAll();
+        }
+      }
+      if (error != null) {
+        throw error;
       }
     }
   }
@@ -754,15 +856,15 @@ private TimelineEntities getEntityByTime(byte[] base, String entityType,
    * given response.
    */
   private void put(TimelineEntity entity, TimelinePutResponse response) {
-    LockMap.CountingReentrantLock<EntityIdentifier> lock = writeLocks.getLock(
+    ReentrantLock lock = writeLocks.getLock(
         new EntityIdentifier(entity.getEntityId(), entity.getEntityType()));
     lock.lock();
-    WriteBatch writeBatch = null;
+    PendingWriteBatch writeBatch = null;
     List<EntityIdentifier> relatedEntitiesWithoutStartTimes =
         new ArrayList<EntityIdentifier>();
     byte[] revStartTime = null;
     try {
-      writeBatch = db.createWriteBatch();
+      writeBatch = new PendingWriteBatch();
       List<TimelineEvent> events = entity.getEvents();
       // look up the start time for the entity
       StartAndInsertTime startAndInsertTime =
@@ -861,7 +963,9 @@ private void put(TimelineEntity entity, TimelinePutResponse response) {
           writePrimaryFilterEntries(writeBatch, primaryFilters, key, value);
         }
       }
-      db.write(writeBatch);
+      // written along with the batches of concurrent puts, but before the
+      // lock is released so that the puts of an entity stay ordered
+      groupWriter.write(writeBatch);
     } catch (IOException e) {
       LOG.error("Error putting entity " + entity.getEntityId() +
           " of type " + entity.getEntityType(), e);
@@ -872,8 +976,6 @@ private void put(TimelineEntity entity, TimelinePutResponse response) {
       response.addError(error);
     } finally {
       lock.unlock();
-      writeLocks.returnLock(lock);
-      IOUtils.cleanup(LOG, writeBatch);
     }
 
     for (EntityIdentifier relatedEntity : relatedEntitiesWithoutStartTimes) {
@@ -906,7 +1008,6 @@ private void put(TimelineEntity entity, TimelinePutResponse response) {
         response.addError(error);
       } finally {
         lock.unlock();
-        writeLocks.returnLock(lock);
       }
     }
   }
@@ -973,9 +1074,10 @@ private Long getStartTimeLong(String entityId, String entityType)
       throws IOException {
     EntityIdentifier entity = new EntityIdentifier(entityId, entityType);
     // start time is not provided, so try to look it up
-    if (startTimeReadCache.containsKey(entity)) {
+    Long cachedStartTime = startTimeReadCache.get(entity);
+    if (cachedStartTime != null) {
       // found the start time in the cache
-      return startTimeReadCache.get(entity);
+      return cachedStartTime;
     } else {
       // try to look up the start time in the db
       byte[] b = createStartTimeLookupKey(entity.getId(), entity.getType());
@@ -1014,11 +1116,12 @@ private StartAndInsertTime getAndSetStartTime(String entityId,
       String entityType, Long startTime, List<TimelineEvent> events)
       throws IOException {
     EntityIdentifier entity = new EntityIdentifier(entityId, entityType);
+    StartAndInsertTime cachedStartTime = startTimeWriteCache.get(entity);
     if (startTime == null) {
       // start time is not provided, so try to look it up
-      if (startTimeWriteCache.containsKey(entity)) {
+      if (cachedStartTime != null) {
         // found the start time in the cache
-        return startTimeWriteCache.get(entity);
+        return cachedStartTime;
       } else {
         if (events != null) {
           // prepare a start time from events in case it is needed
@@ -1034,9 +1137,9 @@ private StartAndInsertTime getAndSetStartTime(String entityId,
       }
     } else {
       // start time is provided
-      if (startTimeWriteCache.containsKey(entity)) {
+      if (cachedStartTime != null) {
         // always use start time from cache if it exists
-        return startTimeWriteCache.get(entity);
+        return cachedStartTime;
       } else {
         // check the provided start time matches the db
         return checkStartTimeInDb(entity, startTime);
@@ -0,0 +1,176 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.timeline;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.util.Time;
+import org.apache.hadoop.yarn.api.records.timeline.TimelineEntities;
+import org.apache.hadoop.yarn.api.records.timeline.TimelineEntity;
+import org.apache.hadoop.yarn.api.records.timeline.TimelineEvent;
+import org.apache.hadoop.yarn.api.records.timeline.TimelinePutResponse;
+import org.apache.hadoop.yarn.conf.YarnConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the rate at which a {@link LeveldbTimelineStore} ingests
+ * entities put by concurrent clients.
+ * <p/>
+ * Each thread puts entities of its own, one per put, each with a primary
+ * filter, a related entity and a number of events, the way the MapReduce
+ * and Tez clients post their task events. The benchmark is run for an
+ * increasing number of threads, so that it shows how the ingestion rate
+ * scales with the number of concurrent clients.
+ * <p/>
+ * Command line arguments:
+ * <pre>
+ * [-maxThreads T] [-entities E] [-events V]
+ * </pre>
+ * Every thread puts E entities with V events each. The benchmark is run
+ * with 1, 2, 4, ... threads up to T.
+ */
+public class LeveldbTimelineStoreBenchmark {
+  private static final String ENTITY_TYPE = "BENCHMARK_TASK";
+
+  private final int entitiesPerThread;
+  private final int eventsPerEntity;
+
+  LeveldbTimelineStoreBenchmark(int entitiesPerThread, int eventsPerEntity) {
+    this.entitiesPerThread = entitiesPerThread;
+    this.eventsPerEntity = eventsPerEntity;
+  }
+
+  /**
+   * Runs the benchmark with the given number of threads against a new store.
+   *
+   * @return the number of entities put per second
+   */
+  double run(int numThreads) throws Exception {
+    File path = new File(System.getProperty("test.build.data", "target"),
+        "timeline-benchmark").getAbsoluteFile();
+    FileUtil.fullyDelete(path);
+    Configuration conf = new YarnConfiguration();
+    conf.set(YarnConfiguration.TIMELINE_SERVICE_LEVELDB_PATH,
+        path.getAbsolutePath());
+    conf.setBoolean(YarnConfiguration.TIMELINE_SERVICE_TTL_ENABLE, false);
+    final LeveldbTimelineStore store = new LeveldbTimelineStore();
+    store.init(conf);
+    store.start();
+    try {
+      final List<Throwable> errors = new ArrayList<Throwable>();
+      List<Thread> threads = new ArrayList<Thread>(numThreads);
+      for (int i = 0; i < numThreads; i++) {
+        final int client = i;
+        threads.add(new Thread("client-" + i) {
+          @Override
+          public void run() {
+            try {
+              for (int j = 0; j < entitiesPerThread; j++) {
+                putEntity(store, client, j);
+              }
+            } catch (Throwable t) {
+              synchronized (errors) {
+                errors.add(t);
+              }
+            }
+          }
+        });
+      }
+      long start = Time.now();
+      for (Thread t : threads) {
+        t.start();
+      }
+      for (Thread t : threads) {
+        t.join();
+      }
+      long elapsed = Math.max(1, Time.now() - start);
+      if (!errors.isEmpty()) {
+        throw new IOException("Client failed", errors.get(0));
+      }
+      return (double) numThreads * entitiesPerThread * 1000 / elapsed;
+    } finally {
+      store.stop();
+      FileUtil.fullyDelete(path);
+    }
+  }
+
+  private void putEntity(LeveldbTimelineStore store, int client, int i)
+      throws IOException {
+    TimelineEntity entity = new TimelineEntity();
+    entity.setEntityId("task_" + client + "_" + i);
+    entity.setEntityType(ENTITY_TYPE);
+    entity.setStartTime(Time.now());
+    entity.addPrimaryFilter("client", client);
+    entity.addRelatedEntity("BENCHMARK_JOB", "job_" + client);
+    for (int e = 0; e < eventsPerEntity; e++) {
+      TimelineEvent event = new TimelineEvent();
+      event.setEventType("EVENT_" + e);
+      event.setTimestamp(Time.now());
+      event.addEventInfo("index", e);
+      entity.addEvent(event);
+    }
+    TimelineEntities entities = new TimelineEntities();
+    entities.addEntity(entity);
+    TimelinePutResponse response = store.put(entities);
+    if (!response.getErrors().isEmpty()) {
+      throw new IOException("Failed to put " + entity.getEntityId() +
+          ": error " + response.getErrors().get(0).getErrorCode());
+    }
+  }
+
+  private static void printUsage() {
+    System.err.println("Usage: LeveldbTimelineStoreBenchmark " +
+        "[-maxThreads T] [-entities E] [-events V]");
+    System.exit(-1);
+  }
+
+  public static void main(String[] args) throws Exception {
+    int maxThreads = 16;
+    int entitiesPerThread = 2000;
+    int eventsPerEntity = 4;
+    for (int i = 0; i < args.length; i++) {
+      if (i + 1 == args.length) {
+        printUsage();
+      }
+      if (args[i].equals("-maxThreads")) {
+        maxThreads = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-entities")) {
+        entitiesPerThread = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-events")) {
+        eventsPerEntity = Integer.parseInt(args[++i]);
+      } else {
+        printUsage();
+      }
+    }
+
+    LeveldbTimelineStoreBenchmark bench =
+        new LeveldbTimelineStoreBenchmark(entitiesPerThread, eventsPerEntity);
+    for (int t = 1; t <= maxThreads; t *= 2) {
+      double entitiesPerSec = bench.run(t);
+      System.out.println("--- threads: " + t + ", entities: " +
+          t * entitiesPerThread + ", events per entity: " + eventsPerEntity +
+          " ---");
+      System.out.println("# entities put/s: " +
+          String.format("%.2f", entitiesPerSec));
+    }
+  }
+}
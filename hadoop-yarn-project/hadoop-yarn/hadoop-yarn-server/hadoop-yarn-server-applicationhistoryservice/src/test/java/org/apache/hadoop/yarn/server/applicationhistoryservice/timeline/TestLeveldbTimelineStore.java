@@ -34,13 +34,16 @@
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.timeline.GenericObjectMapper.writeReverseOrderedLong;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 
 @InterfaceAudience.Private
 @InterfaceStability.Unstable
@@ -125,6 +128,56 @@ public void testCacheSizes() {
     assertEquals(10002, LeveldbTimelineStore.getStartTimeWriteCacheSize(conf));
   }
 
+  @Test(timeout = 60000)
+  public void testConcurrentPuts() throws Exception {
+    final int numThreads = 8;
+    final int entitiesPerThread = 100;
+    final List<Throwable> errors = new ArrayList<Throwable>();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < numThreads; i++) {
+      final int thread = i;
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int j = 0; j < entitiesPerThread; j++) {
+              TimelineEntity entity = new TimelineEntity();
+              entity.setEntityId("concurrent_" + thread + "_" + j);
+              entity.setEntityType("type_concurrent");
+              entity.setStartTime((long) j);
+              entity.addOtherInfo("thread", thread);
+              TimelineEntities entities = new TimelineEntities();
+              entities.addEntity(entity);
+              TimelinePutResponse response = store.put(entities);
+              assertEquals(0, response.getErrors().size());
+            }
+          } catch (Throwable t) {
+            synchronized (errors) {
+              errors.add(t);
+            }
+          }
+        }
+      });
+    }
+    for (Thread t : threads) {
+      t.start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertEquals(Collections.emptyList(), errors);
+
+    for (int i = 0; i < numThreads; i++) {
+      for (int j = 0; j < entitiesPerThread; j++) {
+        TimelineEntity entity = store.getEntity("concurrent_" + i + "_" + j,
+            "type_concurrent", EnumSet.allOf(TimelineReader.Field.class));
+        assertNotNull(entity);
+        assertEquals(Long.valueOf(j), entity.getStartTime());
+        assertEquals(i, entity.getOtherInfo().get("thread"));
+      }
+    }
+  }
+
   private boolean deleteNextEntity(String entityType, byte[] ts)
       throws IOException, InterruptedException {
     DBIterator iterator = null;
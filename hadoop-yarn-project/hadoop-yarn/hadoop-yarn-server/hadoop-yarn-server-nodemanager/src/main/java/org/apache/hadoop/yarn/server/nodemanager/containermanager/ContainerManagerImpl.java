@@ -182,7 +182,7 @@ public ContainerManagerImpl(Context context, ContainerExecutor exec,
     addService(auxiliaryServices);
 
     this.containersMonitor =
-        new ContainersMonitorImpl(exec, dispatcher, this.context);
+        new ContainersMonitorImpl(exec, dispatcher, this.context, metrics);
     addService(this.containersMonitor);
 
     dispatcher
@@ -24,6 +24,7 @@
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.service.AbstractService;
 import org.apache.hadoop.util.StringUtils.TraditionalBinaryPrefix;
+import org.apache.hadoop.util.Time;
 import org.apache.hadoop.yarn.api.records.ContainerId;
 import org.apache.hadoop.yarn.conf.YarnConfiguration;
 import org.apache.hadoop.yarn.event.AsyncDispatcher;
@@ -31,6 +32,9 @@
 import org.apache.hadoop.yarn.server.nodemanager.ContainerExecutor;
 import org.apache.hadoop.yarn.server.nodemanager.Context;
 import org.apache.hadoop.yarn.server.nodemanager.containermanager.container.ContainerKillEvent;
+import org.apache.hadoop.yarn.server.nodemanager.metrics.NodeManagerMetrics;
+import org.apache.hadoop.yarn.util.ProcfsBasedProcessTree;
+import org.apache.hadoop.yarn.util.ProcfsProcessTable;
 import org.apache.hadoop.yarn.util.ResourceCalculatorPlugin;
 import org.apache.hadoop.yarn.util.ResourceCalculatorProcessTree;
 
@@ -57,9 +61,13 @@ public class ContainersMonitorImpl extends AbstractService
   final ContainerExecutor containerExecutor;
   private final Dispatcher eventDispatcher;
   private final Context context;
+  private final NodeManagerMetrics metrics;
   private ResourceCalculatorPlugin resourceCalculatorPlugin;
   private Configuration conf;
   private Class<? extends ResourceCalculatorProcessTree> processTreeClass;
+  // scanned once per monitoring cycle for the procfs based process-trees
+  // of all the containers, null if another process-tree is used
+  private ProcfsProcessTable processTable;
 
   private long maxVmemAllottedForContainers = UNKNOWN_MEMORY_LIMIT;
   private long maxPmemAllottedForContainers = UNKNOWN_MEMORY_LIMIT;
@@ -71,11 +79,18 @@ public class ContainersMonitorImpl extends AbstractService
 
   public ContainersMonitorImpl(ContainerExecutor exec,
       AsyncDispatcher dispatcher, Context context) {
+    this(exec, dispatcher, context, null);
+  }
+
+  public ContainersMonitorImpl(ContainerExecutor exec,
+      AsyncDispatcher dispatcher, Context context,
+      NodeManagerMetrics metrics) {
     super("containers-monitor");
 
     this.containerExecutor = exec;
     this.eventDispatcher = dispatcher;
     this.context = context;
+    this.metrics = metrics;
 
     this.containersToBeAdded = new HashMap<ContainerId, ProcessTreeInfo>();
     this.containersToBeRemoved = new ArrayList<ContainerId>();
@@ -100,6 +115,11 @@ protected void serviceInit(Configuration conf) throws Exception {
             ResourceCalculatorProcessTree.class);
     this.conf = conf;
     LOG.info(" Using ResourceCalculatorProcessTree : " + this.processTreeClass);
+    if ((processTreeClass == null ||
+        processTreeClass == ProcfsBasedProcessTree.class) &&
+        ProcfsBasedProcessTree.isAvailable()) {
+      this.processTable = new ProcfsProcessTable();
+    }
 
     long configuredPMemForContainers =
         conf.getLong(YarnConfiguration.NM_PMEM_MB,
@@ -305,6 +325,16 @@ boolean isProcessTreeOverLimit(ResourceCalculatorProcessTree pTree,
         curMemUsageOfAgedProcesses, limit);
   }
 
+  private ResourceCalculatorProcessTree createProcessTree(String pId) {
+    if (processTable != null) {
+      ProcfsBasedProcessTree pt = new ProcfsBasedProcessTree(pId, processTable);
+      pt.setConf(conf);
+      return pt;
+    }
+    return ResourceCalculatorProcessTree.getResourceCalculatorProcessTree(pId,
+        processTreeClass, conf);
+  }
+
   private class MonitoringThread extends Thread {
     public MonitoringThread() {
       super("Container Monitor");
@@ -314,6 +344,7 @@ public MonitoringThread() {
     public void run() {
 
       while (true) {
+        long cycleStart = Time.monotonicNow();
 
         // Print the processTrees for debugging.
         if (LOG.isDebugEnabled()) {
@@ -348,6 +379,11 @@ public void run() {
           containersToBeRemoved.clear();
         }
 
+        // Scan the processes once for all the process-trees
+        if (processTable != null && !trackingContainers.isEmpty()) {
+          processTable.update();
+        }
+
         // Now do the monitoring for the trackingContainers
         // Check memory usage and kill any overflowing containers
         long vmemStillInUsage = 0;
@@ -371,9 +407,7 @@ public void run() {
                 LOG.debug(
                     "Tracking ProcessTree " + pId + " for the first time");
 
-                ResourceCalculatorProcessTree pt = ResourceCalculatorProcessTree
-                    .getResourceCalculatorProcessTree(pId, processTreeClass,
-                        conf);
+                ResourceCalculatorProcessTree pt = createProcessTree(pId);
                 ptInfo.setPid(pId);
                 ptInfo.setProcessTree(pt);
               }
@@ -453,6 +487,11 @@ public void run() {
           }
         }
 
+        if (metrics != null) {
+          metrics.addContainersMonitorCycle(
+              Time.monotonicNow() - cycleStart);
+        }
+
         try {
           Thread.sleep(monitoringInterval);
         } catch (InterruptedException e) {
@@ -23,6 +23,7 @@
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.metrics2.lib.MutableCounterInt;
 import org.apache.hadoop.metrics2.lib.MutableGaugeInt;
+import org.apache.hadoop.metrics2.lib.MutableRate;
 import org.apache.hadoop.metrics2.source.JvmMetrics;
 import org.apache.hadoop.yarn.api.records.Resource;
 
@@ -46,6 +47,8 @@ public class NodeManagerMetrics {
   MutableGaugeInt allocatedContainers;
   @Metric
   MutableGaugeInt availableGB;
+  @Metric("Duration of container monitor cycles in ms")
+  MutableRate containersMonitorCycle;
 
   public static NodeManagerMetrics create() {
     return create(DefaultMetricsSystem.instance());
@@ -102,6 +105,10 @@ public void releaseContainer(Resource res) {
     availableGB.incr(res.getMemory() / 1024);
   }
 
+  public void addContainersMonitorCycle(long millis) {
+    containersMonitorCycle.add(millis);
+  }
+
   public void addResource(Resource res) {
     availableGB.incr(res.getMemory() / 1024);
   }
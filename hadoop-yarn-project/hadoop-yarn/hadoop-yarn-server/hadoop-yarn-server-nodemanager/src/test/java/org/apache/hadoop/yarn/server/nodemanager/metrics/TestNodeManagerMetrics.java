@@ -60,7 +60,12 @@ public void testNames() {
     metrics.initingContainer();
     metrics.runningContainer();
 
+    metrics.addContainersMonitorCycle(10);
+    metrics.addContainersMonitorCycle(20);
+
     checkMetrics(5, 1, 1, 1, 1, 1, 2, 2, 6);
+    assertCounter("ContainersMonitorCycleNumOps", 2L,
+        getMetrics("NodeManagerMetrics"));
   }
 
   private void checkMetrics(int launched, int completed, int failed, int killed,
@@ -29,9 +29,11 @@
 import org.apache.hadoop.yarn.server.resourcemanager.scheduler.SchedulerApplicationAttempt;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Contains scheduler specific information about Applications.
@@ -40,13 +42,16 @@ public class SchedulerApplicationInfo {
 
   private static final Log LOG =
       LogFactory.getLog(SchedulerApplicationInfo.class);
-  private Map<ApplicationId, org.apache.hadoop.yarn.server.resourcemanager.scheduler.SchedulerApplication>
+  //Filled by scheduler threads which only hold the lock of the application
+  //they update, so the collections tolerate concurrent updates
+  private final Map<ApplicationId, org.apache.hadoop.yarn.server.resourcemanager.scheduler.SchedulerApplication>
       schedulerApplicationsToAdd =
-      new HashMap<ApplicationId, org.apache.hadoop.yarn.server.resourcemanager.scheduler.SchedulerApplication>();
-  private List<ApplicationId> applicationsIdToRemove =
-      new ArrayList<ApplicationId>();
-  private Map<String, FiCaSchedulerAppInfo> fiCaSchedulerAppInfo =
-      new HashMap<String, FiCaSchedulerAppInfo>();
+      new ConcurrentHashMap<ApplicationId, org.apache.hadoop.yarn.server.resourcemanager.scheduler.SchedulerApplication>();
+  private final List<ApplicationId> applicationsIdToRemove =
+      Collections.synchronizedList(new ArrayList<ApplicationId>());
+  private final ConcurrentMap<String, FiCaSchedulerAppInfo>
+      fiCaSchedulerAppInfo =
+      new ConcurrentHashMap<String, FiCaSchedulerAppInfo>();
 
   public void persist(QueueMetricsDataAccess QMDA) throws StorageException {
     //TODO: The same QueueMetrics (DEFAULT_QUEUE) is persisted with every app. Its extra overhead. We can persist it just once
@@ -133,11 +138,17 @@ public void setApplicationIdtoRemove(ApplicationId applicationIdToRemove) {
 
   public FiCaSchedulerAppInfo getFiCaSchedulerAppInfo(
       ApplicationAttemptId appAttemptId) {
-    if (fiCaSchedulerAppInfo.get(appAttemptId.toString()) == null) {
-      fiCaSchedulerAppInfo
-          .put(appAttemptId.toString(), new FiCaSchedulerAppInfo(appAttemptId));
+    String id = appAttemptId.toString();
+    FiCaSchedulerAppInfo appInfo = fiCaSchedulerAppInfo.get(id);
+    if (appInfo == null) {
+      appInfo = new FiCaSchedulerAppInfo(appAttemptId);
+      FiCaSchedulerAppInfo existing =
+          fiCaSchedulerAppInfo.putIfAbsent(id, appInfo);
+      if (existing != null) {
+        appInfo = existing;
+      }
     }
-    return fiCaSchedulerAppInfo.get(appAttemptId.toString());
+    return appInfo;
   }
 
   private void persistFiCaSchedulerAppInfo() throws StorageException {
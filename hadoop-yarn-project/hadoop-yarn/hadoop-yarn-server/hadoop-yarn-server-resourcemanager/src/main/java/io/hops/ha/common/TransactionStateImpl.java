@@ -64,11 +64,12 @@
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static org.apache.hadoop.yarn.server.resourcemanager.recovery.RMStateStore.LOG;
 
@@ -79,43 +80,47 @@ public class TransactionStateImpl extends TransactionState {
   private final TransactionType type;
   private org.apache.hadoop.yarn.server.resourcemanager.rmnode.RMNode
       rmNodeToUpdate;
-  private final Map<String, RMNodeInfo> rmNodeInfos =
-      new HashMap<String, RMNodeInfo>();
+  //The collections below are filled by scheduler threads holding only the
+  //lock of the node or application they concern, so they have to tolerate
+  //concurrent updates of different nodes and applications
+  private final ConcurrentMap<String, RMNodeInfo> rmNodeInfos =
+      new ConcurrentHashMap<String, RMNodeInfo>();
   private final RMContextInfo rmcontextInfo = new RMContextInfo();
-  private final Map<String, FiCaSchedulerNodeInfoToUpdate>
+  private final ConcurrentMap<String, FiCaSchedulerNodeInfoToUpdate>
       ficaSchedulerNodeInfoToUpdate =
-      new HashMap<String, FiCaSchedulerNodeInfoToUpdate>();
+      new ConcurrentHashMap<String, FiCaSchedulerNodeInfoToUpdate>();
   private final Map<String, org.apache.hadoop.yarn.server.resourcemanager.scheduler.common.fica.FiCaSchedulerNode>
       ficaSchedulerNodeInfoToAdd =
-      new HashMap<String, org.apache.hadoop.yarn.server.resourcemanager.scheduler.common.fica.FiCaSchedulerNode>();
+      new ConcurrentHashMap<String, org.apache.hadoop.yarn.server.resourcemanager.scheduler.common.fica.FiCaSchedulerNode>();
   private final Map<String, org.apache.hadoop.yarn.server.resourcemanager.scheduler.common.fica.FiCaSchedulerNode>
       ficaSchedulerNodeInfoToRemove =
-      new HashMap<String, org.apache.hadoop.yarn.server.resourcemanager.scheduler.common.fica.FiCaSchedulerNode>();
+      new ConcurrentHashMap<String, org.apache.hadoop.yarn.server.resourcemanager.scheduler.common.fica.FiCaSchedulerNode>();
   private final SchedulerApplicationInfo schedulerApplicationInfo =
       new SchedulerApplicationInfo();
   private final FairSchedulerNodeInfo fairschedulerNodeInfo =
       new FairSchedulerNodeInfo();
   private org.apache.hadoop.yarn.api.records.Resource clusterResourceToUpdate;
   private org.apache.hadoop.yarn.api.records.Resource usedResourceToUpdate;
-  private final Set<RMAppImpl> applicationsToAdd = new HashSet<RMAppImpl>();
+  private final Set<RMAppImpl> applicationsToAdd =
+      Collections.newSetFromMap(new ConcurrentHashMap<RMAppImpl, Boolean>());
   private final List<ApplicationId> applicationsStateToRemove =
-      new ArrayList<ApplicationId>();
-  private final HashMap<String, RMAppAttempt> appAttempts =
-      new HashMap<String, RMAppAttempt>();
-  private final HashMap<ApplicationAttemptId, AllocateResponseLock>
+      Collections.synchronizedList(new ArrayList<ApplicationId>());
+  private final Map<String, RMAppAttempt> appAttempts =
+      new ConcurrentHashMap<String, RMAppAttempt>();
+  private final Map<ApplicationAttemptId, AllocateResponseLock>
       allocateResponsesToAdd =
-      new HashMap<ApplicationAttemptId, AllocateResponseLock>();
+      new ConcurrentHashMap<ApplicationAttemptId, AllocateResponseLock>();
   private final List<ApplicationAttemptId> allocateResponsesToRemove =
-      new ArrayList<ApplicationAttemptId>();
-  private final HashMap<String, RMContainerImpl> rmContainersToUpdate =
-      new HashMap<String, RMContainerImpl>();
+      Collections.synchronizedList(new ArrayList<ApplicationAttemptId>());
+  private final Map<String, RMContainerImpl> rmContainersToUpdate =
+      new ConcurrentHashMap<String, RMContainerImpl>();
   
   //PersistedEvent to persist for distributed RT
   private final List<PendingEvent> persistedEventsToAdd =
-      new ArrayList<PendingEvent>();
+      Collections.synchronizedList(new ArrayList<PendingEvent>());
   private RMNodeImpl rmNode = null;
   private final List<PendingEvent> persistedEventsToRemove =
-      new ArrayList<PendingEvent>();
+      Collections.synchronizedList(new ArrayList<PendingEvent>());
 
   //for debug and evaluation
   String rpcType = null;
@@ -176,7 +181,11 @@ public FiCaSchedulerNodeInfoToUpdate getFicaSchedulerNodeInfoToUpdate(
         ficaSchedulerNodeInfoToUpdate.get(nodeId);
     if (nodeInfo == null) {
       nodeInfo = new FiCaSchedulerNodeInfoToUpdate(nodeId);
-      ficaSchedulerNodeInfoToUpdate.put(nodeId, nodeInfo);
+      FiCaSchedulerNodeInfoToUpdate existing =
+          ficaSchedulerNodeInfoToUpdate.putIfAbsent(nodeId, nodeInfo);
+      if (existing != null) {
+        nodeInfo = existing;
+      }
     }
     return nodeInfo;
   }
@@ -431,7 +440,10 @@ public RMNodeInfo getRMNodeInfo(String rmNodeId) {
     RMNodeInfo result = rmNodeInfos.get(rmNodeId);
     if (result == null) {
       result = new RMNodeInfo(rmNodeId);
-      rmNodeInfos.put(rmNodeId, result);
+      RMNodeInfo existing = rmNodeInfos.putIfAbsent(rmNodeId, result);
+      if (existing != null) {
+        result = existing;
+      }
     }
     return result;
   }
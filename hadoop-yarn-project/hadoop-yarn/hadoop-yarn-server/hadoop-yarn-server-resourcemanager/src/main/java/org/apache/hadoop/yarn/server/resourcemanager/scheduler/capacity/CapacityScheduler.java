@@ -189,7 +189,18 @@ public Configuration getConf() {
   private Resource clusterResource =
       RecordFactoryProvider.getRecordFactory(null)
           .newRecordInstance(Resource.class);
-  private int numNodeManagers = 0;
+  private volatile int numNodeManagers = 0;
+
+  /**
+   * Guards allocation decisions, container completions and the cluster
+   * resource they are based on. The rest of the node heartbeat bookkeeping
+   * (launched containers, node transaction state) only holds the lock of the
+   * {@link FiCaSchedulerNode} it concerns, so heartbeats from different
+   * nodes no longer serialize on the scheduler monitor.
+   * <p/>
+   * Lock order: scheduler, node, queue tree, queue, application.
+   */
+  private final Object queueTreeLock = new Object();
 
   private Resource minimumAllocation;
   private Resource maximumAllocation;
@@ -259,7 +270,7 @@ public Comparator<CSQueue> getQueueComparator() {
   }
 
   @Override
-  public synchronized int getNumClusterNodes() {
+  public int getNumClusterNodes() {
     return numNodeManagers;
   }
 
@@ -758,16 +769,30 @@ public List<QueueUserACLInfo> getQueueUserAclInfo() {
     return root.getQueueUserAclInfo(user);
   }
 
-  private synchronized void nodeUpdate(RMNode nm,
-      TransactionState transactionState) {
+  private void nodeUpdate(RMNode nm, TransactionState transactionState) {
     if (LOG.isDebugEnabled()) {
       LOG.debug("nodeUpdate: " + nm + " clusterResources: " + clusterResource);
     }
 
     FiCaSchedulerNode node = getNode(nm.getNodeID());
-    
+    if (node == null) {
+      // The node was removed while its heartbeat was queued
+      LOG.info("Ignoring update from removed node " + nm.getNodeID());
+      return;
+    }
+
+    synchronized (node) {
+      nodeUpdate(node, nm, transactionState);
+    }
+  }
+
+  @Lock(FiCaSchedulerNode.class)
+  private void nodeUpdate(FiCaSchedulerNode node, RMNode nm,
+      TransactionState transactionState) {
     // Update resource if any change
-    SchedulerUtils.updateResourceIfChanged(node, nm, clusterResource, LOG);
+    synchronized (queueTreeLock) {
+      SchedulerUtils.updateResourceIfChanged(node, nm, clusterResource, LOG);
+    }
     
     List<UpdatedContainerInfo> containerInfoList =
         nm.pullContainerUpdates(transactionState);
@@ -803,7 +828,24 @@ private synchronized void nodeUpdate(RMNode nm,
     }
   }
 
-  private synchronized void allocateContainersToNode(FiCaSchedulerNode node,
+  private void allocateContainersToNode(FiCaSchedulerNode node,
+      TransactionState transactionState) {
+    if (node == null) {
+      return;
+    }
+    synchronized (node) {
+      if (getNode(node.getNodeID()) != node) {
+        // The node was removed concurrently
+        return;
+      }
+      synchronized (queueTreeLock) {
+        assignContainersOnNode(node, transactionState);
+      }
+    }
+  }
+
+  @Lock({FiCaSchedulerNode.class, CSQueue.class})
+  private void assignContainersOnNode(FiCaSchedulerNode node,
       TransactionState transactionState) {
 
     // Assign new containers...
@@ -950,8 +992,10 @@ public void handle(SchedulerEvent event) {
   private synchronized void addNode(RMNode nodeManager) {
     this.nodes.put(nodeManager.getNodeID(),
         new FiCaSchedulerNode(nodeManager, usePortForNodeName));
-    Resources.addTo(clusterResource, nodeManager.getTotalCapability());
-    root.updateClusterResource(clusterResource);
+    synchronized (queueTreeLock) {
+      Resources.addTo(clusterResource, nodeManager.getTotalCapability());
+      root.updateClusterResource(clusterResource);
+    }
     ++numNodeManagers;
     LOG.info("Added node " + nodeManager.getNodeAddress() +
         " clusterResource: " + clusterResource);
@@ -967,9 +1011,19 @@ private synchronized void removeNode(RMNode nodeInfo,
     if (node == null) {
       return;
     }
-    Resources
-        .subtractFrom(clusterResource, node.getRMNode().getTotalCapability());
-    root.updateClusterResource(clusterResource);
+    synchronized (node) {
+      removeNode(node, nodeInfo, transactionState);
+    }
+  }
+
+  @Lock({CapacityScheduler.class, FiCaSchedulerNode.class})
+  private void removeNode(FiCaSchedulerNode node, RMNode nodeInfo,
+      TransactionState transactionState) {
+    synchronized (queueTreeLock) {
+      Resources
+          .subtractFrom(clusterResource, node.getRMNode().getTotalCapability());
+      root.updateClusterResource(clusterResource);
+    }
     --numNodeManagers;
 
     if (scheduleAsynchronously && numNodeManagers == 0) {
@@ -999,8 +1053,8 @@ private synchronized void removeNode(RMNode nodeInfo,
         " clusterResource: " + clusterResource);
   }
   
-  @Lock(CapacityScheduler.class)
-  private synchronized void completedContainer(RMContainer rmContainer,
+  @Lock(FiCaSchedulerNode.class)
+  private void completedContainer(RMContainer rmContainer,
       ContainerStatus containerStatus, RMContainerEventType event,
       TransactionState transactionState) {
     if (rmContainer == null) {
@@ -1025,10 +1079,22 @@ private synchronized void completedContainer(RMContainer rmContainer,
     // Get the node on which the container was allocated
     FiCaSchedulerNode node = getNode(container.getNodeId());
     
-    // Inform the queue
+    // Inform the queue under the queue tree lock, as it reads the cluster
+    // resource and updates the queue tree usage allocations are based on
     LeafQueue queue = (LeafQueue) application.getQueue();
-    queue.completedContainer(clusterResource, application, node, rmContainer,
-        containerStatus, event, null, transactionState);
+    if (node == null) {
+      synchronized (queueTreeLock) {
+        queue.completedContainer(clusterResource, application, null,
+            rmContainer, containerStatus, event, null, transactionState);
+      }
+    } else {
+      synchronized (node) {
+        synchronized (queueTreeLock) {
+          queue.completedContainer(clusterResource, application, node,
+              rmContainer, containerStatus, event, null, transactionState);
+        }
+      }
+    }
 
     LOG.info("Application attempt " + application.getApplicationAttemptId() +
         " released container " + container.getId() + " on node: " + node +
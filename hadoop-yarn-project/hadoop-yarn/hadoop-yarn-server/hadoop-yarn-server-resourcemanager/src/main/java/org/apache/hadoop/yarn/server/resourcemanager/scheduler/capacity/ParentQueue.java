@@ -713,17 +713,20 @@ public void completedContainer(Resource clusterResource,
             " absoluteUsedCapacity=" + getAbsoluteUsedCapacity() +
             " used=" + usedResources +
             " cluster=" + clusterResource);
-      }
 
-      // reinsert the updated queue
-      for (Iterator<CSQueue> iter = childQueues.iterator(); iter.hasNext(); ) {
-        CSQueue csqueue = iter.next();
-        if (csqueue.equals(completedChildQueue)) {
-          iter.remove();
-          LOG.info("Re-sorting completed queue: " + csqueue.getQueuePath() +
-              " stats: " + csqueue);
-          childQueues.add(csqueue);
-          break;
+        // reinsert the updated queue; this has to happen under the queue lock
+        // since containers complete concurrently with allocations, which
+        // iterate childQueues in assignContainersToChildQueues
+        for (Iterator<CSQueue> iter = childQueues.iterator();
+             iter.hasNext(); ) {
+          CSQueue csqueue = iter.next();
+          if (csqueue.equals(completedChildQueue)) {
+            iter.remove();
+            LOG.info("Re-sorting completed queue: " + csqueue.getQueuePath() +
+                " stats: " + csqueue);
+            childQueues.add(csqueue);
+            break;
+          }
         }
       }
       
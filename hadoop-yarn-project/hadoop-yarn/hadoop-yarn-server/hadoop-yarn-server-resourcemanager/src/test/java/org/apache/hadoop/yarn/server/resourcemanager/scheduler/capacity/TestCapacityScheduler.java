@@ -37,6 +37,7 @@
 import org.apache.hadoop.yarn.event.AsyncDispatcher;
 import org.apache.hadoop.yarn.exceptions.YarnException;
 import org.apache.hadoop.yarn.exceptions.YarnRuntimeException;
+import org.apache.hadoop.yarn.factory.providers.RecordFactoryProvider;
 import org.apache.hadoop.yarn.server.resourcemanager.Application;
 import org.apache.hadoop.yarn.server.resourcemanager.MockNodes;
 import org.apache.hadoop.yarn.server.resourcemanager.MockRM;
@@ -64,9 +65,15 @@
 import org.mockito.Mockito;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -679,4 +686,67 @@ public void testAsyncScheduling() throws Exception {
     }
   }
 
+  @Test(timeout = 60000)
+  public void testConcurrentHeartbeatsAndNodeRemovals() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setClass(YarnConfiguration.RM_SCHEDULER, CapacityScheduler.class,
+        ResourceScheduler.class);
+    MockRM rm = new MockRM(conf);
+    rm.start();
+    final CapacityScheduler cs =
+        (CapacityScheduler) rm.getResourceScheduler();
+
+    final int NODES = 20;
+    List<RMNode> nodes = new ArrayList<RMNode>();
+    for (int i = 0; i < NODES; ++i) {
+      RMNode node = MockNodes.newNodeInfo(0, MockNodes.newResource(4 * GB),
+          1, "192.168.1." + i);
+      cs.handle(new NodeAddedSchedulerEvent(node, null));
+      nodes.add(node);
+    }
+
+    ApplicationId appId = BuilderUtils.newApplicationId(100, 1);
+    ApplicationAttemptId appAttemptId =
+        BuilderUtils.newApplicationAttemptId(appId, 1);
+    cs.handle(new AppAddedSchedulerEvent(appId, "default", "user", null));
+    cs.handle(new AppAttemptAddedSchedulerEvent(appAttemptId, false, null));
+    cs.allocate(appAttemptId, Collections.singletonList(TestUtils
+            .createResourceRequest(ResourceRequest.ANY, GB, NODES * 4, true,
+                TestUtils.createMockPriority(1),
+                RecordFactoryProvider.getRecordFactory(null))),
+        Collections.<ContainerId>emptyList(), null, null, null);
+
+    // Each node allocates on its heartbeats and then leaves, completing its
+    // containers, while the other nodes keep allocating
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService pool = Executors.newFixedThreadPool(NODES);
+    try {
+      List<Future<Void>> results = new ArrayList<Future<Void>>();
+      for (final RMNode node : nodes) {
+        results.add(pool.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            start.await();
+            for (int i = 0; i < 5; i++) {
+              cs.handle(new NodeUpdateSchedulerEvent(node, null));
+            }
+            cs.handle(new NodeRemovedSchedulerEvent(node, null));
+            return null;
+          }
+        }));
+      }
+      start.countDown();
+      for (Future<Void> result : results) {
+        result.get();
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+
+    assertEquals(0, cs.getClusterResources().getMemory());
+    assertEquals(0, cs.getQueue("default").getUsedResources().getMemory());
+    assertEquals(0, cs.getRootQueue().getUsedResources().getMemory());
+    rm.stop();
+  }
+
 }
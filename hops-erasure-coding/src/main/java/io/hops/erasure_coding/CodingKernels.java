@@ -0,0 +1,260 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.hops.erasure_coding;
+
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+
+/**
+ * Bulk kernels used by {@link FastXORCode} and {@link FastReedSolomonCode}.
+ * <p/>
+ * XOR is done a word at a time through {@link Unsafe} when it is available
+ * and falls back to an unrolled pure Java loop otherwise. Multiplications in
+ * GF(2^8) are done through a 256 entry table per coefficient, see
+ * {@link #multiplicationTable(GaloisField, int)}.
+ */
+final class CodingKernels {
+
+  private CodingKernels() {
+  }
+
+  private interface Xor {
+    /**
+     * dst[0, len) ^= src[0, len)
+     */
+    void xor(byte[] src, byte[] dst, int len);
+  }
+
+  /**
+   * dst[0, len) ^= src[0, len)
+   */
+  static void xor(byte[] src, byte[] dst, int len) {
+    checkLength(src, dst, len);
+    XorHolder.BEST_XOR.xor(src, dst, len);
+  }
+
+  /**
+   * Returns the table of the products of coef with every element of the
+   * field.
+   */
+  static byte[] multiplicationTable(GaloisField gf, int coef) {
+    byte[] table = new byte[gf.getFieldSize()];
+    for (int x = 0; x < table.length; x++) {
+      table[x] = (byte) gf.multiply(coef, x);
+    }
+    return table;
+  }
+
+  /**
+   * dst[0, len) = coef * src[0, len), where table is the multiplication
+   * table of coef.
+   */
+  static void multiply(byte[] table, byte[] src, byte[] dst, int len) {
+    checkLength(src, dst, len);
+    int i = 0;
+    for (; i + 7 < len; i += 8) {
+      dst[i] = table[src[i] & 0xFF];
+      dst[i + 1] = table[src[i + 1] & 0xFF];
+      dst[i + 2] = table[src[i + 2] & 0xFF];
+      dst[i + 3] = table[src[i + 3] & 0xFF];
+      dst[i + 4] = table[src[i + 4] & 0xFF];
+      dst[i + 5] = table[src[i + 5] & 0xFF];
+      dst[i + 6] = table[src[i + 6] & 0xFF];
+      dst[i + 7] = table[src[i + 7] & 0xFF];
+    }
+    for (; i < len; i++) {
+      dst[i] = table[src[i] & 0xFF];
+    }
+  }
+
+  /**
+   * dst[0, len) ^= coef * src[0, len), where table is the multiplication
+   * table of coef.
+   */
+  static void multiplyAdd(byte[] table, byte[] src, byte[] dst, int len) {
+    checkLength(src, dst, len);
+    int i = 0;
+    for (; i + 7 < len; i += 8) {
+      dst[i] ^= table[src[i] & 0xFF];
+      dst[i + 1] ^= table[src[i + 1] & 0xFF];
+      dst[i + 2] ^= table[src[i + 2] & 0xFF];
+      dst[i + 3] ^= table[src[i + 3] & 0xFF];
+      dst[i + 4] ^= table[src[i + 4] & 0xFF];
+      dst[i + 5] ^= table[src[i + 5] & 0xFF];
+      dst[i + 6] ^= table[src[i + 6] & 0xFF];
+      dst[i + 7] ^= table[src[i + 7] & 0xFF];
+    }
+    for (; i < len; i++) {
+      dst[i] ^= table[src[i] & 0xFF];
+    }
+  }
+
+  /**
+   * Computes dst[0, len) as the linear combination of the srcs with the
+   * coefficients coefs, whose multiplication tables are in tables.
+   */
+  static void combine(int[] coefs, byte[][] tables, byte[][] srcs, byte[] dst,
+      int len) {
+    boolean first = true;
+    for (int i = 0; i < coefs.length; i++) {
+      int coef = coefs[i];
+      if (coef == 0) {
+        continue;
+      }
+      if (first) {
+        if (coef == 1) {
+          checkLength(srcs[i], dst, len);
+          System.arraycopy(srcs[i], 0, dst, 0, len);
+        } else {
+          multiply(tables[i], srcs[i], dst, len);
+        }
+        first = false;
+      } else if (coef == 1) {
+        xor(srcs[i], dst, len);
+      } else {
+        multiplyAdd(tables[i], srcs[i], dst, len);
+      }
+    }
+    if (first) {
+      for (int i = 0; i < len; i++) {
+        dst[i] = 0;
+      }
+    }
+  }
+
+  private static void checkLength(byte[] src, byte[] dst, int len) {
+    if (len < 0 || len > src.length || len > dst.length) {
+      throw new ArrayIndexOutOfBoundsException("len=" + len + " src.length=" +
+          src.length + " dst.length=" + dst.length);
+    }
+  }
+
+  /**
+   * Provides the XOR implementation; either a pure Java implementation or a
+   * faster implementation based on {@link Unsafe}.
+   * <p/>
+   * Uses reflection to gracefully fall back to the Java implementation if
+   * {@code Unsafe} isn't available.
+   */
+  private static class XorHolder {
+    static final String UNSAFE_XOR_NAME =
+        XorHolder.class.getName() + "$UnsafeXor";
+
+    static final Xor BEST_XOR = getBestXor();
+
+    static Xor getBestXor() {
+      try {
+        Class<?> theClass = Class.forName(UNSAFE_XOR_NAME);
+        return (Xor) theClass.getEnumConstants()[0];
+      } catch (Throwable t) { // ensure we really catch *everything*
+        return PureJavaXor.INSTANCE;
+      }
+    }
+
+    private enum PureJavaXor implements Xor {
+      INSTANCE;
+
+      @Override
+      public void xor(byte[] src, byte[] dst, int len) {
+        int i = 0;
+        for (; i + 7 < len; i += 8) {
+          dst[i] ^= src[i];
+          dst[i + 1] ^= src[i + 1];
+          dst[i + 2] ^= src[i + 2];
+          dst[i + 3] ^= src[i + 3];
+          dst[i + 4] ^= src[i + 4];
+          dst[i + 5] ^= src[i + 5];
+          dst[i + 6] ^= src[i + 6];
+          dst[i + 7] ^= src[i + 7];
+        }
+        for (; i < len; i++) {
+          dst[i] ^= src[i];
+        }
+      }
+    }
+
+    @SuppressWarnings("unused") // used via reflection
+    private enum UnsafeXor implements Xor {
+      INSTANCE;
+
+      static final Unsafe theUnsafe;
+
+      /**
+       * The offset to the first element in a byte array.
+       */
+      static final long BYTE_ARRAY_BASE_OFFSET;
+
+      static {
+        theUnsafe = (Unsafe) AccessController.doPrivileged(
+            new PrivilegedAction<Object>() {
+              @Override
+              public Object run() {
+                try {
+                  Field f = Unsafe.class.getDeclaredField("theUnsafe");
+                  f.setAccessible(true);
+                  return f.get(null);
+                } catch (NoSuchFieldException e) {
+                  // It doesn't matter what we throw;
+                  // it's swallowed in getBestXor().
+                  throw new Error();
+                } catch (IllegalAccessException e) {
+                  throw new Error();
+                }
+              }
+            });
+
+        BYTE_ARRAY_BASE_OFFSET = theUnsafe.arrayBaseOffset(byte[].class);
+
+        // sanity check - this should never fail
+        if (theUnsafe.arrayIndexScale(byte[].class) != 1) {
+          throw new AssertionError();
+        }
+      }
+
+      @Override
+      public void xor(byte[] src, byte[] dst, int len) {
+        int i = 0;
+        for (; i + 31 < len; i += 32) {
+          long offset = BYTE_ARRAY_BASE_OFFSET + i;
+          theUnsafe.putLong(dst, offset,
+              theUnsafe.getLong(dst, offset) ^ theUnsafe.getLong(src, offset));
+          theUnsafe.putLong(dst, offset + 8, theUnsafe.getLong(dst, offset + 8) ^
+              theUnsafe.getLong(src, offset + 8));
+          theUnsafe.putLong(dst, offset + 16,
+              theUnsafe.getLong(dst, offset + 16) ^
+                  theUnsafe.getLong(src, offset + 16));
+          theUnsafe.putLong(dst, offset + 24,
+              theUnsafe.getLong(dst, offset + 24) ^
+                  theUnsafe.getLong(src, offset + 24));
+        }
+        for (; i + 7 < len; i += 8) {
+          long offset = BYTE_ARRAY_BASE_OFFSET + i;
+          theUnsafe.putLong(dst, offset,
+              theUnsafe.getLong(dst, offset) ^ theUnsafe.getLong(src, offset));
+        }
+        for (; i < len; i++) {
+          dst[i] ^= src[i];
+        }
+      }
+    }
+  }
+}
@@ -43,6 +43,8 @@
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.zip.CRC32;
 
 /**
@@ -62,6 +64,12 @@ public class Decoder {
   protected int bufSize;
   protected byte[][] readBufs;
   protected byte[][] writeBufs;
+  /**
+   * Read results released by the stream readers of previous stripes, whose
+   * buffers are reused by the next ones.
+   */
+  private final BlockingQueue<ParallelStreamReader.ReadResult> readResults =
+      new LinkedBlockingQueue<ParallelStreamReader.ReadResult>();
   private int numMissingBlocksInStripe;
   private long numReadBytes;
 
@@ -111,6 +119,19 @@ private void allocateBuffers() {
     }
   }
 
+  /**
+   * Makes writeBufs hold count buffers of bufSize bytes, reusing the current
+   * ones when they fit.
+   */
+  private void allocateWriteBuffers(int count) {
+    if (writeBufs.length == count && count > 0 && writeBufs[0] != null &&
+        writeBufs[0].length == bufSize) {
+      return;
+    }
+    writeBufs = new byte[count][];
+    allocateBuffers();
+  }
+
   private void configureBuffers(long blockSize) {
     if ((long) bufSize > blockSize) {
       bufSize = (int) blockSize;
@@ -337,13 +358,13 @@ long fixErasedBlockImpl(FileSystem srcFs, Path srcFile, FileSystem parityFs,
               }
             }
 
-            this.writeBufs = new byte[erasedLocations.size()][];
-            allocateBuffers();
+            allocateWriteBuffers(erasedLocations.size());
 
             assert (parallelReader == null);
             parallelReader = new ParallelStreamReader(reporter, inputs,
                 (int) Math.min(bufSize, limit), parallelism,
-                boundedBufferCapacity, Math.min(limit, blockSize));
+                boundedBufferCapacity, Math.min(limit, blockSize),
+                readResults);
             parallelReader.start();
           }
           ParallelStreamReader.ReadResult readResult =
@@ -356,6 +377,7 @@ long fixErasedBlockImpl(FileSystem srcFs, Path srcFile, FileSystem parityFs,
           for (int readNum : readResult.numRead) {
             numReadBytes += readNum;
           }
+          parallelReader.releaseReadResult(readResult);
 
           int toWrite = (int) Math.min((long) bufSize, limit - written);
           for (int i = 0; i < erasedLocationsArray.length; i++) {
@@ -605,13 +627,12 @@ private void init() throws IOException {
           }
         }
 
-        writeBufs = new byte[erasedLocations.size()][];
-        allocateBuffers();
+        allocateWriteBuffers(erasedLocations.size());
 
         assert (parallelReader == null);
         parallelReader = new ParallelStreamReader(reporter, inputs,
             (int) Math.min(bufSize, limit), parallelism, boundedBufferCapacity,
-            limit);
+            limit, readResults);
         parallelReader.start();
       }
 
@@ -629,6 +650,7 @@ private void init() throws IOException {
         }
         code.decodeBulk(readResult.readBufs, writeBufs, erasedLocationsArray,
             locationsToReadArray, locationsNotToReadArray);
+        parallelReader.releaseReadResult(readResult);
 
         for (int i = 0; i < erasedLocationsArray.length; i++) {
           if (erasedLocationsArray[i] == erasedLocationToFix) {
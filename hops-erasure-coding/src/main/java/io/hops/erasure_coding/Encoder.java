@@ -37,6 +37,8 @@
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
@@ -56,6 +58,12 @@ public class Encoder {
   protected int bufSize;
   protected byte[][] readBufs;
   protected byte[][] writeBufs;
+  /**
+   * Read results released by the stream readers of previous stripes, whose
+   * buffers are reused by the next ones.
+   */
+  private final BlockingQueue<ParallelStreamReader.ReadResult> readResults =
+      new LinkedBlockingQueue<ParallelStreamReader.ReadResult>();
 
   /**
    * A class that acts as a sink for data, similar to /dev/null.
@@ -289,25 +297,39 @@ private void encodeFileToStream(FileSystem fs, Path sourceFile,
       LOG.info("Created tmp file " + tmpFiles[i]);
       tmpFiles[i].deleteOnExit();
     }
+    // The next stripe is read while the current one is coded and its
+    // parity blocks are copied to out.
+    InputStream[] blocks = null;
+    ParallelStreamReader reader = null;
+    InputStream[] nextBlocks = null;
+    ParallelStreamReader nextReader = null;
     try {
+      if (sReader.hasNext()) {
+        blocks = sReader.getNextStripeInputs();
+        reader = startReader(blocks, blockSize, reporter);
+      }
       // Loop over stripe
       int stripe = 0;
-      while (sReader.hasNext()) {
+      while (reader != null) {
         reporter.progress();
-        // Create input streams for blocks in the stripe.
-        InputStream[] blocks = sReader.getNextStripeInputs();
-        try {
-          // Create output streams to the temp files.
-          for (int i = 0; i < codec.parityLength - 1; i++) {
-            tmpOuts[i + 1] = new FileOutputStream(tmpFiles[i]);
-          }
-          // Call the implementation of encoding.
-          encodeStripe(fs, sourceFile, parityFile, blocks, blockSize, tmpOuts,
-              reporter, true, stripe);
-          stripe++;
-        } finally {
-          RaidUtils.closeStreams(blocks);
+        // Create output streams to the temp files.
+        for (int i = 0; i < codec.parityLength - 1; i++) {
+          tmpOuts[i + 1] = new FileOutputStream(tmpFiles[i]);
+        }
+        if (sReader.hasNext()) {
+          nextBlocks = sReader.getNextStripeInputs();
+          nextReader = startReader(nextBlocks, blockSize, reporter);
         }
+        // Call the implementation of encoding.
+        encodeStripe(fs, sourceFile, parityFile, reader, blockSize, tmpOuts,
+            reporter, true, stripe);
+        stripe++;
+        reader.shutdown();
+        RaidUtils.closeStreams(blocks);
+        reader = nextReader;
+        blocks = nextBlocks;
+        nextReader = null;
+        nextBlocks = null;
         // Close output streams to the temp files and write the temp files
         // to the output provided.
         for (int i = 0; i < codec.parityLength - 1; i++) {
@@ -319,6 +341,18 @@ private void encodeFileToStream(FileSystem fs, Path sourceFile,
         }
       }
     } finally {
+      if (nextReader != null) {
+        nextReader.shutdown();
+      }
+      if (nextBlocks != null) {
+        RaidUtils.closeStreams(nextBlocks);
+      }
+      if (reader != null) {
+        reader.shutdown();
+      }
+      if (blocks != null) {
+        RaidUtils.closeStreams(blocks);
+      }
       for (int i = 0; i < codec.parityLength - 1; i++) {
         if (tmpOuts[i + 1] != null) {
           tmpOuts[i + 1].close();
@@ -336,23 +370,45 @@ void encodeStripe(FileSystem fs, Path sourceFile, Path parityFile,
         false, 0);
   }
 
+  void encodeStripe(FileSystem fs, Path sourceFile, Path parityFile,
+      InputStream[] blocks, long blockSize, OutputStream[] outs,
+      Progressable reporter, boolean computeBlockChecksum, int stripe)
+      throws IOException {
+    ParallelStreamReader parallelReader =
+        startReader(blocks, blockSize, reporter);
+    try {
+      encodeStripe(fs, sourceFile, parityFile, parallelReader, blockSize,
+          outs, reporter, computeBlockChecksum, stripe);
+    } finally {
+      parallelReader.shutdown();
+    }
+  }
+
   /**
-   * Wraps around encodeStripeImpl in order to configure buffers.
+   * Configures the buffers and starts reading a stripe.
    * Having buffers of the right size is extremely important. If the the
    * buffer size is not a divisor of the block size, we may end up reading
    * across block boundaries.
    */
-  void encodeStripe(FileSystem fs, Path sourceFile, Path parityFile,
-      InputStream[] blocks, long blockSize, OutputStream[] outs,
-      Progressable reporter, boolean computeBlockChecksum, int stripe)
-      throws IOException {
+  private ParallelStreamReader startReader(InputStream[] blocks,
+      long blockSize, Progressable reporter) {
     configureBuffers(blockSize);
     int boundedBufferCapacity = 1;
     ParallelStreamReader parallelReader =
         new ParallelStreamReader(reporter, blocks, bufSize, parallelism,
-            boundedBufferCapacity, blockSize);
+            boundedBufferCapacity, blockSize, readResults);
     parallelReader.start();
+    return parallelReader;
+  }
 
+  /**
+   * Codes a stripe read by the given reader, which is shut down by the
+   * caller.
+   */
+  private void encodeStripe(FileSystem fs, Path sourceFile, Path parityFile,
+      ParallelStreamReader parallelReader, long blockSize,
+      OutputStream[] outs, Progressable reporter,
+      boolean computeBlockChecksum, int stripe) throws IOException {
     Checksum[] sourceChecksums = null;
     Checksum[] parityChecksums = null;
     if (computeBlockChecksum) {
@@ -365,42 +421,39 @@ void encodeStripe(FileSystem fs, Path sourceFile, Path parityFile,
         parityChecksums[i] = new CRC32();
       }
     }
-    try {
-      for (long encoded = 0; encoded < blockSize; encoded += bufSize) {
-        ParallelStreamReader.ReadResult readResult = null;
-        try {
-          readResult = parallelReader.getReadResult();
-        } catch (InterruptedException e) {
-          throw new IOException("Interrupted while waiting for read result");
-        }
-        // Cannot tolerate any IO errors.
-        IOException readEx = readResult.getException();
-        if (readEx != null) {
-          throw readEx;
-        }
+    for (long encoded = 0; encoded < blockSize; encoded += bufSize) {
+      ParallelStreamReader.ReadResult readResult = null;
+      try {
+        readResult = parallelReader.getReadResult();
+      } catch (InterruptedException e) {
+        throw new IOException("Interrupted while waiting for read result");
+      }
+      // Cannot tolerate any IO errors.
+      IOException readEx = readResult.getException();
+      if (readEx != null) {
+        throw readEx;
+      }
 
+      if (computeBlockChecksum) {
+        updateChecksums(sourceChecksums, readResult.readBufs);
+      }
+      code.encodeBulk(readResult.readBufs, writeBufs);
+      reporter.progress();
+
+      // Now that we have some data to write, send it to the temp files.
+      for (int i = 0; i < codec.parityLength; i++) {
+        outs[i].write(writeBufs[i], 0, bufSize);
         if (computeBlockChecksum) {
-          updateChecksums(sourceChecksums, readResult.readBufs);
+          parityChecksums[i].update(writeBufs[i], 0, bufSize);
         }
-        code.encodeBulk(readResult.readBufs, writeBufs);
         reporter.progress();
-
-        // Now that we have some data to write, send it to the temp files.
-        for (int i = 0; i < codec.parityLength; i++) {
-          outs[i].write(writeBufs[i], 0, bufSize);
-          if (computeBlockChecksum) {
-            parityChecksums[i].update(writeBufs[i], 0, bufSize);
-          }
-          reporter.progress();
-        }
       }
-      sendChecksums((DistributedFileSystem) fs, sourceFile, sourceChecksums,
-          stripe, codec.stripeLength);
-      sendChecksums((DistributedFileSystem) fs, parityFile, parityChecksums,
-          stripe, codec.parityLength);
-    } finally {
-      parallelReader.shutdown();
+      parallelReader.releaseReadResult(readResult);
     }
+    sendChecksums((DistributedFileSystem) fs, sourceFile, sourceChecksums,
+        stripe, codec.stripeLength);
+    sendChecksums((DistributedFileSystem) fs, parityFile, parityChecksums,
+        stripe, codec.parityLength);
   }
 
   private void updateChecksums(Checksum[] checksums, byte[][] buffs) {
@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.hops.erasure_coding;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link ReedSolomonCode} whose bulk operations apply the code in matrix
+ * form.
+ * <p/>
+ * Encoding and decoding are linear over GF(2^8), so every parity symbol is a
+ * fixed linear combination of the message symbols and every erased symbol a
+ * fixed linear combination of the symbols read. The coefficients are
+ * computed once with the symbol at a time operations of ReedSolomonCode,
+ * the ones of the decoding for each erasure pattern, and the bulk operations
+ * then go through a 256 entry multiplication table per coefficient instead
+ * of a polynomial division per byte. The parity is the same as the one of
+ * ReedSolomonCode.
+ * <p/>
+ * Like ReedSolomonCode, instances are not thread safe.
+ */
+public class FastReedSolomonCode extends ReedSolomonCode {
+
+  private static final int MAX_CACHED_DECODINGS = 16;
+
+  private final GaloisField GF = GaloisField.getInstance();
+
+  /**
+   * The coefficients of the message symbols in every parity symbol and
+   * their multiplication tables.
+   */
+  private int[][] encodeMatrix;
+  private byte[][][] encodeTables;
+
+  private final Map<String, Decoding> decodings =
+      new LinkedHashMap<String, Decoding>(MAX_CACHED_DECODINGS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Decoding> e) {
+          return size() > MAX_CACHED_DECODINGS;
+        }
+      };
+
+  /**
+   * The coefficients of the symbols read in every erased symbol, for one
+   * erasure pattern.
+   */
+  private static class Decoding {
+    private final int[][] matrix;
+    private final byte[][][] tables;
+
+    Decoding(int[][] matrix, byte[][][] tables) {
+      this.matrix = matrix;
+      this.tables = tables;
+    }
+  }
+
+  @Deprecated
+  public FastReedSolomonCode(int stripeSize, int paritySize) {
+    super(stripeSize, paritySize);
+    initMatrix();
+  }
+
+  public FastReedSolomonCode() {
+  }
+
+  @Override
+  public void init(Codec codec) {
+    super.init(codec);
+    initMatrix();
+  }
+
+  private void initMatrix() {
+    final int stripeSize = stripeSize();
+    final int paritySize = paritySize();
+    encodeMatrix = new int[paritySize][stripeSize];
+    int[] message = new int[stripeSize];
+    int[] parity = new int[paritySize];
+    for (int i = 0; i < stripeSize; i++) {
+      Arrays.fill(message, 0);
+      message[i] = 1;
+      encode(message, parity);
+      for (int j = 0; j < paritySize; j++) {
+        encodeMatrix[j][i] = parity[j];
+      }
+    }
+    encodeTables = tablesOf(encodeMatrix);
+    decodings.clear();
+  }
+
+  private byte[][][] tablesOf(int[][] matrix) {
+    byte[][][] tables = new byte[matrix.length][][];
+    for (int i = 0; i < matrix.length; i++) {
+      tables[i] = new byte[matrix[i].length][];
+      for (int j = 0; j < matrix[i].length; j++) {
+        if (matrix[i][j] > 1) {
+          tables[i][j] = CodingKernels.multiplicationTable(GF, matrix[i][j]);
+        }
+      }
+    }
+    return tables;
+  }
+
+  /**
+   * Unlike the one of ReedSolomonCode, this function does not modify the
+   * inputs.
+   */
+  @Override
+  public void encodeBulk(byte[][] inputs, byte[][] outputs) {
+    assert (stripeSize() == inputs.length);
+    assert (paritySize() == outputs.length);
+    for (int i = 0; i < outputs.length; i++) {
+      CodingKernels.combine(encodeMatrix[i], encodeTables[i], inputs,
+          outputs[i], outputs[i].length);
+    }
+  }
+
+  @Override
+  public void decodeBulk(byte[][] readBufs, byte[][] writeBufs,
+      int[] erasedLocation) {
+    if (erasedLocation.length == 0) {
+      return;
+    }
+    decodeBulk(readBufs, writeBufs, erasedLocation, null, erasedLocation);
+  }
+
+  @Override
+  public void decodeBulk(byte[][] readBufs, byte[][] writeBufs,
+      int[] erasedLocations, int[] locationsToRead, int[] locationsNotToRead) {
+    Decoding decoding = getDecoding(erasedLocations, locationsToRead,
+        locationsNotToRead);
+    int numBytes = readBufs[0].length;
+    for (int i = 0; i < erasedLocations.length; i++) {
+      CodingKernels.combine(decoding.matrix[i], decoding.tables[i], readBufs,
+          writeBufs[i], numBytes);
+    }
+  }
+
+  private Decoding getDecoding(int[] erasedLocations, int[] locationsToRead,
+      int[] locationsNotToRead) {
+    String key = Arrays.toString(erasedLocations) +
+        Arrays.toString(locationsNotToRead);
+    Decoding decoding = decodings.get(key);
+    if (decoding == null) {
+      decoding = computeDecoding(erasedLocations, locationsToRead,
+          locationsNotToRead);
+      decodings.put(key, decoding);
+    }
+    return decoding;
+  }
+
+  private Decoding computeDecoding(int[] erasedLocations,
+      int[] locationsToRead, int[] locationsNotToRead) {
+    final int length = stripeSize() + paritySize();
+    int[][] matrix = new int[erasedLocations.length][length];
+    int[] data = new int[length];
+    int[] erasedValues = new int[erasedLocations.length];
+    for (int location = 0; location < length; location++) {
+      // the locations not to read are ignored by decode
+      Arrays.fill(data, 0);
+      Arrays.fill(erasedValues, 0);
+      data[location] = 1;
+      decode(data, erasedLocations, erasedValues, locationsToRead,
+          locationsNotToRead);
+      for (int i = 0; i < erasedLocations.length; i++) {
+        matrix[i][location] = erasedValues[i];
+      }
+    }
+    return new Decoding(matrix, tablesOf(matrix));
+  }
+}
@@ -0,0 +1,67 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.hops.erasure_coding;
+
+/**
+ * {@link XORCode} whose bulk operations XOR whole words instead of single
+ * bytes. The parity is the same as the one of XORCode.
+ */
+public class FastXORCode extends XORCode {
+
+  @Deprecated
+  public FastXORCode(int stripeSize, int paritySize) {
+    super(stripeSize, paritySize);
+  }
+
+  public FastXORCode() {
+  }
+
+  @Override
+  public void encodeBulk(byte[][] inputs, byte[][] outputs) {
+    byte[] output = outputs[0];
+    int bufSize = output.length;
+    System.arraycopy(inputs[0], 0, output, 0, bufSize);
+    for (int i = 1; i < inputs.length; i++) {
+      CodingKernels.xor(inputs[i], output, bufSize);
+    }
+  }
+
+  @Override
+  public void decodeBulk(byte[][] readBufs, byte[][] writeBufs,
+      int[] erasedLocations) {
+    assert (erasedLocations.length == writeBufs.length);
+    assert (erasedLocations.length <= 1);
+    byte[] output = writeBufs[0];
+    int bufSize = output.length;
+    int erasedIdx = erasedLocations[0];
+    boolean first = true;
+    for (int i = 0; i < readBufs.length; i++) {
+      // Skip the erased location.
+      if (i == erasedIdx) {
+        continue;
+      }
+      if (first) {
+        System.arraycopy(readBufs[i], 0, output, 0, bufSize);
+        first = false;
+      } else {
+        CodingKernels.xor(readBufs[i], output, bufSize);
+      }
+    }
+  }
+}
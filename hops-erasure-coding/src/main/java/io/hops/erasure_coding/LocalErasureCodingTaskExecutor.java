@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.hops.erasure_coding;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.server.datanode.BlockReconstructor;
+import org.apache.hadoop.hdfs.server.protocol.ErasureCodingTask;
+
+import java.io.IOException;
+
+/**
+ * Runs the encodings and repairs assigned to a datanode in the datanode
+ * process, with the same code as {@link LocalEncodingManager} and
+ * {@link LocalBlockRepairManager}.
+ */
+public class LocalErasureCodingTaskExecutor extends ErasureCodingTaskExecutor {
+
+  public static final Log LOG =
+      LogFactory.getLog(LocalErasureCodingTaskExecutor.class);
+
+  private final BlockReconstructor blockReconstructor;
+
+  public LocalErasureCodingTaskExecutor(Configuration conf)
+      throws IOException {
+    super(conf);
+    Codec.initializeCodecs(conf);
+    blockReconstructor = new BlockReconstructor(conf);
+  }
+
+  @Override
+  public void execute(ErasureCodingTask task)
+      throws IOException, InterruptedException {
+    Codec codec = Codec.getCodec(task.getCodecId());
+    if (codec == null) {
+      throw new IOException("Unknown codec " + task.getCodecId());
+    }
+    Path sourceFile = new Path(task.getSourcePath());
+    Path parityFile = new Path(task.getParityPath());
+    boolean success;
+    switch (task.getType()) {
+      case ENCODE:
+        BaseEncodingManager.Statistics statistics =
+            new BaseEncodingManager.Statistics();
+        success = BaseEncodingManager
+            .doRaid(getConf(), sourceFile, parityFile, codec, statistics,
+                RaidUtils.NULL_PROGRESSABLE, task.getTargetReplication(),
+                task.getTargetReplication());
+        LOG.info("RAID statistics " + statistics.toString());
+        break;
+      case REPAIR_SOURCE:
+        success = blockReconstructor.processFile(sourceFile, parityFile,
+            new Decoder(getConf(), codec));
+        break;
+      case REPAIR_PARITY:
+        success = blockReconstructor.processParityFile(sourceFile, parityFile,
+            new Decoder(getConf(), codec));
+        break;
+      default:
+        throw new IOException("Unknown task type " + task.getType());
+    }
+    if (!success) {
+      throw new IOException(task + " did not complete");
+    }
+  }
+}
@@ -32,11 +32,17 @@
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Reads data from multiple input streams in parallel.
+ * <p/>
+ * The read buffers are recycled: a consumer done with a {@link ReadResult}
+ * returns it with {@link #releaseReadResult(ReadResult)} and its buffers are
+ * then reused for a later read instead of allocating new ones. The pool of
+ * free results can be shared by the readers of consecutive stripes.
  */
 public class ParallelStreamReader {
   public static final Log LOG = LogFactory.getLog(ParallelStreamReader.class);
@@ -65,6 +71,17 @@ public static class ReadResult {
       }
       this.ioExceptions = new IOException[readBufs.length];
     }
+
+    private boolean fits(int numStreams, int bufSize) {
+      return readBufs.length == numStreams && readBufs[0].length == bufSize;
+    }
+
+    private void reset() {
+      Arrays.fill(numRead, 0);
+      synchronized (ioExceptions) {
+        Arrays.fill(ioExceptions, null);
+      }
+    }
     
     void setException(int idx, Exception e) {
       synchronized (ioExceptions) {
@@ -93,6 +110,7 @@ IOException getException() {
   }
 
   BlockingQueue<ReadResult> boundedBuffer;
+  BlockingQueue<ReadResult> freeResults;
   Thread mainThread;
 
   /**
@@ -110,6 +128,21 @@ IOException getException() {
   public ParallelStreamReader(Progressable reporter, InputStream[] streams,
       int bufSize, int numThreads, int boundedBufferCapacity,
       long maxBytesPerStream) throws IOException {
+    this(reporter, streams, bufSize, numThreads, boundedBufferCapacity,
+        maxBytesPerStream, new LinkedBlockingQueue<ReadResult>());
+  }
+
+  /**
+   * Reads data from multiple streams in parallel and puts the data in a queue.
+   *
+   * @param freeResults
+   *     The pool of released results to reuse the buffers of. Results
+   *     which do not match the number of streams or bufSize are dropped.
+   */
+  public ParallelStreamReader(Progressable reporter, InputStream[] streams,
+      int bufSize, int numThreads, int boundedBufferCapacity,
+      long maxBytesPerStream, BlockingQueue<ReadResult> freeResults)
+      throws IOException {
     this.reporter = reporter;
     this.streams = new InputStream[streams.length];
     this.endOffsets = new long[streams.length];
@@ -132,6 +165,7 @@ public ParallelStreamReader(Progressable reporter, InputStream[] streams,
       streams[i] = null; // Take over ownership of streams.
     }
     this.bufSize = bufSize;
+    this.freeResults = freeResults;
     this.boundedBuffer =
         new ArrayBlockingQueue<ReadResult>(boundedBufferCapacity);
     if (numThreads > streams.length) {
@@ -175,10 +209,29 @@ public ReadResult getReadResult() throws InterruptedException {
     return boundedBuffer.take();
   }
 
+  /**
+   * Returns a result obtained from {@link #getReadResult()} whose buffers
+   * are no longer used by the caller, so that they can be reused.
+   */
+  public void releaseReadResult(ReadResult readResult) {
+    freeResults.offer(readResult);
+  }
+
+  private ReadResult newReadResult() {
+    ReadResult readResult;
+    while ((readResult = freeResults.poll()) != null) {
+      if (readResult.fits(streams.length, bufSize)) {
+        readResult.reset();
+        return readResult;
+      }
+    }
+    return new ReadResult(streams.length, bufSize);
+  }
+
   class MainThread extends Thread {
     public void run() {
       while (running) {
-        ReadResult readResult = new ReadResult(streams.length, bufSize);
+        ReadResult readResult = newReadResult();
         try {
           // Do not try to read more data if the desired amount of data has
           // been read.
@@ -239,13 +292,16 @@ public void run() {
         if (streams[idx] == null) {
           // We encountered an error in this stream earlier, use zeros.
           Arrays.fill(readResult.readBufs[idx], (byte) 0);
+          readResult.numRead[idx] = 0;
           return;
         }
         boolean eofOK = true;
         byte[] buffer = readResult.readBufs[idx];
+        int toRead = (int) Math.min(remainingBytesPerStream, buffer.length);
         int numRead = RaidUtils
-            .readTillEnd(streams[idx], buffer, eofOK, endOffsets[idx],
-                (int) Math.min(remainingBytesPerStream, buffer.length));
+            .readTillEnd(streams[idx], buffer, eofOK, endOffsets[idx], toRead);
+        // a recycled buffer may hold data of a previous read
+        Arrays.fill(buffer, toRead, buffer.length, (byte) 0);
         readResult.numRead[idx] = numRead;
       } catch (Exception e) {
         LOG.warn("Encountered exception in stream " + idx, e);
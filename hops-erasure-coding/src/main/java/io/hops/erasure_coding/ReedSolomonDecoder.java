@@ -54,7 +54,7 @@ public ReedSolomonDecoder(Configuration conf) {
     stripeSize = this.codec.stripeLength;
     paritySize = this.codec.parityLength;
     for (int i = 0; i < parallelism; i++) {
-      reedSolomonCode[i] = new ReedSolomonCode(stripeSize, paritySize);
+      reedSolomonCode[i] = new FastReedSolomonCode(stripeSize, paritySize);
     }
     decodeOps = new Semaphore(parallelism);
   }
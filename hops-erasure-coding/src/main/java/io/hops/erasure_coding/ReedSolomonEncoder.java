@@ -39,7 +39,7 @@ public ReedSolomonEncoder(Configuration conf) {
     super(conf, Codec.getCodec("rs"));
     stripeSize = this.codec.stripeLength;
     paritySize = this.codec.parityLength;
-    this.reedSolomonCode = new ReedSolomonCode(stripeSize, paritySize);
+    this.reedSolomonCode = new FastReedSolomonCode(stripeSize, paritySize);
   }
 
   protected void encodeStripeImpl(InputStream[] blocks, long stripeStartOffset,
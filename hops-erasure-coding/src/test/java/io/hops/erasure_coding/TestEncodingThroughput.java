@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.erasure_coding;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.util.Time;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Encodes a file of several stripes on a MiniDFSCluster and logs the
+ * encoding throughput. The stripes are read while the previous one is
+ * coded, so the parity file is also compared with the parity of each stripe
+ * coded on its own.
+ */
+public class TestEncodingThroughput extends ClusterTest {
+
+  public static final Log LOG =
+      LogFactory.getLog(TestEncodingThroughput.class);
+
+  private static final int BLOCK_SIZE = 1024 * 1024;
+  private static final int STRIPES = 4;
+
+  private HdfsConfiguration conf;
+  private final long seed = 0xDEADBEEFL;
+  private final Path testFile = new Path("/test_file");
+  private final Path parityFile = new Path("/parity/test_file");
+
+  public TestEncodingThroughput() {
+    conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setInt(DFSConfigKeys.DFS_REPLICATION_KEY, 1);
+    numDatanode = 16;
+  }
+
+  @Override
+  protected Configuration getConfig() {
+    return conf;
+  }
+
+  @Test
+  public void testEncodingThroughput() throws Exception {
+    DistributedFileSystem dfs = (DistributedFileSystem) getFileSystem();
+    Codec codec = Util.getCodec(Util.Codecs.RS);
+    int blockCount = STRIPES * codec.getStripeLength();
+    byte[] data = Util.randomBytes(seed, blockCount, BLOCK_SIZE);
+    Util.createRandomFile(dfs, testFile, seed, blockCount, BLOCK_SIZE);
+
+    long start = Time.monotonicNow();
+    assertTrue(Util.encodeFile(conf, dfs, codec, testFile, parityFile));
+    long elapsed = Math.max(1, Time.monotonicNow() - start);
+    LOG.info("Encoded " + blockCount + " blocks of " + BLOCK_SIZE +
+        " bytes in " + elapsed + " ms, " +
+        (long) data.length * 1000 / elapsed / 1024 / 1024 + " MB/s");
+
+    int parityLength = codec.getParityLength();
+    byte[] parity = new byte[STRIPES * parityLength * BLOCK_SIZE];
+    FSDataInputStream in = dfs.open(parityFile);
+    try {
+      in.readFully(0, parity);
+    } finally {
+      in.close();
+    }
+
+    Encoder encoder = new Encoder(conf, codec);
+    for (int stripe = 0; stripe < STRIPES; stripe++) {
+      InputStream[] blocks = new InputStream[codec.getStripeLength()];
+      for (int i = 0; i < blocks.length; i++) {
+        int offset = (stripe * blocks.length + i) * BLOCK_SIZE;
+        blocks[i] = new ByteArrayInputStream(data, offset, BLOCK_SIZE);
+      }
+      ByteArrayOutputStream[] parityBlocks =
+          new ByteArrayOutputStream[parityLength];
+      for (int i = 0; i < parityLength; i++) {
+        parityBlocks[i] = new ByteArrayOutputStream(BLOCK_SIZE);
+      }
+      encoder.encodeStripe(dfs, testFile, parityFile, blocks, BLOCK_SIZE,
+          parityBlocks, RaidUtils.NULL_PROGRESSABLE);
+      for (int i = 0; i < parityLength; i++) {
+        int offset = (stripe * parityLength + i) * BLOCK_SIZE;
+        assertTrue("Parity block " + i + " of stripe " + stripe,
+            Arrays.equals(parityBlocks[i].toByteArray(),
+                Arrays.copyOfRange(parity, offset, offset + BLOCK_SIZE)));
+      }
+    }
+  }
+}
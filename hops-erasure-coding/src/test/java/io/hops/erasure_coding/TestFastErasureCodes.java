@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.hops.erasure_coding;
+
+import junit.framework.TestCase;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class TestFastErasureCodes extends TestCase {
+  public static final Log LOG = LogFactory.getLog(TestFastErasureCodes.class);
+
+  final int TEST_TIMES = 100;
+  final Random RAND = new Random();
+
+  public void testRSCompatibility() {
+    verifyRSCompatibility(10, 4);
+    verifyRSCompatibility(6, 3);
+    verifyRSCompatibility(3, 3);
+    verifyRSCompatibility(1, 1);
+    for (int n = 0; n < 10; n++) {
+      verifyRSCompatibility(RAND.nextInt(99) + 1, RAND.nextInt(9) + 1);
+    }
+  }
+
+  private void verifyRSCompatibility(int stripeSize, int paritySize) {
+    int bufSize = 4096 + RAND.nextInt(64);
+    byte[][] message = randomBufs(stripeSize, bufSize);
+    byte[][] cpMessage = copy(message);
+    byte[][] expectedParity = new byte[paritySize][bufSize];
+    byte[][] parity = new byte[paritySize][bufSize];
+
+    new ReedSolomonCode(stripeSize, paritySize).encodeBulk(cpMessage,
+        expectedParity);
+    FastReedSolomonCode code = new FastReedSolomonCode(stripeSize, paritySize);
+    code.encodeBulk(message, parity);
+    for (int i = 0; i < paritySize; i++) {
+      assertTrue("Encode differs", Arrays.equals(expectedParity[i], parity[i]));
+    }
+
+    int length = stripeSize + paritySize;
+    byte[][] stripe = new byte[length][];
+    System.arraycopy(parity, 0, stripe, 0, paritySize);
+    System.arraycopy(message, 0, stripe, paritySize, stripeSize);
+    for (int m = 0; m < TEST_TIMES; m++) {
+      int[] erasedLocations =
+          randomErasedLocations(RAND.nextInt(paritySize) + 1, length);
+      byte[][] data = copy(stripe);
+      for (int erased : erasedLocations) {
+        Arrays.fill(data[erased], (byte) 0);
+      }
+      byte[][] writeBufs = new byte[erasedLocations.length][bufSize];
+      code.decodeBulk(data, writeBufs, erasedLocations, null, erasedLocations);
+      for (int i = 0; i < erasedLocations.length; i++) {
+        assertTrue("Decode failed",
+            Arrays.equals(stripe[erasedLocations[i]], writeBufs[i]));
+      }
+    }
+  }
+
+  public void testXORCompatibility() {
+    int stripeSize = 10;
+    int bufSize = 4096 + RAND.nextInt(64);
+    byte[][] message = randomBufs(stripeSize, bufSize);
+    byte[][] expectedParity = new byte[1][bufSize];
+    byte[][] parity = new byte[1][bufSize];
+    new XORCode(stripeSize, 1).encodeBulk(message, expectedParity);
+    FastXORCode code = new FastXORCode(stripeSize, 1);
+    code.encodeBulk(message, parity);
+    assertTrue("Encode differs", Arrays.equals(expectedParity[0], parity[0]));
+
+    byte[][] stripe = new byte[stripeSize + 1][];
+    stripe[0] = parity[0];
+    System.arraycopy(message, 0, stripe, 1, stripeSize);
+    for (int erased = 0; erased < stripe.length; erased++) {
+      byte[][] data = copy(stripe);
+      Arrays.fill(data[erased], (byte) 0);
+      byte[][] writeBufs = new byte[1][bufSize];
+      code.decodeBulk(data, writeBufs, new int[]{erased});
+      assertTrue("Decode failed", Arrays.equals(stripe[erased], writeBufs[0]));
+    }
+  }
+
+  /**
+   * Prints the encode and decode throughput of the bulk operations of the
+   * codes for several stripe sizes.
+   */
+  public void testPerformance() {
+    int bufSize = 1024 * 1024;
+    int[][] sizes = {{10, 1}, {6, 3}, {10, 4}};
+    for (int[] size : sizes) {
+      int stripeSize = size[0];
+      int paritySize = size[1];
+      if (paritySize == 1) {
+        measure("xor", new XORCode(stripeSize, paritySize), bufSize);
+        measure("fast xor", new FastXORCode(stripeSize, paritySize), bufSize);
+      }
+      measure("rs", new ReedSolomonCode(stripeSize, paritySize), bufSize);
+      measure("fast rs", new FastReedSolomonCode(stripeSize, paritySize),
+          bufSize);
+    }
+  }
+
+  private void measure(String name, ErasureCode code, int bufSize) {
+    final int iterations = 5;
+    int stripeSize = code.stripeSize();
+    int paritySize = code.paritySize();
+    byte[][] message = randomBufs(stripeSize, bufSize);
+    byte[][] parity = new byte[paritySize][bufSize];
+    int[] erasedLocations = new int[]{paritySize};
+    byte[][] writeBufs = new byte[1][bufSize];
+    byte[][] stripe = new byte[stripeSize + paritySize][];
+
+    // warm up
+    code.encodeBulk(copy(message), parity);
+    long encodeNanos = 0;
+    for (int i = 0; i < iterations; i++) {
+      byte[][] inputs = copy(message);
+      long start = System.nanoTime();
+      code.encodeBulk(inputs, parity);
+      encodeNanos += System.nanoTime() - start;
+    }
+
+    System.arraycopy(parity, 0, stripe, 0, paritySize);
+    System.arraycopy(message, 0, stripe, paritySize, stripeSize);
+    Arrays.fill(stripe[paritySize], (byte) 0);
+    code.decodeBulk(stripe, writeBufs, erasedLocations, null,
+        erasedLocations);
+    long decodeNanos = 0;
+    for (int i = 0; i < iterations; i++) {
+      long start = System.nanoTime();
+      code.decodeBulk(stripe, writeBufs, erasedLocations, null,
+          erasedLocations);
+      decodeNanos += System.nanoTime() - start;
+    }
+
+    long bytes = (long) iterations * stripeSize * bufSize;
+    LOG.info(name + " (" + stripeSize + ", " + paritySize +
+        "): encode " + mbPerSec(bytes, encodeNanos) + " MB/s, decode " +
+        mbPerSec(bytes, decodeNanos) + " MB/s");
+  }
+
+  private static long mbPerSec(long bytes, long nanos) {
+    return nanos == 0 ? 0 : bytes * 1000 / nanos;
+  }
+
+  private byte[][] randomBufs(int count, int bufSize) {
+    byte[][] bufs = new byte[count][bufSize];
+    for (byte[] buf : bufs) {
+      RAND.nextBytes(buf);
+    }
+    return bufs;
+  }
+
+  private static byte[][] copy(byte[][] bufs) {
+    byte[][] copy = new byte[bufs.length][];
+    for (int i = 0; i < bufs.length; i++) {
+      copy[i] = bufs[i].clone();
+    }
+    return copy;
+  }
+
+  private int[] randomErasedLocations(int erasedLen, int dataLen) {
+    List<Integer> locations = new ArrayList<Integer>(dataLen);
+    for (int i = 0; i < dataLen; i++) {
+      locations.add(i);
+    }
+    Collections.shuffle(locations, RAND);
+    int[] erasedLocations = new int[erasedLen];
+    for (int i = 0; i < erasedLen; i++) {
+      erasedLocations[i] = locations.get(i);
+    }
+    return erasedLocations;
+  }
+}
@@ -22,8 +22,11 @@
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 public class TestParallelReader extends TestCase {
   public static final Log LOG = LogFactory.getLog(TestParallelReader.class);
@@ -105,4 +108,33 @@ public void testParallelism() throws IOException, InterruptedException {
 
     LOG.info("testParallelism finished");
   }
+
+  public void testReadResultReuse() throws IOException, InterruptedException {
+    int bufSize = 4;
+    byte[] data = new byte[]{1, 2, 3, 4, 5, 6};
+    InputStream[] streams = new InputStream[2];
+    for (int i = 0; i < streams.length; i++) {
+      streams[i] = new ByteArrayInputStream(data);
+    }
+    BlockingQueue<ParallelStreamReader.ReadResult> freeResults =
+        new LinkedBlockingQueue<ParallelStreamReader.ReadResult>();
+    ParallelStreamReader parallelReader =
+        new ParallelStreamReader(RaidUtils.NULL_PROGRESSABLE, streams, bufSize,
+            2, 1, data.length, freeResults);
+    try {
+      parallelReader.start();
+      ParallelStreamReader.ReadResult first = parallelReader.getReadResult();
+      assertEquals(4, first.numRead[0]);
+      assertEquals(4, first.readBufs[1][3]);
+      parallelReader.releaseReadResult(first);
+      ParallelStreamReader.ReadResult second = parallelReader.getReadResult();
+      assertEquals(2, second.numRead[0]);
+      assertEquals(6, second.readBufs[1][1]);
+      // the tail past the end of the streams is zeroed in reused buffers
+      assertEquals(0, second.readBufs[1][2]);
+      assertEquals(0, second.readBufs[1][3]);
+    } finally {
+      parallelReader.shutdown();
+    }
+  }
 }